@@ -21,6 +21,8 @@ import java.io.Closeable;
 import java.io.IOException;
 
 import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValuesSkipper;
+import org.apache.lucene.index.DocValuesType;
 import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.SortedDocValues;
@@ -64,6 +66,18 @@ public abstract class DocValuesProducer implements Closeable, Accountable {
    *  used by a single thread. */
   public abstract SortedSetDocValues getSortedSet(FieldInfo field) throws IOException;
   
+  /** Returns a {@link DocValuesSkipper} for this field, or <code>null</code>
+   *  if the field has no skip index. This is only called on
+   *  {@link DocValuesType#NUMERIC} and {@link DocValuesType#SORTED_NUMERIC}
+   *  fields. The returned instance need not be thread-safe: it will only be
+   *  used by a single thread.
+   *  <p>
+   *  The default implementation returns <code>null</code>.
+   *  @lucene.experimental */
+  public DocValuesSkipper getSkipper(FieldInfo field) throws IOException {
+    return null;
+  }
+
   /** 
    * Checks consistency of this producer
    * <p>
@@ -21,6 +21,9 @@ import org.apache.lucene.util.BytesRef;
 
 /** {@link PointValues} whose order of points can be changed.
  *  This class is useful for codecs to optimize flush.
+ *  Codecs may call methods concurrently as long as they operate on
+ *  disjoint ranges of points, so implementations must not keep
+ *  temporary state across calls.
  *  @lucene.internal */
 public abstract class MutablePointValues extends PointValues {
 
@@ -18,6 +18,7 @@ package org.apache.lucene.codecs.lucene60;
 
 
 import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.codecs.PointsFormat;
@@ -25,6 +26,7 @@ import org.apache.lucene.codecs.PointsReader;
 import org.apache.lucene.codecs.PointsWriter;
 import org.apache.lucene.index.SegmentReadState;
 import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.util.bkd.BKDWriter;
 
 /**
  * Lucene 6.0 point format, which encodes dimensional values in a block KD-tree structure
@@ -94,13 +96,23 @@ public final class Lucene60PointsFormat extends PointsFormat {
   static final int INDEX_VERSION_START = 0;
   static final int INDEX_VERSION_CURRENT = INDEX_VERSION_START;
 
-  /** Sole constructor */
+  private final ForkJoinPool buildPool;
+
+  /** Default constructor, trees are built on the indexing thread */
   public Lucene60PointsFormat() {
+    this(null);
+  }
+
+  /** Expert: build the trees of newly flushed segments on the given pool. The
+   *  written files are the same as when trees are built on the indexing thread.
+   *  Trees of merged segments are always built on the merging thread. */
+  public Lucene60PointsFormat(ForkJoinPool buildPool) {
+    this.buildPool = buildPool;
   }
 
   @Override
   public PointsWriter fieldsWriter(SegmentWriteState state) throws IOException {
-    return new Lucene60PointsWriter(state);
+    return new Lucene60PointsWriter(state, BKDWriter.DEFAULT_MAX_POINTS_IN_LEAF_NODE, BKDWriter.DEFAULT_MAX_MB_SORT_IN_HEAP, buildPool);
   }
 
   @Override
@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.codecs.MutablePointValues;
@@ -53,14 +54,19 @@ public class Lucene60PointsWriter extends PointsWriter implements Closeable {
   final SegmentWriteState writeState;
   final int maxPointsInLeafNode;
   final double maxMBSortInHeap;
+  final ForkJoinPool buildPool;
   private boolean finished;
 
-  /** Full constructor */
-  public Lucene60PointsWriter(SegmentWriteState writeState, int maxPointsInLeafNode, double maxMBSortInHeap) throws IOException {
+  /** Full constructor
+   *  @param buildPool if non-null, the pool that builds the trees of newly flushed segments,
+   *         see {@link BKDWriter#setBuildPool} */
+  public Lucene60PointsWriter(SegmentWriteState writeState, int maxPointsInLeafNode, double maxMBSortInHeap,
+                              ForkJoinPool buildPool) throws IOException {
     assert writeState.fieldInfos.hasPointValues();
     this.writeState = writeState;
     this.maxPointsInLeafNode = maxPointsInLeafNode;
     this.maxMBSortInHeap = maxMBSortInHeap;
+    this.buildPool = buildPool;
     String dataFileName = IndexFileNames.segmentFileName(writeState.segmentInfo.name,
                                                          writeState.segmentSuffix,
                                                          Lucene60PointsFormat.DATA_EXTENSION);
@@ -80,6 +86,11 @@ public class Lucene60PointsWriter extends PointsWriter implements Closeable {
     }
   }
 
+  /** Builds trees on the calling thread */
+  public Lucene60PointsWriter(SegmentWriteState writeState, int maxPointsInLeafNode, double maxMBSortInHeap) throws IOException {
+    this(writeState, maxPointsInLeafNode, maxMBSortInHeap, null);
+  }
+
   /** Uses the defaults values for {@code maxPointsInLeafNode} (1024) and {@code maxMBSortInHeap} (16.0) */
   public Lucene60PointsWriter(SegmentWriteState writeState) throws IOException {
     this(writeState, BKDWriter.DEFAULT_MAX_POINTS_IN_LEAF_NODE, BKDWriter.DEFAULT_MAX_MB_SORT_IN_HEAP);
@@ -102,6 +113,9 @@ public class Lucene60PointsWriter extends PointsWriter implements Closeable {
                                           singleValuePerDoc)) {
 
       if (values instanceof MutablePointValues) {
+        if (buildPool != null) {
+          writer.setBuildPool(buildPool, BKDWriter.DEFAULT_MAX_POINTS_PER_BUILD_TASK);
+        }
         final long fp = writer.writeField(dataOut, fieldInfo.name, (MutablePointValues) values);
         if (fp != -1) {
           indexFPs.put(fieldInfo.name, fp);
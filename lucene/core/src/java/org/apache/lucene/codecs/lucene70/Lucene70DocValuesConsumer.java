@@ -20,6 +20,9 @@ package org.apache.lucene.codecs.lucene70;
 import static org.apache.lucene.codecs.lucene70.Lucene70DocValuesFormat.DIRECT_MONOTONIC_BLOCK_SHIFT;
 import static org.apache.lucene.codecs.lucene70.Lucene70DocValuesFormat.NUMERIC_BLOCK_SHIFT;
 import static org.apache.lucene.codecs.lucene70.Lucene70DocValuesFormat.NUMERIC_BLOCK_SIZE;
+import static org.apache.lucene.codecs.lucene70.Lucene70DocValuesFormat.SKIP_INDEX_INTERVAL_SIZE;
+import static org.apache.lucene.codecs.lucene70.Lucene70DocValuesFormat.SKIP_INDEX_LEVEL_SHIFT;
+import static org.apache.lucene.codecs.lucene70.Lucene70DocValuesFormat.SKIP_INDEX_MAX_LEVEL;
 
 import java.io.Closeable; // javadocs
 import java.io.IOException;
@@ -47,6 +50,7 @@ import org.apache.lucene.search.SortedSetSelector;
 import org.apache.lucene.store.GrowableByteArrayDataOutput;
 import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.store.RAMOutputStream;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.lucene.util.IOUtils;
@@ -107,12 +111,94 @@ final class Lucene70DocValuesConsumer extends DocValuesConsumer implements Close
     meta.writeInt(field.number);
     meta.writeByte(Lucene70DocValuesFormat.NUMERIC);
 
-    writeValues(field, new EmptyDocValuesProducer() {
+    DocValuesProducer singletonProducer = new EmptyDocValuesProducer() {
       @Override
       public SortedNumericDocValues getSortedNumeric(FieldInfo field) throws IOException {
         return DocValues.singleton(valuesProducer.getNumeric(field));
       }
-    });
+    };
+    writeValues(field, singletonProducer);
+    writeSkipIndex(field, singletonProducer);
+  }
+
+  private void writeSkipIndex(FieldInfo field, DocValuesProducer valuesProducer) throws IOException {
+    // level 0: intervals of SKIP_INDEX_INTERVAL_SIZE docs that have a value
+    int numIntervals = 0;
+    int[] minDocs = new int[8], maxDocs = new int[8], docCounts = new int[8];
+    long[] minValues = new long[8], maxValues = new long[8];
+    SortedNumericDocValues values = valuesProducer.getSortedNumeric(field);
+    for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+      long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+      for (int i = 0, count = values.docValueCount(); i < count; ++i) {
+        long v = values.nextValue();
+        min = Math.min(min, v);
+        max = Math.max(max, v);
+      }
+      if (numIntervals == 0 || docCounts[numIntervals - 1] == SKIP_INDEX_INTERVAL_SIZE) {
+        if (numIntervals == minDocs.length) {
+          int newLength = ArrayUtil.oversize(numIntervals + 1, Long.BYTES);
+          minDocs = Arrays.copyOf(minDocs, newLength);
+          maxDocs = Arrays.copyOf(maxDocs, newLength);
+          docCounts = Arrays.copyOf(docCounts, newLength);
+          minValues = Arrays.copyOf(minValues, newLength);
+          maxValues = Arrays.copyOf(maxValues, newLength);
+        }
+        minDocs[numIntervals] = doc;
+        minValues[numIntervals] = min;
+        maxValues[numIntervals] = max;
+        numIntervals++;
+      }
+      final int interval = numIntervals - 1;
+      maxDocs[interval] = doc;
+      docCounts[interval]++;
+      minValues[interval] = Math.min(minValues[interval], min);
+      maxValues[interval] = Math.max(maxValues[interval], max);
+    }
+
+    if (numIntervals == 0) {
+      meta.writeLong(-1L);
+      return;
+    }
+
+    long start = data.getFilePointer();
+    meta.writeLong(start);
+    meta.writeInt(numIntervals);
+    int numLevels = 1;
+    for (int count = numIntervals; count > 1 && numLevels < SKIP_INDEX_MAX_LEVEL; ++numLevels) {
+      count = (count + (1 << SKIP_INDEX_LEVEL_SHIFT) - 1) >>> SKIP_INDEX_LEVEL_SHIFT;
+    }
+    meta.writeByte((byte) numLevels);
+
+    for (int level = 0; level < numLevels; ++level) {
+      final int shift = level * SKIP_INDEX_LEVEL_SHIFT;
+      for (int i = 0; i < numIntervals; i += 1 << shift) {
+        final int end = Math.min(numIntervals, i + (1 << shift));
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        int docCount = 0;
+        for (int j = i; j < end; ++j) {
+          min = Math.min(min, minValues[j]);
+          max = Math.max(max, maxValues[j]);
+          docCount += docCounts[j];
+        }
+        data.writeInt(minDocs[i]);
+        data.writeInt(maxDocs[end - 1]);
+        data.writeLong(min);
+        data.writeLong(max);
+        data.writeInt(docCount);
+      }
+    }
+    meta.writeLong(data.getFilePointer() - start);
+
+    long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+    int docCount = 0;
+    for (int i = 0; i < numIntervals; ++i) {
+      min = Math.min(min, minValues[i]);
+      max = Math.max(max, maxValues[i]);
+      docCount += docCounts[i];
+    }
+    meta.writeLong(min);
+    meta.writeLong(max);
+    meta.writeInt(docCount);
   }
 
   private static class MinMaxTracker {
@@ -549,6 +635,8 @@ final class Lucene70DocValuesConsumer extends DocValuesConsumer implements Close
       addressesWriter.finish();
       meta.writeLong(data.getFilePointer() - start);
     }
+
+    writeSkipIndex(field, valuesProducer);
   }
 
   @Override
@@ -108,6 +108,13 @@ import org.apache.lucene.util.packed.DirectWriter;
  *        strategies above.
  * </ul>
  * <p>
+ * {@link DocValuesType#NUMERIC NUMERIC} and {@link DocValuesType#SORTED_NUMERIC SORTED_NUMERIC} fields
+ * also record a skip index, see {@link org.apache.lucene.index.DocValuesSkipper}: documents that have a
+ * value are split into intervals of 4096 consecutive documents, and the minimum doc ID, maximum doc ID,
+ * minimum value, maximum value and number of documents of every interval are written to the data file.
+ * Upper levels aggregate 8 intervals of the level below, up to 4 levels. Skip indexes are only written
+ * since version 1 of this format.
+ * <p>
  * Files:
  * <ol>
  *   <li><tt>.dvd</tt>: DocValues data</li>
@@ -137,7 +144,8 @@ public final class Lucene70DocValuesFormat extends DocValuesFormat {
   static final String META_CODEC = "Lucene70DocValuesMetadata";
   static final String META_EXTENSION = "dvm";
   static final int VERSION_START = 0;
-  static final int VERSION_CURRENT = VERSION_START;
+  static final int VERSION_SKIP_INDEX = 1;
+  static final int VERSION_CURRENT = VERSION_SKIP_INDEX;
 
   // indicates docvalues type
   static final byte NUMERIC = 0;
@@ -151,6 +159,13 @@ public final class Lucene70DocValuesFormat extends DocValuesFormat {
   static final int NUMERIC_BLOCK_SHIFT = 14;
   static final int NUMERIC_BLOCK_SIZE = 1 << NUMERIC_BLOCK_SHIFT;
 
+  static final int SKIP_INDEX_INTERVAL_SHIFT = 12;
+  static final int SKIP_INDEX_INTERVAL_SIZE = 1 << SKIP_INDEX_INTERVAL_SHIFT;
+  static final int SKIP_INDEX_LEVEL_SHIFT = 3;
+  static final int SKIP_INDEX_MAX_LEVEL = 4;
+  // minDocID, maxDocID, minValue, maxValue, docCount
+  static final int SKIP_INDEX_ENTRY_BYTES = 4 + 4 + 8 + 8 + 4;
+
   static final int TERMS_DICT_BLOCK_SHIFT = 4;
   static final int TERMS_DICT_BLOCK_SIZE = 1 << TERMS_DICT_BLOCK_SHIFT;
   static final int TERMS_DICT_BLOCK_MASK = TERMS_DICT_BLOCK_SIZE - 1;
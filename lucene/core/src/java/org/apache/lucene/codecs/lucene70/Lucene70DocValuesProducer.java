@@ -18,6 +18,7 @@ package org.apache.lucene.codecs.lucene70;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -26,6 +27,8 @@ import org.apache.lucene.codecs.DocValuesProducer;
 import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValuesSkipper;
+import org.apache.lucene.index.DocValuesType;
 import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.FieldInfos;
 import org.apache.lucene.index.IndexFileNames;
@@ -37,6 +40,7 @@ import org.apache.lucene.index.SortedNumericDocValues;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.index.TermsEnum.SeekStatus;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.store.ChecksumIndexInput;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.RandomAccessInput;
@@ -75,7 +79,7 @@ final class Lucene70DocValuesProducer extends DocValuesProducer implements Close
                                         Lucene70DocValuesFormat.VERSION_CURRENT,
                                         state.segmentInfo.getId(),
                                         state.segmentSuffix);
-        readFields(in, state.fieldInfos);
+        readFields(in, state.fieldInfos, version);
       } catch (Throwable exception) {
         priorE = exception;
       } finally {
@@ -110,7 +114,7 @@ final class Lucene70DocValuesProducer extends DocValuesProducer implements Close
     }
   }
 
-  private void readFields(ChecksumIndexInput meta, FieldInfos infos) throws IOException {
+  private void readFields(ChecksumIndexInput meta, FieldInfos infos, int version) throws IOException {
     for (int fieldNumber = meta.readInt(); fieldNumber != -1; fieldNumber = meta.readInt()) {
       FieldInfo info = infos.fieldInfo(fieldNumber);
       if (info == null) {
@@ -118,7 +122,11 @@ final class Lucene70DocValuesProducer extends DocValuesProducer implements Close
       }
       byte type = meta.readByte();
       if (type == Lucene70DocValuesFormat.NUMERIC) {
-        numerics.put(info.name, readNumeric(meta));
+        NumericEntry entry = readNumeric(meta);
+        if (version >= Lucene70DocValuesFormat.VERSION_SKIP_INDEX) {
+          entry.skipIndex = readSkipIndex(meta);
+        }
+        numerics.put(info.name, entry);
       } else if (type == Lucene70DocValuesFormat.BINARY) {
         binaries.put(info.name, readBinary(meta));
       } else if (type == Lucene70DocValuesFormat.SORTED) {
@@ -126,7 +134,11 @@ final class Lucene70DocValuesProducer extends DocValuesProducer implements Close
       } else if (type == Lucene70DocValuesFormat.SORTED_SET) {
         sortedSets.put(info.name, readSortedSet(meta));
       } else if (type == Lucene70DocValuesFormat.SORTED_NUMERIC) {
-        sortedNumerics.put(info.name, readSortedNumeric(meta));
+        SortedNumericEntry entry = readSortedNumeric(meta);
+        if (version >= Lucene70DocValuesFormat.VERSION_SKIP_INDEX) {
+          entry.skipIndex = readSkipIndex(meta);
+        }
+        sortedNumerics.put(info.name, entry);
       } else {
         throw new CorruptIndexException("invalid type: " + type, meta);
       }
@@ -166,6 +178,25 @@ final class Lucene70DocValuesProducer extends DocValuesProducer implements Close
     entry.valuesLength = meta.readLong();
   }
 
+  private SkipIndexEntry readSkipIndex(ChecksumIndexInput meta) throws IOException {
+    final long offset = meta.readLong();
+    if (offset == -1) {
+      return null;
+    }
+    SkipIndexEntry entry = new SkipIndexEntry();
+    entry.offset = offset;
+    entry.numIntervals = meta.readInt();
+    entry.numLevels = meta.readByte();
+    if (entry.numIntervals <= 0 || entry.numLevels < 1 || entry.numLevels > Lucene70DocValuesFormat.SKIP_INDEX_MAX_LEVEL) {
+      throw new CorruptIndexException("invalid skip index: numIntervals=" + entry.numIntervals + ", numLevels=" + entry.numLevels, meta);
+    }
+    entry.length = meta.readLong();
+    entry.minValue = meta.readLong();
+    entry.maxValue = meta.readLong();
+    entry.docCount = meta.readInt();
+    return entry;
+  }
+
   private BinaryEntry readBinary(ChecksumIndexInput meta) throws IOException {
     BinaryEntry entry = new BinaryEntry();
     entry.dataOffset = meta.readLong();
@@ -274,6 +305,17 @@ final class Lucene70DocValuesProducer extends DocValuesProducer implements Close
     long gcd;
     long valuesOffset;
     long valuesLength;
+    SkipIndexEntry skipIndex;
+  }
+
+  private static class SkipIndexEntry {
+    long offset;
+    long length;
+    int numIntervals;
+    int numLevels;
+    long minValue;
+    long maxValue;
+    int docCount;
   }
 
   private static class BinaryEntry {
@@ -1411,6 +1453,142 @@ final class Lucene70DocValuesProducer extends DocValuesProducer implements Close
     }
   }
 
+  @Override
+  public DocValuesSkipper getSkipper(FieldInfo field) throws IOException {
+    final NumericEntry entry;
+    if (field.getDocValuesType() == DocValuesType.SORTED_NUMERIC) {
+      entry = sortedNumerics.get(field.name);
+    } else {
+      entry = numerics.get(field.name);
+    }
+    if (entry == null || entry.skipIndex == null) {
+      return null;
+    }
+    final SkipIndexEntry skipIndex = entry.skipIndex;
+    final RandomAccessInput input = data.randomAccessSlice(skipIndex.offset, skipIndex.length);
+    return new Lucene70DocValuesSkipper(skipIndex, input);
+  }
+
+  private static class Lucene70DocValuesSkipper extends DocValuesSkipper {
+
+    private final SkipIndexEntry entry;
+    private final RandomAccessInput input;
+    private final long[] levelOffsets;
+    private final int[] indexes;
+    private final int[] minDocIDs, maxDocIDs, docCounts;
+    private final long[] minValues, maxValues;
+
+    Lucene70DocValuesSkipper(SkipIndexEntry entry, RandomAccessInput input) {
+      this.entry = entry;
+      this.input = input;
+      final int numLevels = entry.numLevels;
+      levelOffsets = new long[numLevels];
+      long offset = 0;
+      for (int level = 0; level < numLevels; ++level) {
+        levelOffsets[level] = offset;
+        final int shift = level * Lucene70DocValuesFormat.SKIP_INDEX_LEVEL_SHIFT;
+        final long count = ((long) entry.numIntervals + (1L << shift) - 1) >>> shift;
+        offset += count * Lucene70DocValuesFormat.SKIP_INDEX_ENTRY_BYTES;
+      }
+      indexes = new int[numLevels];
+      minDocIDs = new int[numLevels];
+      maxDocIDs = new int[numLevels];
+      docCounts = new int[numLevels];
+      minValues = new long[numLevels];
+      maxValues = new long[numLevels];
+      Arrays.fill(indexes, -1);
+      Arrays.fill(minDocIDs, -1);
+      Arrays.fill(maxDocIDs, -1);
+    }
+
+    private int level0MaxDocID(int interval) throws IOException {
+      return input.readInt(levelOffsets[0] + (long) interval * Lucene70DocValuesFormat.SKIP_INDEX_ENTRY_BYTES + Integer.BYTES);
+    }
+
+    @Override
+    public void advance(int target) throws IOException {
+      if (target <= maxDocIDs[0]) {
+        // still in the current interval
+        return;
+      }
+      // binary search for the first interval whose max doc is >= target
+      int lo = indexes[0] + 1, hi = entry.numIntervals - 1;
+      while (lo <= hi) {
+        final int mid = (lo + hi) >>> 1;
+        if (level0MaxDocID(mid) < target) {
+          lo = mid + 1;
+        } else {
+          hi = mid - 1;
+        }
+      }
+      if (lo == entry.numIntervals) {
+        Arrays.fill(indexes, entry.numIntervals);
+        Arrays.fill(minDocIDs, DocIdSetIterator.NO_MORE_DOCS);
+        Arrays.fill(maxDocIDs, DocIdSetIterator.NO_MORE_DOCS);
+        return;
+      }
+      for (int level = 0; level < indexes.length; ++level) {
+        final int index = lo >>> (level * Lucene70DocValuesFormat.SKIP_INDEX_LEVEL_SHIFT);
+        if (index == indexes[level]) {
+          // coarser levels did not change either
+          break;
+        }
+        indexes[level] = index;
+        long offset = levelOffsets[level] + (long) index * Lucene70DocValuesFormat.SKIP_INDEX_ENTRY_BYTES;
+        minDocIDs[level] = input.readInt(offset);
+        maxDocIDs[level] = input.readInt(offset + 4);
+        minValues[level] = input.readLong(offset + 8);
+        maxValues[level] = input.readLong(offset + 16);
+        docCounts[level] = input.readInt(offset + 24);
+      }
+    }
+
+    @Override
+    public int numLevels() {
+      return indexes.length;
+    }
+
+    @Override
+    public int minDocID(int level) {
+      return minDocIDs[level];
+    }
+
+    @Override
+    public int maxDocID(int level) {
+      return maxDocIDs[level];
+    }
+
+    @Override
+    public long minValue(int level) {
+      return minValues[level];
+    }
+
+    @Override
+    public long maxValue(int level) {
+      return maxValues[level];
+    }
+
+    @Override
+    public int docCount(int level) {
+      return docCounts[level];
+    }
+
+    @Override
+    public long minValue() {
+      return entry.minValue;
+    }
+
+    @Override
+    public long maxValue() {
+      return entry.maxValue;
+    }
+
+    @Override
+    public int docCount() {
+      return entry.docCount;
+    }
+  }
+
   @Override
   public void checkIntegrity() throws IOException {
     CodecUtil.checksumEntireFile(data);
@@ -20,6 +20,9 @@ import java.io.IOException;
 import java.util.Objects;
 
 import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValuesSkipper;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
@@ -28,6 +31,7 @@ import org.apache.lucene.index.SortedNumericDocValues;
 import org.apache.lucene.search.ConstantScoreScorer;
 import org.apache.lucene.search.ConstantScoreWeight;
 import org.apache.lucene.search.DocValuesFieldExistsQuery;
+import org.apache.lucene.search.DocValuesRangeIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
@@ -94,14 +98,28 @@ abstract class SortedNumericDocValuesRangeQuery extends Query {
   @Override
   public Weight createWeight(IndexSearcher searcher, boolean needsScores, float boost) throws IOException {
     return new ConstantScoreWeight(this, boost) {
+      @Override
+      public boolean canMatch(LeafReaderContext context) throws IOException {
+        final FieldInfo fieldInfo = context.reader().getFieldInfos().fieldInfo(field);
+        if (fieldInfo == null || fieldInfo.getDocValuesType() == DocValuesType.NONE) {
+          return false;
+        }
+        final DocValuesSkipper skipper = DocValues.getSkipper(context.reader(), field);
+        return skipper == null || (skipper.minValue() <= upperValue && skipper.maxValue() >= lowerValue);
+      }
+
       @Override
       public Scorer scorer(LeafReaderContext context) throws IOException {
         SortedNumericDocValues values = getValues(context.reader(), field);
         if (values == null) {
           return null;
         }
+        final DocValuesSkipper skipper = DocValues.getSkipper(context.reader(), field);
+        if (skipper != null && (skipper.minValue() > upperValue || skipper.maxValue() < lowerValue)) {
+          return null;
+        }
         final NumericDocValues singleton = DocValues.unwrapSingleton(values);
-        final TwoPhaseIterator iterator;
+        TwoPhaseIterator iterator;
         if (singleton != null) {
           iterator = new TwoPhaseIterator(singleton) {
             @Override
@@ -136,6 +154,9 @@ abstract class SortedNumericDocValuesRangeQuery extends Query {
             }
           };
         }
+        if (skipper != null) {
+          iterator = new DocValuesRangeIterator(iterator, skipper, lowerValue, upperValue);
+        }
         return new ConstantScoreScorer(this, score(), iterator);
       }
 
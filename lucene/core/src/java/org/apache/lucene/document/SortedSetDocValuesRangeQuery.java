@@ -20,6 +20,8 @@ import java.io.IOException;
 import java.util.Objects;
 
 import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
@@ -105,6 +107,12 @@ abstract class SortedSetDocValuesRangeQuery extends Query {
   @Override
   public Weight createWeight(IndexSearcher searcher, boolean needsScores, float boost) throws IOException {
     return new ConstantScoreWeight(this, boost) {
+      @Override
+      public boolean canMatch(LeafReaderContext context) throws IOException {
+        final FieldInfo fieldInfo = context.reader().getFieldInfos().fieldInfo(field);
+        return fieldInfo != null && fieldInfo.getDocValuesType() != DocValuesType.NONE;
+      }
+
       @Override
       public Scorer scorer(LeafReaderContext context) throws IOException {
         SortedSetDocValues values = getValues(context.reader(), field);
@@ -17,17 +17,24 @@
 package org.apache.lucene.index;
 
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.lucene.index.DocValuesUpdate.BinaryDocValuesUpdate;
-import org.apache.lucene.index.DocValuesUpdate.NumericDocValuesUpdate;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.ByteBlockPool;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.Counter;
 import org.apache.lucene.util.RamUsageEstimator;
 
 /** Holds buffered deletes and updates, by docID, term or query for a
@@ -43,18 +50,6 @@ import org.apache.lucene.util.RamUsageEstimator;
 
 class BufferedUpdates {
 
-  /* Rough logic: HashMap has an array[Entry] w/ varying
-     load factor (say 2 * POINTER).  Entry is object w/ Term
-     key, Integer val, int hash, Entry next
-     (OBJ_HEADER + 3*POINTER + INT).  Term is object w/
-     String field and String text (OBJ_HEADER + 2*POINTER).
-     Term's field is String (OBJ_HEADER + 4*INT + POINTER +
-     OBJ_HEADER + string.length*CHAR).
-     Term's text is String (OBJ_HEADER + 4*INT + POINTER +
-     OBJ_HEADER + string.length*CHAR).  Integer is
-     OBJ_HEADER + INT. */
-  final static int BYTES_PER_DEL_TERM = 9*RamUsageEstimator.NUM_BYTES_OBJECT_REF + 7*RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 10*Integer.BYTES;
-
   /* Rough logic: del docIDs are List<Integer>.  Say list
      allocates ~2X size (2*POINTER).  Integer is OBJ_HEADER
      + int */
@@ -67,89 +62,42 @@ class BufferedUpdates {
      undercount (say 24 bytes).  Integer is OBJ_HEADER + INT. */
   final static int BYTES_PER_DEL_QUERY = 5*RamUsageEstimator.NUM_BYTES_OBJECT_REF + 2*RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 2*Integer.BYTES + 24;
 
-  /* Rough logic: NumericUpdate calculates its actual size,
-   * including the update Term and DV field (String). The 
-   * per-field map holds a reference to the updated field, and
-   * therefore we only account for the object reference and 
-   * map space itself. This is incremented when we first see
-   * an updated field.
-   * 
-   * HashMap has an array[Entry] w/ varying load
-   * factor (say 2*POINTER). Entry is an object w/ String key, 
-   * LinkedHashMap val, int hash, Entry next (OBJ_HEADER + 3*POINTER + INT).
-   * 
-   * LinkedHashMap (val) is counted as OBJ_HEADER, array[Entry] ref + header, 4*INT, 1*FLOAT,
-   * Set (entrySet) (2*OBJ_HEADER + ARRAY_HEADER + 2*POINTER + 4*INT + FLOAT)
-   */
-  final static int BYTES_PER_NUMERIC_FIELD_ENTRY =
-      7*RamUsageEstimator.NUM_BYTES_OBJECT_REF + 3*RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 
-      RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + 5*Integer.BYTES + Float.BYTES;
-      
-  /* Rough logic: Incremented when we see another Term for an already updated
-   * field.
-   * LinkedHashMap has an array[Entry] w/ varying load factor 
-   * (say 2*POINTER). Entry is an object w/ Term key, NumericUpdate val, 
-   * int hash, Entry next, Entry before, Entry after (OBJ_HEADER + 5*POINTER + INT).
-   * 
-   * Term (key) is counted only as POINTER.
-   * NumericUpdate (val) counts its own size and isn't accounted for here.
-   */
-  final static int BYTES_PER_NUMERIC_UPDATE_ENTRY = 7*RamUsageEstimator.NUM_BYTES_OBJECT_REF + RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + Integer.BYTES;
-
-  /* Rough logic: BinaryUpdate calculates its actual size,
-   * including the update Term and DV field (String). The 
-   * per-field map holds a reference to the updated field, and
-   * therefore we only account for the object reference and 
-   * map space itself. This is incremented when we first see
-   * an updated field.
-   * 
-   * HashMap has an array[Entry] w/ varying load
-   * factor (say 2*POINTER). Entry is an object w/ String key, 
-   * LinkedHashMap val, int hash, Entry next (OBJ_HEADER + 3*POINTER + INT).
-   * 
-   * LinkedHashMap (val) is counted as OBJ_HEADER, array[Entry] ref + header, 4*INT, 1*FLOAT,
-   * Set (entrySet) (2*OBJ_HEADER + ARRAY_HEADER + 2*POINTER + 4*INT + FLOAT)
-   */
-  final static int BYTES_PER_BINARY_FIELD_ENTRY =
-      7*RamUsageEstimator.NUM_BYTES_OBJECT_REF + 3*RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 
-      RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + 5*Integer.BYTES + Float.BYTES;
-      
-  /* Rough logic: Incremented when we see another Term for an already updated
-   * field.
-   * LinkedHashMap has an array[Entry] w/ varying load factor 
-   * (say 2*POINTER). Entry is an object w/ Term key, BinaryUpdate val, 
-   * int hash, Entry next, Entry before, Entry after (OBJ_HEADER + 5*POINTER + INT).
-   * 
-   * Term (key) is counted only as POINTER.
-   * BinaryUpdate (val) counts its own size and isn't accounted for here.
-   */
-  final static int BYTES_PER_BINARY_UPDATE_ENTRY = 7*RamUsageEstimator.NUM_BYTES_OBJECT_REF + RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + Integer.BYTES;
-  
+  /* Rough logic: HashMap has an array[Entry] w/ varying
+     load factor (say 2 * POINTER).  Entry is object w/ String
+     key, per-field object val, int hash, Entry next
+     (OBJ_HEADER + 3*POINTER + INT).  The per-field object holds
+     a BytesRefHash and a few arrays (OBJ_HEADER + 4*POINTER +
+     2*INT), and the BytesRefHash itself (OBJ_HEADER +
+     6*POINTER + 6*INT).  The term bytes and the arrays are
+     accounted for as they grow. */
+  final static int BYTES_PER_TERM_FIELD = 15*RamUsageEstimator.NUM_BYTES_OBJECT_REF + 3*RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 9*Integer.BYTES;
+
   final AtomicInteger numTermDeletes = new AtomicInteger();
   final AtomicInteger numNumericUpdates = new AtomicInteger();
   final AtomicInteger numBinaryUpdates = new AtomicInteger();
 
-  final Map<Term,Integer> deleteTerms = new HashMap<>();
+  // Term bytes of the buffered delete terms and doc values updates,
+  // and the binary doc values, are all stored in this pool; termBytesUsed
+  // tracks the primitive arrays that index it. We account for the bytes
+  // written to the pool rather than for its blocks, so that a single term
+  // does not count as a whole block towards the RAM buffer.
+  private final Counter termBytesUsed = Counter.newCounter();
+  private final ByteBlockPool termPool = new ByteBlockPool(new ByteBlockPool.DirectAllocator());
+
+  final DeletedTerms deleteTerms = new DeletedTerms(termPool, termBytesUsed);
   final Map<Query,Integer> deleteQueries = new HashMap<>();
   final List<Integer> deleteDocIDs = new ArrayList<>();
 
-  // Map<dvField,Map<updateTerm,NumericUpdate>>
-  // For each field we keep an ordered list of NumericUpdates, key'd by the
-  // update Term. LinkedHashMap guarantees we will later traverse the map in
-  // insertion order (so that if two terms affect the same document, the last
-  // one that came in wins), and helps us detect faster if the same Term is
-  // used to update the same field multiple times (so we later traverse it
-  // only once).
-  final Map<String,LinkedHashMap<Term,NumericDocValuesUpdate>> numericUpdates = new HashMap<>();
+  // Map<dvField,FieldUpdates>
+  // For each field we keep the updates in insertion order, key'd by the
+  // update Term (so that if two terms affect the same document, the last
+  // one that came in wins), and detect if the same Term is used to update
+  // the same field multiple times (so we later traverse it only once).
+  final Map<String,FieldUpdates> numericUpdates = new HashMap<>();
   
-  // Map<dvField,Map<updateTerm,BinaryUpdate>>
-  // For each field we keep an ordered list of BinaryUpdates, key'd by the
-  // update Term. LinkedHashMap guarantees we will later traverse the map in
-  // insertion order (so that if two terms affect the same document, the last
-  // one that came in wins), and helps us detect faster if the same Term is
-  // used to update the same field multiple times (so we later traverse it
-  // only once).
-  final Map<String,LinkedHashMap<Term,BinaryDocValuesUpdate>> binaryUpdates = new HashMap<>();
+  // Map<dvField,FieldUpdates>
+  // Same as numericUpdates, for binary doc values fields.
+  final Map<String,FieldUpdates> binaryUpdates = new HashMap<>();
 
   public static final Integer MAX_INT = Integer.valueOf(Integer.MAX_VALUE);
 
@@ -211,8 +159,12 @@ class BufferedUpdates {
   }
 
   public void addTerm(Term term, int docIDUpto) {
-    Integer current = deleteTerms.get(term);
-    if (current != null && docIDUpto < current) {
+    if (term.bytes.length > IndexWriter.MAX_TERM_LENGTH) {
+      // such a term can not have been indexed, so there is nothing to delete
+      return;
+    }
+    int current = deleteTerms.get(term);
+    if (current != -1 && docIDUpto < current) {
       // Only record the new number if it's greater than the
       // current one.  This is important because if multiple
       // threads are replacing the same doc at nearly the
@@ -223,72 +175,52 @@ class BufferedUpdates {
       return;
     }
 
-    deleteTerms.put(term, Integer.valueOf(docIDUpto));
-    // note that if current != null then it means there's already a buffered
+    long startBytes = termBytesUsed();
+    deleteTerms.put(term, docIDUpto);
+    // note that if current != -1 then it means there's already a buffered
     // delete on that term, therefore we seem to over-count. this over-counting
     // is done to respect IndexWriterConfig.setMaxBufferedDeleteTerms.
     numTermDeletes.incrementAndGet();
-    if (current == null) {
-      bytesUsed.addAndGet(BYTES_PER_DEL_TERM + term.bytes.length + (Character.BYTES * term.field().length()));
-    }
+    bytesUsed.addAndGet(termBytesUsed() - startBytes);
   }
  
-  public void addNumericUpdate(NumericDocValuesUpdate update, int docIDUpto) {
-    LinkedHashMap<Term,NumericDocValuesUpdate> fieldUpdates = numericUpdates.get(update.field);
-    if (fieldUpdates == null) {
-      fieldUpdates = new LinkedHashMap<>();
-      numericUpdates.put(update.field, fieldUpdates);
-      bytesUsed.addAndGet(BYTES_PER_NUMERIC_FIELD_ENTRY);
-    }
-    final NumericDocValuesUpdate current = fieldUpdates.get(update.term);
-    if (current != null && docIDUpto < current.docIDUpto) {
-      // Only record the new number if it's greater than or equal to the current
-      // one. This is important because if multiple threads are replacing the
-      // same doc at nearly the same time, it's possible that one thread that
-      // got a higher docID is scheduled before the other threads.
-      return;
-    }
-
-    update.docIDUpto = docIDUpto;
-    // since it's a LinkedHashMap, we must first remove the Term entry so that
-    // it's added last (we're interested in insertion-order).
-    if (current != null) {
-      fieldUpdates.remove(update.term);
-    }
-    fieldUpdates.put(update.term, update);
-    numNumericUpdates.incrementAndGet();
-    if (current == null) {
-      bytesUsed.addAndGet(BYTES_PER_NUMERIC_UPDATE_ENTRY + update.sizeInBytes());
+  public void addNumericUpdate(DocValuesUpdate update, int docIDUpto) {
+    assert update.type == DocValuesType.NUMERIC;
+    if (addUpdate(numericUpdates, update, docIDUpto)) {
+      numNumericUpdates.incrementAndGet();
     }
   }
   
-  public void addBinaryUpdate(BinaryDocValuesUpdate update, int docIDUpto) {
-    LinkedHashMap<Term,BinaryDocValuesUpdate> fieldUpdates = binaryUpdates.get(update.field);
-    if (fieldUpdates == null) {
-      fieldUpdates = new LinkedHashMap<>();
-      binaryUpdates.put(update.field, fieldUpdates);
-      bytesUsed.addAndGet(BYTES_PER_BINARY_FIELD_ENTRY);
-    }
-    final BinaryDocValuesUpdate current = fieldUpdates.get(update.term);
-    if (current != null && docIDUpto < current.docIDUpto) {
-      // Only record the new number if it's greater than or equal to the current
-      // one. This is important because if multiple threads are replacing the
-      // same doc at nearly the same time, it's possible that one thread that
-      // got a higher docID is scheduled before the other threads.
-      return;
+  public void addBinaryUpdate(DocValuesUpdate update, int docIDUpto) {
+    assert update.type == DocValuesType.BINARY;
+    if (addUpdate(binaryUpdates, update, docIDUpto)) {
+      numBinaryUpdates.incrementAndGet();
     }
-    
-    update.docIDUpto = docIDUpto;
-    // since it's a LinkedHashMap, we must first remove the Term entry so that
-    // it's added last (we're interested in insertion-order).
-    if (current != null) {
-      fieldUpdates.remove(update.term);
+  }
+
+  private boolean addUpdate(Map<String,FieldUpdates> updates, DocValuesUpdate update, int docIDUpto) {
+    if (update.term.bytes.length > IndexWriter.MAX_TERM_LENGTH) {
+      // such a term can not have been indexed, so there is nothing to update
+      return false;
     }
-    fieldUpdates.put(update.term, update);
-    numBinaryUpdates.incrementAndGet();
-    if (current == null) {
-      bytesUsed.addAndGet(BYTES_PER_BINARY_UPDATE_ENTRY + update.sizeInBytes());
+    long startBytes = termBytesUsed();
+    FieldUpdates fieldUpdates = updates.get(update.field);
+    if (fieldUpdates == null) {
+      fieldUpdates = new FieldUpdates(update.field, update.type, termPool, termBytesUsed);
+      updates.put(update.field, fieldUpdates);
+      bytesUsed.addAndGet(BYTES_PER_TERM_FIELD);
     }
+    // Only record the new update if its docIDUpto is greater than or equal
+    // to the current one. This is important because if multiple threads are
+    // replacing the same doc at nearly the same time, it's possible that one
+    // thread that got a higher docID is scheduled before the other threads.
+    boolean added = fieldUpdates.add(update.term, update.value, docIDUpto);
+    bytesUsed.addAndGet(termBytesUsed() - startBytes);
+    return added;
+  }
+
+  private long termBytesUsed() {
+    return termBytesUsed.get() + termPool.byteOffset + termPool.byteUpto;
   }
 
   void clearDeleteTerms() {
@@ -302,6 +234,8 @@ class BufferedUpdates {
     deleteDocIDs.clear();
     numericUpdates.clear();
     binaryUpdates.clear();
+    termPool.reset(false, false);
+    termBytesUsed.addAndGet(-termBytesUsed.get());
     numTermDeletes.set(0);
     numNumericUpdates.set(0);
     numBinaryUpdates.set(0);
@@ -311,4 +245,283 @@ class BufferedUpdates {
   boolean any() {
     return deleteTerms.size() > 0 || deleteDocIDs.size() > 0 || deleteQueries.size() > 0 || numericUpdates.size() > 0 || binaryUpdates.size() > 0;
   }
+
+  /** Consumes the buffered delete terms in sorted order. */
+  interface DeletedTermConsumer {
+    void accept(String field, BytesRef term, int docIDUpto) throws IOException;
+  }
+
+  /**
+   * Buffered delete terms and the docIDUpto of each, partitioned by field. The
+   * term bytes are stored in a shared {@link ByteBlockPool}, and the docIDUpto
+   * in an int array parallel to the term ids of the field's {@link BytesRefHash},
+   * so that there is no per-term object.
+   */
+  static final class DeletedTerms {
+
+    private final ByteBlockPool pool;
+    private final Counter bytesUsed;
+    private final Map<String,FieldTerms> fields = new HashMap<>();
+    private int size;
+
+    DeletedTerms(ByteBlockPool pool, Counter bytesUsed) {
+      this.pool = pool;
+      this.bytesUsed = bytesUsed;
+    }
+
+    /** Returns the docIDUpto of the given term, or -1 if the term is not buffered. */
+    int get(Term term) {
+      FieldTerms terms = fields.get(term.field());
+      if (terms == null) {
+        return -1;
+      }
+      int id = terms.terms.find(term.bytes());
+      return id == -1 ? -1 : terms.docIDUptos[id];
+    }
+
+    /** Sets the docIDUpto of the given term, adding the term if it is not buffered yet. */
+    void put(Term term, int docIDUpto) {
+      FieldTerms terms = fields.get(term.field());
+      if (terms == null) {
+        terms = new FieldTerms(pool, bytesUsed);
+        fields.put(term.field(), terms);
+        bytesUsed.addAndGet(BYTES_PER_TERM_FIELD + Character.BYTES * term.field().length());
+      }
+      int id = terms.terms.add(term.bytes());
+      if (id < 0) {
+        id = -id - 1;
+      } else {
+        terms.docIDUptos = grow(terms.docIDUptos, id + 1, bytesUsed);
+        size++;
+      }
+      terms.docIDUptos[id] = docIDUpto;
+    }
+
+    /** Returns the number of unique buffered terms. */
+    int size() {
+      return size;
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    /**
+     * Visits all terms sorted by field and then by term bytes. This sorts the
+     * terms in place, so this instance must be cleared afterwards.
+     */
+    void forEachOrdered(DeletedTermConsumer consumer) throws IOException {
+      String[] fieldNames = fields.keySet().toArray(new String[fields.size()]);
+      Arrays.sort(fieldNames);
+      BytesRef scratch = new BytesRef();
+      for (String field : fieldNames) {
+        FieldTerms terms = fields.get(field);
+        int count = terms.terms.size();
+        int[] sortedIds = terms.terms.sort();
+        for (int i = 0; i < count; i++) {
+          int id = sortedIds[i];
+          terms.terms.get(id, scratch);
+          consumer.accept(field, scratch, terms.docIDUptos[id]);
+        }
+      }
+    }
+
+    /** Returns a copy of the buffered terms; only meant for testing and debugging. */
+    Set<Term> keySet() {
+      Set<Term> keys = new HashSet<>();
+      for (Map.Entry<String,FieldTerms> entry : fields.entrySet()) {
+        BytesRefHash terms = entry.getValue().terms;
+        for (int id = 0; id < terms.size(); id++) {
+          keys.add(new Term(entry.getKey(), BytesRef.deepCopyOf(terms.get(id, new BytesRef()))));
+        }
+      }
+      return keys;
+    }
+
+    /** Drops all terms. Their bytes are released when the pool is reset. */
+    void clear() {
+      fields.clear();
+      size = 0;
+    }
+
+    @Override
+    public String toString() {
+      return keySet().toString();
+    }
+
+    private static final class FieldTerms {
+      final BytesRefHash terms;
+      int[] docIDUptos = new int[0];
+
+      FieldTerms(ByteBlockPool pool, Counter bytesUsed) {
+        terms = new BytesRefHash(pool, BytesRefHash.DEFAULT_CAPACITY,
+            new BytesRefHash.DirectBytesStartArray(BytesRefHash.DEFAULT_CAPACITY, bytesUsed));
+      }
+    }
+  }
+
+  /** Consumes the buffered updates of a doc values field in the order they must be applied. */
+  interface UpdateConsumer {
+    /**
+     * @param numericValue the new value, for numeric doc values
+     * @param binaryValue the new value, for binary doc values, or null
+     */
+    void accept(String termField, BytesRef term, int docIDUpto, long numericValue, BytesRef binaryValue) throws IOException;
+  }
+
+  /**
+   * Buffered updates of a single numeric or binary doc values field. The update
+   * terms are stored, per term field, in a {@link BytesRefHash} over a shared
+   * {@link ByteBlockPool}, and each update is a slot in primitive arrays. An
+   * update of an already buffered term moves the term to a new slot, so that
+   * iterating over the slots visits the updates in insertion order.
+   */
+  static final class FieldUpdates {
+
+    final String field;
+    final DocValuesType type;
+    private final ByteBlockPool pool;
+    private final Counter bytesUsed;
+    private final Map<String,UpdateTerms> termFields = new HashMap<>();
+    private final List<UpdateTerms> termFieldsByOrd = new ArrayList<>();
+    private int size;
+
+    // parallel arrays, by slot
+    private int numSlots;
+    private int[] slotTermFields = new int[0];
+    private int[] slotTermIds = new int[0];
+    private int[] slotDocIDUptos = new int[0];
+    // the numeric value, or the start of the binary value in the pool
+    private long[] slotValues = new long[0];
+    private int[] slotValueLengths = new int[0];
+
+    FieldUpdates(String field, DocValuesType type, ByteBlockPool pool, Counter bytesUsed) {
+      assert type == DocValuesType.NUMERIC || type == DocValuesType.BINARY : type;
+      this.field = field;
+      this.type = type;
+      this.pool = pool;
+      this.bytesUsed = bytesUsed;
+    }
+
+    /**
+     * Buffers an update, unless the term is already buffered with a greater docIDUpto.
+     * @return true if the update was buffered
+     */
+    boolean add(Term term, Object value, int docIDUpto) {
+      UpdateTerms terms = termFields.get(term.field());
+      if (terms == null) {
+        terms = new UpdateTerms(term.field(), termFieldsByOrd.size(), pool, bytesUsed);
+        termFields.put(term.field(), terms);
+        termFieldsByOrd.add(terms);
+        bytesUsed.addAndGet(BYTES_PER_TERM_FIELD + Character.BYTES * term.field().length());
+      }
+      int termId = terms.terms.add(term.bytes());
+      if (termId < 0) {
+        termId = -termId - 1;
+        if (docIDUpto < slotDocIDUptos[terms.slots[termId]]) {
+          return false;
+        }
+        // the previous slot of the term is skipped from now on
+      } else {
+        terms.slots = grow(terms.slots, termId + 1, bytesUsed);
+        size++;
+      }
+
+      int slot = numSlots++;
+      if (slot == slotTermFields.length) {
+        int newLength = ArrayUtil.oversize(slot + 1, Integer.BYTES);
+        bytesUsed.addAndGet((newLength - slot) * (3L * Integer.BYTES + Long.BYTES
+            + (type == DocValuesType.BINARY ? Integer.BYTES : 0)));
+        slotTermFields = Arrays.copyOf(slotTermFields, newLength);
+        slotTermIds = Arrays.copyOf(slotTermIds, newLength);
+        slotDocIDUptos = Arrays.copyOf(slotDocIDUptos, newLength);
+        slotValues = Arrays.copyOf(slotValues, newLength);
+        if (type == DocValuesType.BINARY) {
+          slotValueLengths = Arrays.copyOf(slotValueLengths, newLength);
+        }
+      }
+      terms.slots[termId] = slot;
+      slotTermFields[slot] = terms.ord;
+      slotTermIds[slot] = termId;
+      slotDocIDUptos[slot] = docIDUpto;
+      if (type == DocValuesType.NUMERIC) {
+        slotValues[slot] = ((Long) value).longValue();
+      } else {
+        BytesRef binaryValue = (BytesRef) value;
+        slotValues[slot] = pool.byteOffset + pool.byteUpto;
+        slotValueLengths[slot] = binaryValue.length;
+        pool.append(binaryValue);
+      }
+      return true;
+    }
+
+    /** Returns the number of unique update terms. */
+    int size() {
+      return size;
+    }
+
+    /** Visits the latest update of each term, in the order the updates must be applied. */
+    void forEach(UpdateConsumer consumer) throws IOException {
+      BytesRef term = new BytesRef();
+      BytesRefBuilder binaryValue = type == DocValuesType.BINARY ? new BytesRefBuilder() : null;
+      for (int slot = 0; slot < numSlots; slot++) {
+        UpdateTerms terms = termFieldsByOrd.get(slotTermFields[slot]);
+        int termId = slotTermIds[slot];
+        if (terms.slots[termId] != slot) {
+          // the term was updated again later
+          continue;
+        }
+        terms.terms.get(termId, term);
+        if (binaryValue == null) {
+          consumer.accept(terms.field, term, slotDocIDUptos[slot], slotValues[slot], null);
+        } else {
+          int length = slotValueLengths[slot];
+          binaryValue.grow(length);
+          binaryValue.setLength(length);
+          pool.readBytes(slotValues[slot], binaryValue.bytes(), 0, length);
+          consumer.accept(terms.field, term, slotDocIDUptos[slot], 0, binaryValue.get());
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append(field).append(": [");
+      try {
+        forEach((termField, term, docIDUpto, numericValue, binaryValue) -> {
+          sb.append(new Term(termField, term)).append('=')
+              .append(binaryValue == null ? Long.toString(numericValue) : binaryValue.toString())
+              .append(" docIDUpto=").append(docIDUpto).append(',');
+        });
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+      return sb.append(']').toString();
+    }
+
+    private static final class UpdateTerms {
+      final String field;
+      final int ord;
+      final BytesRefHash terms;
+      // the current slot of each term
+      int[] slots = new int[0];
+
+      UpdateTerms(String field, int ord, ByteBlockPool pool, Counter bytesUsed) {
+        this.field = field;
+        this.ord = ord;
+        terms = new BytesRefHash(pool, BytesRefHash.DEFAULT_CAPACITY,
+            new BytesRefHash.DirectBytesStartArray(BytesRefHash.DEFAULT_CAPACITY, bytesUsed));
+      }
+    }
+  }
+
+  private static int[] grow(int[] array, int minSize, Counter bytesUsed) {
+    if (array.length < minSize) {
+      int[] newArray = ArrayUtil.grow(array, minSize);
+      bytesUsed.addAndGet((long) (newArray.length - array.length) * Integer.BYTES);
+      return newArray;
+    }
+    return array;
+  }
 }
@@ -19,6 +19,7 @@ package org.apache.lucene.index;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
@@ -50,6 +51,9 @@ import org.apache.lucene.util.InfoStream;
 
 class BufferedUpdatesStream implements Accountable {
 
+  /** Maximum number of packets that are applied together */
+  static final int MAX_COALESCED_PACKETS = 64;
+
   private final Set<FrozenBufferedUpdates> updates = new HashSet<>();
 
   // Starts at 1 so that SegmentInfos that have never had
@@ -95,6 +99,30 @@ class BufferedUpdatesStream implements Accountable {
     return packet.delGen();
   }
 
+  /** Locks the pending packets that only delete by term and that no other thread is applying, up to
+   *  {@link #MAX_COALESCED_PACKETS}, so that they are applied together with the given, already locked,
+   *  packet.  Returns all these packets, sorted by delGen; the caller must unlock them. */
+  synchronized List<FrozenBufferedUpdates> lockCoalescablePackets(FrozenBufferedUpdates packet) {
+    assert packet.applyLock.isHeldByCurrentThread();
+    List<FrozenBufferedUpdates> packets = new ArrayList<>();
+    packets.add(packet);
+    for (FrozenBufferedUpdates other : updates) {
+      if (packets.size() == MAX_COALESCED_PACKETS) {
+        break;
+      }
+      if (other != packet && other.canCoalesce()
+          && other.applyLock.isHeldByCurrentThread() == false && other.applyLock.tryLock()) {
+        if (other.applied.getCount() == 0) {
+          other.applyLock.unlock();
+        } else {
+          packets.add(other);
+        }
+      }
+    }
+    packets.sort(Comparator.comparingLong(FrozenBufferedUpdates::delGen));
+    return packets;
+  }
+
   public synchronized int getPendingUpdatesCount() {
     return updates.size();
   }
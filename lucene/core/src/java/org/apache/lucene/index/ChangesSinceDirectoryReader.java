@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * A {@link FilterDirectoryReader} that only exposes the documents that were
+ * indexed at or after a given sequence number. The sequence number of a
+ * document is the value of a numeric doc values field that the application
+ * maintains, for instance the version of the document.
+ * <p>
+ * Soft-deleted documents are exposed as well, unless the wrapped reader
+ * hides them: combined with a {@link SoftDeletesRetentionMergePolicy} that
+ * retains the documents whose sequence number is greater than or equal to
+ * the oldest sequence number that may be requested, this gives access to
+ * all the operations that happened since then, so that they can be replayed
+ * on a copy of the index. A document has been superseded or deleted if it
+ * has a value for the {@link IndexWriterConfig#setSoftDeletesField soft
+ * deletes field}.
+ *
+ * @lucene.experimental
+ */
+public final class ChangesSinceDirectoryReader extends FilterDirectoryReader {
+
+  private final String seqNoField;
+  private final long fromSeqNo;
+
+  /**
+   * Creates a new reader that only exposes the changes since <code>fromSeqNo</code>.
+   * @param in the incoming directory reader
+   * @param seqNoField the numeric doc values field that holds the sequence
+   *        numbers of the documents
+   * @param fromSeqNo the minimum sequence number, inclusive
+   */
+  public ChangesSinceDirectoryReader(DirectoryReader in, String seqNoField, long fromSeqNo) throws IOException {
+    super(in, new ChangesSinceSubReaderWrapper(seqNoField, fromSeqNo));
+    this.seqNoField = seqNoField;
+    this.fromSeqNo = fromSeqNo;
+  }
+
+  /** Returns the minimum sequence number, inclusive, of the exposed documents. */
+  public long getFromSeqNo() {
+    return fromSeqNo;
+  }
+
+  @Override
+  protected DirectoryReader doWrapDirectoryReader(DirectoryReader in) throws IOException {
+    return new ChangesSinceDirectoryReader(in, seqNoField, fromSeqNo);
+  }
+
+  @Override
+  public CacheHelper getReaderCacheHelper() {
+    // live docs differ from the wrapped reader's
+    return null;
+  }
+
+  private static class ChangesSinceSubReaderWrapper extends SubReaderWrapper {
+    private final String seqNoField;
+    private final long fromSeqNo;
+
+    ChangesSinceSubReaderWrapper(String seqNoField, long fromSeqNo) {
+      this.seqNoField = Objects.requireNonNull(seqNoField, "seqNoField must not be null");
+      this.fromSeqNo = fromSeqNo;
+    }
+
+    @Override
+    public LeafReader wrap(LeafReader reader) {
+      try {
+        final Bits liveDocs = reader.getLiveDocs();
+        final FixedBitSet changes = new FixedBitSet(reader.maxDoc());
+        NumericDocValues seqNos = reader.getNumericDocValues(seqNoField);
+        if (seqNos != null) {
+          for (int doc = seqNos.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = seqNos.nextDoc()) {
+            if ((liveDocs == null || liveDocs.get(doc)) && seqNos.longValue() >= fromSeqNo) {
+              changes.set(doc);
+            }
+          }
+        }
+        return new SoftDeletesDirectoryReaderWrapper.LiveDocsFilterLeafReader(reader, changes, changes.cardinality());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
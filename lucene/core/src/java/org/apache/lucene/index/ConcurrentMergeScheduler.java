@@ -21,6 +21,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.lucene.index.MergePolicy.OneMerge;
 import org.apache.lucene.store.AlreadyClosedException;
@@ -121,6 +123,17 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
 
   private double forceMergeMBPerSec = Double.POSITIVE_INFINITY;
 
+  /** Number of steps the pressure of the {@link MergeThrottleController} is
+   *  rounded to, so that merge threads are not updated on every tiny change of pressure. */
+  private static final int PRESSURE_STEPS = 10;
+
+  private volatile MergeThrottleController throttleController;
+  private volatile long throttlePollIntervalNS;
+  private final AtomicLong nextThrottlePollNS = new AtomicLong();
+
+  /** Current pressure of the {@link MergeThrottleController}, rounded to {@link #PRESSURE_STEPS} steps. */
+  private double throttlePressure;
+
   /** Sole constructor, with all settings set to default
    *  values. */
   public ConcurrentMergeScheduler() {
@@ -234,6 +247,104 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
     }
   }
 
+  /**
+   * Expert: set a {@link MergeThrottleController} that reports the pressure
+   * that merges put on other work, such as searches, or <code>null</code> to
+   * not throttle merges based on external signals. Running merges poll the
+   * controller at most once per <code>pollIntervalMS</code> milliseconds.
+   * As the pressure grows, big merges run at a lower IO rate, down to 5
+   * MB/sec at full pressure, and fewer big merges may run at once, down to
+   * a single one at full pressure. Small merges are never throttled.
+   *
+   * @lucene.experimental
+   */
+  public synchronized void setMergeThrottleController(MergeThrottleController controller, long pollIntervalMS) {
+    if (pollIntervalMS < 0) {
+      throw new IllegalArgumentException("pollIntervalMS must be non-negative, got " + pollIntervalMS);
+    }
+    this.throttlePollIntervalNS = TimeUnit.MILLISECONDS.toNanos(pollIntervalMS);
+    nextThrottlePollNS.set(System.nanoTime());
+    this.throttleController = controller;
+    if (controller == null && throttlePressure != 0) {
+      throttlePressure = 0;
+      updateMergeThreads();
+    }
+  }
+
+  /** Returns the {@link MergeThrottleController}, or <code>null</code> if none is set.
+   *
+   * @see #setMergeThrottleController(MergeThrottleController, long) */
+  public synchronized MergeThrottleController getMergeThrottleController() {
+    return throttleController;
+  }
+
+  /** Returns the last pressure that was read from the {@link MergeThrottleController},
+   *  rounded to the nearest tenth, or {@code 0} if no controller is set.
+   *
+   * @see #setMergeThrottleController(MergeThrottleController, long) */
+  public synchronized double getMergeThrottlePressure() {
+    return throttlePressure;
+  }
+
+  /** Returns the IO writes rate limit of big merges, taking the pressure of the
+   *  {@link MergeThrottleController} into account, if auto IO throttling is
+   *  enabled, else {@code Double.POSITIVE_INFINITY}.
+   *
+   * @see #getIORateLimitMBPerSec() */
+  public synchronized double getEffectiveIORateLimitMBPerSec() {
+    if (doAutoIOThrottle) {
+      return applyThrottlePressure(targetMBPerSec);
+    } else {
+      return Double.POSITIVE_INFINITY;
+    }
+  }
+
+  /** Returns the maximum number of big merges that may run at once, taking the
+   *  pressure of the {@link MergeThrottleController} into account.
+   *
+   * @see #getMaxThreadCount() */
+  public synchronized int getEffectiveMaxThreadCount() {
+    if (maxThreadCount <= 1) {
+      return maxThreadCount;
+    }
+    return maxThreadCount - (int) Math.floor(throttlePressure * (maxThreadCount - 1));
+  }
+
+  /** Scales the given rate down geometrically towards the floor rate as the pressure grows. */
+  private double applyThrottlePressure(double mbPerSec) {
+    if (throttlePressure == 0 || mbPerSec <= MIN_MERGE_MB_PER_SEC || Double.isInfinite(mbPerSec)) {
+      return mbPerSec;
+    }
+    return mbPerSec * Math.pow(MIN_MERGE_MB_PER_SEC / mbPerSec, throttlePressure);
+  }
+
+  /** Called by merge threads while they write bytes, to poll the
+   *  {@link MergeThrottleController} if the poll interval has elapsed. */
+  private void maybePollThrottleController() {
+    final MergeThrottleController controller = throttleController;
+    if (controller == null) {
+      return;
+    }
+    final long now = System.nanoTime();
+    final long nextPollNS = nextThrottlePollNS.get();
+    if (now - nextPollNS < 0 || nextThrottlePollNS.compareAndSet(nextPollNS, now + throttlePollIntervalNS) == false) {
+      // not yet time to poll, or another merge thread is polling
+      return;
+    }
+    // read the pressure outside of the lock, as it may do IO
+    final double pressure = Math.min(1, Math.max(0, controller.getPressure()));
+    final double roundedPressure = Math.round(pressure * PRESSURE_STEPS) / (double) PRESSURE_STEPS;
+    synchronized (this) {
+      if (controller == throttleController && roundedPressure != throttlePressure) {
+        if (verbose()) {
+          message(String.format(Locale.ROOT, "merge throttle: pressure changed from %.1f to %.1f (%s)", throttlePressure, roundedPressure, controller));
+        }
+        throttlePressure = roundedPressure;
+        updateMergeThreads();
+      }
+    }
+  }
+
   /** Returns {@code maxThreadCount}.
    *
    * @see #setMaxMergesAndThreads(int, int) */
@@ -332,10 +443,15 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
 
     long now = System.nanoTime();
 
+    final int effectiveMaxThreadCount = getEffectiveMaxThreadCount();
+
     StringBuilder message;
     if (verbose()) {
       message = new StringBuilder();
       message.append(String.format(Locale.ROOT, "updateMergeThreads ioThrottle=%s targetMBPerSec=%.1f MB/sec", doAutoIOThrottle, targetMBPerSec));
+      if (throttleController != null) {
+        message.append(String.format(Locale.ROOT, " throttlePressure=%.1f effectiveMaxThreadCount=%d", throttlePressure, getEffectiveMaxThreadCount()));
+      }
     } else {
       message = null;
     }
@@ -345,8 +461,8 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
 
       OneMerge merge = mergeThread.merge;
 
-      // pause the thread if maxThreadCount is smaller than the number of merge threads.
-      final boolean doPause = threadIdx < bigMergeCount - maxThreadCount;
+      // pause the thread if maxThreadCount, lowered by the throttle pressure, is smaller than the number of merge threads.
+      final boolean doPause = threadIdx < bigMergeCount - effectiveMaxThreadCount;
 
       double newMBPerSec;
       if (doPause) {
@@ -359,7 +475,7 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
         // Don't rate limit small merges:
         newMBPerSec = Double.POSITIVE_INFINITY;
       } else {
-        newMBPerSec = targetMBPerSec;
+        newMBPerSec = applyThrottlePressure(targetMBPerSec);
       }
 
       MergeRateLimiter rateLimiter = mergeThread.rateLimiter;
@@ -642,7 +758,13 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
     public MergeThread(IndexWriter writer, OneMerge merge) {
       this.writer = writer;
       this.merge = merge;
-      this.rateLimiter = new MergeRateLimiter(merge.getMergeProgress());
+      this.rateLimiter = new MergeRateLimiter(merge.getMergeProgress()) {
+        @Override
+        public long pause(long bytes) throws MergePolicy.MergeAbortedException {
+          maybePollThrottleController();
+          return super.pause(bytes);
+        }
+      };
     }
 
     @Override
@@ -727,6 +849,9 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
     sb.append("maxThreadCount=").append(maxThreadCount).append(", ");    
     sb.append("maxMergeCount=").append(maxMergeCount).append(", ");    
     sb.append("ioThrottle=").append(doAutoIOThrottle);
+    if (throttleController != null) {
+      sb.append(", throttleController=").append(throttleController);
+    }
     return sb.toString();
   }
 
@@ -827,7 +952,7 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
     if (newMerge.maxNumSegments != -1) {
       rate = forceMergeMBPerSec;
     } else {
-      rate = targetMBPerSec;
+      rate = applyThrottlePressure(targetMBPerSec);
     }
     rateLimiter.setMBPerSec(rate);
     targetMBPerSecChanged();
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A {@link MergeThrottleController} that throttles merges when the IO queue
+ * of a block device gets deep. The pressure is {@code 0} while the number of
+ * IOs in progress on the device is below a target depth, grows linearly past
+ * the target, and reaches {@code 1} at a maximum depth.
+ * <p>
+ * The queue depth is read from a Linux {@code diskstats} file, typically
+ * {@code /proc/diskstats}. If this file cannot be read, for instance because
+ * the operating system is not Linux, or does not list the device, then the
+ * pressure is always {@code 0}.
+ *
+ * @lucene.experimental
+ */
+public final class DiskQueueMergeThrottleController extends MergeThrottleController {
+
+  // index of the "I/Os currently in progress" column, after the major and
+  // minor numbers and the device name
+  private static final int IOS_IN_PROGRESS_COLUMN = 11;
+
+  private final Path diskStats;
+  private final String device;
+  private final double targetQueueDepth;
+  private final double maxQueueDepth;
+
+  /**
+   * Create a new controller.
+   * @param diskStats the path of the {@code diskstats} file, typically {@code /proc/diskstats}
+   * @param device the name of the block device to watch, eg. {@code sda} or {@code nvme0n1}
+   * @param targetQueueDepth the queue depth under which merges are not throttled
+   * @param maxQueueDepth the queue depth above which merges are throttled as much as possible
+   */
+  public DiskQueueMergeThrottleController(Path diskStats, String device, double targetQueueDepth, double maxQueueDepth) {
+    if (targetQueueDepth < 0) {
+      throw new IllegalArgumentException("targetQueueDepth must be non-negative, got " + targetQueueDepth);
+    }
+    if (maxQueueDepth <= targetQueueDepth) {
+      throw new IllegalArgumentException("maxQueueDepth must be greater than targetQueueDepth, got maxQueueDepth="
+          + maxQueueDepth + " targetQueueDepth=" + targetQueueDepth);
+    }
+    this.diskStats = diskStats;
+    this.device = device;
+    this.targetQueueDepth = targetQueueDepth;
+    this.maxQueueDepth = maxQueueDepth;
+  }
+
+  @Override
+  public double getPressure() {
+    final long queueDepth;
+    try {
+      queueDepth = readQueueDepth();
+    } catch (Exception e) {
+      // the file is missing, unreadable (SecurityException), or has an unexpected format
+      return 0;
+    }
+    if (queueDepth == -1) {
+      return 0;
+    }
+    return interpolate(queueDepth, targetQueueDepth, maxQueueDepth);
+  }
+
+  /** Return the number of IOs in progress on the device, or -1 if the device is not listed. */
+  long readQueueDepth() throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(diskStats, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        final String[] columns = line.trim().split("\\s+");
+        if (columns.length > IOS_IN_PROGRESS_COLUMN && columns[2].equals(device)) {
+          return Long.parseLong(columns[IOS_IN_PROGRESS_COLUMN]);
+        }
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(device=" + device + ", targetQueueDepth=" + targetQueueDepth
+        + ", maxQueueDepth=" + maxQueueDepth + ")";
+  }
+}
@@ -20,6 +20,8 @@ package org.apache.lucene.index;
 import java.io.IOException;
 import java.util.Arrays;
 
+import org.apache.lucene.codecs.DocValuesFormat;
+import org.apache.lucene.codecs.DocValuesProducer;
 import org.apache.lucene.util.BytesRef;
 
 /** 
@@ -437,4 +439,26 @@ public final class DocValues {
     }
     return dv;
   }
+
+  /**
+   * Returns the {@link DocValuesSkipper} of a {@link DocValuesType#NUMERIC} or
+   * {@link DocValuesType#SORTED_NUMERIC} field, or <code>null</code> if the
+   * field has no skip index. Skip indexes are only available on
+   * {@link CodecReader}s whose {@link DocValuesFormat} records them.
+   * @throws IOException if an I/O error occurs.
+   *
+   * @lucene.experimental
+   */
+  public static DocValuesSkipper getSkipper(LeafReader reader, String field) throws IOException {
+    if (reader instanceof CodecReader == false) {
+      return null;
+    }
+    FieldInfo fieldInfo = reader.getFieldInfos().fieldInfo(field);
+    if (fieldInfo == null
+        || (fieldInfo.getDocValuesType() != DocValuesType.NUMERIC && fieldInfo.getDocValuesType() != DocValuesType.SORTED_NUMERIC)) {
+      return null;
+    }
+    DocValuesProducer producer = ((CodecReader) reader).getDocValuesReader();
+    return producer == null ? null : producer.getSkipper(fieldInfo);
+  }
 }
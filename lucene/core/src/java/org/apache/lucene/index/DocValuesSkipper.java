@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+import java.io.IOException;
+
+import org.apache.lucene.search.DocIdSetIterator;
+
+/**
+ * Skip index over the values of a {@link NumericDocValues} or
+ * {@link SortedNumericDocValues} field. Documents that have a value are
+ * split into consecutive intervals of doc IDs, and the skipper records the
+ * minimum and maximum value of every interval, so that consumers such as
+ * range queries can skip intervals that cannot match, or accept intervals
+ * that fully match without decoding their values. Intervals are organized in
+ * levels: each interval at level {@code n+1} covers several consecutive
+ * intervals of level {@code n}, and level {@code 0} has the finest intervals.
+ * <p>
+ * No document between the end of an interval and the start of the next
+ * interval of the same level has a value.
+ *
+ * @see DocValues#getSkipper(LeafReader, String)
+ * @lucene.experimental
+ */
+public abstract class DocValuesSkipper {
+
+  /** Sole constructor. (For invocation by subclass
+   *  constructors, typically implicit.) */
+  protected DocValuesSkipper() {}
+
+  /**
+   * Moves to the intervals, at every level, that contain the first
+   * document that has a value and is greater than or equal to
+   * <code>target</code>. If there is no such document, then
+   * {@link #minDocID(int)} and {@link #maxDocID(int)} return
+   * {@link DocIdSetIterator#NO_MORE_DOCS} for all levels. Targets may only
+   * increase.
+   */
+  public abstract void advance(int target) throws IOException;
+
+  /** Returns the number of levels, which is at least 1. */
+  public abstract int numLevels();
+
+  /**
+   * Returns the minimum doc ID, inclusive, of the current interval at the
+   * given level, or {@code -1} if {@link #advance} has not been called yet.
+   */
+  public abstract int minDocID(int level);
+
+  /**
+   * Returns the maximum doc ID, inclusive, of the current interval at the
+   * given level, or {@code -1} if {@link #advance} has not been called yet.
+   */
+  public abstract int maxDocID(int level);
+
+  /** Returns the minimum value of the current interval at the given level. */
+  public abstract long minValue(int level);
+
+  /** Returns the maximum value of the current interval at the given level. */
+  public abstract long maxValue(int level);
+
+  /** Returns the number of documents that have a value in the current
+   *  interval at the given level. */
+  public abstract int docCount(int level);
+
+  /** Returns the minimum value of the field across all documents. */
+  public abstract long minValue();
+
+  /** Returns the maximum value of the field across all documents. */
+  public abstract long maxValue();
+
+  /** Returns the number of documents that have a value for the field. */
+  public abstract int docCount();
+}
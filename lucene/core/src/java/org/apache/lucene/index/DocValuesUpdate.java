@@ -39,7 +39,6 @@ abstract class DocValuesUpdate {
   final Term term;
   final String field;
   final Object value;
-  int docIDUpto = -1; // unassigned until applied, and confusing that it's here, when it's just used in BufferedDeletes...
 
   /**
    * Constructor.
@@ -68,7 +67,7 @@ abstract class DocValuesUpdate {
   
   @Override
   public String toString() {
-    return "term=" + term + ",field=" + field + ",value=" + value + ",docIDUpto=" + docIDUpto;
+    return "term=" + term + ",field=" + field + ",value=" + value;
   }
   
   /** An in-place update to a binary DocValues field */
@@ -17,18 +17,18 @@
 package org.apache.lucene.index;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
-import org.apache.lucene.index.DocValuesUpdate.BinaryDocValuesUpdate;
-import org.apache.lucene.index.DocValuesUpdate.NumericDocValuesUpdate;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
@@ -39,6 +39,7 @@ import org.apache.lucene.store.RAMOutputStream;
 import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.InfoStream;
 import org.apache.lucene.util.RamUsageEstimator;
@@ -71,12 +72,18 @@ class FrozenBufferedUpdates {
   // binary DV update term and their updates
   final byte[] binaryDVUpdates;
 
-  private int numericDVUpdateCount;
-  private int binaryDVUpdateCount;
+  private final int numericDVUpdateCount;
+  private final int binaryDVUpdateCount;
 
   /** Counts down once all deletes/updates have been applied */
   public final CountDownLatch applied = new CountDownLatch(1);
 
+  /** Held while this packet is being applied, possibly together with other packets */
+  final ReentrantLock applyLock = new ReentrantLock();
+
+  // Non-null while our delete terms are resolved against the segments
+  private volatile SegmentTermDeletes termDeletesInProgress;
+
   /** How many total documents were deleted/updated. */
   public long totalDelCount;
   
@@ -95,12 +102,9 @@ class FrozenBufferedUpdates {
     this.privateSegment = privateSegment;
     assert updates.deleteDocIDs.isEmpty();
     assert privateSegment == null || updates.deleteTerms.isEmpty() : "segment private packet should only have del queries"; 
-    Term termsArray[] = updates.deleteTerms.keySet().toArray(new Term[updates.deleteTerms.size()]);
-    ArrayUtil.timSort(termsArray);
+    // the terms are sorted in place, since the buffer is cleared once frozen:
     PrefixCodedTerms.Builder builder = new PrefixCodedTerms.Builder();
-    for (Term term : termsArray) {
-      builder.add(term);
-    }
+    updates.deleteTerms.forEachOrdered((field, term, docIDUpto) -> builder.add(field, term));
     deleteTerms = builder.finish();
     
     deleteQueries = new Query[updates.deleteQueries.size()];
@@ -116,13 +120,15 @@ class FrozenBufferedUpdates {
     // so that it maps to all fields it affects, sorted by their docUpto, and traverse
     // that Term only once, applying the update to all fields that still need to be
     // updated.
-    numericDVUpdates = freezeNumericDVUpdates(updates.numericUpdates);
+    numericDVUpdates = freezeDVUpdates(updates.numericUpdates);
+    numericDVUpdateCount = countDVUpdates(updates.numericUpdates);
     
     // TODO if a Term affects multiple fields, we could keep the updates key'd by Term
     // so that it maps to all fields it affects, sorted by their docUpto, and traverse
     // that Term only once, applying the update to all fields that still need to be
     // updated. 
-    binaryDVUpdates = freezeBinaryDVUpdates(updates.binaryUpdates);
+    binaryDVUpdates = freezeDVUpdates(updates.binaryUpdates);
+    binaryDVUpdateCount = countDVUpdates(updates.binaryUpdates);
     
     bytesUsed = (int) (deleteTerms.ramBytesUsed() + deleteQueries.length * BYTES_PER_DEL_QUERY 
                        + numericDVUpdates.length + binaryDVUpdates.length);
@@ -136,90 +142,64 @@ class FrozenBufferedUpdates {
     }
   }
 
-  private byte[] freezeNumericDVUpdates(Map<String,LinkedHashMap<Term,NumericDocValuesUpdate>> numericDVUpdates)
-    throws IOException {
-    // TODO: we could do better here, e.g. collate the updates by field
-    // so if you are updating 2 fields interleaved we don't keep writing the field strings
-
-    RAMOutputStream out = new RAMOutputStream();
-    String lastTermField = null;
-    String lastUpdateField = null;
-    for (LinkedHashMap<Term,NumericDocValuesUpdate> numericUpdates : numericDVUpdates.values()) {
-      numericDVUpdateCount += numericUpdates.size();
-      for (NumericDocValuesUpdate update : numericUpdates.values()) {
-
-        int code = update.term.bytes().length << 2;
-
-        String termField = update.term.field();
-        if (termField.equals(lastTermField) == false) {
-          code |= 1;
-        }
-        String updateField = update.field;
-        if (updateField.equals(lastUpdateField) == false) {
-          code |= 2;
-        }
-        out.writeVInt(code);
-        out.writeVInt(update.docIDUpto);
-        if ((code & 1) != 0) {
-          out.writeString(termField);
-          lastTermField = termField;
-        }
-        if ((code & 2) != 0) {
-          out.writeString(updateField);
-          lastUpdateField = updateField;
-        }
-
-        out.writeBytes(update.term.bytes().bytes, update.term.bytes().offset, update.term.bytes().length);
-        out.writeZLong(((Long) update.value).longValue());
-      }
+  private static int countDVUpdates(Map<String,BufferedUpdates.FieldUpdates> dvUpdates) {
+    int count = 0;
+    for (BufferedUpdates.FieldUpdates fieldUpdates : dvUpdates.values()) {
+      count += fieldUpdates.size();
     }
-    byte[] bytes = new byte[(int) out.getFilePointer()];
-    out.writeTo(bytes, 0);
-    return bytes;
+    return count;
   }
 
-  private byte[] freezeBinaryDVUpdates(Map<String,LinkedHashMap<Term,BinaryDocValuesUpdate>> binaryDVUpdates)
+  private static byte[] freezeDVUpdates(Map<String,BufferedUpdates.FieldUpdates> dvUpdates)
     throws IOException {
     // TODO: we could do better here, e.g. collate the updates by field
     // so if you are updating 2 fields interleaved we don't keep writing the field strings
+    DVUpdatesWriter writer = new DVUpdatesWriter();
+    for (BufferedUpdates.FieldUpdates fieldUpdates : dvUpdates.values()) {
+      writer.updateField = fieldUpdates.field;
+      fieldUpdates.forEach(writer);
+    }
+    byte[] bytes = new byte[(int) writer.out.getFilePointer()];
+    writer.out.writeTo(bytes, 0);
+    return bytes;
+  }
 
-    RAMOutputStream out = new RAMOutputStream();
-    String lastTermField = null;
-    String lastUpdateField = null;
-    for (LinkedHashMap<Term,BinaryDocValuesUpdate> binaryUpdates : binaryDVUpdates.values()) {
-      binaryDVUpdateCount += binaryUpdates.size();
-      for (BinaryDocValuesUpdate update : binaryUpdates.values()) {
-
-        int code = update.term.bytes().length << 2;
-
-        String termField = update.term.field();
-        if (termField.equals(lastTermField) == false) {
-          code |= 1;
-        }
-        String updateField = update.field;
-        if (updateField.equals(lastUpdateField) == false) {
-          code |= 2;
-        }
-        out.writeVInt(code);
-        out.writeVInt(update.docIDUpto);
-        if (termField.equals(lastTermField) == false) {
-          out.writeString(termField);
-          lastTermField = termField;
-        }
-        if (updateField.equals(lastUpdateField) == false) {
-          out.writeString(updateField);
-          lastUpdateField = updateField;
-        }
-        out.writeBytes(update.term.bytes().bytes, update.term.bytes().offset, update.term.bytes().length);
+  /** Serializes doc values updates straight from their buffer, in the format read by
+   *  {@link #applyDocValuesUpdates}. */
+  private static final class DVUpdatesWriter implements BufferedUpdates.UpdateConsumer {
+    final RAMOutputStream out = new RAMOutputStream();
+    String updateField;
+    private String lastTermField;
+    private String lastUpdateField;
+
+    @Override
+    public void accept(String termField, BytesRef term, int docIDUpto, long numericValue, BytesRef binaryValue) throws IOException {
+      int code = term.length << 2;
+      if (termField.equals(lastTermField) == false) {
+        code |= 1;
+      }
+      if (updateField.equals(lastUpdateField) == false) {
+        code |= 2;
+      }
+      out.writeVInt(code);
+      out.writeVInt(docIDUpto);
+      if ((code & 1) != 0) {
+        out.writeString(termField);
+        lastTermField = termField;
+      }
+      if ((code & 2) != 0) {
+        out.writeString(updateField);
+        lastUpdateField = updateField;
+      }
+      out.writeBytes(term.bytes, term.offset, term.length);
 
-        BytesRef value = (BytesRef) update.value;
-        out.writeVInt(value.length);
-        out.writeBytes(value.bytes, value.offset, value.length);
+      if (binaryValue == null) {
+        out.writeZLong(numericValue);
+      } else {
+        out.writeVInt(binaryValue.length);
+        out.writeBytes(binaryValue.bytes, binaryValue.offset, binaryValue.length);
       }
     }
-    byte[] bytes = new byte[(int) out.getFilePointer()];
-    out.writeTo(bytes, 0);
-    return bytes;
   }
 
   /** Returns the {@link SegmentCommitInfo} that this packet is supposed to apply its deletes to, or null
@@ -246,15 +226,55 @@ class FrozenBufferedUpdates {
    *  updates, into their actual docIDs in the index, and applies the change.  This is a heavy
    *  operation and is done concurrently by incoming indexing threads. */
 
-  public synchronized void apply(IndexWriter writer) throws IOException {
-    if (applied.getCount() == 0) {
-      // already done
-      return;
+  public void apply(IndexWriter writer) throws IOException {
+    SegmentTermDeletes inProgress = termDeletesInProgress;
+    if (inProgress != null) {
+      // another thread is resolving our delete terms: help it with the
+      // remaining segments instead of just waiting for it
+      int helpedSegments = inProgress.help();
+      if (helpedSegments > 0 && infoStream.isEnabled("BD")) {
+        infoStream.message("BD", "helped resolve del terms of packet (" + this + ") on " + helpedSegments + " segments");
+      }
+    }
+
+    applyLock.lock();
+    try {
+      if (applied.getCount() == 0) {
+        // already done
+        return;
+      }
+
+      List<FrozenBufferedUpdates> packets;
+      if (canCoalesce()) {
+        // resolve pending packets that only delete by term together with
+        // this one, with a single pass over the terms of each segment:
+        packets = writer.bufferedUpdatesStream.lockCoalescablePackets(this);
+      } else {
+        packets = Collections.singletonList(this);
+      }
+      try {
+        apply(writer, packets);
+      } finally {
+        for (FrozenBufferedUpdates packet : packets) {
+          if (packet != this) {
+            packet.applyLock.unlock();
+          }
+        }
+      }
+    } finally {
+      applyLock.unlock();
     }
+  }
+
+  private void apply(IndexWriter writer, List<FrozenBufferedUpdates> packets) throws IOException {
 
     long startNS = System.nanoTime();
 
     assert any();
+    assert packets.size() == 1 || packets.stream().allMatch(FrozenBufferedUpdates::canCoalesce);
+
+    // packets are sorted by delGen:
+    long maxDelGen = packets.get(packets.size() - 1).delGen();
 
     Set<SegmentCommitInfo> seenSegments = new HashSet<>();
 
@@ -294,7 +314,7 @@ class FrozenBufferedUpdates {
 
         // Must open while holding IW lock so that e.g. segments are not merged
         // away, dropped from 100% deletions, etc., before we can open the readers
-        segStates = writer.bufferedUpdatesStream.openSegmentStates(writer.readerPool, infos, seenSegments, delGen());
+        segStates = writer.bufferedUpdatesStream.openSegmentStates(writer.readerPool, infos, seenSegments, maxDelGen);
 
         if (segStates.length == 0) {
 
@@ -306,8 +326,9 @@ class FrozenBufferedUpdates {
 
         if (infoStream.isEnabled("BD")) {
           infoStream.message("BD", String.format(Locale.ROOT,
-                                                 messagePrefix + "now apply del packet (%s) to %d segments, mergeGen %d",
-                                                 this, segStates.length, mergeGenStart));
+                                                 messagePrefix + "now apply del packet (%s) to %d segments, mergeGen %d%s",
+                                                 this, segStates.length, mergeGenStart,
+                                                 packets.size() > 1 ? ", coalesced with " + (packets.size() - 1) + " packets" : ""));
         }
 
         totalSegmentCount += segStates.length;
@@ -321,7 +342,12 @@ class FrozenBufferedUpdates {
       long delCount;
       try {
         // don't hold IW monitor lock here so threads are free concurrently resolve deletes/updates:
-        delCount = apply(segStates);
+        if (packets.size() == 1) {
+          delCount = apply(writer, segStates);
+        } else {
+          delCount = applyTermDeletes(writer, segStates, packets);
+          totalDelCount += delCount;
+        }
         success = true;
       } finally {
         finishApply(writer, segStates, success, delFiles);
@@ -356,8 +382,10 @@ class FrozenBufferedUpdates {
 
           // Must do this while still holding IW lock else a merge could finish and skip carrying over our updates:
           
-          // Record that this packet is finished:
-          writer.bufferedUpdatesStream.finished(this);
+          // Record that the packets are finished:
+          for (FrozenBufferedUpdates packet : packets) {
+            writer.bufferedUpdatesStream.finished(packet);
+          }
 
           finished = true;
 
@@ -377,8 +405,10 @@ class FrozenBufferedUpdates {
     }
 
     if (finished == false) {
-      // Record that this packet is finished:
-      writer.bufferedUpdatesStream.finished(this);
+      // Record that the packets are finished:
+      for (FrozenBufferedUpdates packet : packets) {
+        writer.bufferedUpdatesStream.finished(packet);
+      }
     }
         
     if (infoStream.isEnabled("BD")) {
@@ -425,7 +455,7 @@ class FrozenBufferedUpdates {
 
   /** Applies pending delete-by-term, delete-by-query and doc values updates to all segments in the index, returning
    *  the number of new deleted or updated documents. */
-  private synchronized long apply(BufferedUpdatesStream.SegmentState[] segStates) throws IOException {
+  private synchronized long apply(IndexWriter writer, BufferedUpdatesStream.SegmentState[] segStates) throws IOException {
 
     if (delGen == -1) {
       // we were not yet pushed
@@ -439,7 +469,7 @@ class FrozenBufferedUpdates {
       assert privateSegment == segStates[0].reader.getSegmentInfo();
     }
 
-    totalDelCount += applyTermDeletes(segStates);
+    totalDelCount += applyTermDeletes(writer, segStates);
     totalDelCount += applyQueryDeletes(segStates);
     totalDelCount += applyDocValuesUpdates(segStates);
 
@@ -711,7 +741,7 @@ class FrozenBufferedUpdates {
     return delCount;
   }
   
-  private long applyTermDeletes(BufferedUpdatesStream.SegmentState[] segStates) throws IOException {
+  private long applyTermDeletes(IndexWriter writer, BufferedUpdatesStream.SegmentState[] segStates) throws IOException {
 
     if (deleteTerms.size() == 0) {
       return 0;
@@ -720,102 +750,214 @@ class FrozenBufferedUpdates {
     // We apply segment-private deletes on flush:
     assert privateSegment == null;
 
+    return applyTermDeletes(writer, segStates, Collections.singletonList(this));
+  }
+
+  /** Resolves the delete terms of the given packets against all segments.  The segments are shared
+   *  with the threads that try to apply one of these packets meanwhile, so that they help instead of
+   *  blocking. */
+  private long applyTermDeletes(IndexWriter writer, BufferedUpdatesStream.SegmentState[] segStates, List<FrozenBufferedUpdates> packets) throws IOException {
+
+    long startNS = System.nanoTime();
+
+    long termCount = 0;
+    List<PrefixCodedTerms> termsList = new ArrayList<>(packets.size());
+    for (FrozenBufferedUpdates packet : packets) {
+      termsList.add(packet.deleteTerms);
+      termCount += packet.deleteTerms.size();
+    }
+
+    SegmentTermDeletes segmentTermDeletes = new SegmentTermDeletes(segStates, termsList);
+    for (FrozenBufferedUpdates packet : packets) {
+      packet.termDeletesInProgress = segmentTermDeletes;
+    }
+    long delCount;
     try {
-      long startNS = System.nanoTime();
+      writer.testPoint("startApplyTermDeletes");
+      delCount = segmentTermDeletes.await();
+    } finally {
+      for (FrozenBufferedUpdates packet : packets) {
+        packet.termDeletesInProgress = null;
+      }
+    }
+
+    if (infoStream.isEnabled("BD")) {
+      infoStream.message("BD",
+                         String.format(Locale.ROOT, "applyTermDeletes took %.2f msec for %d segments, %d packets and %d del terms; %d new deletions",
+                                       (System.nanoTime()-startNS)/1000000.,
+                                       segStates.length,
+                                       packets.size(),
+                                       termCount,
+                                       delCount));
+    }
+
+    return delCount;
+  }
 
-      long delCount = 0;
+  /** Deletes the documents matching the given sorted terms from one segment, with a single forward-only
+   *  pass over its terms.  A term only applies if it comes from a packet that is newer than the segment. */
+  private static long applyTermDeletes(BufferedUpdatesStream.SegmentState segState, FieldTermIterator iter) throws IOException {
 
-      for (BufferedUpdatesStream.SegmentState segState : segStates) {
-        assert segState.delGen != delGen: "segState.delGen=" + segState.delGen + " vs this.gen=" + delGen;
-        if (segState.delGen > delGen) {
-          // our deletes don't apply to this segment
-          continue;
+    if (segState.rld.refCount() == 1) {
+      // This means we are the only remaining reference to this segment, meaning
+      // it was merged away while we were running, so we can safely skip running
+      // because we will run on the newly merged segment next:
+      return 0;
+    }
+
+    long delCount = 0;
+
+    BytesRef delTerm;
+    String field = null;
+    TermsEnum termsEnum = null;
+    BytesRef readerTerm = null;
+    PostingsEnum postingsEnum = null;
+    BytesRefBuilder lastDelTerm = new BytesRefBuilder();
+    while ((delTerm = iter.next()) != null) {
+
+      if (iter.field() != field) {
+        // field changed
+        field = iter.field();
+        Terms terms = segState.reader.terms(field);
+        if (terms != null) {
+          termsEnum = terms.iterator();
+          readerTerm = termsEnum.next();
+        } else {
+          termsEnum = null;
         }
-        if (segState.rld.refCount() == 1) {
-          // This means we are the only remaining reference to this segment, meaning
-          // it was merged away while we were running, so we can safely skip running
-          // because we will run on the newly merged segment next:
+      } else if (delTerm.equals(lastDelTerm.get())) {
+        // same term from an older packet, which was handled already
+        continue;
+      }
+      lastDelTerm.copyBytes(delTerm);
+
+      assert segState.delGen != iter.delGen(): "segState.delGen=" + segState.delGen + " vs packet delGen=" + iter.delGen();
+      if (iter.delGen() < segState.delGen) {
+        // this term's packet is older than the segment; an older packet has the same term
+        // only if this one does too, and then it was returned first
+        continue;
+      }
+
+      if (termsEnum != null) {
+        int cmp = delTerm.compareTo(readerTerm);
+        if (cmp < 0) {
+          // TODO: can we advance across del terms here?
+          // move to next del term
           continue;
+        } else if (cmp == 0) {
+          // fall through
+        } else if (cmp > 0) {
+          TermsEnum.SeekStatus status = termsEnum.seekCeil(delTerm);
+          if (status == TermsEnum.SeekStatus.FOUND) {
+            // fall through
+          } else if (status == TermsEnum.SeekStatus.NOT_FOUND) {
+            readerTerm = termsEnum.term();
+            continue;
+          } else {
+            // TODO: can we advance to next field in deleted terms?
+            // no more terms in this segment
+            termsEnum = null;
+            continue;
+          }
         }
 
-        FieldTermIterator iter = deleteTerms.iterator();
-
-        BytesRef delTerm;
-        String field = null;
-        TermsEnum termsEnum = null;
-        BytesRef readerTerm = null;
-        PostingsEnum postingsEnum = null;
-        while ((delTerm = iter.next()) != null) {
-
-          if (iter.field() != field) {
-            // field changed
-            field = iter.field();
-            Terms terms = segState.reader.terms(field);
-            if (terms != null) {
-              termsEnum = terms.iterator();
-              readerTerm = termsEnum.next();
-            } else {
-              termsEnum = null;
-            }
+        // we don't need term frequencies for this
+        postingsEnum = termsEnum.postings(postingsEnum, PostingsEnum.NONE);
+
+        assert postingsEnum != null;
+
+        int docID;
+        while ((docID = postingsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+
+          // NOTE: there is no limit check on the docID
+          // when deleting by Term (unlike by Query)
+          // because on flush we apply all Term deletes to
+          // each segment.  So all Term deleting here is
+          // against prior segments:
+          if (segState.rld.delete(docID)) {
+            delCount++;
           }
+        }
+      }
+    }
 
-          if (termsEnum != null) {
-            int cmp = delTerm.compareTo(readerTerm);
-            if (cmp < 0) {
-              // TODO: can we advance across del terms here?
-              // move to next del term
-              continue;
-            } else if (cmp == 0) {
-              // fall through
-            } else if (cmp > 0) {
-              TermsEnum.SeekStatus status = termsEnum.seekCeil(delTerm);
-              if (status == TermsEnum.SeekStatus.FOUND) {
-                // fall through
-              } else if (status == TermsEnum.SeekStatus.NOT_FOUND) {
-                readerTerm = termsEnum.term();
-                continue;
-              } else {
-                // TODO: can we advance to next field in deleted terms?
-                // no more terms in this segment
-                termsEnum = null;
-                continue;
-              }
-            }
+    return delCount;
+  }
+
+  /** Work queue of the segments to resolve delete terms against.  The thread that applies the packets
+   *  and the threads that are blocked on them take segments in turn, until all are done. */
+  private static final class SegmentTermDeletes {
 
-            // we don't need term frequencies for this
-            postingsEnum = termsEnum.postings(postingsEnum, PostingsEnum.NONE);
+    private final BufferedUpdatesStream.SegmentState[] segStates;
+    private final List<PrefixCodedTerms> termsList;
+    private final AtomicInteger nextSegment = new AtomicInteger();
 
-            assert postingsEnum != null;
+    // guarded by this:
+    private int doneSegments;
+    private long delCount;
+    private Throwable exc;
 
-            int docID;
-            while ((docID = postingsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+    SegmentTermDeletes(BufferedUpdatesStream.SegmentState[] segStates, List<PrefixCodedTerms> termsList) {
+      this.segStates = segStates;
+      this.termsList = termsList;
+    }
 
-              // NOTE: there is no limit check on the docID
-              // when deleting by Term (unlike by Query)
-              // because on flush we apply all Term deletes to
-              // each segment.  So all Term deleting here is
-              // against prior segments:
-              if (segState.rld.delete(docID)) {
-                delCount++;
-              }
+    /** Resolves remaining segments, if any, and returns how many segments were resolved.  Exceptions
+     *  are left for {@link #await} to throw. */
+    int help() {
+      int resolved = 0;
+      int i;
+      while ((i = nextSegment.getAndIncrement()) < segStates.length) {
+        long count = 0;
+        Throwable th = null;
+        try {
+          FieldTermIterator iter = termsList.size() == 1 ? termsList.get(0).iterator() : new MergedPrefixCodedTermsIterator(termsList);
+          count = applyTermDeletes(segStates[i], iter);
+        } catch (Throwable t) {
+          th = t;
+        }
+        synchronized (this) {
+          delCount += count;
+          if (th != null) {
+            if (exc == null) {
+              exc = th;
+            } else {
+              exc.addSuppressed(th);
             }
           }
+          if (++doneSegments == segStates.length) {
+            notifyAll();
+          }
         }
+        resolved++;
       }
+      return resolved;
+    }
 
-      if (infoStream.isEnabled("BD")) {
-        infoStream.message("BD",
-                           String.format(Locale.ROOT, "applyTermDeletes took %.2f msec for %d segments and %d del terms; %d new deletions",
-                                         (System.nanoTime()-startNS)/1000000.,
-                                         segStates.length,
-                                         deleteTerms.size(),
-                                         delCount));
+    /** Resolves segments until all are done, and returns the number of new deletions. */
+    long await() throws IOException {
+      help();
+      boolean interrupted = false;
+      try {
+        synchronized (this) {
+          // we must not return while another thread may still use the segment states:
+          while (doneSegments < segStates.length) {
+            try {
+              wait();
+            } catch (InterruptedException ie) {
+              interrupted = true;
+            }
+          }
+          if (exc != null) {
+            throw IOUtils.rethrowAlways(exc);
+          }
+          return delCount;
+        }
+      } finally {
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
       }
-
-      return delCount;
-
-    } catch (Throwable t) {
-      throw IOUtils.rethrowAlways(t);
     }
   }
   
@@ -862,6 +1004,13 @@ class FrozenBufferedUpdates {
     return deleteTerms.size() > 0 || deleteQueries.length > 0 || numericDVUpdates.length > 0 || binaryDVUpdates.length > 0;
   }
 
+  /** Returns true if this packet only deletes by term, so that it can be resolved together with
+   *  other such packets. */
+  boolean canCoalesce() {
+    return privateSegment == null && deleteTerms.size() > 0 && deleteQueries.length == 0
+        && numericDVUpdates.length == 0 && binaryDVUpdates.length == 0;
+  }
+
   boolean anyDeleteTerms() {
     return deleteTerms.size() > 0;
   }
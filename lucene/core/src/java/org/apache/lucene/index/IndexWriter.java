@@ -33,9 +33,12 @@ import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import org.apache.lucene.analysis.Analyzer;
@@ -65,6 +68,7 @@ import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.Constants;
+import org.apache.lucene.util.FixedBitSet;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.InfoStream;
 import org.apache.lucene.util.StringHelper;
@@ -1457,7 +1461,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
    * @throws IOException if there is a low-level IO error
    */
   public long addDocument(Iterable<? extends IndexableField> doc) throws IOException {
-    return updateDocument(null, doc);
+    return updateDocument((DocumentsWriterDeleteQueue.Node<?>) null, doc);
   }
 
   /**
@@ -1501,7 +1505,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
    * @lucene.experimental
    */
   public long addDocuments(Iterable<? extends Iterable<? extends IndexableField>> docs) throws IOException {
-    return updateDocuments(null, docs);
+    return updateDocuments((DocumentsWriterDeleteQueue.Node<?>) null, docs);
   }
 
   /**
@@ -1521,11 +1525,163 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
    * @lucene.experimental
    */
   public long updateDocuments(Term delTerm, Iterable<? extends Iterable<? extends IndexableField>> docs) throws IOException {
+    return updateDocuments(delTerm == null ? null : DocumentsWriterDeleteQueue.newNode(delTerm), docs);
+  }
+
+  /**
+   * Expert: Atomically soft-deletes documents matching the provided
+   * <code>term</code> and adds a block of documents with sequentially
+   * assigned document IDs, such that an external reader will see all or
+   * none of the documents.
+   *
+   * See {@link #softUpdateDocument(Term, Iterable, Field...)}.
+   *
+   * @return The <a href="#sequence_number">sequence number</a>
+   * for this operation
+   *
+   * @throws CorruptIndexException if the index is corrupt
+   * @throws IOException if there is a low-level IO error
+   *
+   * @lucene.experimental
+   */
+  public long softUpdateDocuments(Term term, Iterable<? extends Iterable<? extends IndexableField>> docs, Field... softDeletes) throws IOException {
+    if (term == null) {
+      throw new IllegalArgumentException("term must not be null");
+    }
+    if (softDeletes == null || softDeletes.length == 0) {
+      throw new IllegalArgumentException("at least one soft delete must be present");
+    }
+    return updateDocuments(DocumentsWriterDeleteQueue.newNode(buildDocValuesUpdate(term, softDeletes)), docs);
+  }
+
+  /**
+   * Expert: adds documents using up to <code>parallelism</code> threads of the
+   * given executor, so that a single thread that reads documents, for
+   * instance from a file, can use several cores for indexing. Documents are
+   * pulled from <code>docs</code> by the calling thread, in chunks that are
+   * then indexed concurrently, each into its own
+   * {@link DocumentsWriterPerThread}. This method returns once all documents
+   * have been indexed.
+   *
+   * <p>Unlike {@link #addDocuments(Iterable)}, documents are not added
+   * atomically and their order in the index is not preserved. Up to
+   * <code>parallelism</code> chunks of documents may be held by this method
+   * while they are waiting to be indexed, so the iterator must not reuse
+   * document instances. If an exception is hit,
+   * this method stops pulling documents and rethrows the first exception,
+   * and the documents of the chunks that were indexed remain in the index.
+   * The executor is not shut down by this method.
+   *
+   * @return The <a href="#sequence_number">sequence number</a>
+   * for this operation, which is greater than or equal to the sequence
+   * number of the addition of every document
+   *
+   * @throws CorruptIndexException if the index is corrupt
+   * @throws IOException if there is a low-level IO error
+   *
+   * @lucene.experimental
+   */
+  public long addDocumentsConcurrently(Iterable<? extends Iterable<? extends IndexableField>> docs, ExecutorService executor, int parallelism) throws IOException {
+    return addDocumentsConcurrently(docs, executor, parallelism, false);
+  }
+
+  /**
+   * Expert: adds blocks of documents using up to <code>parallelism</code>
+   * threads of the given executor. Every block is added atomically with
+   * sequentially assigned document IDs, like {@link #addDocuments(Iterable)}
+   * does, but different blocks may be indexed concurrently into different
+   * segments and their order is not preserved.
+   *
+   * See {@link #addDocumentsConcurrently(Iterable, ExecutorService, int)}.
+   *
+   * @return The <a href="#sequence_number">sequence number</a>
+   * for this operation, which is greater than or equal to the sequence
+   * number of the addition of every block
+   *
+   * @throws CorruptIndexException if the index is corrupt
+   * @throws IOException if there is a low-level IO error
+   *
+   * @lucene.experimental
+   */
+  public long addDocumentBlocksConcurrently(Iterable<? extends Iterable<? extends Iterable<? extends IndexableField>>> blocks,
+                                            ExecutorService executor, int parallelism) throws IOException {
+    return addDocumentsConcurrently(blocks, executor, parallelism, true);
+  }
+
+  /** Number of documents, or blocks of documents, that
+   *  {@link #addDocumentsConcurrently} hands over to a single task. */
+  static final int CONCURRENT_ADD_CHUNK_SIZE = 128;
+
+  @SuppressWarnings("unchecked")
+  private long addDocumentsConcurrently(Iterable<?> docsOrBlocks, ExecutorService executor, int parallelism, boolean blocks) throws IOException {
+    ensureOpen();
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1, got " + parallelism);
+    }
+    // bounds both the number of concurrent tasks and the number of documents
+    // that have been pulled but are not indexed yet
+    final Semaphore permits = new Semaphore(parallelism);
+    final AtomicLong maxSeqNo = new AtomicLong(-1);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    try {
+      final Iterator<?> iterator = docsOrBlocks.iterator();
+      while (iterator.hasNext() && failure.get() == null) {
+        // acquire the permit before pulling documents so that at most
+        // parallelism chunks are held at any time
+        permits.acquire();
+        if (failure.get() != null) {
+          permits.release();
+          break;
+        }
+        final List<Object> chunk = new ArrayList<>(CONCURRENT_ADD_CHUNK_SIZE);
+        try {
+          while (chunk.size() < CONCURRENT_ADD_CHUNK_SIZE && iterator.hasNext()) {
+            chunk.add(iterator.next());
+          }
+          executor.execute(() -> {
+            try {
+              for (Object docOrBlock : chunk) {
+                final long seqNo;
+                if (blocks) {
+                  seqNo = updateDocuments((DocumentsWriterDeleteQueue.Node<?>) null, (Iterable<? extends Iterable<? extends IndexableField>>) docOrBlock);
+                } else {
+                  seqNo = updateDocument((DocumentsWriterDeleteQueue.Node<?>) null, (Iterable<? extends IndexableField>) docOrBlock);
+                }
+                maxSeqNo.accumulateAndGet(seqNo, Math::max);
+              }
+            } catch (Throwable t) {
+              failure.compareAndSet(null, t);
+            } finally {
+              permits.release();
+            }
+          });
+        } catch (Throwable t) {
+          permits.release();
+          throw t;
+        }
+      }
+    } catch (InterruptedException ie) {
+      throw new ThreadInterruptedException(ie);
+    } finally {
+      // wait for pending chunks, including when pulling documents failed
+      permits.acquireUninterruptibly(parallelism);
+    }
+    if (failure.get() != null) {
+      throw IOUtils.rethrowAlways(failure.get());
+    }
+    if (maxSeqNo.get() == -1) {
+      // no documents
+      return docWriter.deleteQueue.getNextSequenceNumber();
+    }
+    return maxSeqNo.get();
+  }
+
+  private long updateDocuments(final DocumentsWriterDeleteQueue.Node<?> delNode, Iterable<? extends Iterable<? extends IndexableField>> docs) throws IOException {
     ensureOpen();
     try {
       boolean success = false;
       try {
-        long seqNo = docWriter.updateDocuments(docs, analyzer, delTerm);
+        long seqNo = docWriter.updateDocuments(docs, analyzer, delNode);
         if (seqNo < 0) {
           seqNo = -seqNo;
           processEvents(true, false);
@@ -1708,11 +1864,53 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
    * @throws IOException if there is a low-level IO error
    */
   public long updateDocument(Term term, Iterable<? extends IndexableField> doc) throws IOException {
+    return updateDocument(term == null ? null : DocumentsWriterDeleteQueue.newNode(term), doc);
+  }
+
+  /**
+   * Expert: Updates a document by first updating the document(s)
+   * containing <code>term</code> with the given doc-values fields
+   * and then adding the new document.  The doc-values update and
+   * then add are atomic as seen by a reader on the same index (flush
+   * may happen only after the add).
+   *
+   * One use of this API is to retain older versions of documents
+   * instead of replacing them: if the given fields include the
+   * {@link IndexWriterConfig#setSoftDeletesField soft deletes field},
+   * the previous versions are marked as soft-deleted rather than
+   * deleted, and a {@link SoftDeletesRetentionMergePolicy} can keep
+   * them around through merges, e.g. so that replicas can be
+   * recovered from the operations that happened since a given point.
+   * The soft deletes field does not have to exist in the index yet.
+   *
+   * @return The <a href="#sequence_number">sequence number</a>
+   * for this operation
+   *
+   * @param term the term to identify the document(s) to be updated
+   * @param doc the document to be added
+   * @param softDeletes the doc-values fields to update on the document(s)
+   *        identified by <code>term</code>
+   * @throws CorruptIndexException if the index is corrupt
+   * @throws IOException if there is a low-level IO error
+   *
+   * @lucene.experimental
+   */
+  public long softUpdateDocument(Term term, Iterable<? extends IndexableField> doc, Field... softDeletes) throws IOException {
+    if (term == null) {
+      throw new IllegalArgumentException("term must not be null");
+    }
+    if (softDeletes == null || softDeletes.length == 0) {
+      throw new IllegalArgumentException("at least one soft delete must be present");
+    }
+    return updateDocument(DocumentsWriterDeleteQueue.newNode(buildDocValuesUpdate(term, softDeletes)), doc);
+  }
+
+  private long updateDocument(final DocumentsWriterDeleteQueue.Node<?> delNode, Iterable<? extends IndexableField> doc) throws IOException {
     ensureOpen();
     try {
       boolean success = false;
       try {
-        long seqNo = docWriter.updateDocument(doc, analyzer, term);
+        long seqNo = docWriter.updateDocument(doc, analyzer, delNode);
         if (seqNo < 0) {
           seqNo = - seqNo;
           processEvents(true, false);
@@ -1843,6 +2041,23 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
    */
   public long updateDocValues(Term term, Field... updates) throws IOException {
     ensureOpen();
+    DocValuesUpdate[] dvUpdates = buildDocValuesUpdate(term, updates);
+    try {
+      long seqNo = docWriter.updateDocValues(dvUpdates);
+      if (seqNo < 0) {
+        seqNo = -seqNo;
+        processEvents(true, false);
+      }
+      return seqNo;
+    } catch (VirtualMachineError tragedy) {
+      tragicEvent(tragedy, "updateDocValues");
+
+      // dead code but javac disagrees:
+      return -1;
+    }
+  }
+
+  private DocValuesUpdate[] buildDocValuesUpdate(Term term, Field[] updates) {
     DocValuesUpdate[] dvUpdates = new DocValuesUpdate[updates.length];
     for (int i = 0; i < updates.length; i++) {
       final Field f = updates[i];
@@ -1853,6 +2068,14 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
       if (dvType == DocValuesType.NONE) {
         throw new IllegalArgumentException("can only update NUMERIC or BINARY fields! field=" + f.name());
       }
+      if (f.name().equals(config.getSoftDeletesField())) {
+        if (dvType != DocValuesType.NUMERIC) {
+          throw new IllegalArgumentException("the soft deletes field must be a NUMERIC doc values field: field=" + f.name() + ", type=" + dvType);
+        }
+        // the soft deletes field doesn't need to exist yet; this throws a
+        // consistent exception if it exists with another doc values type:
+        globalFieldNumberMap.addOrGet(f.name(), -1, dvType, 0, 0);
+      }
       if (!globalFieldNumberMap.contains(f.name(), dvType)) {
         throw new IllegalArgumentException("can only update existing docvalues fields! field=" + f.name() + ", type=" + dvType);
       }
@@ -1870,19 +2093,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
           throw new IllegalArgumentException("can only update NUMERIC or BINARY fields: field=" + f.name() + ", type=" + dvType);
       }
     }
-    try {
-      long seqNo = docWriter.updateDocValues(dvUpdates);
-      if (seqNo < 0) {
-        seqNo = -seqNo;
-        processEvents(true, false);
-      }
-      return seqNo;
-    } catch (VirtualMachineError tragedy) {
-      tragicEvent(tragedy, "updateDocValues");
-
-      // dead code but javac disagrees:
-      return -1;
-    }
+    return dvUpdates;
   }
   
   // for test purpose
@@ -3023,6 +3234,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
       setDiagnostics(info, SOURCE_ADDINDEXES_READERS);
 
       final MergePolicy mergePolicy = config.getMergePolicy();
+      addMergePolicyDiagnostics(mergePolicy, trackingDir, info, merger.mergeState.mergeFieldInfos);
       boolean useCompoundFile;
       synchronized(this) { // Guard segmentInfos
         if (stopMerges) {
@@ -3738,7 +3950,11 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
               assert currentLiveDocs.get(j) == false;
             } else if (currentLiveDocs.get(j) == false) {
               // the document was deleted while we were merging:
-              mergedDeletesAndUpdates.delete(segDocMap.get(segLeafDocMap.get(j)));
+              int mappedDoc = segDocMap.get(segLeafDocMap.get(j));
+              if (mappedDoc != -1) {
+                // not soft-deleted:
+                mergedDeletesAndUpdates.delete(mappedDoc);
+              }
             }
           }
         }
@@ -3748,7 +3964,11 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
         // does:
         for (int j = 0; j < maxDoc; j++) {
           if (currentLiveDocs.get(j) == false) {
-            mergedDeletesAndUpdates.delete(segDocMap.get(segLeafDocMap.get(j)));
+            int mappedDoc = segDocMap.get(segLeafDocMap.get(j));
+            if (mappedDoc != -1) {
+              // not soft-deleted:
+              mergedDeletesAndUpdates.delete(mappedDoc);
+            }
           }
         }
       }
@@ -4233,6 +4453,17 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
     }
   }
 
+  /** Adds the diagnostics that the merge policy computes from the files of a
+   *  new segment, which must not have been made visible yet. */
+  static void addMergePolicyDiagnostics(MergePolicy mergePolicy, Directory dir, SegmentInfo info, FieldInfos fieldInfos) throws IOException {
+    Map<String,String> extra = mergePolicy.getSegmentDiagnostics(new SegmentReadState(dir, info, fieldInfos, IOContext.READ));
+    if (extra.isEmpty() == false) {
+      Map<String,String> diagnostics = new HashMap<>(info.getDiagnostics());
+      diagnostics.putAll(extra);
+      info.setDiagnostics(diagnostics);
+    }
+  }
+
   static void setDiagnostics(SegmentInfo info, String source) {
     setDiagnostics(info, source, null);
   }
@@ -4371,8 +4602,18 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
 
       // Let the merge wrap readers
       List<CodecReader> mergeReaders = new ArrayList<>();
+      final String softDeletesField = config.getSoftDeletesField();
       for (SegmentReader reader : merge.readers) {
-        CodecReader wrappedReader = merge.wrapForMerge(reader);
+        CodecReader mergeReader = reader;
+        if (softDeletesField != null) {
+          // soft-deleted documents are reclaimed like deleted documents,
+          // unless the merge policy retains them:
+          FixedBitSet softLiveDocs = SoftDeletesDirectoryReaderWrapper.applySoftDeletes(reader, softDeletesField);
+          if (softLiveDocs != null) {
+            mergeReader = SoftDeletesDirectoryReaderWrapper.wrapLiveDocs(reader, softLiveDocs, softLiveDocs.cardinality());
+          }
+        }
+        CodecReader wrappedReader = merge.wrapForMerge(mergeReader);
         validateMergeReader(wrappedReader);
         mergeReaders.add(wrappedReader);
       }
@@ -4437,6 +4678,8 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
 
       assert merge.info.info.maxDoc() > 0;
 
+      addMergePolicyDiagnostics(mergePolicy, dirWrapper, merge.info.info, mergeState.mergeFieldInfos);
+
       // Very important to do this before opening the reader
       // because codec must know if prox was written for
       // this segment:
@@ -4878,7 +5121,8 @@ public class IndexWriter implements Closeable, TwoPhaseCommit, Accountable {
   //   startCommitMergeDeletes
   //   startMergeInit
   //   DocumentsWriter.ThreadState.init start
-  private final void testPoint(String message) {
+  //   startApplyTermDeletes
+  final void testPoint(String message) {
     if (enableTestPoints) {
       assert infoStream.isEnabled("TP"); // don't enable unless you need them.
       infoStream.message("TP", message);
@@ -473,6 +473,22 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig {
     return this;
   }
 
+  /**
+   * Sets the name of the numeric doc values field that marks documents as
+   * soft-deleted. A document that has a value for this field is deleted for
+   * merges, unless the {@link MergePolicy} retains it, see
+   * {@link SoftDeletesRetentionMergePolicy}. Soft-deleted documents are still
+   * returned by the readers of the {@link IndexWriter}; use
+   * {@link SoftDeletesDirectoryReaderWrapper} to hide them from searches.
+   *
+   * @see IndexWriter#softUpdateDocument
+   * @lucene.experimental
+   */
+  public IndexWriterConfig setSoftDeletesField(String softDeletesField) {
+    this.softDeletesField = softDeletesField;
+    return this;
+  }
+
   @Override
   public String toString() {
     StringBuilder sb = new StringBuilder(super.toString());
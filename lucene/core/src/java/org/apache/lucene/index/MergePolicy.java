@@ -19,6 +19,7 @@ package org.apache.lucene.index;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
@@ -521,6 +522,18 @@ public abstract class MergePolicy {
   public abstract MergeSpecification findForcedDeletesMerges(
       SegmentInfos segmentInfos, IndexWriter writer) throws IOException;
 
+  /**
+   * Expert: return extra diagnostics to record into the {@link SegmentInfo}
+   * of a segment that has just been flushed or merged, see
+   * {@link SegmentInfo#getDiagnostics()}. This is called before the segment
+   * is visible to readers, and the given state gives access to the files of
+   * the new segment through its codec. The default implementation returns
+   * an empty map.
+   */
+  public Map<String,String> getSegmentDiagnostics(SegmentReadState state) throws IOException {
+    return Collections.emptyMap();
+  }
+
   /**
    * Returns true if a new segment (regardless of its origin) should use the
    * compound file format. The default implementation returns <code>true</code>
@@ -61,6 +61,11 @@ public class MergePolicyWrapper extends MergePolicy {
     return in.useCompoundFile(infos, mergedInfo, writer);
   }
 
+  @Override
+  public Map<String,String> getSegmentDiagnostics(SegmentReadState state) throws IOException {
+    return in.getSegmentDiagnostics(state);
+  }
+
   @Override
   protected long size(SegmentCommitInfo info, IndexWriter writer) throws IOException {
     return in.size(info, writer);
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+
+import java.util.Arrays;
+
+/**
+ * Reports how much merges get in the way of other work, such as searches,
+ * so that {@link ConcurrentMergeScheduler} can slow merges down while this
+ * work suffers, and let them go at full speed again once it recovers.
+ *
+ * @see ConcurrentMergeScheduler#setMergeThrottleController(MergeThrottleController, long)
+ * @lucene.experimental
+ */
+public abstract class MergeThrottleController {
+
+  /** Sole constructor. (For invocation by subclass
+   *  constructors, typically implicit.) */
+  protected MergeThrottleController() {}
+
+  /**
+   * Return the current pressure, between {@code 0}, which means merges
+   * should run at their normal pace, and {@code 1}, which means merges
+   * should be throttled as much as possible. This method is called
+   * periodically by merge threads, so it should be cheap and may not throw
+   * exceptions.
+   */
+  public abstract double getPressure();
+
+  /** Return a controller whose pressure is the maximum pressure of the
+   *  given controllers. */
+  public static MergeThrottleController max(MergeThrottleController... controllers) {
+    if (controllers.length == 0) {
+      throw new IllegalArgumentException("at least one controller is required");
+    }
+    final MergeThrottleController[] clone = controllers.clone();
+    return new MergeThrottleController() {
+      @Override
+      public double getPressure() {
+        double pressure = 0;
+        for (MergeThrottleController controller : clone) {
+          pressure = Math.max(pressure, controller.getPressure());
+        }
+        return pressure;
+      }
+
+      @Override
+      public String toString() {
+        return "max" + Arrays.toString(clone);
+      }
+    };
+  }
+
+  /** Linearly map <code>value</code> from <code>[low, high]</code> to
+   *  <code>[0, 1]</code>, clamping values that are out of bounds. */
+  static double interpolate(double value, double low, double high) {
+    if (value <= low) {
+      return 0;
+    } else if (value >= high) {
+      return 1;
+    } else {
+      return (value - low) / (high - low);
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+import java.util.List;
+
+import org.apache.lucene.index.PrefixCodedTerms.TermIterator;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.PriorityQueue;
+
+/** Merges multiple {@link PrefixCodedTerms} into a single sorted
+ *  iteration, by field and then by term.  A term that is present
+ *  in several of them is returned once per occurrence, and {@link
+ *  #delGen} tells which one the current occurrence comes from. */
+class MergedPrefixCodedTermsIterator extends FieldTermIterator {
+
+  private static class TermMergeQueue extends PriorityQueue<TermIterator> {
+    TermMergeQueue(int size) {
+      super(size);
+    }
+
+    @Override
+    protected boolean lessThan(TermIterator a, TermIterator b) {
+      int cmp = a.field.compareTo(b.field);
+      if (cmp == 0) {
+        cmp = a.bytes.compareTo(b.bytes);
+      }
+      if (cmp == 0) {
+        return a.delGen() > b.delGen();
+      }
+      return cmp < 0;
+    }
+  }
+
+  private final TermMergeQueue termQueue;
+  private TermIterator current;
+  private String field;
+
+  public MergedPrefixCodedTermsIterator(List<PrefixCodedTerms> termsList) {
+    assert termsList.size() > 1;
+    termQueue = new TermMergeQueue(termsList.size());
+    for (PrefixCodedTerms terms : termsList) {
+      TermIterator iter = terms.iterator();
+      if (iter.next() != null) {
+        termQueue.add(iter);
+      }
+    }
+  }
+
+  @Override
+  public BytesRef next() {
+    if (current != null) {
+      if (current.next() != null) {
+        termQueue.updateTop();
+      } else {
+        termQueue.pop();
+      }
+    }
+    if (termQueue.size() == 0) {
+      current = null;
+      field = null;
+      return null;
+    }
+    current = termQueue.top();
+    // each iterator has its own instance of the field name, but we
+    // must return the same instance for a given field:
+    if (current.field.equals(field) == false) {
+      field = current.field;
+    }
+    return current.bytes;
+  }
+
+  @Override
+  String field() {
+    return field;
+  }
+
+  @Override
+  long delGen() {
+    return current.delGen();
+  }
+}
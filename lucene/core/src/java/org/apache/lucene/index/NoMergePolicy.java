@@ -18,6 +18,7 @@ package org.apache.lucene.index;
 
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -48,6 +49,11 @@ public final class NoMergePolicy extends MergePolicy {
     return newSegment.info.getUseCompoundFile();
   }
 
+  @Override
+  public Map<String,String> getSegmentDiagnostics(SegmentReadState state) {
+    return Collections.emptyMap();
+  }
+
   @Override
   protected long size(SegmentCommitInfo info, IndexWriter writer) throws IOException {
     return Long.MAX_VALUE;
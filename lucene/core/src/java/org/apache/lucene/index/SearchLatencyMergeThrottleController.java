@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearchLatencyTracker;
+
+/**
+ * A {@link MergeThrottleController} that throttles merges when searches get
+ * slow. The pressure is {@code 0} while the given percentile of the latency
+ * of recent searches is below a target latency, grows linearly past the
+ * target, and reaches {@code 1} at a maximum latency.
+ * <p>
+ * Latencies are recorded by {@link IndexSearcher}s that have been configured
+ * with the same {@link SearchLatencyTracker}, see
+ * {@link IndexSearcher#setSearchLatencyTracker(SearchLatencyTracker)}.
+ *
+ * @lucene.experimental
+ */
+public final class SearchLatencyMergeThrottleController extends MergeThrottleController {
+
+  private final SearchLatencyTracker tracker;
+  private final double percentile;
+  private final long targetLatencyNS;
+  private final long maxLatencyNS;
+
+  /**
+   * Create a new controller.
+   * @param tracker the tracker that records search latencies
+   * @param percentile the percentile of the search latency to watch, eg. {@code 99}
+   * @param targetLatency the latency under which merges are not throttled
+   * @param maxLatency the latency above which merges are throttled as much as possible
+   * @param unit the unit of <code>targetLatency</code> and <code>maxLatency</code>
+   */
+  public SearchLatencyMergeThrottleController(SearchLatencyTracker tracker, double percentile,
+      long targetLatency, long maxLatency, TimeUnit unit) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile must be in [0, 100], got " + percentile);
+    }
+    if (targetLatency < 0) {
+      throw new IllegalArgumentException("targetLatency must be non-negative, got " + targetLatency);
+    }
+    if (maxLatency <= targetLatency) {
+      throw new IllegalArgumentException("maxLatency must be greater than targetLatency, got maxLatency="
+          + maxLatency + " targetLatency=" + targetLatency);
+    }
+    this.tracker = tracker;
+    this.percentile = percentile;
+    this.targetLatencyNS = unit.toNanos(targetLatency);
+    this.maxLatencyNS = unit.toNanos(maxLatency);
+  }
+
+  @Override
+  public double getPressure() {
+    return interpolate(tracker.getPercentileNS(percentile), targetLatencyNS, maxLatencyNS);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(percentile=" + percentile + ", targetLatencyMS="
+        + TimeUnit.NANOSECONDS.toMillis(targetLatencyNS) + ", maxLatencyMS=" + TimeUnit.NANOSECONDS.toMillis(maxLatencyNS) + ")";
+  }
+}
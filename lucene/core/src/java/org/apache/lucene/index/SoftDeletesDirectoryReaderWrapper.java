@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * A {@link FilterDirectoryReader} that hides the documents that have a value
+ * for the {@link IndexWriterConfig#setSoftDeletesField soft deletes field}.
+ * The readers returned by {@link IndexWriter} and {@link DirectoryReader#open}
+ * include soft-deleted documents: wrap them with this reader in order to
+ * search the live documents only.
+ *
+ * @lucene.experimental
+ */
+public final class SoftDeletesDirectoryReaderWrapper extends FilterDirectoryReader {
+
+  private final String field;
+
+  /**
+   * Creates a new soft deletes wrapper.
+   * @param in the incoming directory reader
+   * @param field the soft deletes field
+   */
+  public SoftDeletesDirectoryReaderWrapper(DirectoryReader in, String field) throws IOException {
+    super(in, new SoftDeletesSubReaderWrapper(field));
+    this.field = field;
+  }
+
+  @Override
+  protected DirectoryReader doWrapDirectoryReader(DirectoryReader in) throws IOException {
+    return new SoftDeletesDirectoryReaderWrapper(in, field);
+  }
+
+  @Override
+  public CacheHelper getReaderCacheHelper() {
+    // live docs differ from the wrapped reader's
+    return null;
+  }
+
+  private static class SoftDeletesSubReaderWrapper extends SubReaderWrapper {
+    private final String field;
+
+    SoftDeletesSubReaderWrapper(String field) {
+      this.field = Objects.requireNonNull(field, "field must not be null");
+    }
+
+    @Override
+    public LeafReader wrap(LeafReader reader) {
+      try {
+        FixedBitSet liveDocs = applySoftDeletes(reader, field);
+        if (liveDocs == null) {
+          return reader;
+        }
+        return new LiveDocsFilterLeafReader(reader, liveDocs, liveDocs.cardinality());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Returns the live docs of the given reader once the documents that have a
+   * value for <code>field</code> are deleted, or <code>null</code> if no live
+   * document has a value for this field.
+   */
+  static FixedBitSet applySoftDeletes(LeafReader reader, String field) throws IOException {
+    NumericDocValues softDeletes = reader.getNumericDocValues(field);
+    if (softDeletes == null) {
+      return null;
+    }
+    final Bits liveDocs = reader.getLiveDocs();
+    final int maxDoc = reader.maxDoc();
+    FixedBitSet newLiveDocs = null;
+    for (int doc = softDeletes.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = softDeletes.nextDoc()) {
+      if (liveDocs != null && liveDocs.get(doc) == false) {
+        continue;
+      }
+      if (newLiveDocs == null) {
+        newLiveDocs = new FixedBitSet(maxDoc);
+        if (liveDocs == null) {
+          newLiveDocs.set(0, maxDoc);
+        } else {
+          for (int i = 0; i < maxDoc; i++) {
+            if (liveDocs.get(i)) {
+              newLiveDocs.set(i);
+            }
+          }
+        }
+      }
+      newLiveDocs.clear(doc);
+    }
+    return newLiveDocs;
+  }
+
+  /** Returns a {@link CodecReader} that has the same content as <code>reader</code>
+   *  but the given live docs. */
+  static CodecReader wrapLiveDocs(CodecReader reader, Bits liveDocs, int numDocs) {
+    assert liveDocs == null || liveDocs.length() == reader.maxDoc();
+    return new FilterCodecReader(reader) {
+      @Override
+      public Bits getLiveDocs() {
+        return liveDocs;
+      }
+
+      @Override
+      public int numDocs() {
+        return numDocs;
+      }
+
+      @Override
+      public CacheHelper getCoreCacheHelper() {
+        return in.getCoreCacheHelper();
+      }
+
+      @Override
+      public CacheHelper getReaderCacheHelper() {
+        // live docs differ from the wrapped reader's
+        return null;
+      }
+    };
+  }
+
+  static final class LiveDocsFilterLeafReader extends FilterLeafReader {
+    private final Bits liveDocs;
+    private final int numDocs;
+
+    LiveDocsFilterLeafReader(LeafReader in, Bits liveDocs, int numDocs) {
+      super(in);
+      this.liveDocs = liveDocs;
+      this.numDocs = numDocs;
+    }
+
+    @Override
+    public Bits getLiveDocs() {
+      return liveDocs;
+    }
+
+    @Override
+    public int numDocs() {
+      return numDocs;
+    }
+
+    @Override
+    public CacheHelper getCoreCacheHelper() {
+      return in.getCoreCacheHelper();
+    }
+
+    @Override
+    public CacheHelper getReaderCacheHelper() {
+      // live docs differ from the wrapped reader's
+      return null;
+    }
+  }
+}
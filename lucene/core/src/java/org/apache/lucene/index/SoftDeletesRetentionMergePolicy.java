@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.DocValuesFieldExistsQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * A {@link MergePolicy} that keeps soft-deleted documents around through
+ * merges, as long as they match a retention query. Soft-deleted documents
+ * that do not match the retention query anymore are reclaimed by the next
+ * merge of their segment, like deleted documents. Hard-deleted documents are
+ * never retained.
+ * <p>
+ * The retention query is pulled from the given supplier for every merge,
+ * so that it can move forward as the history of operations that must be
+ * kept shrinks, for instance a range query on the sequence numbers of the
+ * documents that replicas may still have to catch up with.
+ *
+ * @see IndexWriterConfig#setSoftDeletesField(String)
+ * @see ChangesSinceDirectoryReader
+ * @lucene.experimental
+ */
+public final class SoftDeletesRetentionMergePolicy extends OneMergeWrappingMergePolicy {
+
+  /**
+   * Creates a new soft deletes retention merge policy.
+   * @param field the soft deletes field
+   * @param retentionQuerySupplier a supplier of the query that matches the
+   *        soft-deleted documents to retain
+   * @param in the wrapped merge policy
+   */
+  public SoftDeletesRetentionMergePolicy(String field, Supplier<Query> retentionQuerySupplier, MergePolicy in) {
+    super(in, toWrap -> new OneMerge(toWrap.segments) {
+      @Override
+      public CodecReader wrapForMerge(CodecReader reader) throws IOException {
+        // retain documents first, while the hard deletes are still those of
+        // the innermost reader:
+        CodecReader retained = applyRetentionQuery(field, retentionQuerySupplier.get(), reader);
+        return toWrap.wrapForMerge(retained);
+      }
+    });
+    Objects.requireNonNull(field, "field must not be null");
+    Objects.requireNonNull(retentionQuerySupplier, "retentionQuerySupplier must not be null");
+  }
+
+  /**
+   * Returns a reader that has the same live docs as <code>reader</code>, plus
+   * the documents that are soft-deleted and match the retention query. The
+   * documents that are deleted by the innermost reader, which holds the hard
+   * deletes, are never made live again.
+   */
+  static CodecReader applyRetentionQuery(String field, Query retentionQuery, CodecReader reader) throws IOException {
+    final Bits liveDocs = reader.getLiveDocs();
+    if (liveDocs == null) {
+      // nothing is deleted, so there is nothing to retain
+      return reader;
+    }
+    final CodecReader hardDeletesReader = FilterCodecReader.unwrap(reader);
+    final Bits hardLiveDocs = hardDeletesReader.getLiveDocs();
+
+    BooleanQuery.Builder builder = new BooleanQuery.Builder();
+    builder.add(retentionQuery, BooleanClause.Occur.FILTER);
+    builder.add(new DocValuesFieldExistsQuery(field), BooleanClause.Occur.FILTER);
+    IndexSearcher searcher = new IndexSearcher(hardDeletesReader);
+    searcher.setQueryCache(null);
+    Weight weight = searcher.createNormalizedWeight(builder.build(), false);
+    Scorer scorer = weight.scorer(hardDeletesReader.getContext());
+    if (scorer == null) {
+      return reader;
+    }
+
+    FixedBitSet retainedLiveDocs = null;
+    int numDocs = reader.numDocs();
+    DocIdSetIterator iterator = scorer.iterator();
+    for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iterator.nextDoc()) {
+      if (liveDocs.get(doc) || (hardLiveDocs != null && hardLiveDocs.get(doc) == false)) {
+        continue;
+      }
+      if (retainedLiveDocs == null) {
+        retainedLiveDocs = new FixedBitSet(reader.maxDoc());
+        for (int i = 0; i < reader.maxDoc(); i++) {
+          if (liveDocs.get(i)) {
+            retainedLiveDocs.set(i);
+          }
+        }
+      }
+      retainedLiveDocs.set(doc);
+      numDocs++;
+    }
+    if (retainedLiveDocs == null) {
+      return reader;
+    }
+    return SoftDeletesDirectoryReaderWrapper.wrapLiveDocs(reader, retainedLiveDocs, numDocs);
+  }
+}
@@ -29,6 +29,7 @@ import org.apache.lucene.search.SortedNumericSelector;
 import org.apache.lucene.search.SortedNumericSortField;
 import org.apache.lucene.search.SortedSetSelector;
 import org.apache.lucene.search.SortedSetSortField;
+import org.apache.lucene.util.NumericUtils;
 import org.apache.lucene.util.TimSorter;
 import org.apache.lucene.util.packed.PackedInts;
 import org.apache.lucene.util.packed.PackedLongValues;
@@ -94,6 +95,16 @@ final class Sorter {
     public abstract int compare(int docID1, int docID2);
   }
 
+  /** A {@link DocComparator} that compares documents by a primitive key,
+   *  which allows to radix sort documents. */
+  static abstract class KeyedDocComparator extends DocComparator {
+
+    /** Return the key of the given document. Comparing the keys of two
+     *  documents as signed longs must give the same result as
+     *  {@link #compare(int, int)}. */
+    public abstract long key(int docID);
+  }
+
   private static final class DocValueSorter extends TimSorter {
     
     private final int[] docs;
@@ -165,6 +176,13 @@ final class Sorter {
     // that case timSort can save a lot of time
     sorter.sort(0, docs.length); // docs is now the newToOld mapping
 
+    return newDocMap(docs);
+  }
+
+  /** Builds a {@link DocMap} from the given new-to-old mapping, which is
+   *  reused as a scratch array. */
+  private static Sorter.DocMap newDocMap(int[] docs) {
+    final int maxDoc = docs.length;
     // The reason why we use MonotonicAppendingLongBuffer here is that it
     // wastes very little memory if the index is in random order but can save
     // a lot of memory if the index is already "almost" sorted
@@ -283,11 +301,16 @@ final class Sorter {
           ords[docID] = sorted.ordValue();
         }
 
-        return new DocComparator() {
+        return new KeyedDocComparator() {
           @Override
           public int compare(int docID1, int docID2) {
             return reverseMul * Integer.compare(ords[docID1], ords[docID2]);
           }
+
+          @Override
+          public long key(int docID) {
+            return reverseMul == 1 ? ords[docID] : ~ords[docID];
+          }
         };
       }
 
@@ -306,11 +329,16 @@ final class Sorter {
           values[docID] = dvs.longValue();
         }
 
-        return new DocComparator() {
+        return new KeyedDocComparator() {
           @Override
           public int compare(int docID1, int docID2) {
             return reverseMul * Long.compare(values[docID1], values[docID2]);
           }
+
+          @Override
+          public long key(int docID) {
+            return reverseMul == 1 ? values[docID] : ~values[docID];
+          }
         };
       }
 
@@ -330,11 +358,16 @@ final class Sorter {
           values[docID] = (int) dvs.longValue();
         }
 
-        return new DocComparator() {
+        return new KeyedDocComparator() {
           @Override
           public int compare(int docID1, int docID2) {
             return reverseMul * Integer.compare(values[docID1], values[docID2]);
           }
+
+          @Override
+          public long key(int docID) {
+            return reverseMul == 1 ? values[docID] : ~values[docID];
+          }
         };
       }
 
@@ -353,11 +386,17 @@ final class Sorter {
           values[docID] = Double.longBitsToDouble(dvs.longValue());
         }
 
-        return new DocComparator() {
+        return new KeyedDocComparator() {
           @Override
           public int compare(int docID1, int docID2) {
             return reverseMul * Double.compare(values[docID1], values[docID2]);
           }
+
+          @Override
+          public long key(int docID) {
+            final long key = NumericUtils.doubleToSortableLong(values[docID]);
+            return reverseMul == 1 ? key : ~key;
+          }
         };
       }
 
@@ -376,11 +415,17 @@ final class Sorter {
           values[docID] = Float.intBitsToFloat((int) dvs.longValue());
         }
 
-        return new DocComparator() {
+        return new KeyedDocComparator() {
           @Override
           public int compare(int docID1, int docID2) {
             return reverseMul * Float.compare(values[docID1], values[docID2]);
           }
+
+          @Override
+          public long key(int docID) {
+            final long key = NumericUtils.floatToSortableInt(values[docID]);
+            return reverseMul == 1 ? key : ~key;
+          }
         };
       }
 
@@ -414,6 +459,13 @@ final class Sorter {
 
 
   DocMap sort(int maxDoc, DocComparator[] comparators) throws IOException {
+    boolean keyed = true;
+    for (DocComparator comparator : comparators) {
+      keyed &= comparator instanceof KeyedDocComparator;
+    }
+    if (keyed) {
+      return radixSort(maxDoc, comparators);
+    }
     final DocComparator comparator = new DocComparator() {
       @Override
       public int compare(int docID1, int docID2) {
@@ -430,6 +482,76 @@ final class Sorter {
     return sort(maxDoc, comparator);
   }
 
+  /** Sorts documents with a LSD radix sort over the keys of the comparators,
+   *  which do not need to be compared one document at a time. */
+  private static DocMap radixSort(int maxDoc, DocComparator[] comparators) {
+    // check if the index is sorted
+    long[][] keys = new long[comparators.length][];
+    boolean sorted = true;
+    for (int i = 0; i < comparators.length; i++) {
+      final KeyedDocComparator comparator = (KeyedDocComparator) comparators[i];
+      keys[i] = new long[maxDoc];
+      for (int doc = 0; doc < maxDoc; ++doc) {
+        keys[i][doc] = comparator.key(doc);
+      }
+    }
+    for (int doc = 1; doc < maxDoc && sorted; ++doc) {
+      for (long[] fieldKeys : keys) {
+        int cmp = Long.compare(fieldKeys[doc - 1], fieldKeys[doc]);
+        if (cmp < 0) {
+          break;
+        } else if (cmp > 0) {
+          sorted = false;
+          break;
+        }
+      }
+    }
+    if (sorted) {
+      return null;
+    }
+
+    int[] docs = new int[maxDoc];
+    for (int i = 0; i < maxDoc; i++) {
+      docs[i] = i;
+    }
+    int[] tmp = new int[maxDoc];
+    final int[] histogram = new int[256];
+    // the sort is stable, so sorting by the least significant field first
+    // and starting from doc ID order gives the doc ID order tiebreak
+    for (int i = keys.length - 1; i >= 0; --i) {
+      final long[] fieldKeys = keys[i];
+      for (int shift = 0; shift < Long.SIZE; shift += 8) {
+        Arrays.fill(histogram, 0);
+        for (int doc = 0; doc < maxDoc; ++doc) {
+          histogram[radixByte(fieldKeys[doc], shift)]++;
+        }
+        if (histogram[radixByte(fieldKeys[0], shift)] == maxDoc) {
+          // all keys share this byte
+          continue;
+        }
+        int sum = 0;
+        for (int b = 0; b < histogram.length; ++b) {
+          final int count = histogram[b];
+          histogram[b] = sum;
+          sum += count;
+        }
+        for (int doc : docs) {
+          tmp[histogram[radixByte(fieldKeys[doc], shift)]++] = doc;
+        }
+        int[] swap = docs;
+        docs = tmp;
+        tmp = swap;
+      }
+    }
+    return newDocMap(docs); // docs is the newToOld mapping
+  }
+
+  /** Return the byte of <code>key</code> at <code>shift</code>, with the
+   *  sign bit flipped so that keys sort as signed longs. */
+  private static int radixByte(long key, int shift) {
+    return (int) (((key ^ Long.MIN_VALUE) >>> shift) & 0xFF);
+  }
+
   /**
    * Returns the identifier of this {@link Sorter}.
    * <p>This identifier is similar to {@link Object#hashCode()} and should be
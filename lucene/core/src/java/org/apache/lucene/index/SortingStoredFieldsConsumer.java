@@ -20,19 +20,25 @@ package org.apache.lucene.index;
 import java.io.IOException;
 import java.io.Reader;
 import java.nio.charset.StandardCharsets;
-import java.util.Map;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.codecs.StoredFieldsReader;
 import org.apache.lucene.codecs.StoredFieldsWriter;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.store.IOContext;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.Counter;
 import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.PagedBytes;
+import org.apache.lucene.util.RamUsageEstimator;
 
+/**
+ * A {@link StoredFieldsConsumer} for sorted segments, that buffers stored
+ * fields in memory and writes them in the sorted order of the segment on flush.
+ */
 final class SortingStoredFieldsConsumer extends StoredFieldsConsumer {
-  TrackingTmpOutputDirectoryWrapper tmpDirectory;
+  BufferedStoredFieldsWriter bufferedWriter;
 
   SortingStoredFieldsConsumer(DocumentsWriterPerThread docWriter) {
     super(docWriter);
@@ -41,50 +47,193 @@ final class SortingStoredFieldsConsumer extends StoredFieldsConsumer {
   @Override
   protected void initStoredFieldsWriter() throws IOException {
     if (writer == null) {
-      this.tmpDirectory = new TrackingTmpOutputDirectoryWrapper(docWriter.directory);
-      this.writer = docWriter.codec.storedFieldsFormat().fieldsWriter(tmpDirectory, docWriter.getSegmentInfo(),
-          IOContext.DEFAULT);
+      this.bufferedWriter = new BufferedStoredFieldsWriter(docWriter.bytesUsed);
+      this.writer = bufferedWriter;
     }
   }
 
   @Override
   void flush(SegmentWriteState state, Sorter.DocMap sortMap) throws IOException {
     super.flush(state, sortMap);
-    if (sortMap == null) {
-      // we're lucky the index is already sorted, just rename the temporary file and return
-      for (Map.Entry<String, String> entry : tmpDirectory.getTemporaryFiles().entrySet()) {
-        tmpDirectory.rename(entry.getValue(), entry.getKey());
-      }
-      return;
-    }
-    StoredFieldsReader reader = docWriter.codec.storedFieldsFormat()
-        .fieldsReader(tmpDirectory, state.segmentInfo, state.fieldInfos, IOContext.DEFAULT);
-    StoredFieldsReader mergeReader = reader.getMergeInstance();
+    final BufferedStoredFieldsWriter buffered = bufferedWriter;
+    bufferedWriter = null;
+    buffered.freeze();
     StoredFieldsWriter sortWriter = docWriter.codec.storedFieldsFormat()
         .fieldsWriter(state.directory, state.segmentInfo, IOContext.DEFAULT);
     try {
-      reader.checkIntegrity();
       CopyVisitor visitor = new CopyVisitor(sortWriter);
       for (int docID = 0; docID < state.segmentInfo.maxDoc(); docID++) {
         sortWriter.startDocument();
-        mergeReader.visitDocument(sortMap.newToOld(docID), visitor);
+        buffered.visitDocument(sortMap == null ? docID : sortMap.newToOld(docID), state.fieldInfos, visitor);
         sortWriter.finishDocument();
       }
       sortWriter.finish(state.fieldInfos, state.segmentInfo.maxDoc());
     } finally {
-      IOUtils.close(reader, sortWriter);
-      IOUtils.deleteFiles(tmpDirectory,
-          tmpDirectory.getTemporaryFiles().values());
+      IOUtils.close(sortWriter);
     }
   }
 
   @Override
   void abort() {
-    try {
-      super.abort();
-    } finally {
-      IOUtils.deleteFilesIgnoringExceptions(tmpDirectory,
-          tmpDirectory.getTemporaryFiles().values());
+    super.abort();
+    bufferedWriter = null;
+  }
+
+  /**
+   * A {@link StoredFieldsWriter} that records stored fields in memory, so
+   * that they can be replayed in any order.
+   */
+  static final class BufferedStoredFieldsWriter extends StoredFieldsWriter {
+    private static final int STRING = 0;
+    private static final int BYTE_ARR = 1;
+    private static final int NUMERIC_INT = 2;
+    private static final int NUMERIC_FLOAT = 3;
+    private static final int NUMERIC_LONG = 4;
+    private static final int NUMERIC_DOUBLE = 5;
+    private static final int TYPE_BITS = 3;
+    private static final int TYPE_MASK = (1 << TYPE_BITS) - 1;
+
+    private final Counter bytesUsed;
+    private final PagedBytes bytes = new PagedBytes(15);
+    private final PagedBytes.PagedBytesDataOutput out = bytes.getDataOutput();
+    private PagedBytes.PagedBytesDataInput in;
+    private long[] docStarts = new long[16];
+    private int numDocs;
+    private long reportedBytesUsed;
+
+    BufferedStoredFieldsWriter(Counter bytesUsed) {
+      this.bytesUsed = bytesUsed;
+      updateBytesUsed();
+    }
+
+    private void updateBytesUsed() {
+      final long newBytesUsed = bytes.ramBytesUsed() + RamUsageEstimator.sizeOf(docStarts);
+      bytesUsed.addAndGet(newBytesUsed - reportedBytesUsed);
+      reportedBytesUsed = newBytesUsed;
+    }
+
+    @Override
+    public void startDocument() throws IOException {
+      docStarts = ArrayUtil.grow(docStarts, numDocs + 1);
+      docStarts[numDocs++] = out.getPosition();
+    }
+
+    @Override
+    public void writeField(FieldInfo info, IndexableField field) throws IOException {
+      // same validation as the default stored fields writer
+      final Number number = field.numericValue();
+      int bits;
+      BytesRef binaryValue = null;
+      String stringValue = null;
+      if (number != null) {
+        if (number instanceof Byte || number instanceof Short || number instanceof Integer) {
+          bits = NUMERIC_INT;
+        } else if (number instanceof Long) {
+          bits = NUMERIC_LONG;
+        } else if (number instanceof Float) {
+          bits = NUMERIC_FLOAT;
+        } else if (number instanceof Double) {
+          bits = NUMERIC_DOUBLE;
+        } else {
+          throw new IllegalArgumentException("cannot store numeric type " + number.getClass());
+        }
+      } else {
+        binaryValue = field.binaryValue();
+        if (binaryValue != null) {
+          bits = BYTE_ARR;
+        } else {
+          bits = STRING;
+          stringValue = field.stringValue();
+          if (stringValue == null) {
+            throw new IllegalArgumentException("field " + field.name() + " is stored but does not have binaryValue, stringValue nor numericValue");
+          }
+        }
+      }
+
+      // field numbers are shifted by one so that 0 marks the end of a document
+      out.writeVLong((((long) info.number + 1) << TYPE_BITS) | bits);
+      switch (bits) {
+        case STRING:
+          out.writeString(stringValue);
+          break;
+        case BYTE_ARR:
+          out.writeVInt(binaryValue.length);
+          out.writeBytes(binaryValue.bytes, binaryValue.offset, binaryValue.length);
+          break;
+        case NUMERIC_INT:
+          out.writeZInt(number.intValue());
+          break;
+        case NUMERIC_LONG:
+          out.writeZLong(number.longValue());
+          break;
+        case NUMERIC_FLOAT:
+          out.writeInt(Float.floatToRawIntBits(number.floatValue()));
+          break;
+        case NUMERIC_DOUBLE:
+          out.writeLong(Double.doubleToRawLongBits(number.doubleValue()));
+          break;
+        default:
+          throw new AssertionError();
+      }
+    }
+
+    @Override
+    public void finishDocument() throws IOException {
+      out.writeVLong(0);
+      updateBytesUsed();
+    }
+
+    @Override
+    public void finish(FieldInfos fis, int numDocs) throws IOException {
+      if (this.numDocs != numDocs) {
+        throw new IllegalStateException("buffered " + this.numDocs + " documents but expected " + numDocs);
+      }
+    }
+
+    /** Stop recording documents, and start allowing to replay them. */
+    void freeze() {
+      bytes.freeze(false);
+      in = bytes.getDataInput();
+    }
+
+    /** Replay the stored fields of the given document into the visitor. */
+    void visitDocument(int docID, FieldInfos fieldInfos, StoredFieldVisitor visitor) throws IOException {
+      in.setPosition(docStarts[docID]);
+      for (long infoAndBits = in.readVLong(); infoAndBits != 0; infoAndBits = in.readVLong()) {
+        final FieldInfo info = fieldInfos.fieldInfo((int) (infoAndBits >>> TYPE_BITS) - 1);
+        switch ((int) (infoAndBits & TYPE_MASK)) {
+          case STRING: {
+            final byte[] value = new byte[in.readVInt()];
+            in.readBytes(value, 0, value.length);
+            visitor.stringField(info, value);
+            break;
+          }
+          case BYTE_ARR: {
+            final byte[] value = new byte[in.readVInt()];
+            in.readBytes(value, 0, value.length);
+            visitor.binaryField(info, value);
+            break;
+          }
+          case NUMERIC_INT:
+            visitor.intField(info, in.readZInt());
+            break;
+          case NUMERIC_LONG:
+            visitor.longField(info, in.readZLong());
+            break;
+          case NUMERIC_FLOAT:
+            visitor.floatField(info, Float.intBitsToFloat(in.readInt()));
+            break;
+          case NUMERIC_DOUBLE:
+            visitor.doubleField(info, Double.longBitsToDouble(in.readLong()));
+            break;
+          default:
+            throw new AssertionError("unknown type: " + infoAndBits);
+        }
+      }
+    }
+
+    @Override
+    public void close() {
     }
   }
 
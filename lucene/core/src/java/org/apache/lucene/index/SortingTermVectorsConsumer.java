@@ -18,19 +18,24 @@ package org.apache.lucene.index;
 
 
 import java.io.IOException;
-import java.util.Iterator;
 import java.util.Map;
 
-import org.apache.lucene.codecs.TermVectorsReader;
 import org.apache.lucene.codecs.TermVectorsWriter;
-import org.apache.lucene.search.DocIdSetIterator;
-import org.apache.lucene.store.FlushInfo;
 import org.apache.lucene.store.IOContext;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.Counter;
 import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.PagedBytes;
+import org.apache.lucene.util.RamUsageEstimator;
 
+/**
+ * A {@link TermVectorsConsumer} for sorted segments, that buffers term vectors
+ * in memory and writes them in the sorted order of the segment on flush.
+ */
 final class SortingTermVectorsConsumer extends TermVectorsConsumer {
-  TrackingTmpOutputDirectoryWrapper tmpDirectory;
+  BufferedTermVectorsWriter bufferedWriter;
 
   public SortingTermVectorsConsumer(DocumentsWriterPerThread docWriter) {
     super(docWriter);
@@ -38,31 +43,20 @@ final class SortingTermVectorsConsumer extends TermVectorsConsumer {
 
   @Override
   void flush(Map<String, TermsHashPerField> fieldsToFlush, final SegmentWriteState state, Sorter.DocMap sortMap) throws IOException {
+    final BufferedTermVectorsWriter buffered = bufferedWriter;
     super.flush(fieldsToFlush, state, sortMap);
-    if (tmpDirectory != null) {
-      if (sortMap == null) {
-        // we're lucky the index is already sorted, just rename the temporary file and return
-        for (Map.Entry<String, String> entry : tmpDirectory.getTemporaryFiles().entrySet()) {
-          tmpDirectory.rename(entry.getValue(), entry.getKey());
-        }
-        return;
-      }
-      TermVectorsReader reader = docWriter.codec.termVectorsFormat()
-          .vectorsReader(tmpDirectory, state.segmentInfo, state.fieldInfos, IOContext.DEFAULT);
-      TermVectorsReader mergeReader = reader.getMergeInstance();
+    if (buffered != null) {
+      bufferedWriter = null;
+      buffered.freeze();
       TermVectorsWriter writer = docWriter.codec.termVectorsFormat()
           .vectorsWriter(state.directory, state.segmentInfo, IOContext.DEFAULT);
       try {
-        reader.checkIntegrity();
         for (int docID = 0; docID < state.segmentInfo.maxDoc(); docID++) {
-          Fields vectors = mergeReader.get(sortMap.newToOld(docID));
-          writeTermVectors(writer, vectors, state.fieldInfos);
+          buffered.replayDocument(sortMap == null ? docID : sortMap.newToOld(docID), state.fieldInfos, writer);
         }
         writer.finish(state.fieldInfos, state.segmentInfo.maxDoc());
       } finally {
-        IOUtils.close(reader, writer);
-        IOUtils.deleteFiles(tmpDirectory,
-            tmpDirectory.getTemporaryFiles().values());
+        IOUtils.close(writer);
       }
     }
   }
@@ -70,9 +64,8 @@ final class SortingTermVectorsConsumer extends TermVectorsConsumer {
   @Override
   void initTermVectorsWriter() throws IOException {
     if (writer == null) {
-      IOContext context = new IOContext(new FlushInfo(docWriter.getNumDocsInRAM(), docWriter.bytesUsed()));
-      tmpDirectory = new TrackingTmpOutputDirectoryWrapper(docWriter.directory);
-      writer = docWriter.codec.termVectorsFormat().vectorsWriter(tmpDirectory, docWriter.getSegmentInfo(), context);
+      bufferedWriter = new BufferedTermVectorsWriter(docWriter.bytesUsed);
+      writer = bufferedWriter;
       lastDocID = 0;
     }
   }
@@ -82,100 +75,156 @@ final class SortingTermVectorsConsumer extends TermVectorsConsumer {
     try {
       super.abort();
     } finally {
-      IOUtils.deleteFilesIgnoringExceptions(tmpDirectory,
-          tmpDirectory.getTemporaryFiles().values());
+      bufferedWriter = null;
     }
   }
 
-  /** Safe (but, slowish) default method to copy every vector field in the provided {@link TermVectorsWriter}. */
-  private static void writeTermVectors(TermVectorsWriter writer, Fields vectors, FieldInfos fieldInfos) throws IOException {
-    if (vectors == null) {
-      writer.startDocument(0);
-      writer.finishDocument();
-      return;
+  /**
+   * A {@link TermVectorsWriter} that records term vectors in memory, so that
+   * they can be replayed in any order.
+   */
+  static final class BufferedTermVectorsWriter extends TermVectorsWriter {
+    private static final int POSITIONS = 0x01;
+    private static final int OFFSETS = 0x02;
+    private static final int PAYLOADS = 0x04;
+
+    private final Counter bytesUsed;
+    private final PagedBytes bytes = new PagedBytes(15);
+    private final PagedBytes.PagedBytesDataOutput out = bytes.getDataOutput();
+    private PagedBytes.PagedBytesDataInput in;
+    private long[] docStarts = new long[16];
+    private int numDocs;
+    private long reportedBytesUsed;
+
+    // state of the field and term being recorded
+    private boolean positions, offsets, payloads;
+    private int lastPosition, lastOffset;
+
+    BufferedTermVectorsWriter(Counter bytesUsed) {
+      this.bytesUsed = bytesUsed;
+      updateBytesUsed();
     }
 
-    int numFields = vectors.size();
-    if (numFields == -1) {
-      // count manually! TODO: Maybe enforce that Fields.size() returns something valid?
-      numFields = 0;
-      for (final Iterator<String> it = vectors.iterator(); it.hasNext(); ) {
-        it.next();
-        numFields++;
-      }
+    private void updateBytesUsed() {
+      final long newBytesUsed = bytes.ramBytesUsed() + RamUsageEstimator.sizeOf(docStarts);
+      bytesUsed.addAndGet(newBytesUsed - reportedBytesUsed);
+      reportedBytesUsed = newBytesUsed;
     }
-    writer.startDocument(numFields);
-
-    String lastFieldName = null;
 
-    TermsEnum termsEnum = null;
-    PostingsEnum docsAndPositionsEnum = null;
+    @Override
+    public void startDocument(int numVectorFields) throws IOException {
+      docStarts = ArrayUtil.grow(docStarts, numDocs + 1);
+      docStarts[numDocs++] = out.getPosition();
+      out.writeVInt(numVectorFields);
+    }
 
-    int fieldCount = 0;
-    for(String fieldName : vectors) {
-      fieldCount++;
-      final FieldInfo fieldInfo = fieldInfos.fieldInfo(fieldName);
+    @Override
+    public void finishDocument() throws IOException {
+      updateBytesUsed();
+    }
 
-      assert lastFieldName == null || fieldName.compareTo(lastFieldName) > 0: "lastFieldName=" + lastFieldName + " fieldName=" + fieldName;
-      lastFieldName = fieldName;
+    @Override
+    public void startField(FieldInfo info, int numTerms, boolean positions, boolean offsets, boolean payloads) throws IOException {
+      this.positions = positions;
+      this.offsets = offsets;
+      this.payloads = payloads;
+      out.writeVInt(info.number);
+      out.writeByte((byte) ((positions ? POSITIONS : 0) | (offsets ? OFFSETS : 0) | (payloads ? PAYLOADS : 0)));
+      out.writeVInt(numTerms);
+    }
 
-      final Terms terms = vectors.terms(fieldName);
-      if (terms == null) {
-        // FieldsEnum shouldn't lie...
-        continue;
-      }
+    @Override
+    public void startTerm(BytesRef term, int freq) throws IOException {
+      out.writeVInt(term.length);
+      out.writeBytes(term.bytes, term.offset, term.length);
+      out.writeVInt(freq);
+      lastPosition = lastOffset = 0;
+    }
 
-      final boolean hasPositions = terms.hasPositions();
-      final boolean hasOffsets = terms.hasOffsets();
-      final boolean hasPayloads = terms.hasPayloads();
-      assert !hasPayloads || hasPositions;
-
-      int numTerms = (int) terms.size();
-      if (numTerms == -1) {
-        // count manually. It is stupid, but needed, as Terms.size() is not a mandatory statistics function
-        numTerms = 0;
-        termsEnum = terms.iterator();
-        while(termsEnum.next() != null) {
-          numTerms++;
+    @Override
+    public void addPosition(int position, int startOffset, int endOffset, BytesRef payload) throws IOException {
+      if (positions) {
+        final boolean hasPayload = payloads && payload != null && payload.length > 0;
+        out.writeVInt(((position - lastPosition) << 1) | (hasPayload ? 1 : 0));
+        lastPosition = position;
+        if (hasPayload) {
+          out.writeVInt(payload.length);
+          out.writeBytes(payload.bytes, payload.offset, payload.length);
         }
       }
+      if (offsets) {
+        out.writeVInt(startOffset - lastOffset);
+        out.writeVInt(endOffset - startOffset);
+        lastOffset = startOffset;
+      }
+    }
 
-      writer.startField(fieldInfo, numTerms, hasPositions, hasOffsets, hasPayloads);
-      termsEnum = terms.iterator();
-
-      int termCount = 0;
-      while(termsEnum.next() != null) {
-        termCount++;
-
-        final int freq = (int) termsEnum.totalTermFreq();
-
-        writer.startTerm(termsEnum.term(), freq);
-
-        if (hasPositions || hasOffsets) {
-          docsAndPositionsEnum = termsEnum.postings(docsAndPositionsEnum, PostingsEnum.OFFSETS | PostingsEnum.PAYLOADS);
-          assert docsAndPositionsEnum != null;
-
-          final int docID = docsAndPositionsEnum.nextDoc();
-          assert docID != DocIdSetIterator.NO_MORE_DOCS;
-          assert docsAndPositionsEnum.freq() == freq;
-
-          for(int posUpto=0; posUpto<freq; posUpto++) {
-            final int pos = docsAndPositionsEnum.nextPosition();
-            final int startOffset = docsAndPositionsEnum.startOffset();
-            final int endOffset = docsAndPositionsEnum.endOffset();
+    @Override
+    public void finish(FieldInfos fis, int numDocs) throws IOException {
+      if (this.numDocs != numDocs) {
+        throw new IllegalStateException("buffered " + this.numDocs + " documents but expected " + numDocs);
+      }
+    }
 
-            final BytesRef payload = docsAndPositionsEnum.getPayload();
+    /** Stop recording documents, and start allowing to replay them. */
+    void freeze() {
+      bytes.freeze(false);
+      in = bytes.getDataInput();
+    }
 
-            assert !hasPositions || pos >= 0 ;
-            writer.addPosition(pos, startOffset, endOffset, payload);
+    /** Replay the term vectors of the given document into the writer. */
+    void replayDocument(int docID, FieldInfos fieldInfos, TermVectorsWriter writer) throws IOException {
+      in.setPosition(docStarts[docID]);
+      final BytesRefBuilder term = new BytesRefBuilder();
+      final BytesRefBuilder payload = new BytesRefBuilder();
+      final int numFields = in.readVInt();
+      writer.startDocument(numFields);
+      for (int i = 0; i < numFields; ++i) {
+        final FieldInfo info = fieldInfos.fieldInfo(in.readVInt());
+        final int flags = in.readByte();
+        final boolean positions = (flags & POSITIONS) != 0;
+        final boolean offsets = (flags & OFFSETS) != 0;
+        final int numTerms = in.readVInt();
+        writer.startField(info, numTerms, positions, offsets, (flags & PAYLOADS) != 0);
+        for (int j = 0; j < numTerms; ++j) {
+          term.setLength(in.readVInt());
+          term.grow(term.length());
+          in.readBytes(term.bytes(), 0, term.length());
+          final int freq = in.readVInt();
+          writer.startTerm(term.get(), freq);
+          if (positions || offsets) {
+            int position = -1, startOffset = -1, endOffset = -1;
+            int lastPosition = 0, lastOffset = 0;
+            for (int k = 0; k < freq; ++k) {
+              BytesRef thisPayload = null;
+              if (positions) {
+                final int code = in.readVInt();
+                position = lastPosition + (code >>> 1);
+                lastPosition = position;
+                if ((code & 1) != 0) {
+                  payload.setLength(in.readVInt());
+                  payload.grow(payload.length());
+                  in.readBytes(payload.bytes(), 0, payload.length());
+                  thisPayload = payload.get();
+                }
+              }
+              if (offsets) {
+                startOffset = lastOffset + in.readVInt();
+                endOffset = startOffset + in.readVInt();
+                lastOffset = startOffset;
+              }
+              writer.addPosition(position, startOffset, endOffset, thisPayload);
+            }
           }
+          writer.finishTerm();
         }
-        writer.finishTerm();
+        writer.finishField();
       }
-      assert termCount == numTerms;
-      writer.finishField();
+      writer.finishDocument();
+    }
+
+    @Override
+    public void close() {
     }
-    assert fieldCount == numFields;
-    writer.finishDocument();
   }
 }
@@ -0,0 +1,511 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.lucene.codecs.DocValuesProducer;
+import org.apache.lucene.codecs.PointsReader;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.NumericUtils;
+
+/**
+ * A merge policy for time-series data, that only merges segments that are
+ * adjacent in time order, so that segments keep covering disjoint time
+ * ranges as long as documents are indexed roughly in time order. This
+ * preserves locality for queries on recent time windows, and makes it cheap
+ * to expire old data, since deleting a time range mostly drops whole
+ * segments instead of rewriting them.
+ * <p>
+ * Time is given by a numeric field that is indexed either as a 1-dimension
+ * {@link org.apache.lucene.document.LongPoint} or
+ * {@link org.apache.lucene.document.IntPoint}, or as {@link NumericDocValues} or
+ * {@link SortedNumericDocValues}. Points are preferred when both exist. The
+ * minimum and maximum values of this field are recorded into the
+ * {@link SegmentInfo#getDiagnostics() diagnostics} of every segment that is
+ * flushed or merged while this policy is in use, see
+ * {@link #getMinValue(SegmentInfo)} and {@link #getMaxValue(SegmentInfo)}.
+ * For other point types, the recorded values are the sortable bits of the
+ * values, eg. {@link NumericUtils#doubleToSortableLong}.
+ * <p>
+ * Segments are ordered by their minimum value, and runs of
+ * {@link #setMergeFactor mergeFactor} adjacent segments of the same size
+ * level are merged together, similarly to {@link LogByteSizeMergePolicy}.
+ * Segments that have no recorded time range, for instance because they were
+ * written before this policy was configured, are only merged by
+ * {@link IndexWriter#forceMerge}.
+ *
+ * @lucene.experimental
+ */
+public class TimeSeriesMergePolicy extends MergePolicy {
+
+  /** Key of the time field in the diagnostics of segments. */
+  public static final String FIELD_KEY = "timeseries.field";
+  /** Key of the minimum value of the time field in the diagnostics of segments. */
+  public static final String MIN_VALUE_KEY = "timeseries.min";
+  /** Key of the maximum value of the time field in the diagnostics of segments. */
+  public static final String MAX_VALUE_KEY = "timeseries.max";
+
+  /** Default noCFSRatio.  If a merge's size is {@code >= 10%} of
+   *  the index, then we disable compound file for it.
+   *  @see MergePolicy#setNoCFSRatio */
+  public static final double DEFAULT_NO_CFS_RATIO = 0.1;
+
+  private final String field;
+  private int mergeFactor = 10;
+  private int maxMergeAtOnceExplicit = 30;
+  private long maxMergedSegmentBytes = 5*1024*1024*1024L;
+  private long floorSegmentBytes = 2*1024*1024L;
+  private double forceMergeDeletesPctAllowed = 10.0;
+
+  /** Create a new policy that orders segments by the values of the given field. */
+  public TimeSeriesMergePolicy(String field) {
+    super(DEFAULT_NO_CFS_RATIO, MergePolicy.DEFAULT_MAX_CFS_SEGMENT_SIZE);
+    this.field = field;
+  }
+
+  /** Returns the field that gives the time of documents. */
+  public String getField() {
+    return field;
+  }
+
+  /** Number of adjacent segments of the same size level that
+   *  are merged at once during "normal" merging. Default is 10. */
+  public TimeSeriesMergePolicy setMergeFactor(int v) {
+    if (v < 2) {
+      throw new IllegalArgumentException("mergeFactor must be > 1 (got " + v + ")");
+    }
+    mergeFactor = v;
+    return this;
+  }
+
+  /** Returns the current mergeFactor setting.
+   *
+   * @see #setMergeFactor */
+  public int getMergeFactor() {
+    return mergeFactor;
+  }
+
+  /** Maximum number of segments to be merged at a time,
+   *  during forceMerge. Default is 30. */
+  public TimeSeriesMergePolicy setMaxMergeAtOnceExplicit(int v) {
+    if (v < 2) {
+      throw new IllegalArgumentException("maxMergeAtOnceExplicit must be > 1 (got " + v + ")");
+    }
+    maxMergeAtOnceExplicit = v;
+    return this;
+  }
+
+  /** Returns the current maxMergeAtOnceExplicit setting.
+   *
+   * @see #setMaxMergeAtOnceExplicit */
+  public int getMaxMergeAtOnceExplicit() {
+    return maxMergeAtOnceExplicit;
+  }
+
+  /** Maximum sized segment to produce during normal
+   *  merging. Segments that are larger than half this size
+   *  are not merged anymore, except by forceMerge and
+   *  forceMergeDeletes. Default is 5 GB. */
+  public TimeSeriesMergePolicy setMaxMergedSegmentMB(double v) {
+    if (v < 0.0) {
+      throw new IllegalArgumentException("maxMergedSegmentMB must be >=0 (got " + v + ")");
+    }
+    v *= 1024 * 1024;
+    maxMergedSegmentBytes = v > Long.MAX_VALUE ? Long.MAX_VALUE : (long) v;
+    return this;
+  }
+
+  /** Returns the current maxMergedSegmentMB setting.
+   *
+   * @see #setMaxMergedSegmentMB */
+  public double getMaxMergedSegmentMB() {
+    return maxMergedSegmentBytes/1024/1024.;
+  }
+
+  /** Segments smaller than this are "rounded up" to this
+   *  size, ie treated as equal (floor) size for merge
+   *  selection. Default is 2 MB. */
+  public TimeSeriesMergePolicy setFloorSegmentMB(double v) {
+    if (v <= 0.0) {
+      throw new IllegalArgumentException("floorSegmentMB must be > 0.0 (got " + v + ")");
+    }
+    v *= 1024 * 1024;
+    floorSegmentBytes = v > Long.MAX_VALUE ? Long.MAX_VALUE : (long) v;
+    return this;
+  }
+
+  /** Returns the current floorSegmentMB.
+   *
+   *  @see #setFloorSegmentMB */
+  public double getFloorSegmentMB() {
+    return floorSegmentBytes/(1024*1024.);
+  }
+
+  /** When forceMergeDeletes is called, we only rewrite a
+   *  segment if its percentage of deleted docs exceeds
+   *  this threshold. Default is 10%. */
+  public TimeSeriesMergePolicy setForceMergeDeletesPctAllowed(double v) {
+    if (v < 0.0 || v > 100.0) {
+      throw new IllegalArgumentException("forceMergeDeletesPctAllowed must be between 0.0 and 100.0 inclusive (got " + v + ")");
+    }
+    forceMergeDeletesPctAllowed = v;
+    return this;
+  }
+
+  /** Returns the current forceMergeDeletesPctAllowed setting.
+   *
+   * @see #setForceMergeDeletesPctAllowed */
+  public double getForceMergeDeletesPctAllowed() {
+    return forceMergeDeletesPctAllowed;
+  }
+
+  /** Returns the minimum value of the time field that is recorded in the
+   *  diagnostics of the given segment, or <code>null</code> if unknown. */
+  public static Long getMinValue(SegmentInfo info) {
+    final String value = info.getDiagnostics().get(MIN_VALUE_KEY);
+    return value == null ? null : Long.parseLong(value);
+  }
+
+  /** Returns the maximum value of the time field that is recorded in the
+   *  diagnostics of the given segment, or <code>null</code> if unknown. */
+  public static Long getMaxValue(SegmentInfo info) {
+    final String value = info.getDiagnostics().get(MAX_VALUE_KEY);
+    return value == null ? null : Long.parseLong(value);
+  }
+
+  @Override
+  public Map<String,String> getSegmentDiagnostics(SegmentReadState state) throws IOException {
+    final FieldInfo fieldInfo = state.fieldInfos.fieldInfo(field);
+    if (fieldInfo == null) {
+      return Collections.emptyMap();
+    }
+    final long[] minMax;
+    if (fieldInfo.getPointDimensionCount() == 1 &&
+        (fieldInfo.getPointNumBytes() == Long.BYTES || fieldInfo.getPointNumBytes() == Integer.BYTES)) {
+      minMax = readPointsMinMax(state, fieldInfo);
+    } else if (fieldInfo.getDocValuesType() == DocValuesType.NUMERIC ||
+               fieldInfo.getDocValuesType() == DocValuesType.SORTED_NUMERIC) {
+      minMax = readDocValuesMinMax(state, fieldInfo);
+    } else {
+      minMax = null;
+    }
+    final Map<String,String> diagnostics = new HashMap<>();
+    diagnostics.put(FIELD_KEY, field);
+    if (minMax != null) {
+      diagnostics.put(MIN_VALUE_KEY, Long.toString(minMax[0]));
+      diagnostics.put(MAX_VALUE_KEY, Long.toString(minMax[1]));
+    }
+    return diagnostics;
+  }
+
+  private static long[] readPointsMinMax(SegmentReadState state, FieldInfo fieldInfo) throws IOException {
+    try (PointsReader reader = state.segmentInfo.getCodec().pointsFormat().fieldsReader(state)) {
+      final PointValues values = reader.getValues(fieldInfo.name);
+      if (values == null || values.size() == 0) {
+        return null;
+      }
+      return new long[] { decode(values.getMinPackedValue()), decode(values.getMaxPackedValue()) };
+    }
+  }
+
+  private static long decode(byte[] packedValue) {
+    if (packedValue.length == Long.BYTES) {
+      return NumericUtils.sortableBytesToLong(packedValue, 0);
+    } else {
+      assert packedValue.length == Integer.BYTES;
+      return NumericUtils.sortableBytesToInt(packedValue, 0);
+    }
+  }
+
+  private static long[] readDocValuesMinMax(SegmentReadState state, FieldInfo fieldInfo) throws IOException {
+    try (DocValuesProducer producer = state.segmentInfo.getCodec().docValuesFormat().fieldsProducer(state)) {
+      final DocValuesSkipper skipper = producer.getSkipper(fieldInfo);
+      if (skipper != null) {
+        return skipper.docCount() == 0 ? null : new long[] { skipper.minValue(), skipper.maxValue() };
+      }
+      // no skip index, visit all values
+      long min = Long.MAX_VALUE;
+      long max = Long.MIN_VALUE;
+      boolean hasValue = false;
+      if (fieldInfo.getDocValuesType() == DocValuesType.NUMERIC) {
+        final NumericDocValues values = producer.getNumeric(fieldInfo);
+        for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+          final long value = values.longValue();
+          min = Math.min(min, value);
+          max = Math.max(max, value);
+          hasValue = true;
+        }
+      } else {
+        final SortedNumericDocValues values = producer.getSortedNumeric(fieldInfo);
+        for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+          // values are sorted within a document
+          final int count = values.docValueCount();
+          final long first = values.nextValue();
+          long last = first;
+          for (int i = 1; i < count; ++i) {
+            last = values.nextValue();
+          }
+          min = Math.min(min, first);
+          max = Math.max(max, last);
+          hasValue = true;
+        }
+      }
+      return hasValue ? new long[] { min, max } : null;
+    }
+  }
+
+  @Override
+  public MergeSpecification findMerges(MergeTrigger mergeTrigger, SegmentInfos infos, IndexWriter writer) throws IOException {
+    if (verbose(writer)) {
+      message("findMerges: " + infos.size() + " segments", writer);
+    }
+    if (infos.size() == 0) {
+      return null;
+    }
+    final Collection<SegmentCommitInfo> merging = writer.getMergingSegments();
+    final List<SegmentCommitInfo> sorted = new ArrayList<>();
+    for (SegmentCommitInfo info : infos) {
+      if (hasTimeRange(info)) {
+        sorted.add(info);
+      }
+    }
+    sorted.sort(TIME_ORDER);
+    final Map<SegmentCommitInfo,Long> sizeInBytes = getSegmentSizes(writer, sorted);
+
+    MergeSpecification spec = null;
+    // Walk runs of adjacent segments that may be merged: segments that are
+    // being merged or that are too large break adjacency.
+    int runStart = 0;
+    for (int i = 0; i <= sorted.size(); ++i) {
+      if (i == sorted.size() || merging.contains(sorted.get(i)) || sizeInBytes.get(sorted.get(i)) > maxMergedSegmentBytes / 2) {
+        spec = findMergesInRun(sorted.subList(runStart, i), sizeInBytes, spec, writer);
+        runStart = i + 1;
+      }
+    }
+    return spec;
+  }
+
+  private MergeSpecification findMergesInRun(List<SegmentCommitInfo> run, Map<SegmentCommitInfo,Long> sizeInBytes,
+      MergeSpecification spec, IndexWriter writer) throws IOException {
+    int start = 0;
+    while (start + mergeFactor <= run.size()) {
+      final int level = level(sizeInBytes.get(run.get(start)));
+      long totalBytes = 0;
+      boolean sameLevel = true;
+      for (int i = start; i < start + mergeFactor; ++i) {
+        final long bytes = sizeInBytes.get(run.get(i));
+        totalBytes += bytes;
+        if (level(bytes) != level) {
+          sameLevel = false;
+          break;
+        }
+      }
+      if (sameLevel && totalBytes <= maxMergedSegmentBytes) {
+        final OneMerge merge = new OneMerge(run.subList(start, start + mergeFactor));
+        if (verbose(writer)) {
+          message("  add merge=" + writer.segString(merge.segments) + " level=" + level
+              + " size=" + String.format(Locale.ROOT, "%.3f MB", totalBytes/1024./1024.), writer);
+        }
+        if (spec == null) {
+          spec = new MergeSpecification();
+        }
+        spec.add(merge);
+        start += mergeFactor;
+      } else {
+        start++;
+      }
+    }
+    return spec;
+  }
+
+  /** Returns the size level of a segment, ie. how many times it could have
+   *  been merged from floor-size segments. */
+  private int level(long bytes) {
+    final long flooredBytes = Math.max(bytes, floorSegmentBytes);
+    return (int) (Math.log((double) flooredBytes / floorSegmentBytes) / Math.log(mergeFactor));
+  }
+
+  @Override
+  public MergeSpecification findForcedMerges(SegmentInfos infos, int maxSegmentCount, Map<SegmentCommitInfo,Boolean> segmentsToMerge, IndexWriter writer) throws IOException {
+    if (verbose(writer)) {
+      message("findForcedMerges maxSegmentCount=" + maxSegmentCount + " infos=" + writer.segString(infos) + " segmentsToMerge=" + segmentsToMerge, writer);
+    }
+
+    final List<SegmentCommitInfo> eligible = new ArrayList<>();
+    final Collection<SegmentCommitInfo> merging = writer.getMergingSegments();
+    boolean segmentIsOriginal = false;
+    for (SegmentCommitInfo info : infos) {
+      final Boolean isOriginal = segmentsToMerge.get(info);
+      if (isOriginal != null) {
+        if (merging.contains(info)) {
+          // wait for running merges to finish, otherwise we could not tell
+          // which segments will be adjacent to their outputs
+          if (verbose(writer)) {
+            message("forceMergeRunning", writer);
+          }
+          return null;
+        }
+        segmentIsOriginal = isOriginal;
+        eligible.add(info);
+      }
+    }
+
+    if (eligible.size() == 0 ||
+        (maxSegmentCount > 1 && eligible.size() <= maxSegmentCount) ||
+        (maxSegmentCount == 1 && eligible.size() == 1 && (!segmentIsOriginal || isMerged(infos, eligible.get(0), writer)))) {
+      if (verbose(writer)) {
+        message("already merged", writer);
+      }
+      return null;
+    }
+
+    eligible.sort(TIME_ORDER);
+    final Map<SegmentCommitInfo,Long> sizeInBytes = getSegmentSizes(writer, eligible);
+
+    // Split segments into maxSegmentCount groups of adjacent segments, by
+    // repeatedly joining the two adjacent groups whose total size is the smallest:
+    final List<List<SegmentCommitInfo>> groups = new ArrayList<>();
+    final List<Long> groupBytes = new ArrayList<>();
+    for (SegmentCommitInfo info : eligible) {
+      groups.add(new ArrayList<>(Collections.singletonList(info)));
+      groupBytes.add(sizeInBytes.get(info));
+    }
+    while (groups.size() > maxSegmentCount) {
+      int best = 0;
+      for (int i = 1; i + 1 < groups.size(); ++i) {
+        if (groupBytes.get(i) + groupBytes.get(i + 1) < groupBytes.get(best) + groupBytes.get(best + 1)) {
+          best = i;
+        }
+      }
+      groups.get(best).addAll(groups.remove(best + 1));
+      groupBytes.set(best, groupBytes.get(best) + groupBytes.remove(best + 1));
+    }
+
+    MergeSpecification spec = null;
+    for (List<SegmentCommitInfo> group : groups) {
+      if (group.size() == 1 && (maxSegmentCount > 1 || !segmentIsOriginal || isMerged(infos, group.get(0), writer))) {
+        continue;
+      }
+      // merge groups that have too many segments in several rounds
+      for (int start = 0; start < group.size(); start += maxMergeAtOnceExplicit) {
+        final OneMerge merge = new OneMerge(group.subList(start, Math.min(group.size(), start + maxMergeAtOnceExplicit)));
+        if (verbose(writer)) {
+          message("add merge=" + writer.segString(merge.segments), writer);
+        }
+        if (spec == null) {
+          spec = new MergeSpecification();
+        }
+        spec.add(merge);
+      }
+    }
+    return spec;
+  }
+
+  @Override
+  public MergeSpecification findForcedDeletesMerges(SegmentInfos infos, IndexWriter writer) throws IOException {
+    if (verbose(writer)) {
+      message("findForcedDeletesMerges infos=" + writer.segString(infos) + " forceMergeDeletesPctAllowed=" + forceMergeDeletesPctAllowed, writer);
+    }
+    // rewrite segments one at a time, which preserves time ranges
+    final Collection<SegmentCommitInfo> merging = writer.getMergingSegments();
+    MergeSpecification spec = null;
+    for (SegmentCommitInfo info : infos) {
+      double pctDeletes = 100.*((double) writer.numDeletedDocs(info))/info.info.maxDoc();
+      if (pctDeletes > forceMergeDeletesPctAllowed && !merging.contains(info)) {
+        if (spec == null) {
+          spec = new MergeSpecification();
+        }
+        final OneMerge merge = new OneMerge(Collections.singletonList(info));
+        if (verbose(writer)) {
+          message("add merge=" + writer.segString(merge.segments), writer);
+        }
+        spec.add(merge);
+      }
+    }
+    return spec;
+  }
+
+  private static boolean hasTimeRange(SegmentCommitInfo info) {
+    return info.info.getDiagnostics().containsKey(MIN_VALUE_KEY);
+  }
+
+  /** Orders segments by minimum then maximum value, segments without a
+   *  time range first. */
+  private static final Comparator<SegmentCommitInfo> TIME_ORDER = new Comparator<SegmentCommitInfo>() {
+    @Override
+    public int compare(SegmentCommitInfo a, SegmentCommitInfo b) {
+      int cmp = Long.compare(minValue(a), minValue(b));
+      if (cmp == 0) {
+        cmp = Long.compare(maxValue(a), maxValue(b));
+      }
+      if (cmp == 0) {
+        cmp = a.info.name.compareTo(b.info.name);
+      }
+      return cmp;
+    }
+
+    private long minValue(SegmentCommitInfo info) {
+      final Long value = getMinValue(info.info);
+      return value == null ? Long.MIN_VALUE : value;
+    }
+
+    private long maxValue(SegmentCommitInfo info) {
+      final Long value = getMaxValue(info.info);
+      return value == null ? Long.MIN_VALUE : value;
+    }
+  };
+
+  private Map<SegmentCommitInfo,Long> getSegmentSizes(IndexWriter writer, Collection<SegmentCommitInfo> infos) throws IOException {
+    final Map<SegmentCommitInfo,Long> sizeInBytes = new HashMap<>();
+    for (SegmentCommitInfo info : infos) {
+      sizeInBytes.put(info, size(info, writer));
+    }
+    return sizeInBytes;
+  }
+
+  private boolean verbose(IndexWriter writer) {
+    return writer != null && writer.infoStream.isEnabled("TSMP");
+  }
+
+  private void message(String message, IndexWriter writer) {
+    writer.infoStream.message("TSMP", message);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[" + getClass().getSimpleName() + ": ");
+    sb.append("field=").append(field).append(", ");
+    sb.append("mergeFactor=").append(mergeFactor).append(", ");
+    sb.append("maxMergeAtOnceExplicit=").append(maxMergeAtOnceExplicit).append(", ");
+    sb.append("maxMergedSegmentMB=").append(maxMergedSegmentBytes/1024/1024.).append(", ");
+    sb.append("floorSegmentMB=").append(floorSegmentBytes/1024/1024.).append(", ");
+    sb.append("forceMergeDeletesPctAllowed=").append(forceMergeDeletesPctAllowed).append(", ");
+    sb.append("maxCFSSegmentSizeMB=").append(getMaxCFSSegmentSizeMB()).append(", ");
+    sb.append("noCFSRatio=").append(noCFSRatio);
+    return sb.toString();
+  }
+}
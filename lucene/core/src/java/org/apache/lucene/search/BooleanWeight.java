@@ -45,6 +45,23 @@ final class BooleanWeight extends Weight {
   final ArrayList<Weight> weights;
   final boolean needsScores;
 
+  /** Results of {@link Weight#canMatch} for the sub clauses on a leaf. They
+   *  are computed once when building a scorer for the leaf and passed down,
+   *  along with the results of nested boolean clauses, so that nested boolean
+   *  queries don't check their sub clauses again at every level. */
+  private static final class ClauseMatches {
+    final boolean[] clauses;
+    /** the results of the sub clauses that are boolean queries, null for other clauses */
+    final ClauseMatches[] subMatches;
+    final boolean canMatch;
+
+    ClauseMatches(boolean[] clauses, ClauseMatches[] subMatches, boolean canMatch) {
+      this.clauses = clauses;
+      this.subMatches = subMatches;
+      this.canMatch = canMatch;
+    }
+  }
+
   BooleanWeight(BooleanQuery query, IndexSearcher searcher, boolean needsScores, float boost) throws IOException {
     super(query);
     this.query = query;
@@ -148,14 +165,19 @@ final class BooleanWeight extends Weight {
   // or null if it is not applicable
   // pkg-private for forcing use of BooleanScorer in tests
   BulkScorer optionalBulkScorer(LeafReaderContext context) throws IOException {
+    return optionalBulkScorer(context, clauseMatches(context));
+  }
+
+  private BulkScorer optionalBulkScorer(LeafReaderContext context, ClauseMatches clauseMatches) throws IOException {
     List<BulkScorer> optional = new ArrayList<BulkScorer>();
     Iterator<BooleanClause> cIter = query.iterator();
-    for (Weight w  : weights) {
+    for (int i = 0; i < weights.size(); ++i) {
+      Weight w = weights.get(i);
       BooleanClause c =  cIter.next();
-      if (c.getOccur() != Occur.SHOULD) {
+      if (c.getOccur() != Occur.SHOULD || clauseMatches.clauses[i] == false) {
         continue;
       }
-      BulkScorer subScorer = w.bulkScorer(context);
+      BulkScorer subScorer = subBulkScorer(w, clauseMatches.subMatches[i], context);
 
       if (subScorer != null) {
         optional.add(subScorer);
@@ -179,11 +201,12 @@ final class BooleanWeight extends Weight {
 
   // Return a BulkScorer for the required clauses only,
   // or null if it is not applicable
-  private BulkScorer requiredBulkScorer(LeafReaderContext context) throws IOException {
+  private BulkScorer requiredBulkScorer(LeafReaderContext context, ClauseMatches clauseMatches) throws IOException {
     BulkScorer scorer = null;
 
     Iterator<BooleanClause> cIter = query.iterator();
-    for (Weight w  : weights) {
+    for (int i = 0; i < weights.size(); ++i) {
+      Weight w = weights.get(i);
       BooleanClause c =  cIter.next();
       if (c.isRequired() == false) {
         continue;
@@ -192,7 +215,7 @@ final class BooleanWeight extends Weight {
         // we don't have a BulkScorer for conjunctions
         return null;
       }
-      scorer = w.bulkScorer(context);
+      scorer = subBulkScorer(w, clauseMatches.subMatches[i], context);
       if (scorer == null) {
         // no matches
         return null;
@@ -207,12 +230,16 @@ final class BooleanWeight extends Weight {
   /** Try to build a boolean scorer for this weight. Returns null if {@link BooleanScorer}
    *  cannot be used. */
   BulkScorer booleanScorer(LeafReaderContext context) throws IOException {
+    return booleanScorer(context, clauseMatches(context));
+  }
+
+  private BulkScorer booleanScorer(LeafReaderContext context, ClauseMatches clauseMatches) throws IOException {
     final int numOptionalClauses = query.getClauses(Occur.SHOULD).size();
     final int numRequiredClauses = query.getClauses(Occur.MUST).size() + query.getClauses(Occur.FILTER).size();
     
     BulkScorer positiveScorer;
     if (numRequiredClauses == 0) {
-      positiveScorer = optionalBulkScorer(context);
+      positiveScorer = optionalBulkScorer(context, clauseMatches);
       if (positiveScorer == null) {
         return null;
       }
@@ -241,7 +268,7 @@ final class BooleanWeight extends Weight {
     } else if (numRequiredClauses == 1
         && numOptionalClauses == 0
         && query.getMinimumNumberShouldMatch() == 0) {
-      positiveScorer = requiredBulkScorer(context);
+      positiveScorer = requiredBulkScorer(context, clauseMatches);
     } else {
       // TODO: there are some cases where BooleanScorer
       // would handle conjunctions faster than
@@ -255,10 +282,11 @@ final class BooleanWeight extends Weight {
 
     List<Scorer> prohibited = new ArrayList<>();
     Iterator<BooleanClause> cIter = query.iterator();
-    for (Weight w  : weights) {
+    for (int i = 0; i < weights.size(); ++i) {
+      Weight w = weights.get(i);
       BooleanClause c =  cIter.next();
-      if (c.isProhibited()) {
-        Scorer scorer = w.scorer(context);
+      if (c.isProhibited() && clauseMatches.clauses[i]) {
+        Scorer scorer = subScorer(w, clauseMatches.subMatches[i], context);
         if (scorer != null) {
           prohibited.add(scorer);
         }
@@ -279,21 +307,102 @@ final class BooleanWeight extends Weight {
     }
   }
 
+  @Override
+  public boolean canMatch(LeafReaderContext context) throws IOException {
+    return clauseMatches(context).canMatch;
+  }
+
+  private ClauseMatches clauseMatches(LeafReaderContext context) throws IOException {
+    final boolean[] clauses = new boolean[weights.size()];
+    final ClauseMatches[] subMatches = new ClauseMatches[weights.size()];
+    // check required clauses first: if one of them cannot match, other
+    // clauses do not need to be checked
+    boolean hasRequiredClauses = false;
+    Iterator<BooleanClause> cIter = query.iterator();
+    for (int i = 0; i < weights.size(); ++i) {
+      BooleanClause c = cIter.next();
+      if (c.isRequired()) {
+        hasRequiredClauses = true;
+        if (canMatch(i, context, subMatches) == false) {
+          return new ClauseMatches(clauses, subMatches, false);
+        }
+        clauses[i] = true;
+      }
+    }
+    int numMatchingOptionalClauses = 0;
+    cIter = query.iterator();
+    for (int i = 0; i < weights.size(); ++i) {
+      BooleanClause c = cIter.next();
+      if (c.isRequired() == false) {
+        clauses[i] = canMatch(i, context, subMatches);
+        if (clauses[i] && c.getOccur() == Occur.SHOULD) {
+          numMatchingOptionalClauses++;
+        }
+      }
+    }
+    final boolean canMatch;
+    if (hasRequiredClauses == false && numMatchingOptionalClauses == 0) {
+      // either only prohibited clauses, or none of the optional clauses can match
+      canMatch = false;
+    } else {
+      canMatch = numMatchingOptionalClauses >= query.getMinimumNumberShouldMatch();
+    }
+    return new ClauseMatches(clauses, subMatches, canMatch);
+  }
+
+  /** Checks whether the clause at the given index can match, keeping the
+   *  results of its own clauses if it is a boolean query. */
+  private boolean canMatch(int i, LeafReaderContext context, ClauseMatches[] subMatches) throws IOException {
+    final Weight w = weights.get(i);
+    if (w instanceof BooleanWeight) {
+      subMatches[i] = ((BooleanWeight) w).clauseMatches(context);
+      return subMatches[i].canMatch;
+    }
+    return w.canMatch(context);
+  }
+
+  private static BulkScorer subBulkScorer(Weight w, ClauseMatches subMatches, LeafReaderContext context) throws IOException {
+    return subMatches == null ? w.bulkScorer(context) : ((BooleanWeight) w).bulkScorer(context, subMatches);
+  }
+
+  private static Scorer subScorer(Weight w, ClauseMatches subMatches, LeafReaderContext context) throws IOException {
+    return subMatches == null ? w.scorer(context) : ((BooleanWeight) w).scorer(context, subMatches);
+  }
+
+  private static ScorerSupplier subScorerSupplier(Weight w, ClauseMatches subMatches, LeafReaderContext context) throws IOException {
+    return subMatches == null ? w.scorerSupplier(context) : ((BooleanWeight) w).scorerSupplier(context, subMatches);
+  }
+
   @Override
   public BulkScorer bulkScorer(LeafReaderContext context) throws IOException {
-    final BulkScorer bulkScorer = booleanScorer(context);
+    return bulkScorer(context, clauseMatches(context));
+  }
+
+  private BulkScorer bulkScorer(LeafReaderContext context, ClauseMatches clauseMatches) throws IOException {
+    if (clauseMatches.canMatch == false) {
+      return null;
+    }
+    final BulkScorer bulkScorer = booleanScorer(context, clauseMatches);
     if (bulkScorer != null) {
       // bulk scoring is applicable, use it
       return bulkScorer;
     } else {
       // use a Scorer-based impl (BS2)
-      return super.bulkScorer(context);
+      Scorer scorer = scorer(context, clauseMatches);
+      if (scorer == null) {
+        return null;
+      }
+      return new DefaultBulkScorer(scorer);
     }
   }
 
   @Override
   public Scorer scorer(LeafReaderContext context) throws IOException {
-    ScorerSupplier scorerSupplier = scorerSupplier(context);
+    return scorer(context, clauseMatches(context));
+  }
+
+  private Scorer scorer(LeafReaderContext context, ClauseMatches clauseMatches) throws IOException {
+    ScorerSupplier scorerSupplier = scorerSupplier(context, clauseMatches);
     if (scorerSupplier == null) {
       return null;
     }
@@ -307,6 +416,10 @@ final class BooleanWeight extends Weight {
 
   @Override
   public ScorerSupplier scorerSupplier(LeafReaderContext context) throws IOException {
+    return scorerSupplier(context, clauseMatches(context));
+  }
+
+  private ScorerSupplier scorerSupplier(LeafReaderContext context, ClauseMatches clauseMatches) throws IOException {
     int minShouldMatch = query.getMinimumNumberShouldMatch();
 
     final Map<Occur, Collection<ScorerSupplier>> scorers = new EnumMap<>(Occur.class);
@@ -314,10 +427,16 @@ final class BooleanWeight extends Weight {
       scorers.put(occur, new ArrayList<>());
     }
 
+    if (clauseMatches.canMatch == false) {
+      return null;
+    }
+
     Iterator<BooleanClause> cIter = query.iterator();
-    for (Weight w  : weights) {
+    for (int i = 0; i < weights.size(); ++i) {
+      Weight w = weights.get(i);
       BooleanClause c =  cIter.next();
-      ScorerSupplier subScorer = w.scorerSupplier(context);
+      // don't build scorers for clauses that cannot match this leaf
+      ScorerSupplier subScorer = clauseMatches.clauses[i] ? subScorerSupplier(w, clauseMatches.subMatches[i], context) : null;
       if (subScorer == null) {
         if (c.isRequired()) {
           return null;
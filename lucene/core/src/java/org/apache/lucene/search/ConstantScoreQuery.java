@@ -167,6 +167,11 @@ public final class ConstantScoreQuery extends Query {
           return scorerSupplier.get(Long.MAX_VALUE);
         }
 
+        @Override
+        public boolean canMatch(LeafReaderContext context) throws IOException {
+          return innerWeight.canMatch(context);
+        }
+
         @Override
         public IndexReader.CacheHelper getCacheHelper(LeafReaderContext context) {
           return innerWeight.getCacheHelper(context);
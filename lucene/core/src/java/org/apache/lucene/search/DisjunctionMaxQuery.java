@@ -115,11 +115,24 @@ public final class DisjunctionMaxQuery extends Query implements Iterable<Query>
       }
     }
 
+    @Override
+    public boolean canMatch(LeafReaderContext context) throws IOException {
+      for (Weight w : weights) {
+        if (w.canMatch(context)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
     /** Create the scorer used to score our associated DisjunctionMaxQuery */
     @Override
     public Scorer scorer(LeafReaderContext context) throws IOException {
       List<Scorer> scorers = new ArrayList<>();
       for (Weight w : weights) {
+        if (w.canMatch(context) == false) {
+          continue;
+        }
         // we will advance() subscorers
         Scorer subScorer = w.scorer(context);
         if (subScorer != null) {
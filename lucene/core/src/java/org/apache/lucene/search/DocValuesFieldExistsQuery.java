@@ -20,6 +20,8 @@ package org.apache.lucene.search;
 import java.io.IOException;
 import java.util.Objects;
 
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValuesSkipper;
 import org.apache.lucene.index.DocValuesType;
 import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.FieldInfos;
@@ -78,6 +80,10 @@ public final class DocValuesFieldExistsQuery extends Query {
         case NONE:
           return null;
         case NUMERIC:
+          if (isDense(reader)) {
+            iterator = DocIdSetIterator.all(reader.maxDoc());
+            break;
+          }
           iterator = reader.getNumericDocValues(field);
           break;
         case BINARY:
@@ -87,6 +93,10 @@ public final class DocValuesFieldExistsQuery extends Query {
           iterator = reader.getSortedDocValues(field);
           break;
         case SORTED_NUMERIC:
+          if (isDense(reader)) {
+            iterator = DocIdSetIterator.all(reader.maxDoc());
+            break;
+          }
           iterator = reader.getSortedNumericDocValues(field);
           break;
         case SORTED_SET:
@@ -99,6 +109,13 @@ public final class DocValuesFieldExistsQuery extends Query {
         return new ConstantScoreScorer(this, score(), iterator);
       }
 
+      /** Returns true if the skip index of the field tells that all
+       *  documents have a value, in which case values need not be read. */
+      private boolean isDense(LeafReader reader) throws IOException {
+        DocValuesSkipper skipper = DocValues.getSkipper(reader, field);
+        return skipper != null && skipper.docCount() == reader.maxDoc();
+      }
+
       @Override
       public IndexReader.CacheHelper getCacheHelper(LeafReaderContext context) {
         return getDocValuesCacheHelper(field, context);
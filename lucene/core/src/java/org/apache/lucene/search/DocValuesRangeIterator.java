@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.search;
+
+
+import java.io.IOException;
+
+import org.apache.lucene.index.DocValuesSkipper;
+
+/**
+ * A {@link TwoPhaseIterator} over the documents whose doc values fall in a
+ * range, that uses a {@link DocValuesSkipper} in order to skip the intervals
+ * of documents that cannot match, and to match the intervals whose values
+ * are all in the range without decoding values.
+ *
+ * @lucene.internal
+ */
+public final class DocValuesRangeIterator extends TwoPhaseIterator {
+
+  enum Match {
+    /** None of the documents in the range match */
+    NO,
+    /** Document values need to be checked to verify matches */
+    MAYBE,
+    /** All documents in the range that have a value match */
+    IF_DOC_HAS_VALUE,
+    /** All documents in the range match */
+    YES
+  }
+
+  private final Approximation approximation;
+  private final TwoPhaseIterator innerTwoPhase;
+
+  /**
+   * Creates a new iterator.
+   * @param innerTwoPhase an iterator over the documents whose values are
+   *        between <code>lowerValue</code> and <code>upperValue</code>,
+   *        whose approximation iterates over the documents that have a value
+   * @param skipper the skip index of the field
+   * @param lowerValue the lower bound of the range, inclusive
+   * @param upperValue the upper bound of the range, inclusive
+   */
+  public DocValuesRangeIterator(TwoPhaseIterator innerTwoPhase, DocValuesSkipper skipper, long lowerValue, long upperValue) {
+    super(new Approximation(innerTwoPhase.approximation(), skipper, lowerValue, upperValue));
+    this.approximation = (Approximation) approximation();
+    this.innerTwoPhase = innerTwoPhase;
+  }
+
+  private static class Approximation extends DocIdSetIterator {
+
+    private final DocIdSetIterator innerApproximation;
+    private final DocValuesSkipper skipper;
+    private final long lowerValue;
+    private final long upperValue;
+
+    private int doc = -1;
+    // the match of the current interval, and its last doc ID, inclusive
+    private Match match = Match.MAYBE;
+    private int upTo = -1;
+
+    Approximation(DocIdSetIterator innerApproximation, DocValuesSkipper skipper, long lowerValue, long upperValue) {
+      this.innerApproximation = innerApproximation;
+      this.skipper = skipper;
+      this.lowerValue = lowerValue;
+      this.upperValue = upperValue;
+    }
+
+    @Override
+    public int docID() {
+      return doc;
+    }
+
+    @Override
+    public int nextDoc() throws IOException {
+      return advance(doc + 1);
+    }
+
+    @Override
+    public int advance(int target) throws IOException {
+      while (true) {
+        if (target > upTo) {
+          skipper.advance(target);
+          if (skipper.minDocID(0) == NO_MORE_DOCS) {
+            return doc = NO_MORE_DOCS;
+          }
+          setMatchAndUpTo();
+        }
+        switch (match) {
+          case YES:
+            return doc = Math.max(target, skipper.minDocID(0));
+          case MAYBE:
+          case IF_DOC_HAS_VALUE:
+            int next = innerApproximation.docID();
+            if (next < target) {
+              next = innerApproximation.advance(target);
+            }
+            if (next <= upTo) {
+              return doc = next;
+            }
+            // the next doc that has a value is in a later interval
+            target = upTo + 1;
+            break;
+          case NO:
+            target = upTo + 1;
+            break;
+          default:
+            throw new AssertionError("Unknown match: " + match);
+        }
+      }
+    }
+
+    /** Computes the match of the current interval, and extends it to
+     *  coarser levels as long as the match does not change. */
+    private void setMatchAndUpTo() {
+      match = match(0);
+      upTo = skipper.maxDocID(0);
+      for (int level = 1; level < skipper.numLevels(); ++level) {
+        if (match(level) != match) {
+          break;
+        }
+        upTo = skipper.maxDocID(level);
+      }
+    }
+
+    private Match match(int level) {
+      final long minValue = skipper.minValue(level);
+      final long maxValue = skipper.maxValue(level);
+      if (minValue > upperValue || maxValue < lowerValue) {
+        return Match.NO;
+      } else if (minValue >= lowerValue && maxValue <= upperValue) {
+        if (skipper.docCount(level) == skipper.maxDocID(level) - skipper.minDocID(level) + 1) {
+          return Match.YES;
+        } else {
+          return Match.IF_DOC_HAS_VALUE;
+        }
+      } else {
+        return Match.MAYBE;
+      }
+    }
+
+    @Override
+    public long cost() {
+      return innerApproximation.cost();
+    }
+  }
+
+  @Override
+  public boolean matches() throws IOException {
+    switch (approximation.match) {
+      case YES:
+      case IF_DOC_HAS_VALUE:
+        return true;
+      case MAYBE:
+        return innerTwoPhase.matches();
+      case NO:
+      default:
+        throw new AssertionError("Unexpected match: " + approximation.match);
+    }
+  }
+
+  @Override
+  public float matchCost() {
+    return innerTwoPhase.matchCost();
+  }
+}
@@ -71,6 +71,11 @@ public abstract class FilterWeight extends Weight {
     return in.explain(context, doc);
   }
 
+  @Override
+  public boolean canMatch(LeafReaderContext context) throws IOException {
+    return in.canMatch(context);
+  }
+
   @Override
   public Scorer scorer(LeafReaderContext context) throws IOException {
     return in.scorer(context);
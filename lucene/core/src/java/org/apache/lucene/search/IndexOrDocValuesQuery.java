@@ -170,6 +170,12 @@ public final class IndexOrDocValuesQuery extends Query {
         return scorerSupplier.get(Long.MAX_VALUE);
       }
 
+      @Override
+      public boolean canMatch(LeafReaderContext context) throws IOException {
+        // Both index and dv query should match the same documents
+        return indexWeight.canMatch(context) && dvWeight.canMatch(context);
+      }
+
       @Override
       public IndexReader.CacheHelper getCacheHelper(LeafReaderContext context) {
         // Both index and dv query should return the same values, so we can use
@@ -129,6 +129,8 @@ public class IndexSearcher {
   private QueryCache queryCache = DEFAULT_QUERY_CACHE;
   private QueryCachingPolicy queryCachingPolicy = DEFAULT_CACHING_POLICY;
 
+  private SearchLatencyTracker latencyTracker;
+
   /**
    * Expert: returns a default Similarity instance.
    * In general, this method is only called to initialize searchers and writers.
@@ -311,6 +313,28 @@ public class IndexSearcher {
     reader.document(docID, fieldVisitor);
   }
 
+  /**
+   * Set the {@link SearchLatencyTracker} that records the latency of the
+   * searches that run through {@link #search(Query, Collector)} or
+   * {@link #search(Query, CollectorManager)}, which top-level search methods
+   * delegate to, or <code>null</code> to not record latencies. Searches that
+   * are answered from index statistics, such as {@link #count(Query)} on a
+   * {@link MatchAllDocsQuery}, are not recorded.
+   * @lucene.experimental
+   */
+  public void setSearchLatencyTracker(SearchLatencyTracker latencyTracker) {
+    this.latencyTracker = latencyTracker;
+  }
+
+  /**
+   * Return the {@link SearchLatencyTracker} of this {@link IndexSearcher}, or
+   * <code>null</code> if latencies are not recorded.
+   * @lucene.experimental
+   */
+  public SearchLatencyTracker getSearchLatencyTracker() {
+    return latencyTracker;
+  }
+
   /** 
    * Sugar for <code>.getIndexReader().document(docID, fieldsToLoad)</code>
    * @see IndexReader#document(int, Set) 
@@ -446,7 +470,12 @@ public class IndexSearcher {
    */
   public void search(Query query, Collector results)
     throws IOException {
+    final SearchLatencyTracker latencyTracker = this.latencyTracker;
+    final long startNS = latencyTracker == null ? 0 : System.nanoTime();
     search(leafContexts, createNormalizedWeight(query, results.needsScores()), results);
+    if (latencyTracker != null) {
+      latencyTracker.record(System.nanoTime() - startNS);
+    }
   }
 
   /** Search implementation with arbitrary sorting, plus
@@ -568,6 +597,8 @@ public class IndexSearcher {
       search(query, collector);
       return collectorManager.reduce(Collections.singletonList(collector));
     } else {
+      final SearchLatencyTracker latencyTracker = this.latencyTracker;
+      final long startNS = latencyTracker == null ? 0 : System.nanoTime();
       final List<C> collectors = new ArrayList<>(leafSlices.length);
       boolean needsScores = false;
       for (int i = 0; i < leafSlices.length; ++i) {
@@ -601,7 +632,11 @@ public class IndexSearcher {
         }
       }
 
-      return collectorManager.reduce(collectors);
+      final T result = collectorManager.reduce(collectors);
+      if (latencyTracker != null) {
+        latencyTracker.record(System.nanoTime() - startNS);
+      }
+      return result;
     }
   }
 
@@ -639,6 +674,10 @@ public class IndexSearcher {
         // continue with the following leaf
         continue;
       }
+      if (weight.canMatch(ctx) == false) {
+        // no document of this segment can match, don't build a scorer
+        continue;
+      }
       BulkScorer scorer = weight.bulkScorer(ctx);
       if (scorer != null) {
         try {
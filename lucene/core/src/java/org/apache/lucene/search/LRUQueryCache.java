@@ -722,6 +722,11 @@ public class LRUQueryCache implements QueryCache, Accountable {
         policy.onUse(getQuery());
       }
 
+      if (in.canMatch(context) == false) {
+        // no need to pull a scorer or to cache an empty set for this segment
+        return null;
+      }
+
       final IndexReader.CacheHelper cacheHelper = in.getCacheHelper(context);
       if (cacheHelper == null) {
         // this segment is not suitable for caching
@@ -787,6 +792,11 @@ public class LRUQueryCache implements QueryCache, Accountable {
       return scorerSupplier.get(Long.MAX_VALUE);
     }
 
+    @Override
+    public boolean canMatch(LeafReaderContext context) throws IOException {
+      return in.canMatch(context);
+    }
+
     @Override
     public IndexReader.CacheHelper getCacheHelper(LeafReaderContext context) {
       return in.getCacheHelper(context);
@@ -798,6 +808,11 @@ public class LRUQueryCache implements QueryCache, Accountable {
         policy.onUse(getQuery());
       }
 
+      if (in.canMatch(context) == false) {
+        // no need to pull a scorer or to cache an empty set for this segment
+        return null;
+      }
+
       final IndexReader.CacheHelper cacheHelper = in.getCacheHelper(context);
       if (cacheHelper == null) {
         // this segment is not suitable for caching
@@ -54,6 +54,11 @@ public class MatchNoDocsQuery extends Query {
         return Explanation.noMatch(reason);
       }
 
+      @Override
+      public boolean canMatch(LeafReaderContext context) {
+        return false;
+      }
+
       @Override
       public Scorer scorer(LeafReaderContext context) throws IOException {
         return null;
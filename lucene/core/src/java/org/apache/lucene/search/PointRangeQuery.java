@@ -224,6 +224,33 @@ public abstract class PointRangeQuery extends Query {
         };
       }
 
+      /** Returns whether the range of values of the field is disjoint from the query range. */
+      private boolean isDisjoint(PointValues values) throws IOException {
+        final byte[] fieldPackedLower = values.getMinPackedValue();
+        final byte[] fieldPackedUpper = values.getMaxPackedValue();
+        for (int i = 0; i < numDims; ++i) {
+          int offset = i * bytesPerDim;
+          if (StringHelper.compare(bytesPerDim, lowerPoint, offset, fieldPackedUpper, offset) > 0
+              || StringHelper.compare(bytesPerDim, upperPoint, offset, fieldPackedLower, offset) < 0) {
+            return true;
+          }
+        }
+        return false;
+      }
+
+      @Override
+      public boolean canMatch(LeafReaderContext context) throws IOException {
+        PointValues values = context.reader().getPointValues(field);
+        if (values == null) {
+          return false;
+        }
+        if (values.getNumDimensions() != numDims || values.getBytesPerDimension() != bytesPerDim) {
+          // let scorerSupplier report the mismatch
+          return true;
+        }
+        return isDisjoint(values) == false;
+      }
+
       @Override
       public ScorerSupplier scorerSupplier(LeafReaderContext context) throws IOException {
         LeafReader reader = context.reader();
@@ -241,6 +268,11 @@ public abstract class PointRangeQuery extends Query {
           throw new IllegalArgumentException("field=\"" + field + "\" was indexed with bytesPerDim=" + values.getBytesPerDimension() + " but this query has bytesPerDim=" + bytesPerDim);
         }
 
+        if (isDisjoint(values)) {
+          // all points are out of bounds
+          return null;
+        }
+
         boolean allDocsMatch;
         if (values.getDocCount() == reader.maxDoc()) {
           final byte[] fieldPackedLower = values.getMinPackedValue();
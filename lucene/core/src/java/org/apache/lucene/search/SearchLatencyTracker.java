@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.search;
+
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the latencies of recent searches, so that percentiles of the
+ * search latency can be computed. Only the latest searches are kept: at most
+ * <code>capacity</code> of them, that ran in the last <code>maxAge</code>.
+ * A single tracker may be shared by several {@link IndexSearcher}s, see
+ * {@link IndexSearcher#setSearchLatencyTracker(SearchLatencyTracker)}.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @lucene.experimental
+ */
+public final class SearchLatencyTracker {
+
+  private final long maxAgeNS;
+  // ring buffers of the end times and the latencies of recent searches
+  private final long[] endTimes;
+  private final long[] latencies;
+  private int next;
+  private long count;
+
+  /**
+   * Create a new tracker.
+   * @param capacity the maximum number of searches to take into account
+   * @param maxAge the maximum age of the searches to take into account
+   * @param unit the unit of <code>maxAge</code>
+   */
+  public SearchLatencyTracker(int capacity, long maxAge, TimeUnit unit) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be at least 1, got " + capacity);
+    }
+    if (maxAge <= 0) {
+      throw new IllegalArgumentException("maxAge must be positive, got " + maxAge);
+    }
+    this.maxAgeNS = unit.toNanos(maxAge);
+    this.endTimes = new long[capacity];
+    this.latencies = new long[capacity];
+  }
+
+  /** Record a search that ended now and took <code>latencyNS</code> nanoseconds. */
+  public void record(long latencyNS) {
+    record(System.nanoTime(), latencyNS);
+  }
+
+  synchronized void record(long endNS, long latencyNS) {
+    endTimes[next] = endNS;
+    latencies[next] = latencyNS;
+    next = (next + 1) % latencies.length;
+    count++;
+  }
+
+  /** Return the total number of searches that have been recorded. */
+  public synchronized long getCount() {
+    return count;
+  }
+
+  /**
+   * Return the given percentile, between 0 and 100, of the latency in
+   * nanoseconds of recent searches, or 0 if no search ran recently.
+   */
+  public long getPercentileNS(double percentile) {
+    return getPercentileNS(percentile, System.nanoTime());
+  }
+
+  synchronized long getPercentileNS(double percentile, long nowNS) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile must be in [0, 100], got " + percentile);
+    }
+    final int size = (int) Math.min(count, latencies.length);
+    final long[] recent = new long[size];
+    int numRecent = 0;
+    for (int i = 0; i < size; ++i) {
+      if (nowNS - endTimes[i] <= maxAgeNS) {
+        recent[numRecent++] = latencies[i];
+      }
+    }
+    if (numRecent == 0) {
+      return 0;
+    }
+    Arrays.sort(recent, 0, numRecent);
+    final int index = (int) Math.ceil(percentile / 100 * numRecent) - 1;
+    return recent[Math.max(0, index)];
+  }
+}
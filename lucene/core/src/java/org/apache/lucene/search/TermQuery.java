@@ -100,6 +100,16 @@ public class TermQuery extends Query {
       return new TermScorer(this, docs, similarity.simScorer(stats, context));
     }
 
+    @Override
+    public boolean canMatch(LeafReaderContext context) throws IOException {
+      if (termStates != null && termStates.wasBuiltFor(ReaderUtil.getTopLevelContext(context))) {
+        return termStates.get(context.ord) != null;
+      }
+      // term states have not been built up front so that segments that have
+      // a cache entry do not need to seek the terms dict, only check the field
+      return context.reader().terms(term.field()) != null;
+    }
+
     @Override
     public IndexReader.CacheHelper getCacheHelper(LeafReaderContext context) {
       return context.reader().getCoreCacheHelper();
@@ -87,6 +87,26 @@ public abstract class Weight {
     return parentQuery;
   }
 
+  /**
+   * Expert: cheaply check whether any document of the given leaf may match.
+   * This is meant to only rely on metadata, such as the min and max values of
+   * a field or whether a term exists, so that callers can skip leaves that
+   * cannot match before pulling a {@link Scorer} or caching this weight.
+   * Returning {@code true} does not mean that a document matches, but if
+   * {@code false} is returned then {@link #scorer} must not return a
+   * {@link Scorer} that matches any document.
+   * <p>
+   * The default implementation returns {@code true}.
+   *
+   * @param context the {@link org.apache.lucene.index.LeafReaderContext} to check
+   * @return {@code false} if no document of the leaf can match
+   * @throws IOException if there is a low-level I/O error
+   * @lucene.experimental
+   */
+  public boolean canMatch(LeafReaderContext context) throws IOException {
+    return true;
+  }
+
   /**
    * Returns a {@link Scorer} which can iterate in order over all matching
    * documents and assign them a score.
@@ -18,10 +18,13 @@ package org.apache.lucene.util.bkd;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.IntFunction;
 
 import org.apache.lucene.codecs.CodecUtil;
@@ -57,7 +60,8 @@ import org.apache.lucene.util.StringHelper;
 //     (monotonic) long[] leafBlockFPs; or we could use MonotonicLongValues ... but then
 //     the index is already plenty small: 60M OSM points --> 1.1 MB with 128 points
 //     per leaf, and you can reduce that by putting more points per leaf
-//   - we could use threads while building; the higher nodes are very parallelizable
+//   - we could use threads while building when merging too, not only when writing
+//     a MutablePointValues, but the offline build shares one ord bitset across subtrees
 
 /** Recursively builds a block KD-tree to assign all incoming points in N-dim space to smaller
  *  and smaller N-dim rectangles (cells) until the number of points in a given
@@ -74,6 +78,10 @@ import org.apache.lucene.util.StringHelper;
  *  <p>This consumes heap during writing: it allocates a <code>LongBitSet(numPoints)</code>,
  *  and then uses up to the specified {@code maxMBSortInHeap} heap space for writing.
  *
+ *  <p>When a {@link ForkJoinPool} is set with {@link #setBuildPool}, disjoint subtrees of fields that are
+ *  written from a {@link MutablePointValues} are built concurrently, and the written bytes are the same as
+ *  with a single-threaded build.
+ *
  *  <p>
  *  <b>NOTE</b>: This can write at most Integer.MAX_VALUE * <code>maxPointsInLeafNode</code> total points.
  *
@@ -95,6 +103,9 @@ public class BKDWriter implements Closeable {
   /** Default maximum number of point in each leaf block */
   public static final int DEFAULT_MAX_POINTS_IN_LEAF_NODE = 1024;
 
+  /** Default maximum number of points of the subtrees that are built by a single task, see {@link #setBuildPool} */
+  public static final int DEFAULT_MAX_POINTS_PER_BUILD_TASK = 256 * DEFAULT_MAX_POINTS_IN_LEAF_NODE;
+
   /** Default maximum heap to use, before spilling to (slower) disk */
   public static final float DEFAULT_MAX_MB_SORT_IN_HEAP = 16.0f;
 
@@ -114,7 +125,6 @@ public class BKDWriter implements Closeable {
   final String tempFileNamePrefix;
   final double maxMBSortInHeap;
 
-  final byte[] scratchDiff;
   final byte[] scratch1;
   final byte[] scratch2;
   final BytesRef scratchBytesRef1 = new BytesRef();
@@ -155,6 +165,9 @@ public class BKDWriter implements Closeable {
 
   private final int maxDoc;
 
+  private ForkJoinPool buildPool;
+  private int maxPointsPerBuildTask = DEFAULT_MAX_POINTS_PER_BUILD_TASK;
+
   public BKDWriter(int maxDoc, Directory tempDir, String tempFileNamePrefix, int numDims, int bytesPerDim,
                    int maxPointsInLeafNode, double maxMBSortInHeap, long totalPointCount, boolean singleValuePerDoc) throws IOException {
     this(maxDoc, tempDir, tempFileNamePrefix, numDims, bytesPerDim, maxPointsInLeafNode, maxMBSortInHeap, totalPointCount, singleValuePerDoc,
@@ -179,7 +192,6 @@ public class BKDWriter implements Closeable {
     docsSeen = new FixedBitSet(maxDoc);
     packedBytesLength = numDims * bytesPerDim;
 
-    scratchDiff = new byte[bytesPerDim];
     scratch1 = new byte[packedBytesLength];
     scratch2 = new byte[packedBytesLength];
     commonPrefixLengths = new int[numDims];
@@ -225,6 +237,24 @@ public class BKDWriter implements Closeable {
     this.maxMBSortInHeap = maxMBSortInHeap;
   }
 
+  /**
+   * Expert: build the tree of fields that are written from a {@link MutablePointValues}
+   * on the given pool, or on the calling thread if <code>pool</code> is <code>null</code>.
+   * Subtrees that have at most <code>maxPointsPerTask</code> points are built by a
+   * single task, into a heap buffer, and larger subtrees are partitioned and then
+   * recursively split into two tasks. The written bytes are the same as with a
+   * single-threaded build, but all leaf blocks of the field are buffered in heap
+   * until the build completes. The {@link MutablePointValues} must support
+   * concurrent access to disjoint ranges of points.
+   */
+  public void setBuildPool(ForkJoinPool pool, int maxPointsPerTask) {
+    if (maxPointsPerTask < maxPointsInLeafNode) {
+      throw new IllegalArgumentException("maxPointsPerTask must be >= maxPointsInLeafNode=" + maxPointsInLeafNode + " (got " + maxPointsPerTask + ")");
+    }
+    this.buildPool = pool;
+    this.maxPointsPerBuildTask = maxPointsPerTask;
+  }
+
   public static void verifyParams(int numDims, int maxPointsInLeafNode, double maxMBSortInHeap, long totalPointCount) {
     // We encode dim in a single byte in the splitPackedValues, but we only expose 4 bits for it now, in case we want to use
     // remaining 4 bits for another purpose later
@@ -480,10 +510,15 @@ public class BKDWriter implements Closeable {
     }
 
     final int[] parentSplits = new int[numDims];
-    build(1, numLeaves, values, 0, Math.toIntExact(pointCount), out,
-          minPackedValue, maxPackedValue, parentSplits,
-          splitPackedValues, leafBlockFPs,
-          new int[maxPointsInLeafNode]);
+    if (buildPool != null && pointCount > maxPointsPerBuildTask) {
+      buildConcurrently(numLeaves, values, Math.toIntExact(pointCount), out,
+          splitPackedValues, leafBlockFPs);
+    } else {
+      build(1, numLeaves, values, 0, Math.toIntExact(pointCount), out,
+            minPackedValue, maxPackedValue, parentSplits,
+            splitPackedValues, leafBlockFPs,
+            new MutableBuildScratch());
+    }
     assert Arrays.equals(parentSplits, new int[numDims]);
 
     long indexFP = out.getFilePointer();
@@ -1444,12 +1479,15 @@ public class BKDWriter implements Closeable {
       }
     }
 
-    // Find which dim has the largest span so we can split on it:
+    // Find which dim has the largest span so we can split on it. We use local
+    // scratch arrays since this may be called concurrently, see setBuildPool:
     int splitDim = -1;
+    final byte[] diff = new byte[bytesPerDim];
+    final byte[] maxDiff = new byte[bytesPerDim];
     for(int dim=0;dim<numDims;dim++) {
-      NumericUtils.subtract(bytesPerDim, dim, maxPackedValue, minPackedValue, scratchDiff);
-      if (splitDim == -1 || StringHelper.compare(bytesPerDim, scratchDiff, 0, scratch1, 0) > 0) {
-        System.arraycopy(scratchDiff, 0, scratch1, 0, bytesPerDim);
+      NumericUtils.subtract(bytesPerDim, dim, maxPackedValue, minPackedValue, diff);
+      if (splitDim == -1 || StringHelper.compare(bytesPerDim, diff, 0, maxDiff, 0) > 0) {
+        System.arraycopy(diff, 0, maxDiff, 0, bytesPerDim);
         splitDim = dim;
       }
     }
@@ -1475,6 +1513,16 @@ public class BKDWriter implements Closeable {
     }
   }
 
+  /** Per-thread scratch state of the build of a {@link MutablePointValues}. */
+  private final class MutableBuildScratch {
+    final int[] commonPrefixLengths = new int[numDims];
+    final BytesRef scratchBytesRef1 = new BytesRef();
+    final BytesRef scratchBytesRef2 = new BytesRef();
+    final byte[] scratch1 = new byte[packedBytesLength];
+    final int[] spareDocIds = new int[maxPointsInLeafNode];
+    final GrowableByteArrayDataOutput scratchOut = new GrowableByteArrayDataOutput(32*1024);
+  }
+
   /* Recursively reorders the provided reader and writes the bkd-tree on the fly; this method is used
    * when we are writing a new segment directly from IndexWriter's indexing buffer (MutablePointsReader). */
   private void build(int nodeID, int leafNodeOffset,
@@ -1484,13 +1532,18 @@ public class BKDWriter implements Closeable {
                      int[] parentSplits,
                      byte[] splitPackedValues,
                      long[] leafBlockFPs,
-                     int[] spareDocIds) throws IOException {
+                     MutableBuildScratch scratch) throws IOException {
 
     if (nodeID >= leafNodeOffset) {
       // leaf node
       final int count = to - from;
       assert count <= maxPointsInLeafNode;
 
+      final int[] commonPrefixLengths = scratch.commonPrefixLengths;
+      final BytesRef scratchBytesRef1 = scratch.scratchBytesRef1;
+      final BytesRef scratchBytesRef2 = scratch.scratchBytesRef2;
+      final GrowableByteArrayDataOutput scratchOut = scratch.scratchOut;
+
       // Compute common prefixes
       Arrays.fill(commonPrefixLengths, bytesPerDim);
       reader.getValue(from, scratchBytesRef1);
@@ -1544,7 +1597,7 @@ public class BKDWriter implements Closeable {
       assert scratchOut.getPosition() == 0;
 
       // Write doc IDs
-      int[] docIDs = spareDocIds;
+      int[] docIDs = scratch.spareDocIds;
       for (int i = from; i < to; ++i) {
         docIDs[i - from] = reader.getDocID(i);
       }
@@ -1553,8 +1606,8 @@ public class BKDWriter implements Closeable {
 
       // Write the common prefixes:
       reader.getValue(from, scratchBytesRef1);
-      System.arraycopy(scratchBytesRef1.bytes, scratchBytesRef1.offset, scratch1, 0, packedBytesLength);
-      writeCommonPrefixes(scratchOut, commonPrefixLengths, scratch1);
+      System.arraycopy(scratchBytesRef1.bytes, scratchBytesRef1.offset, scratch.scratch1, 0, packedBytesLength);
+      writeCommonPrefixes(scratchOut, commonPrefixLengths, scratch.scratch1);
 
       // Write the full values:
       IntFunction<BytesRef> packedValues = new IntFunction<BytesRef>() {
@@ -1573,47 +1626,132 @@ public class BKDWriter implements Closeable {
 
     } else {
       // inner node
-
-      // compute the split dimension and partition around it
-      final int splitDim = split(minPackedValue, maxPackedValue, parentSplits);
       final int mid = (from + to + 1) >>> 1;
-
-      int commonPrefixLen = bytesPerDim;
-      for (int i = 0; i < bytesPerDim; ++i) {
-        if (minPackedValue[splitDim * bytesPerDim + i] != maxPackedValue[splitDim * bytesPerDim + i]) {
-          commonPrefixLen = i;
-          break;
-        }
-      }
-
-      MutablePointsReaderUtils.partition(maxDoc, splitDim, bytesPerDim, commonPrefixLen,
-          reader, from, to, mid, scratchBytesRef1, scratchBytesRef2);
-
-      // set the split value
-      final int address = nodeID * (1+bytesPerDim);
-      splitPackedValues[address] = (byte) splitDim;
-      reader.getValue(mid, scratchBytesRef1);
-      System.arraycopy(scratchBytesRef1.bytes, scratchBytesRef1.offset + splitDim * bytesPerDim, splitPackedValues, address + 1, bytesPerDim);
-
-      byte[] minSplitPackedValue = Arrays.copyOf(minPackedValue, packedBytesLength);
-      byte[] maxSplitPackedValue = Arrays.copyOf(maxPackedValue, packedBytesLength);
-      System.arraycopy(scratchBytesRef1.bytes, scratchBytesRef1.offset + splitDim * bytesPerDim,
-          minSplitPackedValue, splitDim * bytesPerDim, bytesPerDim);
-      System.arraycopy(scratchBytesRef1.bytes, scratchBytesRef1.offset + splitDim * bytesPerDim,
-          maxSplitPackedValue, splitDim * bytesPerDim, bytesPerDim);
+      final byte[] minSplitPackedValue = Arrays.copyOf(minPackedValue, packedBytesLength);
+      final byte[] maxSplitPackedValue = Arrays.copyOf(maxPackedValue, packedBytesLength);
+      final int splitDim = partition(nodeID, reader, from, to, mid, minSplitPackedValue, maxSplitPackedValue,
+          parentSplits, splitPackedValues, scratch);
 
       // recurse
       parentSplits[splitDim]++;
       build(nodeID * 2, leafNodeOffset, reader, from, mid, out,
           minPackedValue, maxSplitPackedValue, parentSplits,
-          splitPackedValues, leafBlockFPs, spareDocIds);
+          splitPackedValues, leafBlockFPs, scratch);
       build(nodeID * 2 + 1, leafNodeOffset, reader, mid, to, out,
           minSplitPackedValue, maxPackedValue, parentSplits,
-          splitPackedValues, leafBlockFPs, spareDocIds);
+          splitPackedValues, leafBlockFPs, scratch);
       parentSplits[splitDim]--;
     }
   }
 
+  /** Computes the split dimension of an inner node, partitions the points of the node
+   *  around <code>mid</code>, records the split value and sets it as the min value of the
+   *  right child in <code>minSplitPackedValue</code> and as the max value of the left child
+   *  in <code>maxSplitPackedValue</code>. Returns the split dimension. */
+  private int partition(int nodeID, MutablePointValues reader, int from, int to, int mid,
+                        byte[] minSplitPackedValue, byte[] maxSplitPackedValue,
+                        int[] parentSplits, byte[] splitPackedValues,
+                        MutableBuildScratch scratch) {
+    // compute the split dimension and partition around it
+    final int splitDim = split(minSplitPackedValue, maxSplitPackedValue, parentSplits);
+
+    int commonPrefixLen = bytesPerDim;
+    for (int i = 0; i < bytesPerDim; ++i) {
+      if (minSplitPackedValue[splitDim * bytesPerDim + i] != maxSplitPackedValue[splitDim * bytesPerDim + i]) {
+        commonPrefixLen = i;
+        break;
+      }
+    }
+
+    final BytesRef scratchBytesRef1 = scratch.scratchBytesRef1;
+    MutablePointsReaderUtils.partition(maxDoc, splitDim, bytesPerDim, commonPrefixLen,
+        reader, from, to, mid, scratchBytesRef1, scratch.scratchBytesRef2);
+
+    // set the split value
+    final int address = nodeID * (1+bytesPerDim);
+    splitPackedValues[address] = (byte) splitDim;
+    reader.getValue(mid, scratchBytesRef1);
+    System.arraycopy(scratchBytesRef1.bytes, scratchBytesRef1.offset + splitDim * bytesPerDim, splitPackedValues, address + 1, bytesPerDim);
+
+    System.arraycopy(scratchBytesRef1.bytes, scratchBytesRef1.offset + splitDim * bytesPerDim,
+        minSplitPackedValue, splitDim * bytesPerDim, bytesPerDim);
+    System.arraycopy(scratchBytesRef1.bytes, scratchBytesRef1.offset + splitDim * bytesPerDim,
+        maxSplitPackedValue, splitDim * bytesPerDim, bytesPerDim);
+    return splitDim;
+  }
+
+  /* Builds the tree of a MutablePointValues on the build pool: nodes that have more than
+   * maxPointsPerBuildTask points are partitioned and their children are built by separate tasks,
+   * and smaller subtrees are written by a single task into a heap buffer. Buffers are then copied
+   * to the output in the order of their leaves, so that the output is the same as with build. */
+  private void buildConcurrently(int numLeaves, MutablePointValues reader, int count, IndexOutput out,
+                                 byte[] splitPackedValues, long[] leafBlockFPs) throws IOException {
+    // the buffer of each subtree, at the index of its first leaf
+    final RAMOutputStream[] buffers = new RAMOutputStream[numLeaves];
+
+    final class BuildTask extends RecursiveAction {
+      final int nodeID, from, to;
+      final byte[] minPackedValue, maxPackedValue;
+      final int[] parentSplits;
+
+      BuildTask(int nodeID, int from, int to, byte[] minPackedValue, byte[] maxPackedValue, int[] parentSplits) {
+        this.nodeID = nodeID;
+        this.from = from;
+        this.to = to;
+        this.minPackedValue = minPackedValue;
+        this.maxPackedValue = maxPackedValue;
+        this.parentSplits = parentSplits;
+      }
+
+      @Override
+      protected void compute() {
+        try {
+          final MutableBuildScratch scratch = new MutableBuildScratch();
+          if (nodeID >= numLeaves || to - from <= maxPointsPerBuildTask) {
+            int firstLeaf = nodeID;
+            while (firstLeaf < numLeaves) {
+              firstLeaf *= 2;
+            }
+            firstLeaf -= numLeaves;
+            final RAMOutputStream buffer = new RAMOutputStream();
+            build(nodeID, numLeaves, reader, from, to, buffer,
+                minPackedValue, maxPackedValue, parentSplits,
+                splitPackedValues, leafBlockFPs, scratch);
+            buffers[firstLeaf] = buffer;
+          } else {
+            final int mid = (from + to + 1) >>> 1;
+            final byte[] minSplitPackedValue = Arrays.copyOf(minPackedValue, packedBytesLength);
+            final byte[] maxSplitPackedValue = Arrays.copyOf(maxPackedValue, packedBytesLength);
+            final int splitDim = partition(nodeID, reader, from, to, mid, minSplitPackedValue, maxSplitPackedValue,
+                parentSplits, splitPackedValues, scratch);
+            final int[] childParentSplits = parentSplits.clone();
+            childParentSplits[splitDim]++;
+            invokeAll(new BuildTask(nodeID * 2, from, mid, minPackedValue, maxSplitPackedValue, childParentSplits),
+                new BuildTask(nodeID * 2 + 1, mid, to, minSplitPackedValue, maxPackedValue, childParentSplits.clone()));
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }
+
+    try {
+      buildPool.invoke(new BuildTask(1, 0, count, minPackedValue.clone(), maxPackedValue.clone(), new int[numDims]));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    // leaf block file pointers are relative to the buffer of their subtree
+    long base = 0;
+    for (int leaf = 0; leaf < numLeaves; ++leaf) {
+      if (buffers[leaf] != null) {
+        base = out.getFilePointer();
+        buffers[leaf].writeTo(out);
+      }
+      leafBlockFPs[leaf] += base;
+    }
+  }
+
   /** The array (sized numDims) of PathSlice describe the cell we have currently recursed to.
   /*  This method is used when we are merging previously written segments, in the numDims > 1 case. */
   private void build(int nodeID, int leafNodeOffset,
@@ -47,6 +47,7 @@ import org.apache.lucene.index.BaseCompressingDocValuesFormatTestCase;
 import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValuesSkipper;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
@@ -63,6 +64,9 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum.SeekStatus;
 import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.DocValuesFieldExistsQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.RAMFile;
@@ -686,4 +690,136 @@ public class TestLucene70DocValuesFormat extends BaseCompressingDocValuesFormatT
     ir.close();
     dir.close();
   }
+
+  public void testNumericSkipIndex() throws IOException {
+    doTestSkipIndex(false, 1);
+    doTestSkipIndex(false, random().nextDouble());
+  }
+
+  public void testSortedNumericSkipIndex() throws IOException {
+    doTestSkipIndex(true, 1);
+    doTestSkipIndex(true, random().nextDouble());
+  }
+
+  private void doTestSkipIndex(boolean multiValued, double density) throws IOException {
+    Directory dir = newDirectory();
+    IndexWriterConfig conf = new IndexWriterConfig(new MockAnalyzer(random()));
+    conf.setCodec(getCodec());
+    IndexWriter writer = new IndexWriter(dir, conf);
+    // values that mostly increase with doc IDs so that the skip index is selective
+    final int numDocs = atLeast(Lucene70DocValuesFormat.SKIP_INDEX_INTERVAL_SIZE * 10);
+    final long[][] values = new long[numDocs][];
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      if (random().nextDouble() < density) {
+        final int numValues = multiValued ? TestUtil.nextInt(random(), 1, 3) : 1;
+        values[i] = new long[numValues];
+        for (int j = 0; j < numValues; ++j) {
+          values[i][j] = i / 100 + random().nextInt(50);
+          if (multiValued) {
+            doc.add(new SortedNumericDocValuesField("dv", values[i][j]));
+          } else {
+            doc.add(new NumericDocValuesField("dv", values[i][j]));
+          }
+        }
+      }
+      writer.addDocument(doc);
+    }
+    writer.forceMerge(1);
+    writer.close();
+
+    DirectoryReader reader = DirectoryReader.open(dir);
+    LeafReader leafReader = getOnlyLeafReader(reader);
+    DocValuesSkipper skipper = DocValues.getSkipper(leafReader, "dv");
+    int docCount = 0;
+    long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+    for (long[] docValues : values) {
+      if (docValues != null) {
+        docCount++;
+        for (long v : docValues) {
+          min = Math.min(min, v);
+          max = Math.max(max, v);
+        }
+      }
+    }
+    if (docCount == 0) {
+      assertNull(skipper);
+    } else {
+      assertNotNull(skipper);
+      assertEquals(docCount, skipper.docCount());
+      assertEquals(min, skipper.minValue());
+      assertEquals(max, skipper.maxValue());
+      for (int level = 0; level < skipper.numLevels(); ++level) {
+        assertEquals(-1, skipper.minDocID(level));
+        assertEquals(-1, skipper.maxDocID(level));
+      }
+      for (int target = random().nextInt(1000); target < numDocs; target += 1 + random().nextInt(2000)) {
+        skipper.advance(target);
+        int firstDoc = target;
+        while (firstDoc < numDocs && values[firstDoc] == null) {
+          firstDoc++;
+        }
+        if (firstDoc == numDocs) {
+          for (int level = 0; level < skipper.numLevels(); ++level) {
+            assertEquals(DocIdSetIterator.NO_MORE_DOCS, skipper.minDocID(level));
+            assertEquals(DocIdSetIterator.NO_MORE_DOCS, skipper.maxDocID(level));
+          }
+          break;
+        }
+        for (int level = 0; level < skipper.numLevels(); ++level) {
+          assertTrue(skipper.minDocID(level) <= firstDoc);
+          assertTrue(skipper.maxDocID(level) >= firstDoc);
+          if (level > 0) {
+            assertTrue(skipper.minDocID(level) <= skipper.minDocID(level - 1));
+            assertTrue(skipper.maxDocID(level) >= skipper.maxDocID(level - 1));
+          }
+          assertNotNull(values[skipper.minDocID(level)]);
+          assertNotNull(values[skipper.maxDocID(level)]);
+          int intervalDocCount = 0;
+          long intervalMin = Long.MAX_VALUE, intervalMax = Long.MIN_VALUE;
+          for (int doc = skipper.minDocID(level); doc <= skipper.maxDocID(level); ++doc) {
+            if (values[doc] != null) {
+              intervalDocCount++;
+              for (long v : values[doc]) {
+                intervalMin = Math.min(intervalMin, v);
+                intervalMax = Math.max(intervalMax, v);
+              }
+            }
+          }
+          assertEquals(intervalDocCount, skipper.docCount(level));
+          assertEquals(intervalMin, skipper.minValue(level));
+          assertEquals(intervalMax, skipper.maxValue(level));
+        }
+      }
+    }
+
+    // range queries must return the same results as brute force, not
+    // wrapping the reader so that the skip index is used
+    IndexSearcher searcher = new IndexSearcher(reader);
+    for (int iter = 0; iter < 20; ++iter) {
+      long lowerValue = random().nextInt(numDocs / 100 + 50);
+      long upperValue = lowerValue + random().nextInt(numDocs / 50 + 1);
+      if (random().nextInt(10) == 0) {
+        lowerValue = Long.MIN_VALUE + 1;
+      }
+      int expected = 0;
+      for (long[] docValues : values) {
+        if (docValues != null) {
+          for (long v : docValues) {
+            if (v >= lowerValue && v <= upperValue) {
+              expected++;
+              break;
+            }
+          }
+        }
+      }
+      Query query = multiValued
+          ? SortedNumericDocValuesField.newSlowRangeQuery("dv", lowerValue, upperValue)
+          : NumericDocValuesField.newSlowRangeQuery("dv", lowerValue, upperValue);
+      assertEquals(expected, searcher.count(query));
+    }
+    assertEquals(docCount, searcher.count(new DocValuesFieldExistsQuery("dv")));
+    reader.close();
+    dir.close();
+  }
 }
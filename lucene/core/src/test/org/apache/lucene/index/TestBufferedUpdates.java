@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.lucene.index.DocValuesUpdate.BinaryDocValuesUpdate;
+import org.apache.lucene.index.DocValuesUpdate.NumericDocValuesUpdate;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
+
+/**
+ * Unit test for {@link BufferedUpdates}
+ */
+public class TestBufferedUpdates extends LuceneTestCase {
+
+  public void testDeleteTerms() throws Exception {
+    BufferedUpdates updates = new BufferedUpdates("seg");
+    assertFalse(updates.any());
+    TreeMap<Term,Integer> expected = new TreeMap<>();
+    int numAdds = atLeast(1000);
+    for (int i = 0; i < numAdds; i++) {
+      String field = "field" + random().nextInt(3);
+      Term term = new Term(field, TestUtil.randomUnicodeString(random(), 10));
+      int docIDUpto = random().nextInt(100);
+      Integer current = expected.get(term);
+      if (current == null || docIDUpto >= current) {
+        expected.put(term, docIDUpto);
+      }
+      updates.addTerm(term, docIDUpto);
+      // the docIDUpto never goes backwards
+      assertEquals(expected.get(term).intValue(), updates.deleteTerms.get(term));
+    }
+    assertTrue(updates.any());
+    assertEquals(expected.size(), updates.deleteTerms.size());
+    assertEquals(expected.keySet(), updates.deleteTerms.keySet());
+    assertEquals(-1, updates.deleteTerms.get(new Term("field0", "missing")));
+    assertTrue(updates.bytesUsed.get() > 0);
+
+    List<Term> visited = new ArrayList<>();
+    updates.deleteTerms.forEachOrdered((field, term, docIDUpto) -> {
+      Term t = new Term(field, BytesRef.deepCopyOf(term));
+      assertEquals(expected.get(t).intValue(), docIDUpto);
+      visited.add(t);
+    });
+    assertEquals(new ArrayList<>(expected.keySet()), visited);
+
+    updates.clear();
+    assertFalse(updates.any());
+    assertEquals(0, updates.deleteTerms.size());
+    assertEquals(0, updates.bytesUsed.get());
+    updates.addTerm(new Term("field", "term"), 42);
+    assertEquals(42, updates.deleteTerms.get(new Term("field", "term")));
+  }
+
+  public void testImmenseDeleteTerm() throws Exception {
+    BufferedUpdates updates = new BufferedUpdates("seg");
+    byte[] bytes = new byte[IndexWriter.MAX_TERM_LENGTH + 1];
+    updates.addTerm(new Term("field", new BytesRef(bytes)), 1);
+    assertFalse(updates.any());
+  }
+
+  public void testNumericUpdatesOrder() throws Exception {
+    BufferedUpdates updates = new BufferedUpdates("seg");
+    updates.addNumericUpdate(new NumericDocValuesUpdate(new Term("id", "a"), "dv", 1L), 5);
+    updates.addNumericUpdate(new NumericDocValuesUpdate(new Term("id", "b"), "dv", 2L), 6);
+    updates.addNumericUpdate(new NumericDocValuesUpdate(new Term("key", "a"), "dv", 3L), 7);
+    // a smaller docIDUpto is ignored
+    updates.addNumericUpdate(new NumericDocValuesUpdate(new Term("id", "b"), "dv", 4L), 2);
+    // updating a term again moves it last
+    updates.addNumericUpdate(new NumericDocValuesUpdate(new Term("id", "a"), "dv", 5L), 8);
+    updates.addNumericUpdate(new NumericDocValuesUpdate(new Term("id", "a"), "other", 6L), 1);
+    assertEquals(5, updates.numNumericUpdates.get());
+    assertEquals(2, updates.numericUpdates.size());
+
+    BufferedUpdates.FieldUpdates fieldUpdates = updates.numericUpdates.get("dv");
+    assertEquals(3, fieldUpdates.size());
+    List<String> visited = new ArrayList<>();
+    fieldUpdates.forEach((termField, term, docIDUpto, numericValue, binaryValue) -> {
+      assertNull(binaryValue);
+      visited.add(termField + ":" + term.utf8ToString() + "=" + numericValue + "@" + docIDUpto);
+    });
+    assertEquals(3, visited.size());
+    assertEquals("id:b=2@6", visited.get(0));
+    assertEquals("key:a=3@7", visited.get(1));
+    assertEquals("id:a=5@8", visited.get(2));
+  }
+
+  public void testBinaryUpdates() throws Exception {
+    BufferedUpdates updates = new BufferedUpdates("seg");
+    Map<String,BytesRef> expected = new HashMap<>();
+    int numUpdates = atLeast(200);
+    for (int i = 0; i < numUpdates; i++) {
+      String id = Integer.toString(random().nextInt(50));
+      // exercise values spanning blocks of the pool
+      BytesRef value = new BytesRef(TestUtil.randomUnicodeString(random(), random().nextInt(10) == 0 ? 40000 : 20));
+      expected.put(id, value);
+      updates.addBinaryUpdate(new BinaryDocValuesUpdate(new Term("id", id), "bdv", value), i);
+    }
+    assertEquals(numUpdates, updates.numBinaryUpdates.get());
+    BufferedUpdates.FieldUpdates fieldUpdates = updates.binaryUpdates.get("bdv");
+    assertEquals(expected.size(), fieldUpdates.size());
+    Map<String,BytesRef> actual = new HashMap<>();
+    fieldUpdates.forEach((termField, term, docIDUpto, numericValue, binaryValue) -> {
+      assertEquals("id", termField);
+      assertNull(actual.put(term.utf8ToString(), BytesRef.deepCopyOf(binaryValue)));
+    });
+    assertEquals(expected, actual);
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestChangesSinceDirectoryReader extends LuceneTestCase {
+
+  public void testChangesSince() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig config = newIndexWriterConfig(new MockAnalyzer(random()))
+        .setSoftDeletesField("soft_delete")
+        .setMergePolicy(new SoftDeletesRetentionMergePolicy("soft_delete",
+            () -> NumericDocValuesField.newSlowRangeQuery("seq_no", 0, Long.MAX_VALUE), newMergePolicy()));
+    IndexWriter writer = new IndexWriter(dir, config);
+    int numIds = atLeast(10);
+    int numOps = atLeast(100);
+    Set<Long> allSeqNos = new HashSet<>();
+    for (long seqNo = 0; seqNo < numOps; seqNo++) {
+      String id = Integer.toString(random().nextInt(numIds));
+      Document doc = new Document();
+      doc.add(new StringField("id", id, Field.Store.NO));
+      doc.add(new NumericDocValuesField("seq_no", seqNo));
+      writer.softUpdateDocument(new Term("id", id), doc, new NumericDocValuesField("soft_delete", 1));
+      allSeqNos.add(seqNo);
+      if (random().nextInt(20) == 0) {
+        writer.commit();
+      }
+    }
+    if (random().nextBoolean()) {
+      writer.forceMerge(1);
+    }
+
+    DirectoryReader reader = DirectoryReader.open(writer);
+    long fromSeqNo = random().nextInt(numOps + 1);
+    DirectoryReader changes = new ChangesSinceDirectoryReader(reader, "seq_no", fromSeqNo);
+    assertEquals(fromSeqNo, ((ChangesSinceDirectoryReader) changes).getFromSeqNo());
+    Set<Long> expected = new HashSet<>();
+    for (long seqNo : allSeqNos) {
+      if (seqNo >= fromSeqNo) {
+        expected.add(seqNo);
+      }
+    }
+    // all operations since fromSeqNo are visible, including the superseded ones
+    assertEquals(expected, TestSoftDeletesRetentionMergePolicy.liveSeqNos(changes));
+    assertEquals(expected.size(), changes.numDocs());
+
+    // hard deletes are not visible
+    writer.deleteDocuments(new Term("id", "0"));
+    DirectoryReader newReader = DirectoryReader.openIfChanged(changes, writer);
+    assertNotNull(newReader);
+    assertTrue(newReader instanceof ChangesSinceDirectoryReader);
+    assertEquals(0, new IndexSearcher(newReader).count(new TermQuery(new Term("id", "0"))));
+    changes.close();
+
+    // only the live operations are visible when soft deletes are hidden
+    DirectoryReader live = new ChangesSinceDirectoryReader(
+        new SoftDeletesDirectoryReaderWrapper(DirectoryReader.open(writer), "soft_delete"), "seq_no", fromSeqNo);
+    for (LeafReaderContext context : live.leaves()) {
+      NumericDocValues softDeletes = context.reader().getNumericDocValues("soft_delete");
+      if (softDeletes != null) {
+        for (int doc = softDeletes.nextDoc(); doc != NumericDocValues.NO_MORE_DOCS; doc = softDeletes.nextDoc()) {
+          assertFalse(context.reader().getLiveDocs().get(doc));
+        }
+      }
+    }
+    IOUtils.close(live, newReader, writer, dir);
+  }
+}
@@ -0,0 +1,350 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.InfoStream;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/** Tests that pending delete-by-term packets that are coalesced, and resolved
+ *  by several threads, give the same live docs and doc values as applying
+ *  every operation in order. */
+public class TestConcurrentTermDeletes extends LuceneTestCase {
+
+  private static final long DELETED = -1;
+
+  private static Document newDoc(int id, long value) {
+    Document doc = new Document();
+    doc.add(new StringField("id", Integer.toString(id), Field.Store.NO));
+    doc.add(new NumericDocValuesField("id", id));
+    doc.add(new NumericDocValuesField("value", value));
+    return doc;
+  }
+
+  /** Returns the ids of the live documents, after checking that no id has
+   *  several live documents, and that their values are the expected ones if
+   *  <code>expectedValues</code> is not null. */
+  private static FixedBitSet liveIds(IndexReader reader, int numIds, long[] expectedValues) throws IOException {
+    FixedBitSet seen = new FixedBitSet(numIds);
+    for (LeafReaderContext context : reader.leaves()) {
+      LeafReader leaf = context.reader();
+      Bits liveDocs = leaf.getLiveDocs();
+      NumericDocValues ids = leaf.getNumericDocValues("id");
+      NumericDocValues values = leaf.getNumericDocValues("value");
+      if (ids == null) {
+        continue;
+      }
+      for (int doc = ids.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = ids.nextDoc()) {
+        if (liveDocs != null && liveDocs.get(doc) == false) {
+          continue;
+        }
+        int id = (int) ids.longValue();
+        assertFalse("id=" + id + " has several live documents", seen.getAndSet(id));
+        if (expectedValues != null) {
+          assertTrue(values.advanceExact(doc));
+          assertEquals("id=" + id, expectedValues[id], values.longValue());
+        }
+      }
+    }
+    return seen;
+  }
+
+  /** Pending packets are coalesced into the first one that is applied, and a
+   *  thread that applies one of the coalesced packets meanwhile resolves the
+   *  remaining segments. */
+  public void testCoalesceAndHelp() throws Exception {
+    final AtomicInteger coalesced = new AtomicInteger();
+    final CountDownLatch applyStarted = new CountDownLatch(1);
+    final CountDownLatch helped = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicReference<Thread> blockedThread = new AtomicReference<>();
+    InfoStream infoStream = new InfoStream() {
+      @Override
+      public void close() {}
+
+      @Override
+      public void message(String component, String message) {
+        if ("TP".equals(component)) {
+          if ("startApplyTermDeletes".equals(message) && Thread.currentThread() == blockedThread.get()) {
+            // block the thread that coalesced the packets before it resolves any segment
+            applyStarted.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              throw new ThreadInterruptedException(e);
+            }
+          }
+        } else if (message.contains("coalesced with")) {
+          coalesced.incrementAndGet();
+        } else if (message.startsWith("helped resolve del terms")) {
+          helped.countDown();
+        }
+      }
+
+      @Override
+      public boolean isEnabled(String component) {
+        return "TP".equals(component) || "BD".equals(component);
+      }
+    };
+
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()));
+    iwc.setMergePolicy(NoMergePolicy.INSTANCE);
+    iwc.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    iwc.setRAMBufferSizeMB(IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB);
+    iwc.setInfoStream(infoStream);
+    final IndexWriter w = new IndexWriter(dir, iwc);
+    w.enableTestPoints = true;
+
+    final int numSegments = TestUtil.nextInt(random(), 2, 10);
+    final int docsPerSegment = atLeast(20);
+    final int numIds = numSegments * docsPerSegment;
+    for (int id = 0; id < numIds; id++) {
+      w.addDocument(newDoc(id, id));
+      if ((id + 1) % docsPerSegment == 0) {
+        w.flush();
+      }
+    }
+
+    // publish packets without resolving them
+    final FrozenBufferedUpdates[] packets = new FrozenBufferedUpdates[TestUtil.nextInt(random(), 2, 10)];
+    FixedBitSet deleted = new FixedBitSet(numIds);
+    for (int i = 0; i < packets.length; i++) {
+      BufferedUpdates updates = new BufferedUpdates("test");
+      int numTerms = TestUtil.nextInt(random(), 1, 20);
+      for (int j = 0; j < numTerms; j++) {
+        // some ids are deleted by several packets
+        int id = random().nextInt(numIds);
+        updates.addTerm(new Term("id", Integer.toString(id)), BufferedUpdates.MAX_INT);
+        deleted.set(id);
+      }
+      packets[i] = new FrozenBufferedUpdates(infoStream, updates, null);
+      w.publishFrozenUpdates(packets[i]);
+    }
+
+    final FrozenBufferedUpdates first = packets[random().nextInt(packets.length)];
+    Thread applier = new Thread() {
+      @Override
+      public void run() {
+        try {
+          first.apply(w);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    blockedThread.set(applier);
+    applier.start();
+    applyStarted.await();
+    assertEquals(1, coalesced.get());
+
+    FrozenBufferedUpdates other;
+    do {
+      other = packets[random().nextInt(packets.length)];
+    } while (other == first);
+    final FrozenBufferedUpdates second = other;
+    Thread helper = new Thread() {
+      @Override
+      public void run() {
+        try {
+          second.apply(w);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    helper.start();
+    // the helper resolves all segments while the first thread is blocked
+    helped.await();
+    release.countDown();
+    applier.join();
+    helper.join();
+
+    for (FrozenBufferedUpdates packet : packets) {
+      assertEquals(0, packet.applied.getCount());
+    }
+    assertEquals(0, w.bufferedUpdatesStream.getPendingUpdatesCount());
+
+    DirectoryReader reader = DirectoryReader.open(w);
+    assertEquals(numIds - deleted.cardinality(), reader.numDocs());
+    FixedBitSet live = liveIds(reader, numIds, null);
+    for (int id = 0; id < numIds; id++) {
+      assertEquals("id=" + id, deleted.get(id) == false, live.get(id));
+    }
+    reader.close();
+    IOUtils.close(w, dir);
+  }
+
+  public void testConcurrentDeletesAndUpdates() throws Exception {
+    final AtomicInteger coalesced = new AtomicInteger();
+    final AtomicInteger helped = new AtomicInteger();
+    InfoStream infoStream = new InfoStream() {
+      @Override
+      public void close() {}
+
+      @Override
+      public void message(String component, String message) {
+        if (message.contains("coalesced with")) {
+          coalesced.incrementAndGet();
+        } else if (message.startsWith("helped resolve del terms")) {
+          helped.incrementAndGet();
+        }
+      }
+
+      @Override
+      public boolean isEnabled(String component) {
+        return "BD".equals(component);
+      }
+    };
+
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()));
+    // flush often, so that many packets are pending against many segments
+    iwc.setMaxBufferedDocs(TestUtil.nextInt(random(), 2, 20));
+    iwc.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    iwc.setInfoStream(infoStream);
+    final IndexWriter w = new IndexWriter(dir, iwc);
+
+    final int numThreads = TestUtil.nextInt(random(), 3, 6);
+    final int idsPerThread = atLeast(50);
+    final int numIds = numThreads * idsPerThread;
+    final int iters = atLeast(1000);
+    // each thread owns a range of ids, so that the expected state only
+    // depends on the order of the operations of each thread
+    final long[] values = new long[numIds];
+    for (int id = 0; id < numIds; id++) {
+      values[id] = random().nextInt(1000);
+      w.addDocument(newDoc(id, values[id]));
+    }
+
+    final CountDownLatch startingGun = new CountDownLatch(1);
+    final AtomicBoolean done = new AtomicBoolean();
+    Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      final int firstId = t * idsPerThread;
+      final Random random = new Random(random().nextLong());
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            startingGun.await();
+            for (int iter = 0; iter < iters; iter++) {
+              int id = firstId + random.nextInt(idsPerThread);
+              Term idTerm = new Term("id", Integer.toString(id));
+              long value = random.nextInt(1000);
+              switch (random.nextInt(10)) {
+                case 0:
+                case 1:
+                case 2:
+                case 3:
+                  w.updateDocument(idTerm, newDoc(id, value));
+                  values[id] = value;
+                  break;
+                case 4:
+                  if (values[id] == DELETED) {
+                    w.addDocument(newDoc(id, value));
+                    values[id] = value;
+                  }
+                  break;
+                case 5:
+                case 6:
+                case 7:
+                  w.deleteDocuments(idTerm);
+                  values[id] = DELETED;
+                  break;
+                case 8:
+                  // doc values updates and queries are applied in packets that are not coalesced
+                  w.updateNumericDocValue(idTerm, "value", value);
+                  if (values[id] != DELETED) {
+                    values[id] = value;
+                  }
+                  break;
+                default:
+                  w.deleteDocuments(new TermQuery(idTerm));
+                  values[id] = DELETED;
+                  break;
+              }
+            }
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      threads[t].start();
+    }
+
+    Thread reopener = new Thread() {
+      @Override
+      public void run() {
+        try {
+          startingGun.await();
+          DirectoryReader reader = DirectoryReader.open(w);
+          while (done.get() == false) {
+            // NRT reopens wait for, and help with, pending deletes
+            DirectoryReader newReader = DirectoryReader.openIfChanged(reader, w);
+            if (newReader != null) {
+              reader.close();
+              reader = newReader;
+              liveIds(reader, numIds, null);
+            }
+          }
+          reader.close();
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    reopener.start();
+
+    startingGun.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    done.set(true);
+    reopener.join();
+
+    DirectoryReader reader = DirectoryReader.open(w);
+    FixedBitSet live = liveIds(reader, numIds, values);
+    for (int id = 0; id < numIds; id++) {
+      assertEquals("id=" + id, values[id] != DELETED, live.get(id));
+    }
+    if (VERBOSE) {
+      System.out.println("TEST: " + coalesced.get() + " coalesced applies, " + helped.get() + " helping threads");
+    }
+    reader.close();
+    IOUtils.close(w, dir);
+  }
+}
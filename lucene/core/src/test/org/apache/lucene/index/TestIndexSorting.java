@@ -19,6 +19,7 @@ package org.apache.lucene.index;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -2099,6 +2100,126 @@ public class TestIndexSorting extends LuceneTestCase {
     IOUtils.close(w1, w2, r1, r2, dir1, dir2);
   }
 
+  public void testSortedFlushStoredFieldsAndTermVectors() throws Exception {
+    int numDocs = atLeast(200);
+
+    FieldType TERM_VECTORS_TYPE = new FieldType(TextField.TYPE_NOT_STORED);
+    TERM_VECTORS_TYPE.setStoreTermVectors(true);
+    TERM_VECTORS_TYPE.setStoreTermVectorPositions(true);
+    TERM_VECTORS_TYPE.setStoreTermVectorOffsets(true);
+    TERM_VECTORS_TYPE.setStoreTermVectorPayloads(true);
+    TERM_VECTORS_TYPE.freeze();
+
+    List<Document> docs = new ArrayList<>();
+    for (int i = 0; i < numDocs; i++) {
+      int id = i * 10;
+      Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(id), Store.YES));
+      doc.add(new NumericDocValuesField("numeric", id));
+      doc.add(new StoredField("int", id));
+      doc.add(new StoredField("long", (long) id << 32));
+      doc.add(new StoredField("float", id / 3f));
+      doc.add(new StoredField("double", id / 7d));
+      doc.add(new StoredField("binary", new BytesRef(TestUtil.randomSimpleString(random()))));
+      if (random().nextBoolean()) {
+        // documents without stored fields or vectors
+        doc.add(new Field("term_vectors", new PositionsTokenStream(), TERM_VECTORS_TYPE));
+        doc.add(new TextField("text_vectors", TestUtil.randomSimpleString(random()) + " " + id, Store.YES));
+      }
+      docs.add(doc);
+    }
+
+    // first index documents in the expected order, without index sorting
+    Directory dir1 = newDirectory();
+    IndexWriterConfig iwc1 = new IndexWriterConfig(new MockAnalyzer(random()));
+    iwc1.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    iwc1.setRAMBufferSizeMB(256);
+    IndexWriter w1 = new IndexWriter(dir1, iwc1);
+    for (Document doc : docs) {
+      if (doc.getField("term_vectors") != null) {
+        ((PositionsTokenStream) ((Field) doc.getField("term_vectors")).tokenStreamValue()).setId(Integer.parseInt(doc.get("id")));
+      }
+      w1.addDocument(doc);
+    }
+
+    // then shuffled documents, that get sorted by the flush of a single segment
+    Directory dir2 = newDirectory();
+    IndexWriterConfig iwc2 = new IndexWriterConfig(new MockAnalyzer(random()));
+    iwc2.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    iwc2.setRAMBufferSizeMB(256);
+    Sort sort = new Sort(new SortField("numeric", SortField.Type.LONG));
+    iwc2.setIndexSort(sort);
+    IndexWriter w2 = new IndexWriter(dir2, iwc2);
+    Collections.shuffle(docs, random());
+    for (Document doc : docs) {
+      if (doc.getField("term_vectors") != null) {
+        ((PositionsTokenStream) ((Field) doc.getField("term_vectors")).tokenStreamValue()).setId(Integer.parseInt(doc.get("id")));
+      }
+      w2.addDocument(doc);
+    }
+
+    DirectoryReader r1 = DirectoryReader.open(w1);
+    DirectoryReader r2 = DirectoryReader.open(w2);
+    assertEquals(1, r2.leaves().size());
+    assertEquals(sort, getOnlyLeafReader(r2).getMetaData().getSort());
+    assertReaderEquals("left: sorted by hand; right: sorted on flush", r1, r2);
+    IOUtils.close(w1, w2, r1, r2, dir1, dir2);
+  }
+
+  public void testRadixSortMatchesComparatorSort() throws Exception {
+    int iters = atLeast(20);
+    for (int iter = 0; iter < iters; iter++) {
+      final int maxDoc = TestUtil.nextInt(random(), 1, 2000);
+      final int numFields = TestUtil.nextInt(random(), 1, 3);
+      Sorter.DocComparator[] keyed = new Sorter.DocComparator[numFields];
+      Sorter.DocComparator[] plain = new Sorter.DocComparator[numFields];
+      for (int i = 0; i < numFields; i++) {
+        final long[] keys = new long[maxDoc];
+        final int numDistinct = TestUtil.nextInt(random(), 1, 100);
+        final long[] distinct = new long[numDistinct];
+        for (int j = 0; j < numDistinct; j++) {
+          distinct[j] = random().nextBoolean() ? random().nextLong() : random().nextInt(10) - 5;
+        }
+        for (int doc = 0; doc < maxDoc; doc++) {
+          keys[doc] = distinct[random().nextInt(numDistinct)];
+        }
+        if (random().nextInt(5) == 0) {
+          Arrays.sort(keys); // already sorted
+        }
+        final Sorter.KeyedDocComparator comparator = new Sorter.KeyedDocComparator() {
+          @Override
+          public long key(int docID) {
+            return keys[docID];
+          }
+
+          @Override
+          public int compare(int docID1, int docID2) {
+            return Long.compare(keys[docID1], keys[docID2]);
+          }
+        };
+        keyed[i] = comparator;
+        plain[i] = new Sorter.DocComparator() {
+          @Override
+          public int compare(int docID1, int docID2) {
+            return comparator.compare(docID1, docID2);
+          }
+        };
+      }
+      Sorter sorter = new Sorter(new Sort(new SortField("foo", SortField.Type.LONG)));
+      Sorter.DocMap expected = sorter.sort(maxDoc, plain);
+      Sorter.DocMap actual = sorter.sort(maxDoc, keyed);
+      if (expected == null) {
+        assertNull(actual);
+      } else {
+        assertNotNull(actual);
+        assertTrue(Sorter.isConsistent(actual));
+        for (int doc = 0; doc < maxDoc; doc++) {
+          assertEquals(expected.newToOld(doc), actual.newToOld(doc));
+        }
+      }
+    }
+  }
+
   private static final class RandomDoc {
     public final int id;
     public final int intValue;
@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.NamedThreadFactory;
+import org.apache.lucene.util.TestUtil;
+
+public class TestIndexWriterAddDocumentsConcurrently extends LuceneTestCase {
+
+  private static ExecutorService newExecutor(int numThreads) {
+    return new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        new NamedThreadFactory("TestIndexWriterAddDocumentsConcurrently"));
+  }
+
+  private static Document newDoc(int id) {
+    Document doc = new Document();
+    doc.add(new StringField("id", Integer.toString(id), Field.Store.NO));
+    doc.add(new TextField("body", "some text " + id, Field.Store.NO));
+    doc.add(new NumericDocValuesField("num", id));
+    return doc;
+  }
+
+  public void testAddDocuments() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random())));
+    int numThreads = TestUtil.nextInt(random(), 1, 4);
+    ExecutorService executor = newExecutor(numThreads);
+    int numDocs = atLeast(2000);
+    List<Document> docs = new ArrayList<>();
+    for (int i = 0; i < numDocs; i++) {
+      docs.add(newDoc(i));
+    }
+    long seqNo = writer.addDocumentsConcurrently(docs, executor, TestUtil.nextInt(random(), 1, numThreads));
+    assertTrue(seqNo <= writer.getMaxCompletedSequenceNumber());
+
+    DirectoryReader reader = DirectoryReader.open(writer);
+    assertEquals(numDocs, reader.numDocs());
+    FixedBitSet seen = new FixedBitSet(numDocs);
+    for (LeafReaderContext context : reader.leaves()) {
+      NumericDocValues values = context.reader().getNumericDocValues("num");
+      for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+        assertFalse(seen.getAndSet((int) values.longValue()));
+      }
+    }
+    assertEquals(numDocs, seen.cardinality());
+
+    // no documents
+    long emptySeqNo = writer.addDocumentsConcurrently(Collections.<Document>emptyList(), executor, numThreads);
+    assertTrue(emptySeqNo > seqNo);
+    reader.close();
+    TestUtil.shutdownExecutorService(executor);
+    IOUtils.close(writer, dir);
+  }
+
+  public void testAddDocumentBlocks() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random())));
+    ExecutorService executor = newExecutor(4);
+    int numBlocks = atLeast(500);
+    List<List<Document>> blocks = new ArrayList<>();
+    int numDocs = 0;
+    for (int i = 0; i < numBlocks; i++) {
+      List<Document> block = new ArrayList<>();
+      int blockSize = TestUtil.nextInt(random(), 1, 5);
+      for (int j = 0; j < blockSize; j++) {
+        Document doc = newDoc(numDocs++);
+        doc.add(new StringField("block", Integer.toString(i), Field.Store.NO));
+        doc.add(new NumericDocValuesField("block_size", blockSize));
+        doc.add(new NumericDocValuesField("position", j));
+        block.add(doc);
+      }
+      blocks.add(block);
+    }
+    writer.addDocumentBlocksConcurrently(blocks, executor, 4);
+
+    DirectoryReader reader = DirectoryReader.open(writer);
+    assertEquals(numDocs, reader.numDocs());
+    for (LeafReaderContext context : reader.leaves()) {
+      LeafReader leaf = context.reader();
+      NumericDocValues blockSizes = leaf.getNumericDocValues("block_size");
+      NumericDocValues positions = leaf.getNumericDocValues("position");
+      // every block is stored contiguously, in order
+      int expectedPosition = 0;
+      for (int doc = 0; doc < leaf.maxDoc(); doc++) {
+        assertEquals(doc, blockSizes.advance(doc));
+        assertEquals(doc, positions.advance(doc));
+        assertEquals(expectedPosition, positions.longValue());
+        expectedPosition = (expectedPosition + 1) % (int) blockSizes.longValue();
+      }
+      assertEquals(0, expectedPosition);
+    }
+    reader.close();
+    TestUtil.shutdownExecutorService(executor);
+    IOUtils.close(writer, dir);
+  }
+
+  public void testExceptionInIterator() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random())));
+    ExecutorService executor = newExecutor(2);
+    int numDocs = atLeast(500);
+    Iterable<Document> docs = () -> new Iterator<Document>() {
+      int upTo = 0;
+
+      @Override
+      public boolean hasNext() {
+        return true;
+      }
+
+      @Override
+      public Document next() {
+        if (upTo == numDocs) {
+          throw new IllegalStateException("fake exception");
+        }
+        return newDoc(upTo++);
+      }
+    };
+    IllegalStateException expected = expectThrows(IllegalStateException.class, () -> {
+      writer.addDocumentsConcurrently(docs, executor, 2);
+    });
+    assertEquals("fake exception", expected.getMessage());
+    // documents that were pulled before the exception are indexed
+    DirectoryReader reader = DirectoryReader.open(writer);
+    assertTrue(reader.numDocs() <= numDocs);
+    reader.close();
+    TestUtil.shutdownExecutorService(executor);
+    IOUtils.close(writer, dir);
+  }
+
+  public void testBoundedPendingDocuments() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random())));
+    int parallelism = TestUtil.nextInt(random(), 1, 3);
+    ExecutorService executor = newExecutor(parallelism);
+    int numDocs = atLeast(2000);
+    AtomicInteger pulled = new AtomicInteger();
+    AtomicInteger started = new AtomicInteger();
+    AtomicInteger maxPending = new AtomicInteger();
+    Iterable<Iterable<IndexableField>> docs = () -> new Iterator<Iterable<IndexableField>>() {
+      int upTo = 0;
+
+      @Override
+      public boolean hasNext() {
+        return upTo < numDocs;
+      }
+
+      @Override
+      public Iterable<IndexableField> next() {
+        final Document doc = newDoc(upTo++);
+        maxPending.accumulateAndGet(pulled.incrementAndGet() - started.get(), Math::max);
+        // the indexing chain iterates the fields of a document once
+        return () -> {
+          started.incrementAndGet();
+          return doc.iterator();
+        };
+      }
+    };
+    writer.addDocumentsConcurrently(docs, executor, parallelism);
+    assertEquals(numDocs, pulled.get());
+    assertEquals(numDocs, started.get());
+    // documents are only pulled for chunks that own a permit
+    assertTrue("maxPending=" + maxPending.get(), maxPending.get() <= parallelism * IndexWriter.CONCURRENT_ADD_CHUNK_SIZE);
+    DirectoryReader reader = DirectoryReader.open(writer);
+    assertEquals(numDocs, reader.numDocs());
+    reader.close();
+    TestUtil.shutdownExecutorService(executor);
+    IOUtils.close(writer, dir);
+  }
+
+  public void testNonAbortingExceptionInDocument() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random())));
+    ExecutorService executor = newExecutor(2);
+    List<Document> docs = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      docs.add(newDoc(i));
+    }
+    Document bad = new Document();
+    // a term that is too long is rejected without aborting the writer
+    bad.add(new StringField("id", TestUtil.randomSimpleString(random(), IndexWriter.MAX_TERM_LENGTH + 1, IndexWriter.MAX_TERM_LENGTH + 10), Field.Store.NO));
+    docs.add(random().nextInt(docs.size()), bad);
+    expectThrows(IllegalArgumentException.class, () -> {
+      writer.addDocumentsConcurrently(docs, executor, 2);
+    });
+    assertTrue(writer.isOpen());
+    writer.addDocument(newDoc(300));
+    writer.commit();
+    TestUtil.shutdownExecutorService(executor);
+    IOUtils.close(writer, dir);
+  }
+
+  public void testIllegalParallelism() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random())));
+    ExecutorService executor = newExecutor(1);
+    IllegalArgumentException expected = expectThrows(IllegalArgumentException.class, () -> {
+      writer.addDocumentsConcurrently(Collections.singletonList(newDoc(0)), executor, 0);
+    });
+    assertEquals("parallelism must be at least 1, got 0", expected.getMessage());
+    TestUtil.shutdownExecutorService(executor);
+    IOUtils.close(writer, dir);
+  }
+}
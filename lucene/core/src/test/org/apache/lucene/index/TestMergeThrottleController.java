@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.search.SearchLatencyTracker;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestMergeThrottleController extends LuceneTestCase {
+
+  private static MergeThrottleController constant(double pressure) {
+    return new MergeThrottleController() {
+      @Override
+      public double getPressure() {
+        return pressure;
+      }
+    };
+  }
+
+  public void testMax() {
+    assertEquals(0.7, MergeThrottleController.max(constant(0.2), constant(0.7), constant(0)).getPressure(), 0d);
+    assertEquals(0, MergeThrottleController.max(constant(0)).getPressure(), 0d);
+    expectThrows(IllegalArgumentException.class, () -> {
+      MergeThrottleController.max();
+    });
+  }
+
+  public void testSearchLatency() {
+    SearchLatencyTracker tracker = new SearchLatencyTracker(100, 1, TimeUnit.HOURS);
+    MergeThrottleController controller = new SearchLatencyMergeThrottleController(tracker, 50, 10, 30, TimeUnit.MILLISECONDS);
+    // no searches
+    assertEquals(0, controller.getPressure(), 0d);
+    for (int i = 0; i < 10; ++i) {
+      tracker.record(TimeUnit.MILLISECONDS.toNanos(5));
+    }
+    assertEquals(0, controller.getPressure(), 0d);
+    for (int i = 0; i < 20; ++i) {
+      tracker.record(TimeUnit.MILLISECONDS.toNanos(20));
+    }
+    assertEquals(0.5, controller.getPressure(), 1e-9);
+    for (int i = 0; i < 100; ++i) {
+      tracker.record(TimeUnit.MILLISECONDS.toNanos(100));
+    }
+    assertEquals(1, controller.getPressure(), 0d);
+
+    expectThrows(IllegalArgumentException.class, () -> {
+      new SearchLatencyMergeThrottleController(tracker, 50, 10, 10, TimeUnit.MILLISECONDS);
+    });
+    expectThrows(IllegalArgumentException.class, () -> {
+      new SearchLatencyMergeThrottleController(tracker, 101, 10, 20, TimeUnit.MILLISECONDS);
+    });
+  }
+
+  public void testDiskQueue() throws Exception {
+    Path diskStats = createTempDir().resolve("diskstats");
+    Files.write(diskStats, (
+          "   8       0 sda 5 0 40 1 6 0 48 2 0 3 3\n"
+        + "   8       1 sda1 5 0 40 1 6 0 48 2 12 3 3\n"
+        + " 259       0 nvme0n1 5 0 40 1 6 0 48 2 24 3 3 0 0 0 0\n").getBytes(StandardCharsets.UTF_8));
+    assertEquals(0, new DiskQueueMergeThrottleController(diskStats, "sda", 4, 20).getPressure(), 0d);
+    assertEquals(0.5, new DiskQueueMergeThrottleController(diskStats, "sda1", 4, 20).getPressure(), 0d);
+    assertEquals(1, new DiskQueueMergeThrottleController(diskStats, "nvme0n1", 4, 20).getPressure(), 0d);
+    // unknown device or missing file
+    assertEquals(0, new DiskQueueMergeThrottleController(diskStats, "sdb", 4, 20).getPressure(), 0d);
+    assertEquals(0, new DiskQueueMergeThrottleController(diskStats.resolveSibling("missing"), "sda", 4, 20).getPressure(), 0d);
+    expectThrows(IllegalArgumentException.class, () -> {
+      new DiskQueueMergeThrottleController(diskStats, "sda", 4, 2);
+    });
+  }
+
+  public void testConcurrentMergeSchedulerPollsController() throws Exception {
+    AtomicInteger polls = new AtomicInteger();
+    MergeThrottleController controller = new MergeThrottleController() {
+      @Override
+      public double getPressure() {
+        polls.incrementAndGet();
+        return 1;
+      }
+    };
+    ConcurrentMergeScheduler cms = new ConcurrentMergeScheduler();
+    cms.setMaxMergesAndThreads(6, 3);
+    cms.setMergeThrottleController(controller, 0);
+    assertSame(controller, cms.getMergeThrottleController());
+    assertEquals(0, cms.getMergeThrottlePressure(), 0d);
+    assertEquals(3, cms.getEffectiveMaxThreadCount());
+    assertEquals(cms.getIORateLimitMBPerSec(), cms.getEffectiveIORateLimitMBPerSec(), 0d);
+
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()))
+        .setMergeScheduler(cms)
+        .setMaxBufferedDocs(100)
+        .setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH)
+        .setMergePolicy(newLogMergePolicy(10));
+    IndexWriter w = new IndexWriter(dir, iwc);
+    // incompressible stored fields, so that merges write enough bytes to
+    // check their rate limiter
+    byte[] bytes = new byte[4096];
+    for (int i = 0; i < 1000; ++i) {
+      Document doc = new Document();
+      random().nextBytes(bytes);
+      doc.add(new StoredField("bytes", bytes));
+      w.addDocument(doc);
+    }
+    w.forceMerge(1);
+
+    assertTrue(polls.get() > 0);
+    assertEquals(1, cms.getMergeThrottlePressure(), 0d);
+    assertEquals(1, cms.getEffectiveMaxThreadCount());
+    assertEquals(5, cms.getEffectiveIORateLimitMBPerSec(), 1e-9);
+    assertTrue(cms.toString().contains("throttleController="));
+
+    cms.setMergeThrottleController(null, 0);
+    assertEquals(0, cms.getMergeThrottlePressure(), 0d);
+    assertEquals(3, cms.getEffectiveMaxThreadCount());
+    assertEquals(cms.getIORateLimitMBPerSec(), cms.getEffectiveIORateLimitMBPerSec(), 0d);
+    IOUtils.close(w, dir);
+  }
+}
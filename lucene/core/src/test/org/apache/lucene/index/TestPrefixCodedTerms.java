@@ -16,11 +16,16 @@
  */
 package org.apache.lucene.index;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 import org.apache.lucene.index.PrefixCodedTerms.TermIterator;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.lucene.util.TestUtil;
 
@@ -70,4 +75,54 @@ public class TestPrefixCodedTerms extends LuceneTestCase {
 
     assertFalse(expected.hasNext());
   }
+
+  public void testMergeRandom() {
+    int numTerms = TestUtil.nextInt(random(), 2, 10);
+    List<PrefixCodedTerms> pbs = new ArrayList<>();
+    TreeMap<Term,Long> expected = new TreeMap<>();
+    for (int i = 0; i < numTerms; i++) {
+      long delGen = i + 1;
+      Set<Term> terms = new TreeSet<>();
+      int nterms = atLeast(100);
+      for (int j = 0; j < nterms; j++) {
+        // few distinct fields and terms, so that the same term is often in several of them
+        Term term = new Term("field" + random().nextInt(3), TestUtil.randomSimpleString(random(), 1, 3));
+        terms.add(term);
+        expected.put(term, delGen);
+      }
+      PrefixCodedTerms.Builder b = new PrefixCodedTerms.Builder();
+      for (Term term : terms) {
+        b.add(term);
+      }
+      PrefixCodedTerms pb = b.finish();
+      pb.setDelGen(delGen);
+      pbs.add(pb);
+    }
+
+    MergedPrefixCodedTermsIterator iter = new MergedPrefixCodedTermsIterator(pbs);
+    Iterator<Map.Entry<Term,Long>> expectedIter = expected.entrySet().iterator();
+    Term last = null;
+    String lastField = null;
+    BytesRef bytes;
+    while ((bytes = iter.next()) != null) {
+      Term term = new Term(iter.field(), BytesRef.deepCopyOf(bytes));
+      if (term.equals(last)) {
+        // duplicates are returned from the newest to the oldest
+        assertSame(lastField, iter.field());
+        continue;
+      }
+      if (last != null && term.field().equals(last.field())) {
+        // the same field instance is returned for all terms of a field
+        assertSame(lastField, iter.field());
+      }
+      assertTrue(expectedIter.hasNext());
+      Map.Entry<Term,Long> next = expectedIter.next();
+      assertEquals(next.getKey(), term);
+      // the newest occurrence comes first
+      assertEquals(next.getValue().longValue(), iter.delGen());
+      last = term;
+      lastField = iter.field();
+    }
+    assertFalse(expectedIter.hasNext());
+  }
 }
@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestSoftDeletesRetentionMergePolicy extends LuceneTestCase {
+
+  private static final String SOFT_DELETES = "soft_delete";
+
+  private static Document newDoc(String id, long seqNo) {
+    Document doc = new Document();
+    doc.add(new StringField("id", id, Field.Store.YES));
+    doc.add(new NumericDocValuesField("seq_no", seqNo));
+    return doc;
+  }
+
+  private static Field softDelete() {
+    return new NumericDocValuesField(SOFT_DELETES, 1);
+  }
+
+  public void testSoftUpdateDocument() throws IOException {
+    Directory dir = newDirectory();
+    IndexWriterConfig config = newIndexWriterConfig(new MockAnalyzer(random()))
+        .setSoftDeletesField(SOFT_DELETES);
+    IndexWriter writer = new IndexWriter(dir, config);
+    writer.addDocument(newDoc("1", 1));
+    writer.commit();
+    writer.softUpdateDocument(new Term("id", "1"), newDoc("1", 2), softDelete());
+    // the soft update also applies to the buffered document:
+    writer.softUpdateDocument(new Term("id", "1"), newDoc("1", 3), softDelete());
+
+    DirectoryReader reader = DirectoryReader.open(writer);
+    // the writer's readers include soft-deleted documents
+    assertEquals(3, reader.numDocs());
+    DirectoryReader softReader = new SoftDeletesDirectoryReaderWrapper(reader, SOFT_DELETES);
+    assertEquals(1, softReader.numDocs());
+    assertEquals(Collections.singleton(3L), liveSeqNos(softReader));
+    softReader.close();
+
+    IllegalArgumentException expected = expectThrows(IllegalArgumentException.class, () -> {
+      writer.softUpdateDocument(new Term("id", "1"), newDoc("1", 4));
+    });
+    assertEquals("at least one soft delete must be present", expected.getMessage());
+    expected = expectThrows(IllegalArgumentException.class, () -> {
+      writer.softUpdateDocument(new Term("id", "1"), newDoc("1", 4), new BinaryDocValuesField(SOFT_DELETES, new BytesRef("1")));
+    });
+    assertTrue(expected.getMessage(), expected.getMessage().startsWith("the soft deletes field must be a NUMERIC doc values field"));
+    // other fields must exist
+    expectThrows(IllegalArgumentException.class, () -> {
+      writer.softUpdateDocument(new Term("id", "1"), newDoc("1", 4), new NumericDocValuesField("unknown", 1));
+    });
+    IOUtils.close(writer, dir);
+  }
+
+  public void testMergesReclaimSoftDeletes() throws IOException {
+    Directory dir = newDirectory();
+    IndexWriterConfig config = newIndexWriterConfig(new MockAnalyzer(random()))
+        .setSoftDeletesField(SOFT_DELETES);
+    IndexWriter writer = new IndexWriter(dir, config);
+    for (int i = 0; i < 10; i++) {
+      writer.addDocument(newDoc(Integer.toString(i), i));
+    }
+    writer.commit();
+    for (int i = 0; i < 5; i++) {
+      writer.softUpdateDocument(new Term("id", Integer.toString(i)), newDoc(Integer.toString(i), 10 + i), softDelete());
+    }
+    writer.commit();
+    writer.forceMerge(1);
+    DirectoryReader reader = DirectoryReader.open(writer);
+    assertEquals(10, reader.maxDoc());
+    assertEquals(10, reader.numDocs());
+    assertNull(new SoftDeletesDirectoryReaderWrapper(reader, SOFT_DELETES).leaves().get(0).reader().getLiveDocs());
+    reader.close();
+    IOUtils.close(writer, dir);
+  }
+
+  public void testRetainSoftDeletes() throws IOException {
+    Directory dir = newDirectory();
+    AtomicLong minRetainedSeqNo = new AtomicLong(0);
+    IndexWriterConfig config = newIndexWriterConfig(new MockAnalyzer(random()))
+        .setSoftDeletesField(SOFT_DELETES)
+        .setMergePolicy(new SoftDeletesRetentionMergePolicy(SOFT_DELETES,
+            () -> NumericDocValuesField.newSlowRangeQuery("seq_no", minRetainedSeqNo.get(), Long.MAX_VALUE),
+            newMergePolicy()));
+    IndexWriter writer = new IndexWriter(dir, config);
+    long seqNo = 0;
+    for (int i = 0; i < 10; i++) {
+      writer.addDocument(newDoc(Integer.toString(i), seqNo++));
+    }
+    writer.commit();
+    for (int i = 0; i < 10; i++) {
+      writer.softUpdateDocument(new Term("id", Integer.toString(i)), newDoc(Integer.toString(i), seqNo++), softDelete());
+    }
+    // a hard delete is never retained
+    writer.deleteDocuments(new Term("id", "9"));
+    writer.commit();
+    writer.forceMerge(1);
+
+    DirectoryReader reader = DirectoryReader.open(writer);
+    assertEquals(1, reader.leaves().size());
+    assertEquals(18, reader.numDocs());
+    DirectoryReader softReader = new SoftDeletesDirectoryReaderWrapper(reader, SOFT_DELETES);
+    assertEquals(9, softReader.numDocs());
+    softReader.close();
+
+    // move the retention forward
+    minRetainedSeqNo.set(5);
+    writer.softUpdateDocument(new Term("id", "0"), newDoc("0", seqNo++), softDelete());
+    writer.commit();
+    writer.forceMerge(1);
+    reader = DirectoryReader.open(writer);
+    Set<Long> expected = new HashSet<>();
+    for (long i = 5; i < 9; i++) {
+      expected.add(i); // retained soft deletes
+    }
+    for (long i = 11; i < 19; i++) {
+      expected.add(i); // live documents
+    }
+    expected.add(10L); // soft-deleted by the last update, but retained
+    expected.add(20L);
+    assertEquals(expected, liveSeqNos(reader));
+
+    // everything goes away once nothing is retained anymore
+    minRetainedSeqNo.set(Long.MAX_VALUE);
+    writer.addDocument(newDoc("10", seqNo++));
+    writer.commit();
+    writer.forceMerge(1);
+    reader.close();
+    reader = DirectoryReader.open(writer);
+    assertEquals(10, reader.maxDoc());
+    assertEquals(10, new SoftDeletesDirectoryReaderWrapper(reader, SOFT_DELETES).numDocs());
+    reader.close();
+    IOUtils.close(writer, dir);
+  }
+
+  public void testRandom() throws IOException {
+    Directory dir = newDirectory();
+    AtomicLong minRetainedSeqNo = new AtomicLong(0);
+    boolean retainNothing = random().nextInt(5) == 0;
+    IndexWriterConfig config = newIndexWriterConfig(new MockAnalyzer(random()))
+        .setSoftDeletesField(SOFT_DELETES)
+        .setMergePolicy(new SoftDeletesRetentionMergePolicy(SOFT_DELETES,
+            () -> retainNothing ? new MatchNoDocsQuery() :
+                NumericDocValuesField.newSlowRangeQuery("seq_no", minRetainedSeqNo.get(), Long.MAX_VALUE),
+            newMergePolicy()));
+    IndexWriter writer = new IndexWriter(dir, config);
+    // id -> seq no of the live version
+    Map<String,Long> live = new HashMap<>();
+    // id -> seq nos of all versions that are not hard-deleted
+    Map<String,List<Long>> versions = new HashMap<>();
+    int numIds = atLeast(20);
+    int numOps = atLeast(500);
+    long seqNo = 0;
+    for (int i = 0; i < numOps; i++) {
+      String id = Integer.toString(random().nextInt(numIds));
+      if (random().nextInt(10) == 0) {
+        writer.deleteDocuments(new Term("id", id));
+        live.remove(id);
+        versions.remove(id);
+      } else {
+        writer.softUpdateDocument(new Term("id", id), newDoc(id, seqNo), softDelete());
+        live.put(id, seqNo);
+        versions.computeIfAbsent(id, k -> new ArrayList<>()).add(seqNo);
+      }
+      seqNo++;
+      if (random().nextInt(50) == 0) {
+        // the retention only moves forward
+        minRetainedSeqNo.set(Math.max(minRetainedSeqNo.get(), seqNo - random().nextInt(100)));
+      }
+      if (random().nextInt(100) == 0) {
+        writer.commit();
+      }
+      if (random().nextInt(200) == 0) {
+        writer.forceMerge(1 + random().nextInt(3));
+      }
+    }
+    // force a merge of all documents
+    writer.addDocument(newDoc("extra", seqNo));
+    live.put("extra", seqNo);
+    versions.put("extra", Collections.singletonList(seqNo));
+    writer.commit();
+    writer.forceMerge(1);
+    DirectoryReader reader = DirectoryReader.open(writer);
+    DirectoryReader softReader = new SoftDeletesDirectoryReaderWrapper(reader, SOFT_DELETES);
+    assertEquals(new HashSet<>(live.values()), liveSeqNos(softReader));
+
+    Set<Long> allVersions = new HashSet<>();
+    versions.values().forEach(allVersions::addAll);
+    Set<Long> seqNos = liveSeqNos(reader);
+    assertTrue(allVersions.containsAll(seqNos));
+    for (long seq : allVersions) {
+      if (live.containsValue(seq)) {
+        assertTrue(seqNos.contains(seq));
+      } else if (retainNothing) {
+        assertFalse(seqNos.contains(seq));
+      } else if (seq >= minRetainedSeqNo.get()) {
+        assertTrue("seq_no=" + seq + " must be retained", seqNos.contains(seq));
+      }
+    }
+    if (retainNothing) {
+      assertEquals(live.size(), reader.maxDoc());
+    }
+    softReader.close();
+    IOUtils.close(writer, dir);
+  }
+
+  /** Returns the seq nos of the live documents of the given reader. */
+  static Set<Long> liveSeqNos(DirectoryReader reader) throws IOException {
+    Set<Long> seqNos = new HashSet<>();
+    for (LeafReaderContext context : reader.leaves()) {
+      LeafReader leaf = context.reader();
+      Bits liveDocs = leaf.getLiveDocs();
+      NumericDocValues values = leaf.getNumericDocValues("seq_no");
+      for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+        if (liveDocs == null || liveDocs.get(doc)) {
+          assertTrue(seqNos.add(values.longValue()));
+        }
+      }
+    }
+    return seqNos;
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+
+public class TestTimeSeriesMergePolicy extends BaseMergePolicyTestCase {
+
+  @Override
+  protected MergePolicy mergePolicy() {
+    return new TimeSeriesMergePolicy("timestamp")
+        .setMergeFactor(random().nextInt(5) + 2);
+  }
+
+  private static Document newDoc(long timestamp, boolean points) {
+    Document doc = new Document();
+    if (points) {
+      doc.add(new LongPoint("timestamp", timestamp));
+    } else {
+      doc.add(new SortedNumericDocValuesField("timestamp", timestamp));
+      if (random().nextBoolean()) {
+        doc.add(new SortedNumericDocValuesField("timestamp", timestamp + random().nextInt(3)));
+      }
+    }
+    return doc;
+  }
+
+  /** Returns the actual min/max values of the timestamp field of a segment. */
+  private static long[] minMax(LeafReader reader) throws IOException {
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    PointValues points = reader.getPointValues("timestamp");
+    if (points != null) {
+      min = LongPoint.decodeDimension(points.getMinPackedValue(), 0);
+      max = LongPoint.decodeDimension(points.getMaxPackedValue(), 0);
+    } else {
+      SortedNumericDocValues values = DocValues.getSortedNumeric(reader, "timestamp");
+      for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+        for (int i = 0; i < values.docValueCount(); ++i) {
+          long value = values.nextValue();
+          min = Math.min(min, value);
+          max = Math.max(max, value);
+        }
+      }
+    }
+    return new long[] { min, max };
+  }
+
+  private static void assertDiagnostics(DirectoryReader reader) throws IOException {
+    for (LeafReaderContext context : reader.leaves()) {
+      SegmentInfo info = ((SegmentReader) context.reader()).getSegmentInfo().info;
+      assertEquals("timestamp", info.getDiagnostics().get(TimeSeriesMergePolicy.FIELD_KEY));
+      long[] minMax = minMax(context.reader());
+      assertEquals(minMax[0], TimeSeriesMergePolicy.getMinValue(info).longValue());
+      assertEquals(minMax[1], TimeSeriesMergePolicy.getMaxValue(info).longValue());
+    }
+  }
+
+  /** Asserts that segments cover disjoint time ranges. */
+  private static void assertDisjointTimeRanges(DirectoryReader reader) {
+    List<long[]> ranges = new ArrayList<>();
+    for (LeafReaderContext context : reader.leaves()) {
+      SegmentInfo info = ((SegmentReader) context.reader()).getSegmentInfo().info;
+      ranges.add(new long[] { TimeSeriesMergePolicy.getMinValue(info), TimeSeriesMergePolicy.getMaxValue(info) });
+    }
+    ranges.sort((a, b) -> Long.compare(a[0], b[0]));
+    for (int i = 1; i < ranges.size(); ++i) {
+      assertTrue(ranges.get(i - 1)[1] < ranges.get(i)[0]);
+    }
+  }
+
+  public void testDiagnostics() throws Exception {
+    for (boolean points : new boolean[] { true, false }) {
+      Directory dir = newDirectory();
+      IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()))
+          .setMergePolicy(new TimeSeriesMergePolicy("timestamp"));
+      IndexWriter w = new IndexWriter(dir, iwc);
+      int numSegments = atLeast(3);
+      long globalMin = Long.MAX_VALUE;
+      long globalMax = Long.MIN_VALUE;
+      for (int i = 0; i < numSegments; ++i) {
+        int numDocs = atLeast(10);
+        for (int j = 0; j < numDocs; ++j) {
+          long timestamp = random().nextInt(100000) - 50000;
+          globalMin = Math.min(globalMin, timestamp);
+          globalMax = Math.max(globalMax, timestamp);
+          w.addDocument(newDoc(timestamp, points));
+        }
+        w.commit();
+      }
+      DirectoryReader reader = DirectoryReader.open(w);
+      assertDiagnostics(reader);
+      reader.close();
+
+      w.forceMerge(1);
+      reader = DirectoryReader.open(w);
+      assertEquals(1, reader.leaves().size());
+      assertDiagnostics(reader);
+      SegmentInfo info = ((SegmentReader) reader.leaves().get(0).reader()).getSegmentInfo().info;
+      assertEquals(globalMin, TimeSeriesMergePolicy.getMinValue(info).longValue());
+      if (points) {
+        assertEquals(globalMax, TimeSeriesMergePolicy.getMaxValue(info).longValue());
+      }
+      IOUtils.close(reader, w, dir);
+    }
+  }
+
+  public void testMergesAdjacentSegments() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()))
+        .setMergePolicy(new TimeSeriesMergePolicy("timestamp").setMergeFactor(3));
+    IndexWriter w = new IndexWriter(dir, iwc);
+    // documents are indexed in time order
+    int numBatches = atLeast(20);
+    for (int batch = 0; batch < numBatches; ++batch) {
+      int numDocs = atLeast(5);
+      for (int j = 0; j < numDocs; ++j) {
+        w.addDocument(newDoc(batch * 1000L + j, random().nextBoolean()));
+      }
+      w.commit();
+      DirectoryReader reader = DirectoryReader.open(w);
+      assertDisjointTimeRanges(reader);
+      reader.close();
+    }
+    // the index was merged
+    DirectoryReader reader = DirectoryReader.open(w);
+    assertTrue(reader.leaves().size() < numBatches);
+    IOUtils.close(reader, w, dir);
+  }
+
+  public void testForceMergeAdjacentSegments() throws Exception {
+    Directory dir = newDirectory();
+    // segments cover disjoint time ranges but are written out of order
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()))
+        .setMergePolicy(new TimeSeriesMergePolicy("timestamp").setMaxMergedSegmentMB(0));
+    IndexWriter w = new IndexWriter(dir, iwc);
+    int numBatches = atLeast(20);
+    List<Integer> batches = new ArrayList<>();
+    for (int i = 0; i < numBatches; ++i) {
+      batches.add(i);
+    }
+    Collections.shuffle(batches, random());
+    for (int batch : batches) {
+      int numDocs = atLeast(5);
+      for (int j = 0; j < numDocs; ++j) {
+        w.addDocument(newDoc(batch * 1000L + random().nextInt(1000), random().nextBoolean()));
+      }
+      w.commit();
+    }
+    DirectoryReader reader = DirectoryReader.open(w);
+    assertEquals(numBatches, reader.leaves().size());
+    reader.close();
+
+    int maxNumSegments = random().nextInt(5) + 1;
+    w.forceMerge(maxNumSegments);
+    reader = DirectoryReader.open(w);
+    assertTrue(reader.leaves().size() <= maxNumSegments);
+    // only segments that are adjacent in time order were merged
+    assertDisjointTimeRanges(reader);
+    assertDiagnostics(reader);
+    IOUtils.close(reader, w, dir);
+  }
+
+  public void testSegmentsWithoutTimeRange() throws Exception {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(new MockAnalyzer(random()))
+        .setMergePolicy(NoMergePolicy.INSTANCE);
+    IndexWriter w = new IndexWriter(dir, iwc);
+    int numSegments = atLeast(5);
+    for (int i = 0; i < numSegments; ++i) {
+      w.addDocument(newDoc(i, true));
+      w.commit();
+    }
+    w.close();
+
+    // segments that were written with another merge policy are not merged naturally
+    iwc = newIndexWriterConfig(new MockAnalyzer(random()))
+        .setMergePolicy(new TimeSeriesMergePolicy("timestamp").setMergeFactor(2));
+    w = new IndexWriter(dir, iwc);
+    w.addDocument(new Document());
+    w.commit();
+    DirectoryReader reader = DirectoryReader.open(w);
+    assertEquals(numSegments + 1, reader.leaves().size());
+    for (LeafReaderContext context : reader.leaves()) {
+      SegmentInfo info = ((SegmentReader) context.reader()).getSegmentInfo().info;
+      assertNull(TimeSeriesMergePolicy.getMinValue(info));
+    }
+    reader.close();
+
+    w.forceMerge(1);
+    reader = DirectoryReader.open(w);
+    assertEquals(1, reader.leaves().size());
+    assertDiagnostics(reader);
+    IOUtils.close(reader, w, dir);
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.search;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestSearchLatencyTracker extends LuceneTestCase {
+
+  public void testPercentiles() {
+    SearchLatencyTracker tracker = new SearchLatencyTracker(10, 1, TimeUnit.SECONDS);
+    assertEquals(0, tracker.getPercentileNS(99, 0));
+    for (int i = 1; i <= 10; ++i) {
+      tracker.record(0, i);
+    }
+    assertEquals(10, tracker.getCount());
+    assertEquals(1, tracker.getPercentileNS(0, 0));
+    assertEquals(5, tracker.getPercentileNS(50, 0));
+    assertEquals(9, tracker.getPercentileNS(90, 0));
+    assertEquals(10, tracker.getPercentileNS(100, 0));
+
+    // only the last 10 searches are kept
+    for (int i = 0; i < 5; ++i) {
+      tracker.record(0, 100);
+    }
+    assertEquals(15, tracker.getCount());
+    assertEquals(10, tracker.getPercentileNS(50, 0));
+    assertEquals(100, tracker.getPercentileNS(60, 0));
+
+    // old searches are ignored
+    long later = TimeUnit.SECONDS.toNanos(2);
+    tracker.record(later, 42);
+    assertEquals(42, tracker.getPercentileNS(0, later));
+    assertEquals(42, tracker.getPercentileNS(100, later));
+    assertEquals(0, tracker.getPercentileNS(100, 2 * later));
+
+    expectThrows(IllegalArgumentException.class, () -> {
+      tracker.getPercentileNS(101);
+    });
+    expectThrows(IllegalArgumentException.class, () -> {
+      new SearchLatencyTracker(0, 1, TimeUnit.SECONDS);
+    });
+  }
+
+  public void testIndexSearcherRecordsLatencies() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    for (int i = 0; i < 10; ++i) {
+      Document doc = new Document();
+      doc.add(new StringField("foo", Integer.toString(i % 3), Field.Store.NO));
+      w.addDocument(doc);
+    }
+    IndexReader reader = w.getReader();
+    w.close();
+
+    SearchLatencyTracker tracker = new SearchLatencyTracker(100, 1, TimeUnit.HOURS);
+    IndexSearcher searcher = newSearcher(reader);
+    assertNull(searcher.getSearchLatencyTracker());
+    searcher.search(new TermQuery(new Term("foo", "1")), 10);
+    searcher.setSearchLatencyTracker(tracker);
+    assertSame(tracker, searcher.getSearchLatencyTracker());
+    searcher.search(new TermQuery(new Term("foo", "1")), 10);
+    searcher.search(new MatchAllDocsQuery(), new TotalHitCountCollector());
+    // every top-level search is recorded once
+    assertEquals(2, tracker.getCount());
+    assertTrue(tracker.getPercentileNS(100) > 0);
+
+    searcher.setSearchLatencyTracker(null);
+    searcher.search(new TermQuery(new Term("foo", "1")), 10);
+    assertEquals(2, tracker.getCount());
+    IOUtils.close(reader, dir);
+  }
+}
@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
+
+public class TestWeightCanMatch extends LuceneTestCase {
+
+  private static final int NUM_SEGMENTS = 4;
+  private static final long SEGMENT_RANGE = 1000;
+
+  private Directory dir;
+  private IndexReader reader;
+  private IndexSearcher searcher;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    dir = newDirectory();
+    // one segment per time slice
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(new MockAnalyzer(random()))
+        .setMergePolicy(NoMergePolicy.INSTANCE)
+        .setRAMBufferSizeMB(IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB)
+        .setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH));
+    for (int segment = 0; segment < NUM_SEGMENTS; ++segment) {
+      int numDocs = atLeast(10);
+      for (int i = 0; i < numDocs; ++i) {
+        long timestamp = segment * SEGMENT_RANGE + random().nextInt((int) SEGMENT_RANGE);
+        Document doc = new Document();
+        doc.add(new LongPoint("timestamp", timestamp));
+        doc.add(new NumericDocValuesField("timestamp", timestamp));
+        doc.add(new StringField("segment", Integer.toString(segment), Store.NO));
+        doc.add(new StringField("color", i % 2 == 0 ? "red" : "blue", Store.NO));
+        w.addDocument(doc);
+      }
+      w.commit();
+    }
+    w.close();
+    reader = DirectoryReader.open(dir);
+    assertEquals(NUM_SEGMENTS, reader.leaves().size());
+    searcher = new IndexSearcher(reader);
+    searcher.setQueryCache(null);
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    IOUtils.close(reader, dir);
+    super.tearDown();
+  }
+
+  /** Returns the segment number of the given leaf */
+  private static int segment(LeafReaderContext context) throws IOException {
+    for (int segment = 0; segment < NUM_SEGMENTS; ++segment) {
+      if (context.reader().docFreq(new Term("segment", Integer.toString(segment))) > 0) {
+        return segment;
+      }
+    }
+    throw new AssertionError();
+  }
+
+  private static Query timeRange(int fromSegment, int toSegment) {
+    return LongPoint.newRangeQuery("timestamp", fromSegment * SEGMENT_RANGE, (toSegment + 1) * SEGMENT_RANGE - 1);
+  }
+
+  private static Query segmentTerm(int segment) {
+    return new TermQuery(new Term("segment", Integer.toString(segment)));
+  }
+
+  /** Returns, for every segment, whether the weight of the query can match it. */
+  private boolean[] canMatch(Query query) throws IOException {
+    return canMatch(query, true);
+  }
+
+  private boolean[] canMatch(Query query, boolean needsScores) throws IOException {
+    Weight weight = searcher.createNormalizedWeight(query, needsScores);
+    boolean[] canMatch = new boolean[NUM_SEGMENTS];
+    for (LeafReaderContext context : reader.leaves()) {
+      canMatch[segment(context)] = weight.canMatch(context);
+    }
+    return canMatch;
+  }
+
+  private void assertCanMatch(Query query, boolean... expected) throws IOException {
+    boolean[] actual = canMatch(query);
+    for (int segment = 0; segment < NUM_SEGMENTS; ++segment) {
+      assertEquals(query + " segment=" + segment, expected[segment], actual[segment]);
+    }
+  }
+
+  public void testPointRange() throws IOException {
+    assertCanMatch(timeRange(1, 1), false, true, false, false);
+    assertCanMatch(timeRange(1, 2), false, true, true, false);
+    assertCanMatch(LongPoint.newRangeQuery("timestamp", -10, -1), false, false, false, false);
+    assertCanMatch(LongPoint.newRangeQuery("other", 0, Long.MAX_VALUE), false, false, false, false);
+    assertCanMatch(new BoostQuery(new ConstantScoreQuery(timeRange(0, 0)), 2f), true, false, false, false);
+  }
+
+  public void testTerm() throws IOException {
+    assertCanMatch(segmentTerm(2), false, false, true, false);
+    assertCanMatch(new TermQuery(new Term("other", "foo")), false, false, false, false);
+    // term states are not computed when scores are not needed, but the field is checked
+    assertTrue(Arrays.equals(new boolean[NUM_SEGMENTS], canMatch(new TermQuery(new Term("other", "foo")), false)));
+  }
+
+  public void testDocValuesRange() throws IOException {
+    assertCanMatch(NumericDocValuesField.newSlowRangeQuery("other", 0, Long.MAX_VALUE), false, false, false, false);
+    Query query = NumericDocValuesField.newSlowRangeQuery("timestamp", SEGMENT_RANGE, 2 * SEGMENT_RANGE - 1);
+    boolean[] canMatch = canMatch(query);
+    for (LeafReaderContext context : reader.leaves()) {
+      int segment = segment(context);
+      if (segment == 1) {
+        assertTrue(canMatch[segment]);
+      } else if (DocValues.getSkipper(context.reader(), "timestamp") != null) {
+        // only segments whose doc values have a skip index can be pruned
+        assertFalse(canMatch[segment]);
+      }
+    }
+  }
+
+  public void testBoolean() throws IOException {
+    Query query = new BooleanQuery.Builder()
+        .add(new TermQuery(new Term("color", "red")), Occur.MUST)
+        .add(timeRange(2, 3), Occur.FILTER)
+        .build();
+    assertCanMatch(query, false, false, true, true);
+
+    query = new BooleanQuery.Builder()
+        .add(segmentTerm(0), Occur.MUST)
+        .add(timeRange(2, 3), Occur.FILTER)
+        .build();
+    assertCanMatch(query, false, false, false, false);
+
+    query = new BooleanQuery.Builder()
+        .add(segmentTerm(0), Occur.SHOULD)
+        .add(timeRange(2, 2), Occur.SHOULD)
+        .build();
+    assertCanMatch(query, true, false, true, false);
+
+    query = new BooleanQuery.Builder()
+        .add(segmentTerm(0), Occur.SHOULD)
+        .add(timeRange(0, 1), Occur.SHOULD)
+        .setMinimumNumberShouldMatch(2)
+        .build();
+    assertCanMatch(query, true, false, false, false);
+
+    // prohibited clauses alone do not match
+    query = new BooleanQuery.Builder()
+        .add(segmentTerm(0), Occur.MUST_NOT)
+        .build();
+    assertCanMatch(query, false, false, false, false);
+
+    // prohibited clauses that cannot match do not prevent matches
+    query = new BooleanQuery.Builder()
+        .add(timeRange(0, 3), Occur.MUST)
+        .add(segmentTerm(1), Occur.MUST_NOT)
+        .build();
+    assertCanMatch(query, true, true, true, true);
+  }
+
+  /** Counts calls to {@link Weight#canMatch} on the weights of the wrapped query. */
+  private static class CanMatchCountingQuery extends Query {
+    final Query in;
+    final AtomicInteger count;
+
+    CanMatchCountingQuery(Query in, AtomicInteger count) {
+      this.in = in;
+      this.count = count;
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, boolean needsScores, float boost) throws IOException {
+      return new FilterWeight(this, in.createWeight(searcher, needsScores, boost)) {
+        @Override
+        public boolean canMatch(LeafReaderContext context) throws IOException {
+          count.incrementAndGet();
+          return super.canMatch(context);
+        }
+      };
+    }
+
+    @Override
+    public String toString(String field) {
+      return "counting(" + in.toString(field) + ")";
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return sameClassAs(other) && in.equals(((CanMatchCountingQuery) other).in);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * classHash() + in.hashCode();
+    }
+  }
+
+  public void testNestedBooleanChecksClausesOncePerLeaf() throws IOException {
+    AtomicInteger count = new AtomicInteger();
+    Query query = new CanMatchCountingQuery(segmentTerm(1), count);
+    int depth = TestUtil.nextInt(random(), 2, 6);
+    for (int i = 0; i < depth; ++i) {
+      Occur occur = random().nextBoolean() ? Occur.MUST : Occur.SHOULD;
+      query = new BooleanQuery.Builder()
+          .add(query, occur)
+          .add(timeRange(0, 3), occur == Occur.MUST ? Occur.FILTER : Occur.SHOULD)
+          .build();
+    }
+    // the searcher checks whether the weight can match a leaf before building its scorer, whatever the depth
+    searcher.search(query, new TotalHitCountCollector());
+    assertEquals(2 * reader.leaves().size(), count.get());
+
+    count.set(0);
+    Weight weight = searcher.createNormalizedWeight(query, random().nextBoolean());
+    for (LeafReaderContext context : reader.leaves()) {
+      weight.bulkScorer(context);
+    }
+    assertEquals(reader.leaves().size(), count.get());
+    count.set(0);
+    for (LeafReaderContext context : reader.leaves()) {
+      weight.scorerSupplier(context);
+    }
+    assertEquals(reader.leaves().size(), count.get());
+  }
+
+  /** The weight is shared by the slices of a searcher, so leaves can be scored in any order. */
+  public void testInterleavedLeaves() throws IOException {
+    Query query = new BooleanQuery.Builder()
+        .add(new BooleanQuery.Builder()
+            .add(segmentTerm(1), Occur.SHOULD)
+            .add(segmentTerm(2), Occur.SHOULD)
+            .build(), Occur.MUST)
+        .add(timeRange(1, 3), Occur.FILTER)
+        .build();
+    Weight weight = searcher.createNormalizedWeight(query, false);
+    List<LeafReaderContext> leaves = new ArrayList<>(reader.leaves());
+    for (int iter = 0; iter < 10; ++iter) {
+      LeafReaderContext first = leaves.get(random().nextInt(leaves.size()));
+      LeafReaderContext second = leaves.get(random().nextInt(leaves.size()));
+      boolean firstCanMatch = weight.canMatch(first);
+      Scorer secondScorer = weight.scorer(second);
+      Scorer firstScorer = weight.scorer(first);
+      if (firstCanMatch == false) {
+        assertNull(firstScorer);
+      }
+      int firstSegment = segment(first);
+      assertEquals(firstSegment == 1 || firstSegment == 2, firstScorer != null);
+      int secondSegment = segment(second);
+      assertEquals(secondSegment == 1 || secondSegment == 2, secondScorer != null);
+    }
+  }
+
+  public void testDisjunctionMax() throws IOException {
+    Query query = new DisjunctionMaxQuery(Arrays.asList(segmentTerm(1), timeRange(3, 3)), 0f);
+    assertCanMatch(query, false, true, false, true);
+  }
+
+  public void testSearchSkipsLeaves() throws IOException {
+    final List<LeafReaderContext> scored = new ArrayList<>();
+    final Weight weight = new FilterWeight(searcher.createNormalizedWeight(timeRange(2, 2), false)) {
+      @Override
+      public BulkScorer bulkScorer(LeafReaderContext context) throws IOException {
+        scored.add(context);
+        return in.bulkScorer(context);
+      }
+    };
+    TotalHitCountCollector collector = new TotalHitCountCollector();
+    searcher.search(reader.leaves(), weight, collector);
+    assertEquals(1, scored.size());
+    assertEquals(2, segment(scored.get(0)));
+    assertEquals(searcher.count(segmentTerm(2)), collector.getTotalHits());
+
+    // the results are unchanged
+    Query query = new BooleanQuery.Builder()
+        .add(timeRange(1, 2), Occur.FILTER)
+        .add(new TermQuery(new Term("color", "red")), Occur.SHOULD)
+        .build();
+    TopDocs topDocs = searcher.search(query, reader.maxDoc());
+    int expected = 0;
+    for (int segment = 1; segment <= 2; ++segment) {
+      expected += searcher.count(segmentTerm(segment));
+    }
+    assertEquals(expected, topDocs.totalHits);
+  }
+
+  public void testQueryCacheSkipsLeaves() throws IOException {
+    LRUQueryCache queryCache = new LRUQueryCache(100, 10000000, context -> true);
+    searcher.setQueryCache(queryCache);
+    searcher.setQueryCachingPolicy(QueryCachingPolicy.ALWAYS_CACHE);
+    Weight weight = searcher.createNormalizedWeight(timeRange(1, 2), false);
+    for (LeafReaderContext context : reader.leaves()) {
+      Scorer scorer = weight.scorer(context);
+      int segment = segment(context);
+      assertEquals(segment == 1 || segment == 2, scorer != null);
+    }
+    // leaves that cannot match have not been cached
+    assertEquals(2, queryCache.getCacheSize());
+  }
+}
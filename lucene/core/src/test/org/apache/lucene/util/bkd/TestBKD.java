@@ -23,7 +23,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.lucene.codecs.MutablePointValues;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.MergeState;
 import org.apache.lucene.index.PointValues.IntersectVisitor;
@@ -36,6 +39,7 @@ import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.store.MockDirectoryWrapper;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.LuceneTestCase;
@@ -1197,4 +1201,126 @@ public class TestBKD extends LuceneTestCase {
     pointsIn.close();
     dir.close();
   }
+
+  public void testConcurrentBuild() throws Exception {
+    final int numDims = TestUtil.nextInt(random(), 2, 4);
+    final int numBytesPerDim = TestUtil.nextInt(random(), 1, 4);
+    final int maxPointsInLeafNode = TestUtil.nextInt(random(), 5, 50);
+    final int numPoints = atLeast(10000);
+    final int maxDoc = random().nextBoolean() ? numPoints : TestUtil.nextInt(random(), 1, numPoints);
+    final int cardinality = TestUtil.nextInt(random(), 1, 1 << Math.min(8 * numBytesPerDim, 20));
+    final byte[][] values = new byte[numPoints][];
+    final int[] docs = new int[numPoints];
+    for (int i = 0; i < numPoints; ++i) {
+      values[i] = new byte[numDims * numBytesPerDim];
+      for (int dim = 0; dim < numDims; ++dim) {
+        int value = random().nextInt(cardinality);
+        for (int j = 0; j < numBytesPerDim; ++j) {
+          values[i][dim * numBytesPerDim + numBytesPerDim - 1 - j] = (byte) (value >>> (8 * j));
+        }
+      }
+      docs[i] = random().nextInt(maxDoc);
+    }
+
+    final ForkJoinPool pool = new ForkJoinPool(TestUtil.nextInt(random(), 1, 4));
+    try (Directory dir = newDirectory()) {
+      byte[][] files = new byte[2][];
+      for (int iter = 0; iter < 2; ++iter) {
+        try (BKDWriter w = new BKDWriter(maxDoc, dir, "_" + iter, numDims, numBytesPerDim, maxPointsInLeafNode,
+            BKDWriter.DEFAULT_MAX_MB_SORT_IN_HEAP, numPoints, maxDoc == numPoints)) {
+          if (iter == 1) {
+            w.setBuildPool(pool, maxPointsInLeafNode * TestUtil.nextInt(random(), 1, 20));
+          }
+          try (IndexOutput out = dir.createOutput("bkd" + iter, IOContext.DEFAULT)) {
+            w.writeField(out, "field", new ArrayPointValues(values, docs));
+          }
+        }
+        try (IndexInput in = dir.openInput("bkd" + iter, IOContext.DEFAULT)) {
+          files[iter] = new byte[(int) in.length()];
+          in.readBytes(files[iter], 0, files[iter].length);
+        }
+      }
+      // the concurrent build writes the same bytes
+      assertArrayEquals(files[0], files[1]);
+    } finally {
+      pool.shutdown();
+      assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+    }
+  }
+
+  private static class ArrayPointValues extends MutablePointValues {
+
+    private final byte[][] values;
+    private final int[] docs;
+
+    ArrayPointValues(byte[][] values, int[] docs) {
+      this.values = values.clone();
+      this.docs = docs.clone();
+    }
+
+    @Override
+    public void getValue(int i, BytesRef packedValue) {
+      packedValue.bytes = values[i];
+      packedValue.offset = 0;
+      packedValue.length = values[i].length;
+    }
+
+    @Override
+    public byte getByteAt(int i, int k) {
+      return values[i][k];
+    }
+
+    @Override
+    public int getDocID(int i) {
+      return docs[i];
+    }
+
+    @Override
+    public void swap(int i, int j) {
+      ArrayUtil.swap(values, i, j);
+      int tmp = docs[i];
+      docs[i] = docs[j];
+      docs[j] = tmp;
+    }
+
+    @Override
+    public void intersect(IntersectVisitor visitor) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long estimatePointCount(IntersectVisitor visitor) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] getMinPackedValue() throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] getMaxPackedValue() throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getNumDimensions() throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getBytesPerDimension() throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long size() {
+      return values.length;
+    }
+
+    @Override
+    public int getDocCount() {
+      throw new UnsupportedOperationException();
+    }
+  }
 }
@@ -24,6 +24,7 @@ import org.apache.lucene.codecs.DocValuesFormat;
 import org.apache.lucene.codecs.DocValuesProducer;
 import org.apache.lucene.index.AssertingLeafReader;
 import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValuesSkipper;
 import org.apache.lucene.index.DocValuesType;
 import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.NumericDocValues;
@@ -261,6 +262,12 @@ public class AssertingDocValuesFormat extends DocValuesFormat {
       return new AssertingLeafReader.AssertingSortedNumericDocValues(values, maxDoc);
     }
     
+    @Override
+    public DocValuesSkipper getSkipper(FieldInfo field) throws IOException {
+      assert field.getDocValuesType() == DocValuesType.NUMERIC || field.getDocValuesType() == DocValuesType.SORTED_NUMERIC;
+      return in.getSkipper(field);
+    }
+
     @Override
     public SortedSetDocValues getSortedSet(FieldInfo field) throws IOException {
       assert field.getDocValuesType() == DocValuesType.SORTED_SET;
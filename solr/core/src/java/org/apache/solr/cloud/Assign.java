@@ -67,6 +67,15 @@ public class Assign {
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
   public static int incAndGetId(DistribStateManager stateManager, String collection, int defaultValue) {
+    return incAndGetIds(stateManager, collection, defaultValue, 1);
+  }
+
+  /**
+   * Reserves <code>count</code> consecutive ids of the given collection with a single update of its counter
+   *
+   * @return the first of the reserved ids
+   */
+  public static int incAndGetIds(DistribStateManager stateManager, String collection, int defaultValue, int count) {
     String path = "/collections/"+collection;
     try {
       if (!stateManager.hasData(path)) {
@@ -100,9 +109,9 @@ public class Assign {
           currentId = NumberUtils.bytesToInt(data.getData());
           version = data.getVersion();
         }
-        byte[] bytes = NumberUtils.intToBytes(++currentId);
+        byte[] bytes = NumberUtils.intToBytes(currentId + count);
         stateManager.setData(path, bytes, version);
-        return currentId;
+        return currentId + 1;
       } catch (BadVersionException e) {
         continue;
       } catch (IOException | KeeperException e) {
@@ -199,6 +208,26 @@ public class Assign {
     return coreName;
   }
 
+  /**
+   * Builds the names of the cores to create for the given positions in a new collection, reserving the ids of all of
+   * them at once instead of one at a time.
+   */
+  public static List<String> buildCoreNames(DistribStateManager stateManager, DocCollection collection, List<ReplicaPosition> positions) {
+    List<String> coreNames = new ArrayList<>(positions.size());
+    if (positions.isEmpty()) {
+      return coreNames;
+    }
+    int replicaNum = incAndGetIds(stateManager, collection.getName(), defaultCounterValue(collection, true), positions.size());
+    for (ReplicaPosition position : positions) {
+      String coreName = buildCoreName(collection.getName(), position.shard, position.type, replicaNum++);
+      if (existCoreName(coreName, collection.getSlice(position.shard))) {
+        coreName = buildCoreName(stateManager, collection, position.shard, position.type, true);
+      }
+      coreNames.add(coreName);
+    }
+    return coreNames;
+  }
+
   public static String buildCoreName(DistribStateManager stateManager, DocCollection collection, String shard, Replica.Type type) {
     return buildCoreName(stateManager, collection, shard, type, false);
   }
@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -55,6 +56,7 @@ import org.apache.solr.common.util.Utils;
 import org.apache.solr.handler.admin.ConfigSetsHandlerApi;
 import org.apache.solr.handler.component.ShardHandler;
 import org.apache.solr.handler.component.ShardRequest;
+import org.apache.solr.handler.component.ShardResponse;
 import org.apache.solr.util.TimeOut;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
@@ -80,6 +82,9 @@ import static org.apache.solr.common.util.StrUtils.formatString;
 
 public class CreateCollectionCmd implements Cmd {
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  // the maximum number of cores of a new collection created at the same time
+  static final int MAX_PARALLEL_CORE_CREATES = Integer.getInteger("solr.CreateCollectionMaxParallelCores", 64);
+
   private final OverseerCollectionMessageHandler ocmh;
   private SolrZkClient zkClient;
 
@@ -226,10 +231,13 @@ public class CreateCollectionCmd implements Cmd {
       log.debug(formatString("Creating SolrCores for new collection {0}, shardNames {1} , nrtReplicas : {2}, tlogReplicas: {3}, pullReplicas: {4}",
           collectionName, shardNames, numNrtReplicas, numTlogReplicas, numPullReplicas));
       Map<String,ShardRequest> coresToCreate = new LinkedHashMap<>();
-      for (ReplicaPosition replicaPosition : replicaPositions) {
+      List<String> coreNames = Assign.buildCoreNames(ocmh.overseer.getSolrCloudManager().getDistribStateManager(),
+          zkStateReader.getClusterState().getCollection(collectionName), replicaPositions);
+      int inFlight = 0;
+      for (int i = 0; i < replicaPositions.size(); i++) {
+        ReplicaPosition replicaPosition = replicaPositions.get(i);
         String nodeName = replicaPosition.node;
-        String coreName = Assign.buildCoreName(ocmh.overseer.getSolrCloudManager().getDistribStateManager(), zkStateReader.getClusterState().getCollection(collectionName),
-            replicaPosition.shard, replicaPosition.type, true);
+        String coreName = coreNames.get(i);
         log.debug(formatString("Creating core {0} as part of shard {1} of collection {2} on {3}"
             , coreName, replicaPosition.shard, collectionName, nodeName));
 
@@ -278,19 +286,43 @@ public class CreateCollectionCmd implements Cmd {
         sreq.params = params;
 
         if (isLegacyCloud) {
-          shardHandler.submit(sreq, sreq.shards[0], sreq.params);
+          inFlight = submitCoreCreate(shardHandler, sreq, inFlight, results);
         } else {
           coresToCreate.put(coreName, sreq);
         }
       }
 
       if(!isLegacyCloud) {
-        // wait for all replica entries to be created
-        Map<String, Replica> replicas = ocmh.waitToSeeReplicasInState(collectionName, coresToCreate.keySet());
-        for (Map.Entry<String, ShardRequest> e : coresToCreate.entrySet()) {
-          ShardRequest sreq = e.getValue();
-          sreq.params.set(CoreAdminParams.CORE_NODE_NAME, replicas.get(e.getKey()).getName());
-          shardHandler.submit(sreq, sreq.shards[0], sreq.params);
+        // create each core as soon as its replica entry is seen, rather than once all of them are
+        TimeOut timeout = new TimeOut(30, TimeUnit.SECONDS);
+        while (!coresToCreate.isEmpty()) {
+          boolean progress = false;
+          Map<String, Replica> replicas = new HashMap<>();
+          for (Replica replica : zkStateReader.getClusterState().getCollection(collectionName).getReplicas()) {
+            replicas.put(replica.getStr(ZkStateReader.CORE_NAME_PROP), replica);
+          }
+          // in placement order, like the cores of legacy cloud collections
+          Iterator<Map.Entry<String, ShardRequest>> it = coresToCreate.entrySet().iterator();
+          while (it.hasNext()) {
+            Map.Entry<String, ShardRequest> e = it.next();
+            Replica replica = replicas.get(e.getKey());
+            if (replica != null) {
+              it.remove();
+              ShardRequest sreq = e.getValue();
+              sreq.params.set(CoreAdminParams.CORE_NODE_NAME, replica.getName());
+              inFlight = submitCoreCreate(shardHandler, sreq, inFlight, results);
+              progress = true;
+            }
+          }
+          if (coresToCreate.isEmpty()) {
+            break;
+          }
+          if (progress) {
+            timeout = new TimeOut(30, TimeUnit.SECONDS);
+          } else if (timeout.hasTimedOut()) {
+            throw new SolrException(ErrorCode.SERVER_ERROR, "Timed out waiting to see all replicas: " + coresToCreate.keySet() + " in cluster state.");
+          }
+          Thread.sleep(100);
         }
       }
 
@@ -322,6 +354,24 @@ public class CreateCollectionCmd implements Cmd {
     }
   }
 
+  /**
+   * Submits the given core creation, after waiting for one of the creations in flight to complete if there are
+   * already {@link #MAX_PARALLEL_CORE_CREATES} of them, so that a large collection does not flood the nodes.
+   *
+   * @return the number of core creations in flight
+   */
+  private int submitCoreCreate(ShardHandler shardHandler, ShardRequest sreq, int inFlight, NamedList results) {
+    if (inFlight >= MAX_PARALLEL_CORE_CREATES) {
+      ShardResponse srsp = shardHandler.takeCompletedOrError();
+      if (srsp != null) {
+        ocmh.processResponse(results, srsp, Collections.emptySet());
+        inFlight--;
+      }
+    }
+    shardHandler.submit(sreq, sreq.shards[0], sreq.params);
+    return inFlight + 1;
+  }
+
   String getConfigName(String coll, ZkNodeProps message) throws KeeperException, InterruptedException {
     String configName = message.getStr(COLL_CONF);
 
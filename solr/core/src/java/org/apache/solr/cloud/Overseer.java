@@ -55,6 +55,7 @@ import org.apache.solr.handler.component.ShardHandler;
 import org.apache.solr.update.UpdateShardHandler;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -221,9 +222,18 @@ public class Overseer implements SolrCloseable {
                 processedNodes.add(head.first());
                 fallbackQueueSize = processedNodes.size();
                 // The callback always be called on this thread
-                clusterState = processQueueItem(message, clusterState, zkStateWriter, true, () -> {
-                  stateUpdateQueue.remove(processedNodes);
-                  processedNodes.clear();
+                clusterState = processQueueItem(message, clusterState, zkStateWriter, true, new ZkStateWriter.ZkWriteCallback() {
+                  @Override
+                  public List<Op> getDeleteOps() {
+                    recordFlush(processedNodes.size());
+                    return stateUpdateQueue.getRemoveOps(processedNodes);
+                  }
+
+                  @Override
+                  public void onWrite() {
+                    stateUpdateQueue.onRemoved(processedNodes);
+                    processedNodes.clear();
+                  }
                 });
               }
               if (isClosed) break;
@@ -233,9 +243,10 @@ public class Overseer implements SolrCloseable {
             fallbackQueueSize = processedNodes.size();
             // we should force write all pending updates because the next iteration might sleep until there
             // are more items in the main queue
-            clusterState = zkStateWriter.writePendingUpdates();
-            // clean work queue
-            stateUpdateQueue.remove(processedNodes);
+            // the processed nodes are removed from the work queue along with the write of the state they produced
+            recordFlush(processedNodes.size());
+            clusterState = zkStateWriter.writePendingUpdates(stateUpdateQueue.getRemoveOps(processedNodes));
+            stateUpdateQueue.onRemoved(processedNodes);
             processedNodes.clear();
           } catch (KeeperException.SessionExpiredException e) {
             log.warn("Solr cannot talk to ZK, exiting Overseer main queue loop", e);
@@ -255,6 +266,13 @@ public class Overseer implements SolrCloseable {
       }
     }
 
+    private void recordFlush(int batchSize) {
+      if (batchSize > 0) {
+        stats.update("state_update_batch_size", batchSize);
+        stats.update("state_update_queue_depth", stateUpdateQueue.getZkStats().getQueueLength());
+      }
+    }
+
     // Return true whenever the exception thrown by ZkStateWriter is correspond
     // to a invalid state or 'bad' message (in this case, we should remove that message from queue)
     private boolean isBadMessage(Exception e) {
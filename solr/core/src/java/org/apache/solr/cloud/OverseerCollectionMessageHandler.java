@@ -134,6 +134,7 @@ public class OverseerCollectionMessageHandler implements OverseerMessageHandler,
       ZkStateReader.PULL_REPLICAS, "0",
       ZkStateReader.MAX_SHARDS_PER_NODE, "1",
       ZkStateReader.AUTO_ADD_REPLICAS, "false",
+      DocCollection.PER_REPLICA_STATE, null,
       DocCollection.RULE, null,
       POLICY, null,
       SNITCH, null));
@@ -818,7 +819,7 @@ public class OverseerCollectionMessageHandler implements OverseerMessageHandler,
     }
   }
   
-  private void processResponse(NamedList results, ShardResponse srsp, Set<String> okayExceptions) {
+  void processResponse(NamedList results, ShardResponse srsp, Set<String> okayExceptions) {
     Throwable e = srsp.getException();
     String nodeName = srsp.getNodeName();
     SolrResponse solrResponse = srsp.getSolrResponse();
@@ -23,6 +23,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
 import com.codahale.metrics.Timer;
 import org.apache.solr.cloud.OverseerCollectionMessageHandler.Cmd;
 import org.apache.solr.common.cloud.ClusterState;
@@ -108,5 +110,18 @@ public class OverseerStatusCmd implements Cmd {
     results.add("overseer_internal_queue", workQueueStats);
     results.add("collection_queue", collectionQueueStats);
 
+    NamedList<Object> distributions = new SimpleOrderedMap<>();
+    for (Map.Entry<String, Histogram> entry : stats.getHistograms().entrySet()) {
+      Snapshot snapshot = entry.getValue().getSnapshot();
+      NamedList<Object> lst = new SimpleOrderedMap<>();
+      lst.add("count", entry.getValue().getCount());
+      lst.add("mean", snapshot.getMean());
+      lst.add("median", snapshot.getMedian());
+      lst.add("95thPc", snapshot.get95thPercentile());
+      lst.add("max", snapshot.getMax());
+      distributions.add(entry.getKey(), lst);
+    }
+    results.add("overseer_distributions", distributions);
+
   }
 }
@@ -18,11 +18,13 @@ package org.apache.solr.cloud;
 
 import java.io.Closeable;
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
@@ -40,6 +42,7 @@ import org.apache.solr.common.SolrException;
 import org.apache.solr.common.cloud.SolrZkClient;
 import org.apache.solr.common.cloud.ZkNodeProps;
 import org.apache.solr.common.cloud.ZkStateReader;
+import org.apache.solr.common.params.CommonAdminParams;
 import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.common.util.StrUtils;
 import org.apache.solr.common.util.Utils;
@@ -67,8 +70,43 @@ public class OverseerTaskProcessor implements Runnable, Closeable {
    * Maximum number of overseer collection operations which can be
    * executed concurrently
    */
-  public static final int MAX_PARALLEL_TASKS = 100;
+  public static final int MAX_PARALLEL_TASKS = Integer.getInteger("solr.OverseerMaxParallelTasks", 100);
   public static final int MAX_BLOCKED_TASKS = 1000;
+  /**
+   * Number of threads kept in the pool executing the operations even when idle
+   */
+  public static final int CORE_POOL_SIZE = Math.min(MAX_PARALLEL_TASKS, Integer.getInteger("solr.OverseerCorePoolSize", 5));
+  /**
+   * Maximum number of operations on the same collection (or, more generally, with the same task key) which can be
+   * executed concurrently, so that bulk operations on one collection leave room for operations on other collections
+   */
+  public static final int MAX_PARALLEL_TASKS_PER_KEY = Math.max(1,
+      Integer.getInteger("solr.OverseerMaxParallelTasksPerCollection", Math.max(1, MAX_PARALLEL_TASKS / 2)));
+
+  /**
+   * The priority class of a task, given by the {@link CommonAdminParams#TASK_PRIORITY} property of its message.
+   * Tasks of a higher priority class are executed first; within a class, tasks are executed in turns across task
+   * keys (collections), and in queue order for each task key.
+   */
+  public enum TaskPriority {
+    /** requests made by users, the default */
+    USER,
+    /** requests made by autoscaling actions */
+    AUTOSCALING;
+
+    public static TaskPriority get(String p) {
+      if (p != null) {
+        for (TaskPriority priority : values()) {
+          if (priority.toLower().equals(p)) return priority;
+        }
+      }
+      return USER;
+    }
+
+    public String toLower() {
+      return toString().toLowerCase(Locale.ROOT);
+    }
+  }
 
   public ExecutorService tpe;
 
@@ -82,6 +120,14 @@ public class OverseerTaskProcessor implements Runnable, Closeable {
   // Set that maintains a list of all the tasks that are running. This is keyed on zk id of the task.
   final private Set<String> runningTasks;
 
+  // Number of running tasks per task key, guarded by runningTasks
+  final private Map<String, Integer> runningTasksPerKey = new HashMap<>();
+
+  // When the tasks that are not running yet were read from the work queue, and when they first failed to get
+  // their lock, in nanoseconds. Only used by the processor thread.
+  final private Map<String, Long> readTimes = new HashMap<>();
+  final private Map<String, Long> lockWaitTimes = new HashMap<>();
+
   // List of completed tasks. This is used to clean up workQueue in zk.
   final private HashMap<String, QueueEvent> completedTasks;
 
@@ -182,9 +228,7 @@ public class OverseerTaskProcessor implements Runnable, Closeable {
       }
     }
 
-    // TODO: Make maxThreads configurable.
-
-    this.tpe = new ExecutorUtil.MDCAwareThreadPoolExecutor(5, MAX_PARALLEL_TASKS, 0L, TimeUnit.MILLISECONDS,
+    this.tpe = new ExecutorUtil.MDCAwareThreadPoolExecutor(CORE_POOL_SIZE, MAX_PARALLEL_TASKS, 0L, TimeUnit.MILLISECONDS,
         new SynchronousQueue<Runnable>(),
         new DefaultSolrThreadFactory("OverseerThreadFactory"));
     try {
@@ -241,9 +285,28 @@ public class OverseerTaskProcessor implements Runnable, Closeable {
 
           blockedTasks.clear(); // clear it now; may get refilled below.
 
+          long now = System.nanoTime();
+          Set<String> headIds = new HashSet<>(heads.size());
+          for (QueueEvent head : heads) {
+            headIds.add(head.getId());
+            readTimes.putIfAbsent(head.getId(), now);
+          }
+          // forget the tasks which are gone from the queue, or were dropped when too many tasks were blocked
+          readTimes.keySet().retainAll(headIds);
+          lockWaitTimes.keySet().retainAll(headIds);
+
           taskBatch.batchId++;
           boolean tooManyTasks = false;
+          boolean leftOverItemsChecked = false;
+          Set<String> cappedKeys = new HashSet<>();
+          List<ScheduledTask> tasks = new ArrayList<>(heads.size());
           for (QueueEvent head : heads) {
+            ZkNodeProps message = ZkNodeProps.load(head.getBytes());
+            OverseerMessageHandler messageHandler = selector.selectOverseerMessageHandler(message);
+            tasks.add(new ScheduledTask(head, message, messageHandler, messageHandler.getTaskKey(message)));
+          }
+          for (ScheduledTask task : schedule(tasks)) {
+            QueueEvent head = task.head;
             if (!tooManyTasks) {
               synchronized (runningTasks) {
                 tooManyTasks = runningTasks.size() >= MAX_PARALLEL_TASKS;
@@ -256,12 +319,13 @@ public class OverseerTaskProcessor implements Runnable, Closeable {
               continue;
             }
             if (runningZKTasks.contains(head.getId())) continue;
-            final ZkNodeProps message = ZkNodeProps.load(head.getBytes());
-            OverseerMessageHandler messageHandler = selector.selectOverseerMessageHandler(message);
+            final ZkNodeProps message = task.message;
+            OverseerMessageHandler messageHandler = task.messageHandler;
             final String asyncId = message.getStr(ASYNC);
             if (hasLeftOverItems) {
+              // the tasks are not processed in queue order, so the whole batch is checked
               if (head.getId().equals(oldestItemInWorkQueue))
-                hasLeftOverItems = false;
+                leftOverItemsChecked = true;
               if (asyncId != null && (completedMap.contains(asyncId) || failureMap.contains(asyncId))) {
                 log.debug("Found already processed task in workQueue, cleaning up. AsyncId [{}]",asyncId );
                 workQueue.remove(head);
@@ -269,16 +333,23 @@ public class OverseerTaskProcessor implements Runnable, Closeable {
               }
             }
             String operation = message.getStr(Overseer.QUEUE_OPERATION);
+            if (isCapped(task.taskKey, getRunningTasks(task.taskKey), cappedKeys)) {
+              log.debug("Too many running tasks for [{}]", task.taskKey);
+              if (blockedTasks.size() < MAX_BLOCKED_TASKS)
+                blockedTasks.put(head.getId(), head);
+              continue;
+            }
             OverseerMessageHandler.Lock lock = messageHandler.lockTask(message, taskBatch);
             if (lock == null) {
               log.debug("Exclusivity check failed for [{}]", message.toString());
+              lockWaitTimes.putIfAbsent(head.getId(), System.nanoTime());
               //we may end crossing the size of the MAX_BLOCKED_TASKS. They are fine
               if (blockedTasks.size() < MAX_BLOCKED_TASKS)
                 blockedTasks.put(head.getId(), head);
               continue;
             }
             try {
-              markTaskAsRunning(head, asyncId);
+              markTaskAsRunning(head, asyncId, task.taskKey);
               log.debug("Marked task [{}] as running", head.getId());
             } catch (KeeperException.NodeExistsException e) {
               lock.unlock();
@@ -291,11 +362,15 @@ public class OverseerTaskProcessor implements Runnable, Closeable {
               Thread.currentThread().interrupt();
               continue;
             }
+            recordWaitTimes(messageHandler, head.getId());
             log.debug(messageHandler.getName() + ": Get the message id:" + head.getId() + " message:" + message.toString());
             Runner runner = new Runner(messageHandler, message,
                 operation, head, lock);
             tpe.execute(runner);
           }
+          if (leftOverItemsChecked) {
+            hasLeftOverItems = false;
+          }
 
         } catch (KeeperException e) {
           if (e.code() == KeeperException.Code.SESSIONEXPIRED) {
@@ -315,6 +390,83 @@ public class OverseerTaskProcessor implements Runnable, Closeable {
     }
   }
 
+  /** A task read from the work queue, together with what is needed to schedule it */
+  static class ScheduledTask {
+    final QueueEvent head;
+    final ZkNodeProps message;
+    final OverseerMessageHandler messageHandler;
+    final String taskKey;
+    final TaskPriority priority;
+
+    ScheduledTask(QueueEvent head, ZkNodeProps message, OverseerMessageHandler messageHandler, String taskKey) {
+      this.head = head;
+      this.message = message;
+      this.messageHandler = messageHandler;
+      this.taskKey = taskKey;
+      this.priority = TaskPriority.get(message.getStr(CommonAdminParams.TASK_PRIORITY));
+    }
+  }
+
+  /**
+   * Orders the given tasks by priority class and then in turns across task keys, keeping the tasks of each task key
+   * in queue order so that tasks locking the same resources are still tried in the order they were submitted.
+   */
+  static List<ScheduledTask> schedule(List<ScheduledTask> tasks) {
+    Map<String, ArrayDeque<ScheduledTask>> tasksPerKey = new LinkedHashMap<>();
+    for (ScheduledTask task : tasks) {
+      tasksPerKey.computeIfAbsent(task.taskKey, k -> new ArrayDeque<>()).add(task);
+    }
+    List<ScheduledTask> scheduled = new ArrayList<>(tasks.size());
+    while (scheduled.size() < tasks.size()) {
+      // one turn across the task keys whose next task is of the highest priority class
+      TaskPriority priority = null;
+      for (ArrayDeque<ScheduledTask> keyTasks : tasksPerKey.values()) {
+        if (!keyTasks.isEmpty() && (priority == null || keyTasks.peekFirst().priority.compareTo(priority) < 0)) {
+          priority = keyTasks.peekFirst().priority;
+        }
+      }
+      for (ArrayDeque<ScheduledTask> keyTasks : tasksPerKey.values()) {
+        if (!keyTasks.isEmpty() && keyTasks.peekFirst().priority == priority) {
+          scheduled.add(keyTasks.pollFirst());
+        }
+      }
+    }
+    return scheduled;
+  }
+
+  /**
+   * Returns true if the task must wait because {@link #MAX_PARALLEL_TASKS_PER_KEY} tasks of its key are running, or
+   * because an earlier task of its key in the batch had to wait, so that the tasks of a key never run out of queue
+   * order. The keys of the tasks that must wait are added to the given set. Tasks without a key are never capped.
+   */
+  static boolean isCapped(String taskKey, int runningTasks, Set<String> cappedKeys) {
+    if (taskKey == null) {
+      return false;
+    }
+    if (cappedKeys.contains(taskKey) || runningTasks >= MAX_PARALLEL_TASKS_PER_KEY) {
+      cappedKeys.add(taskKey);
+      return true;
+    }
+    return false;
+  }
+
+  private int getRunningTasks(String taskKey) {
+    synchronized (runningTasks) {
+      return runningTasksPerKey.getOrDefault(taskKey, 0);
+    }
+  }
+
+  private void recordWaitTimes(OverseerMessageHandler messageHandler, String id) {
+    long now = System.nanoTime();
+    Long readTime = readTimes.remove(id);
+    if (readTime != null) {
+      stats.update(messageHandler.getTimerName("queue_wait"), TimeUnit.NANOSECONDS.toMillis(now - readTime));
+    }
+    Long lockWaitTime = lockWaitTimes.remove(id);
+    stats.update(messageHandler.getTimerName("lock_wait"),
+        lockWaitTime == null ? 0 : TimeUnit.NANOSECONDS.toMillis(now - lockWaitTime));
+  }
+
   private void cleanUpWorkQueue() throws KeeperException, InterruptedException {
     synchronized (completedTasks) {
       for (String id : completedTasks.keySet()) {
@@ -417,14 +569,16 @@ public class OverseerTaskProcessor implements Runnable, Closeable {
   }
 
   @SuppressWarnings("unchecked")
-  private void markTaskAsRunning(QueueEvent head, String asyncId)
+  private void markTaskAsRunning(QueueEvent head, String asyncId, String taskKey)
       throws KeeperException, InterruptedException {
     synchronized (runningZKTasks) {
       runningZKTasks.add(head.getId());
     }
 
     synchronized (runningTasks) {
-      runningTasks.add(head.getId());
+      if (runningTasks.add(head.getId()) && taskKey != null) {
+        runningTasksPerKey.merge(taskKey, 1, Integer::sum);
+      }
     }
 
 
@@ -439,6 +593,7 @@ public class OverseerTaskProcessor implements Runnable, Closeable {
     QueueEvent head;
     OverseerMessageHandler messageHandler;
     private final OverseerMessageHandler.Lock lock;
+    private final String taskKey;
 
     public Runner(OverseerMessageHandler messageHandler, ZkNodeProps message, String operation, QueueEvent head, OverseerMessageHandler.Lock lock) {
       this.message = message;
@@ -446,6 +601,7 @@ public class OverseerTaskProcessor implements Runnable, Closeable {
       this.head = head;
       this.messageHandler = messageHandler;
       this.lock = lock;
+      this.taskKey = messageHandler.getTaskKey(message);
       response = null;
     }
 
@@ -456,7 +612,6 @@ public class OverseerTaskProcessor implements Runnable, Closeable {
 
       boolean success = false;
       final String asyncId = message.getStr(ASYNC);
-      String taskKey = messageHandler.getTaskKey(message);
 
       try {
         try {
@@ -513,9 +668,7 @@ public class OverseerTaskProcessor implements Runnable, Closeable {
         completedTasks.put(id, head);
       }
 
-      synchronized (runningTasks) {
-        runningTasks.remove(id);
-      }
+      removeRunningTask(id);
 
       if (asyncId != null) {
         if (!runningMap.remove(asyncId)) {
@@ -535,9 +688,7 @@ public class OverseerTaskProcessor implements Runnable, Closeable {
           }
         }
 
-        synchronized (runningTasks) {
-          runningTasks.remove(id);
-        }
+        removeRunningTask(id);
 
       } catch (KeeperException e) {
         SolrException.log(log, "", e);
@@ -547,6 +698,14 @@ public class OverseerTaskProcessor implements Runnable, Closeable {
 
     }
 
+    private void removeRunningTask(String id) {
+      synchronized (runningTasks) {
+        if (runningTasks.remove(id) && taskKey != null) {
+          runningTasksPerKey.computeIfPresent(taskKey, (k, count) -> count > 1 ? count - 1 : null);
+        }
+      }
+    }
+
     private void updateStats(String statsName) {
       if (isSuccessful()) {
         stats.success(statsName);
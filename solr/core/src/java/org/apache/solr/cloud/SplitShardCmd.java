@@ -333,6 +333,10 @@ public class SplitShardCmd implements Cmd {
         params.add(CoreAdminParams.TARGET_CORE, subShardName);
       }
       params.set(CoreAdminParams.RANGES, rangesStr);
+      String splitMethod = message.getStr(CommonAdminParams.SPLIT_METHOD);
+      if (splitMethod != null) {
+        params.set(CommonAdminParams.SPLIT_METHOD, splitMethod);
+      }
 
       ocmh.sendShardRequest(parentShardLeader.getNodeName(), params, shardHandler, asyncId, requestMap);
 
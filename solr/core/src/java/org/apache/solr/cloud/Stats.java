@@ -24,6 +24,8 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Timer;
 import org.apache.solr.client.solrj.SolrResponse;
 import org.apache.solr.common.cloud.ZkNodeProps;
@@ -37,6 +39,7 @@ public class Stats {
   static final int MAX_STORED_FAILURES = 10;
 
   final Map<String, Stat> stats = new ConcurrentHashMap<>();
+  final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
   private volatile int queueLength;
 
   public Map<String, Stat> getStats() {
@@ -109,6 +112,18 @@ public class Stats {
     }
   }
 
+  /**
+   * Records a sample of a value whose distribution is tracked, such as the size of a batch
+   */
+  public void update(String name, long value) {
+    histograms.computeIfAbsent(name.toLowerCase(Locale.ROOT), k -> new Histogram(new ExponentiallyDecayingReservoir()))
+        .update(value);
+  }
+
+  public Map<String, Histogram> getHistograms() {
+    return histograms;
+  }
+
   public int getQueueLength() {
     return queueLength;
   }
@@ -119,6 +134,7 @@ public class Stats {
 
   public void clear() {
     stats.clear();
+    histograms.clear();
   }
 
   public static class Stat  {
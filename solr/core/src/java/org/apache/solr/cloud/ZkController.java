@@ -30,6 +30,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -71,6 +72,7 @@ import org.apache.solr.common.cloud.DefaultZkCredentialsProvider;
 import org.apache.solr.common.cloud.DocCollection;
 import org.apache.solr.common.cloud.LiveNodesListener;
 import org.apache.solr.common.cloud.OnReconnect;
+import org.apache.solr.common.cloud.PerReplicaStates;
 import org.apache.solr.common.cloud.Replica;
 import org.apache.solr.common.cloud.Replica.Type;
 import org.apache.solr.common.cloud.Slice;
@@ -1434,12 +1436,44 @@ public class ZkController {
       if (updateLastState) {
         cd.getCloudDescriptor().lastPublished = state;
       }
+
+      DocCollection docCollection = zkStateReader.getClusterState().getCollectionOrNull(collection);
+      if (docCollection != null && docCollection.isPerReplicaState() && coreNodeName != null) {
+        // the state is written directly, the Overseer only needs to know about changes to the replica itself
+        PerReplicaStates.persist(zkClient, ZkStateReader.getCollectionPath(collection),
+            Collections.singletonMap(coreNodeName, state));
+        if (!needsOverseerUpdate(docCollection, shardId, coreNodeName, props)) {
+          return;
+        }
+      }
       overseerJobQueue.offer(Utils.toJSON(m));
     } finally {
       MDCLoggingContext.clear();
     }
   }
 
+  /**
+   * Returns true if a state change of a replica of a collection with per-replica states must also be sent to
+   * the Overseer: when the replica is not registered in state.json yet or its properties changed, and while
+   * its shard is being created by a split, which the Overseer completes once all sub-shard replicas are active.
+   */
+  private static boolean needsOverseerUpdate(DocCollection docCollection, String shardId, String coreNodeName,
+                                             Map<String,Object> props) {
+    Slice slice = shardId == null ? null : docCollection.getSlice(shardId);
+    Replica replica = slice == null ? null : slice.getReplica(coreNodeName);
+    if (replica == null || slice.getState() != Slice.State.ACTIVE) {
+      return true;
+    }
+    for (String prop : Arrays.asList(ZkStateReader.BASE_URL_PROP, ZkStateReader.CORE_NAME_PROP,
+        ZkStateReader.NODE_NAME_PROP, ZkStateReader.REPLICA_TYPE, "dataDir", "ulogDir")) {
+      Object value = props.get(prop);
+      if (value != null && !value.toString().equals(replica.getStr(prop))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private boolean needsToBeAssignedShardId(final CoreDescriptor desc,
                                            final ClusterState state, final String coreNodeName) {
 
@@ -230,10 +230,7 @@ public class ZkDistributedQueue implements DistributedQueue {
 
   public void remove(Collection<String> paths) throws KeeperException, InterruptedException {
     if (paths.isEmpty()) return;
-    List<Op> ops = new ArrayList<>();
-    for (String path : paths) {
-      ops.add(Op.delete(dir + "/" + path, -1));
-    }
+    List<Op> ops = getRemoveOps(paths);
     for (int from = 0; from < ops.size(); from += 1000) {
       int to = Math.min(from + 1000, ops.size());
       if (from < to) {
@@ -252,6 +249,26 @@ public class ZkDistributedQueue implements DistributedQueue {
       }
     }
 
+    onRemoved(paths);
+  }
+
+  /**
+   * Returns the operations deleting the given elements, to be committed by the caller as part of its own
+   * multi operation. {@link #onRemoved(Collection)} must be called once they are.
+   */
+  List<Op> getRemoveOps(Collection<String> paths) {
+    List<Op> ops = new ArrayList<>(paths.size());
+    for (String path : paths) {
+      ops.add(Op.delete(dir + "/" + path, -1));
+    }
+    return ops;
+  }
+
+  /**
+   * Updates the cached children of this queue after the given elements were removed.
+   */
+  void onRemoved(Collection<String> paths) {
+    if (paths.isEmpty()) return;
     int cacheSizeBefore = knownChildren.size();
     knownChildren.removeAll(paths);
     if (cacheSizeBefore - paths.size() == knownChildren.size() && knownChildren.size() != 0) {
@@ -19,6 +19,7 @@ package org.apache.solr.cloud.overseer;
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -51,6 +52,7 @@ public class NodeMutator {
       Map<String,Slice> slicesCopy = new LinkedHashMap<>(docCollection.getSlicesMap());
 
       boolean needToUpdateCollection = false;
+      Map<String, Replica.State> replicaStates = docCollection.isPerReplicaState() ? new HashMap<>() : null;
       for (Entry<String, Slice> sliceEntry : slicesCopy.entrySet()) {
         Slice slice = sliceEntry.getValue();
         Map<String, Replica> newReplicas = slice.getReplicasCopy();
@@ -67,6 +69,9 @@ public class NodeMutator {
             props.put(ZkStateReader.STATE_PROP, Replica.State.DOWN.toString());
             Replica newReplica = new Replica(replica.getName(), props);
             newReplicas.put(replica.getName(), newReplica);
+            if (replicaStates != null) {
+              replicaStates.put(replica.getName(), Replica.State.DOWN);
+            }
             needToUpdateCollection = true;
           }
         }
@@ -76,7 +81,7 @@ public class NodeMutator {
       }
 
       if (needToUpdateCollection) {
-        zkWriteCommands.add(new ZkWriteCommand(collection, docCollection.copyWithSlices(slicesCopy)));
+        zkWriteCommands.add(new ZkWriteCommand(collection, docCollection.copyWithSlices(slicesCopy), replicaStates));
       }
     }
 
@@ -96,6 +96,21 @@ public class ReplicaMutator {
     return setProperty(replica, ZkStateReader.STATE_PROP, state);
   }
 
+  /**
+   * Returns the command writing the collection, with the states of the given replicas if the collection keeps
+   * per-replica states, since readers of such a collection ignore the replica states in its state.json
+   */
+  static ZkWriteCommand writeCommand(String collectionName, DocCollection collection, Replica... changed) {
+    if (!collection.isPerReplicaState()) {
+      return new ZkWriteCommand(collectionName, collection);
+    }
+    Map<String, Replica.State> replicaStates = new HashMap<>();
+    for (Replica replica : changed) {
+      replicaStates.put(replica.getName(), replica.getState());
+    }
+    return new ZkWriteCommand(collectionName, collection, replicaStates);
+  }
+
   public ZkWriteCommand addReplicaProperty(ClusterState clusterState, ZkNodeProps message) {
     if (checkKeyExistence(message, ZkStateReader.COLLECTION_PROP) == false ||
         checkKeyExistence(message, ZkStateReader.SHARD_ID_PROP) == false ||
@@ -160,7 +175,8 @@ public class ReplicaMutator {
     Slice newSlice = new Slice(sliceName, replicas, collection.getSlice(sliceName).shallowCopy());
     DocCollection newCollection = CollectionMutator.updateSlice(collectionName, collection,
         newSlice);
-    return new ZkWriteCommand(collectionName, newCollection);
+    // the states of the replicas are unchanged
+    return writeCommand(collectionName, newCollection);
   }
 
   public ZkWriteCommand deleteReplicaProperty(ClusterState clusterState, ZkNodeProps message) {
@@ -197,7 +213,7 @@ public class ReplicaMutator {
     Slice slice = collection.getSlice(sliceName);
     DocCollection newCollection = SliceMutator.updateReplica(collection,
         slice, replicaName, unsetProperty(replica, property));
-    return new ZkWriteCommand(collectionName, newCollection);
+    return writeCommand(collectionName, newCollection);
   }
 
   public ZkWriteCommand setState(ClusterState clusterState, ZkNodeProps message) {
@@ -341,7 +357,7 @@ public class ReplicaMutator {
 
     DocCollection newCollection = CollectionMutator.updateSlice(collectionName, collection, slice);
     log.debug("Collection is now: {}", newCollection);
-    return new ZkWriteCommand(collectionName, newCollection);
+    return writeCommand(collectionName, newCollection, replica);
   }
 
   /**
@@ -82,7 +82,7 @@ public class SliceMutator {
             ZkStateReader.STATE_PROP, message.getStr(ZkStateReader.STATE_PROP),
             ZkStateReader.NODE_NAME_PROP, message.getStr(ZkStateReader.NODE_NAME_PROP), 
             ZkStateReader.REPLICA_TYPE, message.get(ZkStateReader.REPLICA_TYPE)));
-    return new ZkWriteCommand(coll, updateReplica(collection, sl, replica.getName(), replica));
+    return ReplicaMutator.writeCommand(coll, updateReplica(collection, sl, replica.getName(), replica), replica);
   }
 
   public ZkWriteCommand removeReplica(ClusterState clusterState, ZkNodeProps message) {
@@ -17,7 +17,10 @@
 package org.apache.solr.cloud.overseer;
 
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -26,12 +29,16 @@ import com.codahale.metrics.Timer;
 import org.apache.solr.cloud.Overseer;
 import org.apache.solr.cloud.Stats;
 import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.CompactStateCodec;
 import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.PerReplicaStates;
+import org.apache.solr.common.cloud.Replica;
 import org.apache.solr.common.cloud.ZkStateReader;
 import org.apache.solr.common.util.Utils;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
-import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,6 +53,9 @@ import static java.util.Collections.singletonMap;
  * {@link #enqueueUpdate(ClusterState, List, ZkWriteCallback)} method. The class buffers updates
  * to reduce the number of writes to ZK. The buffered updates are flushed during <code>enqueueUpdate</code>
  * automatically if necessary. The {@link #writePendingUpdates()} can be used to force flush any pending updates.
+ * The pending updates are written in as few multi operations as possible, along with the deletions of the
+ * queue entries they were produced by. The state.json of collections is written as JSON, or with
+ * {@link CompactStateCodec} if the {@link ZkStateReader#STATE_ENCODING} cluster property selects it.
  *
  * If either {@link #enqueueUpdate(ClusterState, List, ZkWriteCallback)} or {@link #writePendingUpdates()}
  * throws a {@link org.apache.zookeeper.KeeperException.BadVersionException} then the internal buffered state of the
@@ -55,6 +65,10 @@ import static java.util.Collections.singletonMap;
 public class ZkStateWriter {
   private static final long MAX_FLUSH_INTERVAL = TimeUnit.NANOSECONDS.convert(Overseer.STATE_UPDATE_DELAY, TimeUnit.MILLISECONDS);
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  // multi operations are limited by jute.maxbuffer on both ends, keep well below it
+  private static final int MAX_MULTI_BYTES = Integer.getInteger("jute.maxbuffer", 0xfffff) / 2;
+  private static final int MAX_MULTI_OPS = 1000;
+  private static final int OP_OVERHEAD = 64;
 
   /**
    * Represents a no-op {@link ZkWriteCommand} which will result in no modification to cluster state
@@ -65,6 +79,8 @@ public class ZkStateWriter {
   protected final Stats stats;
 
   protected Map<String, DocCollection> updates = new HashMap<>();
+  // replica states to write to the per-replica states of collections that have them, null to remove the state
+  protected Map<String, Map<String, Replica.State>> replicaStateUpdates = new HashMap<>();
   private int numUpdates = 0;
   protected ClusterState clusterState = null;
   protected boolean isClusterStateModified = false;
@@ -118,6 +134,7 @@ public class ZkStateWriter {
       if (!isClusterStateModified && clusterStateGetModifiedWith(cmd, prevState)) {
         isClusterStateModified = true;
       }
+      enqueueReplicaStates(prevState, cmd);
       prevState = prevState.copyWith(cmd.name, cmd.collection);
       if (cmd.collection == null || cmd.collection.getStateFormat() != 1) {
         updates.put(cmd.name, cmd.collection);
@@ -127,7 +144,7 @@ public class ZkStateWriter {
     clusterState = prevState;
 
     if (maybeFlushAfter()) {
-      ClusterState state = writePendingUpdates();
+      ClusterState state = writePendingUpdates(callback == null ? Collections.emptyList() : callback.getDeleteOps());
       if (callback != null) {
         callback.onWrite();
       }
@@ -137,6 +154,29 @@ public class ZkStateWriter {
     return clusterState;
   }
 
+  private void enqueueReplicaStates(ClusterState prevState, ZkWriteCommand cmd) {
+    if (cmd.collection == null) {
+      replicaStateUpdates.remove(cmd.name);
+      return;
+    }
+    if (!cmd.collection.isPerReplicaState() || cmd.collection.getStateFormat() == 1) {
+      return;
+    }
+    Map<String, Replica.State> states = replicaStateUpdates.computeIfAbsent(cmd.name, k -> new LinkedHashMap<>());
+    if (cmd.replicaStates != null) {
+      states.putAll(cmd.replicaStates);
+    }
+    // the states of removed replicas must be removed too
+    DocCollection previous = prevState.getCollectionOrNull(cmd.name);
+    if (previous != null) {
+      for (Replica replica : previous.getReplicas()) {
+        if (cmd.collection.getReplica(replica.getName()) == null) {
+          states.put(replica.getName(), null);
+        }
+      }
+    }
+  }
+
   private boolean isNoOps(List<ZkWriteCommand> cmds) {
     for (ZkWriteCommand cmd : cmds) {
       if (cmd != NO_OP) return false;
@@ -175,53 +215,129 @@ public class ZkStateWriter {
    * @throws InterruptedException  if the current thread is interrupted
    */
   public ClusterState writePendingUpdates() throws IllegalStateException, KeeperException, InterruptedException {
+    return writePendingUpdates(Collections.emptyList());
+  }
+
+  /**
+   * Writes all pending updates to ZooKeeper, together with the given deletions, and returns the modified
+   * cluster state. The state.json of every modified collection, clusterstate.json and the deletions are
+   * written in a single multi operation when they fit in one request, so that the messages processed by the
+   * Overseer are removed from its queue if and only if the state they produced is written. The deletions
+   * are otherwise applied after the state, ignoring nodes that no longer exist, as are they if per-replica
+   * states have to be written too.
+   *
+   * @param deleteOps delete operations to commit with the pending updates, typically removing the processed
+   *                  messages from the Overseer queue
+   * @return the modified cluster state
+   * @throws IllegalStateException if the current instance is no longer usable and must be discarded
+   * @throws KeeperException       if any ZooKeeper operation results in an error
+   * @throws InterruptedException  if the current thread is interrupted
+   */
+  public ClusterState writePendingUpdates(List<Op> deleteOps) throws IllegalStateException, KeeperException, InterruptedException {
     if (invalidState) {
       throw new IllegalStateException("ZkStateWriter has seen a tragic error, this instance can no longer be used");
     }
-    if (!hasPendingUpdates()) return clusterState;
+    if (!hasPendingUpdates()) {
+      delete(deleteOps);
+      return clusterState;
+    }
     Timer.Context timerContext = stats.time("update_state");
     boolean success = false;
     try {
-      if (!updates.isEmpty()) {
-        for (Map.Entry<String, DocCollection> entry : updates.entrySet()) {
-          String name = entry.getKey();
-          String path = ZkStateReader.getCollectionPath(name);
-          DocCollection c = entry.getValue();
-
-          if (c == null) {
-            // let's clean up the collections path for this collection
-            log.debug("going to delete_collection {}", path);
-            reader.getZkClient().clean("/collections/" + name);
-          } else if (c.getStateFormat() > 1) {
-            byte[] data = Utils.toJSON(singletonMap(c.getName(), c));
-            if (reader.getZkClient().exists(path, true)) {
-              log.debug("going to update_collection {} version: {}", path, c.getZNodeVersion());
-              Stat stat = reader.getZkClient().setData(path, data, c.getZNodeVersion(), true);
-              DocCollection newCollection = new DocCollection(name, c.getSlicesMap(), c.getProperties(), c.getRouter(), stat.getVersion(), path);
-              clusterState = clusterState.copyWith(name, newCollection);
-            } else {
-              log.debug("going to create_collection {}", path);
-              reader.getZkClient().create(path, data, CreateMode.PERSISTENT, true);
-              DocCollection newCollection = new DocCollection(name, c.getSlicesMap(), c.getProperties(), c.getRouter(), 0, path);
-              clusterState = clusterState.copyWith(name, newCollection);
-            }
-          } else if (c.getStateFormat() == 1) {
-            isClusterStateModified = true;
+      List<Op> ops = new ArrayList<>();
+      // the collection written by each op, null for clusterstate.json
+      List<DocCollection> written = new ArrayList<>();
+      Map<String, Map<String, Replica.State>> replicaStates = new LinkedHashMap<>();
+      long size = 0;
+      boolean compact = CompactStateCodec.ENCODING.equals(reader.getClusterProperty(ZkStateReader.STATE_ENCODING, "json"));
+      for (Map.Entry<String, DocCollection> entry : updates.entrySet()) {
+        String name = entry.getKey();
+        String path = ZkStateReader.getCollectionPath(name);
+        DocCollection c = entry.getValue();
+
+        if (c == null) {
+          // let's clean up the collections path for this collection
+          log.debug("going to delete_collection {}", path);
+          reader.getZkClient().clean("/collections/" + name);
+        } else if (c.getStateFormat() > 1) {
+          byte[] data = compact ? CompactStateCodec.encode(c) : Utils.toJSON(singletonMap(c.getName(), c));
+          if (reader.getZkClient().exists(path, true)) {
+            log.debug("going to update_collection {} version: {}", path, c.getZNodeVersion());
+            ops.add(Op.setData(path, data, c.getZNodeVersion()));
+          } else {
+            log.debug("going to create_collection {}", path);
+            ops.add(Op.create(path, data, reader.getZkClient().getZkACLProvider().getACLsToAdd(path), CreateMode.PERSISTENT));
           }
-        }
+          written.add(c);
+          size += data.length + path.length();
 
-        updates.clear();
-        numUpdates = 0;
+          Map<String, Replica.State> states = replicaStateUpdates.get(name);
+          if (states != null && !states.isEmpty()) {
+            replicaStates.put(path, states);
+          }
+        } else if (c.getStateFormat() == 1) {
+          isClusterStateModified = true;
+        }
       }
 
       if (isClusterStateModified) {
         assert clusterState.getZkClusterStateVersion() >= 0;
         byte[] data = Utils.toJSON(clusterState);
-        Stat stat = reader.getZkClient().setData(ZkStateReader.CLUSTER_STATE, data, clusterState.getZkClusterStateVersion(), true);
-        Map<String, DocCollection> collections = clusterState.getCollectionsMap();
-        // use the reader's live nodes because our cluster state's live nodes may be stale
-        clusterState = new ClusterState(stat.getVersion(), reader.getClusterState().getLiveNodes(), collections);
-        isClusterStateModified = false;
+        ops.add(Op.setData(ZkStateReader.CLUSTER_STATE, data, clusterState.getZkClusterStateVersion()));
+        written.add(null);
+        size += data.length;
+      }
+
+      // per-replica states are written after the state.json they belong to, the deletions must wait for them
+      boolean combine = replicaStates.isEmpty() && !deleteOps.isEmpty();
+      List<OpResult> results = null;
+      if (combine) {
+        List<Op> allOps = new ArrayList<>(ops);
+        allOps.addAll(deleteOps);
+        for (Op op : deleteOps) {
+          size += op.getPath().length();
+        }
+        if (fitsInOneRequest(allOps.size(), size)) {
+          try {
+            results = reader.getZkClient().multi(allOps, true);
+            stats.success("update_state_multi");
+          } catch (KeeperException.NoNodeException e) {
+            // some of the nodes to delete may have been removed already, nothing was written
+            log.warn("Could not commit the cluster state with the deletion of {} nodes, committing them separately: {}",
+                deleteOps.size(), e.getMessage());
+            combine = false;
+          }
+        } else {
+          combine = false;
+        }
+      }
+      if (results == null) {
+        results = multi(ops, size);
+      }
+
+      for (int i = 0; i < written.size(); i++) {
+        DocCollection c = written.get(i);
+        OpResult result = results.get(i);
+        int version = result instanceof OpResult.SetDataResult ? ((OpResult.SetDataResult) result).getStat().getVersion() : 0;
+        if (c != null) {
+          String path = ZkStateReader.getCollectionPath(c.getName());
+          clusterState = clusterState.copyWith(c.getName(), new DocCollection(c.getName(), c.getSlicesMap(), c.getProperties(), c.getRouter(), version, path));
+        } else {
+          Map<String, DocCollection> collections = clusterState.getCollectionsMap();
+          // use the reader's live nodes because our cluster state's live nodes may be stale
+          clusterState = new ClusterState(version, reader.getClusterState().getLiveNodes(), collections);
+          isClusterStateModified = false;
+        }
+      }
+      updates.clear();
+      replicaStateUpdates.clear();
+      numUpdates = 0;
+
+      for (Map.Entry<String, Map<String, Replica.State>> entry : replicaStates.entrySet()) {
+        PerReplicaStates.persist(reader.getZkClient(), entry.getKey(), entry.getValue());
+      }
+      if (!combine) {
+        delete(deleteOps);
       }
       lastUpdatedTime = System.nanoTime();
       success = true;
@@ -242,6 +358,48 @@ public class ZkStateWriter {
     return clusterState;
   }
 
+  private static boolean fitsInOneRequest(int numOps, long size) {
+    return numOps <= MAX_MULTI_OPS && size + numOps * OP_OVERHEAD <= MAX_MULTI_BYTES;
+  }
+
+  /**
+   * Commits the given ops in a single multi operation, or one by one if they do not fit in a single request
+   */
+  private List<OpResult> multi(List<Op> ops, long size) throws KeeperException, InterruptedException {
+    if (ops.isEmpty()) {
+      return Collections.emptyList();
+    }
+    if (fitsInOneRequest(ops.size(), size)) {
+      return reader.getZkClient().multi(ops, true);
+    }
+    List<OpResult> results = new ArrayList<>(ops.size());
+    for (Op op : ops) {
+      results.addAll(reader.getZkClient().multi(Collections.singletonList(op), true));
+    }
+    return results;
+  }
+
+  /**
+   * Applies the given delete operations in batches, ignoring the nodes that no longer exist
+   */
+  private void delete(List<Op> deleteOps) throws KeeperException, InterruptedException {
+    for (int from = 0; from < deleteOps.size(); from += MAX_MULTI_OPS) {
+      List<Op> batch = deleteOps.subList(from, Math.min(from + MAX_MULTI_OPS, deleteOps.size()));
+      try {
+        reader.getZkClient().multi(batch, true);
+      } catch (KeeperException.NoNodeException e) {
+        // don't know which nodes do not exist, delete them one by one
+        for (Op op : batch) {
+          try {
+            reader.getZkClient().delete(op.getPath(), -1, true);
+          } catch (KeeperException.NoNodeException e2) {
+            log.debug("Can not remove node which does not exist : {}", op.getPath());
+          }
+        }
+      }
+    }
+  }
+
   /**
    * @return the most up-to-date cluster state until the last enqueueUpdate operation
    */
@@ -254,6 +412,14 @@ public class ZkStateWriter {
      * Called by ZkStateWriter if state is flushed to ZK
      */
     void onWrite() throws Exception;
+
+    /**
+     * Returns the delete operations to commit together with the flushed state, such as the removal of the
+     * messages that produced it from the Overseer queue. Called right before the flush.
+     */
+    default List<Op> getDeleteOps() {
+      return Collections.emptyList();
+    }
   }
 }
 
@@ -16,17 +16,30 @@
  */
 package org.apache.solr.cloud.overseer;
 
+import java.util.Map;
+
 import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Replica;
 
 public class ZkWriteCommand {
   public final String name;
   public final DocCollection collection;
   public final boolean noop;
+  /**
+   * States of replicas to write to the per-replica states of the collection, for collections that have them,
+   * since the states in their state.json are not used
+   */
+  public final Map<String, Replica.State> replicaStates;
 
   public ZkWriteCommand(String name, DocCollection collection) {
+    this(name, collection, null);
+  }
+
+  public ZkWriteCommand(String name, DocCollection collection, Map<String, Replica.State> replicaStates) {
     this.name = name;
     this.collection = collection;
     this.noop = false;
+    this.replicaStates = replicaStates;
   }
 
   /**
@@ -36,6 +49,7 @@ public class ZkWriteCommand {
     this.noop = true;
     this.name = null;
     this.collection = null;
+    this.replicaStates = null;
   }
 
   public static ZkWriteCommand noop() {
@@ -161,6 +161,7 @@ public class CoreContainer {
   protected LogWatcher logging = null;
 
   private CloserThread backgroundCloser = null;
+  private SearcherBudget searcherBudget = null;
   protected final NodeConfig cfg;
   protected final SolrResourceLoader loader;
 
@@ -566,6 +567,15 @@ public class CoreContainer {
         true, "lazy", SolrInfoBean.Category.CONTAINER.toString(), "cores");
     metricManager.registerGauge(null, registryName, () -> solrCores.getAllCoreNames().size() - solrCores.getLoadedCoreNames().size(),
         true, "unloaded", SolrInfoBean.Category.CONTAINER.toString(), "cores");
+    if (cfg.isLazySearchers() || SearcherBudget.hasLimit(cfg)) {
+      searcherBudget = new SearcherBudget(this, cfg);
+      metricManager.registerGauge(null, registryName, () -> searcherBudget.getOpenSearchers(),
+          true, "searchers", SolrInfoBean.Category.CONTAINER.toString(), "cores");
+      metricManager.registerGauge(null, registryName, () -> searcherBudget.getUsage().ramBytes,
+          true, "searchersRamBytes", SolrInfoBean.Category.CONTAINER.toString(), "cores");
+      metricManager.registerGauge(null, registryName, () -> searcherBudget.getUsage().openFiles,
+          true, "searchersOpenFiles", SolrInfoBean.Category.CONTAINER.toString(), "cores");
+    }
     Path dataHome = cfg.getSolrDataHome() != null ? cfg.getSolrDataHome() : cfg.getCoreRootDirectory();
     metricManager.registerGauge(null, registryName, () -> dataHome.toFile().getTotalSpace(),
         true, "totalSpace", SolrInfoBean.Category.CONTAINER.toString(), "fs");
@@ -618,6 +628,8 @@ public class CoreContainer {
         metricManager.registry(SolrMetricManager.getRegistryName(SolrInfoBean.Group.node)),
         SolrMetricManager.mkName("coreLoadExecutor", SolrInfoBean.Category.CONTAINER.toString(), "threadPool"));
     final List<Future<SolrCore>> futures = new ArrayList<>();
+    // the cores whose searcher is opened in the background once all cores are loaded, in order
+    final List<String> lazyCoreNames = new ArrayList<>();
     try {
       List<CoreDescriptor> cds = coresLocator.discover(this);
       if (isZooKeeperAware()) {
@@ -636,6 +648,9 @@ public class CoreContainer {
           solrCores.markCoreAsLoading(cd);
         }
         if (cd.isLoadOnStartup()) {
+          if (cfg.isLazySearchers()) {
+            lazyCoreNames.add(cd.getName());
+          }
           futures.add(coreLoadExecutor.submit(() -> {
             SolrCore core;
             try {
@@ -682,9 +697,11 @@ public class CoreContainer {
           } finally {
             ExecutorUtil.shutdownAndAwaitTermination(coreLoadExecutor);
           }
+          openLazySearchers(lazyCoreNames);
         });
       } else {
         ExecutorUtil.shutdownAndAwaitTermination(coreLoadExecutor);
+        openLazySearchers(lazyCoreNames);
       }
     }
 
@@ -696,6 +713,16 @@ public class CoreContainer {
   }
 
 
+  private void openLazySearchers(List<String> coreNames) {
+    if (searcherBudget != null && !coreNames.isEmpty()) {
+      searcherBudget.openSearchers(coreNames);
+    }
+  }
+
+  SearcherBudget getSearcherBudget() {
+    return searcherBudget;
+  }
+
   public void securityNodeChanged() {
     log.info("Security node changed, reloading security.json");
     reloadSecurityProperties();
@@ -738,6 +765,9 @@ public class CoreContainer {
     isShutDown = true;
 
     ExecutorUtil.shutdownAndAwaitTermination(coreContainerWorkExecutor);
+    if (searcherBudget != null) {
+      searcherBudget.close();
+    }
     if (metricManager != null) {
       metricManager.closeReporters(SolrMetricManager.getRegistryName(SolrInfoBean.Group.node));
       metricManager.closeReporters(SolrMetricManager.getRegistryName(SolrInfoBean.Group.jvm));
@@ -73,6 +73,14 @@ public class NodeConfig {
 
   private final PluginInfo transientCacheConfig;
 
+  private final boolean lazySearchers;
+
+  private final int maxOpenSearchers;
+
+  private final int maxSearchersRamMB;
+
+  private final int maxSearchersOpenFiles;
+
   private NodeConfig(String nodeName, Path coreRootDirectory, Path solrDataHome, Path configSetBaseDirectory, String sharedLibDirectory,
                      PluginInfo shardHandlerFactoryConfig, UpdateShardHandlerConfig updateShardHandlerConfig,
                      String coreAdminHandlerClass, String collectionsAdminHandlerClass,
@@ -80,7 +88,8 @@ public class NodeConfig {
                      LogWatcherConfig logWatcherConfig, CloudConfig cloudConfig, Integer coreLoadThreads,
                      int transientCacheSize, boolean useSchemaCache, String managementPath, SolrResourceLoader loader,
                      Properties solrProperties, PluginInfo[] backupRepositoryPlugins,
-                     MetricsConfig metricsConfig, PluginInfo transientCacheConfig) {
+                     MetricsConfig metricsConfig, PluginInfo transientCacheConfig, boolean lazySearchers,
+                     int maxOpenSearchers, int maxSearchersRamMB, int maxSearchersOpenFiles) {
     this.nodeName = nodeName;
     this.coreRootDirectory = coreRootDirectory;
     this.solrDataHome = solrDataHome;
@@ -104,6 +113,10 @@ public class NodeConfig {
     this.backupRepositoryPlugins = backupRepositoryPlugins;
     this.metricsConfig = metricsConfig;
     this.transientCacheConfig = transientCacheConfig;
+    this.lazySearchers = lazySearchers;
+    this.maxOpenSearchers = maxOpenSearchers;
+    this.maxSearchersRamMB = maxSearchersRamMB;
+    this.maxSearchersOpenFiles = maxSearchersOpenFiles;
 
     if (this.cloudConfig != null && this.getCoreLoadThreadCount(false) < 2) {
       throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
@@ -206,6 +219,38 @@ public class NodeConfig {
 
   public PluginInfo getTransientCachePluginInfo() { return transientCacheConfig; }
 
+  /**
+   * @return true if cores are loaded without opening their searcher, which is opened by their first request or in
+   *         the background, as allowed by {@link #getMaxOpenSearchers()}
+   */
+  public boolean isLazySearchers() {
+    return lazySearchers;
+  }
+
+  /**
+   * @return the maximum number of cores keeping a searcher open; the searchers of the cores idle for the longest
+   *         time are closed above it, and opened again on demand
+   */
+  public int getMaxOpenSearchers() {
+    return maxOpenSearchers;
+  }
+
+  /**
+   * @return the maximum heap, in MB, that the segment readers of the open searchers of all cores may use; the
+   *         searchers of the cores idle for the longest time are closed above it, and opened again on demand
+   */
+  public int getMaxSearchersRamMB() {
+    return maxSearchersRamMB;
+  }
+
+  /**
+   * @return the maximum number of index files that the open searchers of all cores may hold open; the searchers of
+   *         the cores idle for the longest time are closed above it, and opened again on demand
+   */
+  public int getMaxSearchersOpenFiles() {
+    return maxSearchersOpenFiles;
+  }
+
   public static class NodeConfigBuilder {
 
     private Path coreRootDirectory;
@@ -231,6 +276,10 @@ public class NodeConfig {
     private PluginInfo[] backupRepositoryPlugins;
     private MetricsConfig metricsConfig;
     private PluginInfo transientCacheConfig;
+    private boolean lazySearchers = false;
+    private int maxOpenSearchers = DEFAULT_MAX_OPEN_SEARCHERS;
+    private int maxSearchersRamMB = DEFAULT_MAX_SEARCHERS_RAM_MB;
+    private int maxSearchersOpenFiles = DEFAULT_MAX_SEARCHERS_OPEN_FILES;
 
     private final SolrResourceLoader loader;
     private final String nodeName;
@@ -239,6 +288,12 @@ public class NodeConfig {
     //No:of core load threads in cloud mode is set to a default of 8
     public static final int DEFAULT_CORE_LOAD_THREADS_IN_CLOUD = 8;
 
+    public static final int DEFAULT_MAX_OPEN_SEARCHERS = Integer.MAX_VALUE;
+
+    public static final int DEFAULT_MAX_SEARCHERS_RAM_MB = Integer.MAX_VALUE;
+
+    public static final int DEFAULT_MAX_SEARCHERS_OPEN_FILES = Integer.MAX_VALUE;
+
     public static final int DEFAULT_TRANSIENT_CACHE_SIZE = Integer.MAX_VALUE;
 
     private static final String DEFAULT_ADMINHANDLERCLASS = "org.apache.solr.handler.admin.CoreAdminHandler";
@@ -378,11 +433,32 @@ public class NodeConfig {
       return this;
     }
 
+    public NodeConfigBuilder setLazySearchers(boolean lazySearchers) {
+      this.lazySearchers = lazySearchers;
+      return this;
+    }
+
+    public NodeConfigBuilder setMaxOpenSearchers(int maxOpenSearchers) {
+      this.maxOpenSearchers = maxOpenSearchers;
+      return this;
+    }
+
+    public NodeConfigBuilder setMaxSearchersRamMB(int maxSearchersRamMB) {
+      this.maxSearchersRamMB = maxSearchersRamMB;
+      return this;
+    }
+
+    public NodeConfigBuilder setMaxSearchersOpenFiles(int maxSearchersOpenFiles) {
+      this.maxSearchersOpenFiles = maxSearchersOpenFiles;
+      return this;
+    }
+
     public NodeConfig build() {
       return new NodeConfig(nodeName, coreRootDirectory, solrDataHome, configSetBaseDirectory, sharedLibDirectory, shardHandlerFactoryConfig,
                             updateShardHandlerConfig, coreAdminHandlerClass, collectionsAdminHandlerClass, healthCheckHandlerClass, infoHandlerClass, configSetsHandlerClass,
                             logWatcherConfig, cloudConfig, coreLoadThreads, transientCacheSize, useSchemaCache, managementPath, loader, solrProperties,
-                            backupRepositoryPlugins, metricsConfig, transientCacheConfig);
+                            backupRepositoryPlugins, metricsConfig, transientCacheConfig, lazySearchers, maxOpenSearchers,
+                            maxSearchersRamMB, maxSearchersOpenFiles);
     }
   }
 }
@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.DefaultSolrThreadFactory;
+import org.apache.solr.util.RefCounted;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounds the resources held by the searchers of the cores of a {@link CoreContainer}: their number, to
+ * {@link NodeConfig#getMaxOpenSearchers()}, the heap used by their segment readers, to
+ * {@link NodeConfig#getMaxSearchersRamMB()}, and the number of index files they hold open, to
+ * {@link NodeConfig#getMaxSearchersOpenFiles()}, by closing the searchers of the cores that have been idle for the
+ * longest time. The index writer of such a core is closed too, since it keeps the segment readers of near real-time
+ * searchers open, see {@link SolrCore#closeIdleSearcher()}. A core whose searcher was closed stays loaded, and
+ * registered in ZooKeeper, and opens a new searcher on its next request. Only the searchers of cores that were not
+ * used for {@link #minIdleNanos} are closed, so that the budget never closes the searchers of cores in use, even when
+ * more of them are in use than the budget allows.
+ * <p>
+ * With {@link NodeConfig#isLazySearchers()}, cores are loaded without opening a searcher, and their searchers are then
+ * opened in the background, in the order the cores were loaded, for as long as the budget allows.
+ */
+class SearcherBudget implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  static final long CHECK_INTERVAL_MS = 10000;
+
+  private final CoreContainer container;
+  private final int maxOpenSearchers;
+  private final long maxRamBytes;
+  private final long maxOpenFiles;
+  private final ScheduledExecutorService executor;
+
+  // how long a core must be idle for its searcher to be closed
+  volatile long minIdleNanos = TimeUnit.MINUTES.toNanos(1);
+
+  /**
+   * The resources held by open searchers. The heap and files are estimated from the segment readers of the
+   * registered searchers: the heap they report using, and the files of their segments.
+   */
+  static final class Usage {
+    static final Usage NONE = new Usage(0, 0, 0);
+
+    final int searchers;
+    final long ramBytes;
+    final long openFiles;
+
+    Usage(int searchers, long ramBytes, long openFiles) {
+      this.searchers = searchers;
+      this.ramBytes = ramBytes;
+      this.openFiles = openFiles;
+    }
+
+    Usage plus(Usage other) {
+      return new Usage(searchers + other.searchers, ramBytes + other.ramBytes, openFiles + other.openFiles);
+    }
+
+    Usage minus(Usage other) {
+      return new Usage(searchers - other.searchers, ramBytes - other.ramBytes, openFiles - other.openFiles);
+    }
+  }
+
+  SearcherBudget(CoreContainer container, NodeConfig cfg) {
+    this.container = container;
+    this.maxOpenSearchers = cfg.getMaxOpenSearchers();
+    this.maxRamBytes = cfg.getMaxSearchersRamMB() == NodeConfig.NodeConfigBuilder.DEFAULT_MAX_SEARCHERS_RAM_MB
+        ? Long.MAX_VALUE : cfg.getMaxSearchersRamMB() * 1024L * 1024L;
+    this.maxOpenFiles = cfg.getMaxSearchersOpenFiles();
+    this.executor = Executors.newSingleThreadScheduledExecutor(new DefaultSolrThreadFactory("searcherBudget"));
+    if (hasLimit(cfg)) {
+      executor.scheduleWithFixedDelay(this::closeIdleSearchers, CHECK_INTERVAL_MS, CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * @return true if the given configuration limits the resources of the searchers
+   */
+  static boolean hasLimit(NodeConfig cfg) {
+    return cfg.getMaxOpenSearchers() < NodeConfig.NodeConfigBuilder.DEFAULT_MAX_OPEN_SEARCHERS
+        || cfg.getMaxSearchersRamMB() < NodeConfig.NodeConfigBuilder.DEFAULT_MAX_SEARCHERS_RAM_MB
+        || cfg.getMaxSearchersOpenFiles() < NodeConfig.NodeConfigBuilder.DEFAULT_MAX_SEARCHERS_OPEN_FILES;
+  }
+
+  private boolean isExceeded(Usage usage) {
+    return usage.searchers > maxOpenSearchers || usage.ramBytes > maxRamBytes || usage.openFiles > maxOpenFiles;
+  }
+
+  // closing a searcher that holds none of the exceeded resources would not help
+  private boolean relieves(Usage total, Usage usage) {
+    return (total.searchers > maxOpenSearchers && usage.searchers > 0)
+        || (total.ramBytes > maxRamBytes && usage.ramBytes > 0)
+        || (total.openFiles > maxOpenFiles && usage.openFiles > 0);
+  }
+
+  private boolean isReached(Usage usage) {
+    return usage.searchers >= maxOpenSearchers || usage.ramBytes >= maxRamBytes || usage.openFiles >= maxOpenFiles;
+  }
+
+  /**
+   * Opens the searchers of the given cores in the background, in order, until the budget is exhausted
+   */
+  void openSearchers(List<String> coreNames) {
+    executor.execute(() -> {
+      for (String coreName : coreNames) {
+        if (container.isShutDown() || isReached(getUsage())) {
+          break;
+        }
+        try (SolrCore core = container.getCore(coreName)) {
+          if (core != null && !core.hasOpenSearcher()) {
+            Future[] waitSearcher = new Future[1];
+            core.getSearcher(false, false, waitSearcher);
+            if (waitSearcher[0] != null) {
+              waitSearcher[0].get();
+            }
+          }
+        } catch (Exception e) {
+          log.warn("Could not open the searcher of core {}", coreName, e);
+        }
+      }
+    });
+  }
+
+  /**
+   * @return the number of loaded cores with an open searcher
+   */
+  int getOpenSearchers() {
+    int open = 0;
+    for (SolrCore core : container.getCores()) {
+      if (core.hasOpenSearcher()) {
+        open++;
+      }
+    }
+    return open;
+  }
+
+  /**
+   * @return the resources held by the searchers of all loaded cores
+   */
+  Usage getUsage() {
+    Usage total = Usage.NONE;
+    for (SolrCore core : container.getCores()) {
+      total = total.plus(getUsage(core));
+    }
+    return total;
+  }
+
+  /**
+   * @return the resources held by the searcher of the core, without counting as a use of the core
+   */
+  static Usage getUsage(SolrCore core) {
+    if (!core.hasOpenSearcher()) {
+      return Usage.NONE;
+    }
+    RefCounted<SolrIndexSearcher> searcher = core.peekRegisteredSearcher();
+    if (searcher == null) {
+      // still opening
+      return new Usage(1, 0, 0);
+    }
+    long ramBytes = 0;
+    long openFiles = 0;
+    try {
+      for (LeafReaderContext context : searcher.get().getRawReader().leaves()) {
+        LeafReader reader = FilterLeafReader.unwrap(context.reader());
+        if (reader instanceof SegmentReader) {
+          SegmentReader segmentReader = (SegmentReader) reader;
+          ramBytes += segmentReader.ramBytesUsed();
+          openFiles += segmentReader.getSegmentInfo().files().size();
+        }
+      }
+    } catch (IOException e) {
+      log.warn("Could not list the index files of core {}", core.getName(), e);
+    } finally {
+      searcher.decref();
+    }
+    return new Usage(1, ramBytes, openFiles);
+  }
+
+  /**
+   * Closes the searchers of the idle cores in excess of the budget, least recently used first
+   *
+   * @return the number of searchers closed
+   */
+  int closeIdleSearchers() {
+    Map<SolrCore,Usage> open = new IdentityHashMap<>();
+    Usage total = Usage.NONE;
+    for (SolrCore core : container.getCores()) {
+      Usage usage = getUsage(core);
+      if (usage.searchers > 0) {
+        open.put(core, usage);
+        total = total.plus(usage);
+      }
+    }
+    if (!isExceeded(total)) {
+      return 0;
+    }
+    List<SolrCore> cores = new ArrayList<>(open.keySet());
+    cores.sort(Comparator.comparingLong(SolrCore::getLastUsedNanos));
+    long now = System.nanoTime();
+    int closed = 0;
+    for (SolrCore core : cores) {
+      if (!isExceeded(total) || now - core.getLastUsedNanos() < minIdleNanos) {
+        break;
+      }
+      if (!relieves(total, open.get(core))) {
+        continue;
+      }
+      try {
+        if (core.closeIdleSearcher()) {
+          closed++;
+          total = total.minus(open.get(core));
+        }
+      } catch (Exception e) {
+        log.warn("Could not close the searcher of core {}", core.getName(), e);
+      }
+    }
+    if (closed > 0) {
+      log.info("Closed the searchers of {} idle cores, {} cores have an open searcher using about {} bytes of heap and {} files",
+          closed, total.searchers, total.ramBytes, total.openFiles);
+    }
+    return closed;
+  }
+
+  @Override
+  public void close() {
+    ExecutorUtil.shutdownAndAwaitTermination(executor);
+  }
+}
@@ -253,6 +253,7 @@ public class SolrConfig extends Config implements MapSerializable {
     enableLazyFieldLoading = getBool("query/enableLazyFieldLoading", false);
     
     useRangeVersionsForPeerSync = getBool("peerSync/useRangeVersions", true);
+    versionDigestBucketsForPeerSync = getInt("peerSync/versionDigestBuckets", 0);
 
     filterCacheConfig = CacheConfig.getConfig(this, "query/filterCache");
     queryResultCacheConfig = CacheConfig.getConfig(this, "query/queryResultCache");
@@ -503,6 +504,7 @@ public class SolrConfig extends Config implements MapSerializable {
   public final boolean enableLazyFieldLoading;
   
   public final boolean useRangeVersionsForPeerSync;
+  public final int versionDigestBucketsForPeerSync;
   
   // DocSet
   public final float hashSetInverseLoadFactor;
@@ -873,6 +875,7 @@ public class SolrConfig extends Config implements MapSerializable {
     m = new LinkedHashMap();
     result.put("peerSync", m);
     m.put("useRangeVersions", useRangeVersionsForPeerSync);
+    m.put("versionDigestBuckets", versionDigestBucketsForPeerSync);
 
     //TODO there is more to add
 
@@ -233,6 +233,7 @@ public final class SolrCore implements SolrInfoBean, SolrMetricProducer, Closeab
   public Date getStartTimeStamp() { return startTime; }
 
   private final Map<IndexReader.CacheKey, IndexFingerprint> perSegmentFingerprintCache = new MapMaker().weakKeys().makeMap();
+  private final Map<IndexReader.CacheKey, IndexFingerprint.SegmentVersions> perSegmentVersionsCache = new MapMaker().weakKeys().makeMap();
 
   public long getStartNanoTime() {
     return startNanoTime;
@@ -957,8 +958,10 @@ public final class SolrCore implements SolrInfoBean, SolrMetricProducer, Closeab
       });
 
       this.updateHandler = initUpdateHandler(updateHandler);
-      
-      initSearcher(prev);
+
+      if (prev != null || !coreContainer.getConfig().isLazySearchers()) {
+        initSearcher(prev);
+      }
 
       // Initialize the RestManager
       restManager = initRestManager();
@@ -1803,6 +1806,9 @@ public final class SolrCore implements SolrInfoBean, SolrMetricProducer, Closeab
   private RefCounted<SolrIndexSearcher> realtimeSearcher;
   private Callable<DirectoryReader> newReaderCreator;
 
+  // when a request last used this core, or a searcher of it
+  private volatile long lastUsedNanos = System.nanoTime();
+
   // For testing
   boolean areAllSearcherReferencesEmpty() {
     boolean isEmpty;
@@ -1854,7 +1860,7 @@ public final class SolrCore implements SolrInfoBean, SolrMetricProducer, Closeab
     //
     if (f == null || (f.getMaxInHash() > maxVersion) || (f.getNumDocs() != ctx.reader().numDocs())) {
       log.debug("IndexFingerprint cache miss for searcher:{} reader:{} readerHash:{} maxVersion:{}", searcher, ctx.reader(), ctx.reader().hashCode(), maxVersion);
-      f = IndexFingerprint.getFingerprint(searcher, ctx, maxVersion);
+      f = computeIndexFingerprint(searcher, ctx, maxVersion);
       // cache fingerprint for the segment only if all the versions in the segment are included in the fingerprint
       if (f.getMaxVersionEncountered() == f.getMaxInHash()) {
         log.info("Caching fingerprint for searcher:{} leafReaderContext:{} mavVersion:{}", searcher, ctx, maxVersion);
@@ -1868,10 +1874,40 @@ public final class SolrCore implements SolrInfoBean, SolrMetricProducer, Closeab
     return f;
   }
 
+  /**
+   * Computes the fingerprint of a segment from the aggregated versions of its segment core, which are loaded
+   * once per segment core (and doc values generation) and then shared across reopens, so that only the versions of deleted documents need
+   * to be read when deletions change or a different maxVersion is requested. The aggregates take a bounded amount
+   * of memory per segment, see {@link IndexFingerprint.SegmentVersions#ramBytesUsed()}.
+   */
+  private IndexFingerprint computeIndexFingerprint(SolrIndexSearcher searcher, LeafReaderContext ctx, long maxVersion)
+      throws IOException {
+    IndexReader.CacheHelper coreCacheHelper = ctx.reader().getCoreCacheHelper();
+    if (coreCacheHelper == null || IndexFingerprint.SegmentVersions.getDocValuesGen(ctx.reader()) == null) {
+      return IndexFingerprint.getFingerprint(searcher, ctx, maxVersion);
+    }
+    IndexFingerprint.SegmentVersions segmentVersions = perSegmentVersionsCache.get(coreCacheHelper.getKey());
+    // in-place updates change the versions without changing the segment core
+    if (segmentVersions == null || !segmentVersions.isCurrent(ctx.reader())) {
+      segmentVersions = IndexFingerprint.SegmentVersions.load(searcher, ctx);
+      perSegmentVersionsCache.put(coreCacheHelper.getKey(), segmentVersions);
+    }
+    return IndexFingerprint.getFingerprint(searcher, ctx, segmentVersions, maxVersion);
+  }
+
   /**
   * Returns the current registered searcher with its reference count incremented, or null if none are registered.
   */
   public RefCounted<SolrIndexSearcher> getRegisteredSearcher() {
+    lastUsedNanos = System.nanoTime();
+    return peekRegisteredSearcher();
+  }
+
+  /**
+   * Same as {@link #getRegisteredSearcher()}, but does not count as a use of this core, so that the searcher can be
+   * inspected without keeping it from being closed when idle.
+   */
+  RefCounted<SolrIndexSearcher> peekRegisteredSearcher() {
     synchronized (searcherLock) {
       if (_searcher != null) {
         _searcher.incref();
@@ -1887,6 +1923,7 @@ public final class SolrCore implements SolrInfoBean, SolrMetricProducer, Closeab
    * or null is returned if openNew==false.
    */
   public RefCounted<SolrIndexSearcher> getNewestSearcher(boolean openNew) {
+    lastUsedNanos = System.nanoTime();
     synchronized (searcherLock) {
       if (!_searchers.isEmpty()) {
         RefCounted<SolrIndexSearcher> newest = _searchers.getLast();
@@ -1902,6 +1939,7 @@ public final class SolrCore implements SolrInfoBean, SolrMetricProducer, Closeab
    * The reference count will be incremented.
    */
   public RefCounted<SolrIndexSearcher> getRealtimeSearcher() {
+    lastUsedNanos = System.nanoTime();
     synchronized (searcherLock) {
       if (realtimeSearcher != null) {
         realtimeSearcher.incref();
@@ -2127,6 +2165,10 @@ public final class SolrCore implements SolrInfoBean, SolrMetricProducer, Closeab
     // sure that two threads aren't trying to open one at the same time
     // if it isn't necessary.
 
+    if (returnSearcher) {
+      lastUsedNanos = System.nanoTime();
+    }
+
     synchronized (searcherLock) {
       for(;;) { // this loop is so w can retry in the event that we exceed maxWarmingSearchers
         // see if we can return the current searcher
@@ -2445,6 +2487,57 @@ public final class SolrCore implements SolrInfoBean, SolrMetricProducer, Closeab
 
 
 
+  /**
+   * @return true if this core has a registered searcher or is opening one, rather than opening one on its next request
+   */
+  public boolean hasOpenSearcher() {
+    synchronized (searcherLock) {
+      return _searcher != null || onDeckSearchers > 0;
+    }
+  }
+
+  /**
+   * Closes the searchers of this core to release their resources while the core is idle, unless a new searcher is
+   * being opened. The segment readers of near real-time searchers are pooled by the index writer, so the index writer
+   * is closed as well, unless it has uncommitted changes or is in use. The searcher, and the index writer, are opened
+   * again on demand, by the next request.
+   *
+   * @return true if the searchers were closed
+   */
+  public boolean closeIdleSearcher() {
+    // keeps new searchers from being opened from the index writer while it is closed
+    if (!openSearcherLock.tryLock()) {
+      return false;
+    }
+    try {
+      synchronized (searcherLock) {
+        if (_searcher == null || onDeckSearchers > 0) {
+          return false;
+        }
+        log.info(logid + "Closing the searcher of idle core");
+        closeSearcher();
+      }
+      try {
+        if (getSolrCoreState().closeIdleIndexWriter(this)) {
+          log.info(logid + "Closed the index writer of idle core");
+        }
+      } catch (Exception e) {
+        log.warn(logid + "Could not close the index writer of idle core", e);
+      }
+      return true;
+    } finally {
+      openSearcherLock.unlock();
+    }
+  }
+
+  /**
+   * @return the value of {@link System#nanoTime()} when a request last used this core or one of its searchers, or
+   *         when this core was created
+   */
+  public long getLastUsedNanos() {
+    return lastUsedNanos;
+  }
+
   public void closeSearcher() {
     log.debug(logid+"Closing main searcher on request.");
     synchronized (searcherLock) {
@@ -2460,6 +2553,7 @@ public final class SolrCore implements SolrInfoBean, SolrMetricProducer, Closeab
   }
 
   public void execute(SolrRequestHandler handler, SolrQueryRequest req, SolrQueryResponse rsp) {
+    lastUsedNanos = System.nanoTime();
     if (handler==null) {
       String msg = "Null Request Handler '" +
         req.getParams().get(CommonParams.QT) + "'";
@@ -274,6 +274,18 @@ public class SolrXmlConfig {
         case "transientCacheSize":
           builder.setTransientCacheSize(parseInt(name, value));
           break;
+        case "lazySearchers":
+          builder.setLazySearchers(Boolean.parseBoolean(value));
+          break;
+        case "maxOpenSearchers":
+          builder.setMaxOpenSearchers(parseInt(name, value));
+          break;
+        case "maxSearchersRamMB":
+          builder.setMaxSearchersRamMB(parseInt(name, value));
+          break;
+        case "maxSearchersOpenFiles":
+          builder.setMaxSearchersOpenFiles(parseInt(name, value));
+          break;
         default:
           throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Unknown configuration value in solr.xml: " + name);
       }
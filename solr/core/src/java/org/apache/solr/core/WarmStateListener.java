@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.core;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.Utils;
+import org.apache.solr.core.DirectoryFactory.DirContext;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.search.DocList;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.QParser;
+import org.apache.solr.search.QueryResultKey;
+import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.SortSpecParsing;
+import org.apache.solr.search.facet.UnInvertedField;
+import org.apache.solr.uninverting.FieldCache;
+import org.apache.solr.util.DefaultSolrThreadFactory;
+import org.apache.solr.util.RefCounted;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Warms the first searcher of a core with the state of the caches of the last searcher of the previous instance of
+ * the core, typically before a restart.
+ * <p>
+ * When the core closes, the keys of the hottest entries of the filterCache and queryResultCache of its searcher are
+ * saved in the data directory, together with the fields in the fieldValueCache and the fields that were uninverted.
+ * Only the queries whose string form parses back into the same query with the lucene query parser can be saved, the
+ * others are skipped. When the core opens its first searcher, the saved state is replayed in parallel before the
+ * searcher is registered.
+ * <p>
+ * Configured as a <code>firstSearcher</code> listener, with the optional arguments <code>maxFilters</code>,
+ * <code>maxQueries</code> and <code>threads</code>.
+ */
+public class WarmStateListener extends AbstractSolrEventListener {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final String WARM_STATE_FILE = "warmstate.json";
+
+  static final String FILTERS = "filters";
+  static final String QUERIES = "queries";
+  static final String FACET_FIELDS = "facetFields";
+  static final String UNINVERTED_FIELDS = "uninvertedFields";
+
+  private int maxFilters = 128;
+  private int maxQueries = 128;
+  private int threads = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+  public WarmStateListener(SolrCore core) {
+    super(core);
+  }
+
+  @Override
+  public void init(NamedList args) {
+    super.init(args);
+    Object o = args.get("maxFilters");
+    if (o != null) maxFilters = Integer.parseInt(o.toString());
+    o = args.get("maxQueries");
+    if (o != null) maxQueries = Integer.parseInt(o.toString());
+    o = args.get("threads");
+    if (o != null) threads = Math.max(1, Integer.parseInt(o.toString()));
+
+    getCore().addCloseHook(new CloseHook() {
+      @Override
+      public void preClose(SolrCore core) {
+        saveWarmState();
+      }
+
+      @Override
+      public void postClose(SolrCore core) {
+      }
+    });
+  }
+
+  @Override
+  public void newSearcher(SolrIndexSearcher newSearcher, SolrIndexSearcher currentSearcher) {
+    if (currentSearcher != null) {
+      // the caches are autowarmed from the current searcher
+      return;
+    }
+    Map<String, Object> state;
+    try {
+      state = readWarmState();
+    } catch (Exception e) {
+      log.warn("Could not read the warm state of " + getCore().getName(), e);
+      return;
+    }
+    if (state != null) {
+      replay(newSearcher, state);
+    }
+  }
+
+  /** Saves the state of the caches of the registered searcher */
+  void saveWarmState() {
+    RefCounted<SolrIndexSearcher> searcher = getCore().getRegisteredSearcher();
+    if (searcher == null) {
+      return;
+    }
+    try {
+      writeWarmState(capture(searcher.get()));
+    } catch (Exception e) {
+      log.warn("Could not save the warm state of " + getCore().getName(), e);
+    } finally {
+      searcher.decref();
+    }
+  }
+
+  Map<String, Object> capture(SolrIndexSearcher searcher) {
+    SolrQueryRequest req = newRequest(searcher);
+    Map<String, Object> state = new LinkedHashMap<>();
+
+    List<String> filters = new ArrayList<>();
+    SolrCache<Query, DocSet> filterCache = searcher.getFilterCache();
+    if (filterCache != null) {
+      for (Query filter : filterCache.getHottestKeys(maxFilters)) {
+        String s = toQueryString(filter, req);
+        if (s != null) filters.add(s);
+      }
+    }
+    state.put(FILTERS, filters);
+
+    List<Map<String, Object>> queries = new ArrayList<>();
+    SolrCache<QueryResultKey, DocList> queryResultCache = searcher.getQueryResultCache();
+    if (queryResultCache != null) {
+      for (QueryResultKey key : queryResultCache.getHottestKeys(maxQueries)) {
+        Map<String, Object> query = toQueryMap(key, req);
+        if (query != null) queries.add(query);
+      }
+    }
+    state.put(QUERIES, queries);
+
+    SolrCache<String, UnInvertedField> fieldValueCache = searcher.getFieldValueCache();
+    state.put(FACET_FIELDS, fieldValueCache == null ? Collections.emptyList()
+        : new ArrayList<>(new TreeSet<>(fieldValueCache.getHottestKeys(fieldValueCache.size()))));
+
+    Set<IndexReader.CacheKey> readerKeys = new HashSet<>();
+    for (LeafReaderContext leaf : searcher.getTopReaderContext().leaves()) {
+      IndexReader.CacheHelper cacheHelper = leaf.reader().getCoreCacheHelper();
+      if (cacheHelper != null) readerKeys.add(cacheHelper.getKey());
+    }
+    Set<String> uninverted = new TreeSet<>();
+    for (FieldCache.CacheEntry entry : FieldCache.DEFAULT.getCacheEntries()) {
+      if (readerKeys.contains(entry.getReaderKey())) uninverted.add(entry.getFieldName());
+    }
+    state.put(UNINVERTED_FIELDS, new ArrayList<>(uninverted));
+    return state;
+  }
+
+  /** Warms the caches of the given searcher with the given state, in parallel */
+  @SuppressWarnings("unchecked")
+  void replay(SolrIndexSearcher searcher, Map<String, Object> state) {
+    long start = System.nanoTime();
+    ExecutorService executor = ExecutorUtil.newMDCAwareFixedThreadPool(threads,
+        new DefaultSolrThreadFactory("warmStateReplay"));
+    try {
+      for (String field : (List<String>) state.getOrDefault(UNINVERTED_FIELDS, Collections.emptyList())) {
+        executor.execute(() -> replay(searcher, "uninverted field " + field, req -> uninvert(searcher, field)));
+      }
+      for (String field : (List<String>) state.getOrDefault(FACET_FIELDS, Collections.emptyList())) {
+        executor.execute(() -> replay(searcher, "facet field " + field,
+            req -> UnInvertedField.getUnInvertedField(field, searcher)));
+      }
+      for (String filter : (List<String>) state.getOrDefault(FILTERS, Collections.emptyList())) {
+        executor.execute(() -> replay(searcher, "filter " + filter,
+            req -> searcher.getDocSet(QParser.getParser(filter, req).getQuery())));
+      }
+      for (Map<String, Object> query : (List<Map<String, Object>>) state.getOrDefault(QUERIES, Collections.emptyList())) {
+        executor.execute(() -> replay(searcher, "query " + query, req -> {
+          List<Query> filters = null;
+          List<String> fq = (List<String>) query.get("fq");
+          if (fq != null) {
+            filters = new ArrayList<>(fq.size());
+            for (String filter : fq) {
+              filters.add(QParser.getParser(filter, req).getQuery());
+            }
+          }
+          String sort = (String) query.get("sort");
+          Sort lsort = sort == null ? null : SortSpecParsing.parseSortSpec(sort, req).getSort();
+          searcher.getDocList(QParser.getParser((String) query.get("q"), req).getQuery(), filters, lsort, 0,
+              getCore().getSolrConfig().queryResultWindowSize, ((Number) query.get("flags")).intValue());
+        }));
+      }
+    } finally {
+      ExecutorUtil.shutdownAndAwaitTermination(executor);
+    }
+    log.info("Replayed the warm state of {} in {}ms", getCore().getName(), (System.nanoTime() - start) / 1000000);
+  }
+
+  private interface WarmingTask {
+    void warm(SolrQueryRequest req) throws Exception;
+  }
+
+  private void replay(SolrIndexSearcher searcher, String what, WarmingTask task) {
+    SolrQueryRequest req = newRequest(searcher);
+    try {
+      task.warm(req);
+    } catch (Exception e) {
+      log.warn("Could not warm {} of {}", what, getCore().getName(), e);
+    } finally {
+      req.close();
+    }
+  }
+
+  private SolrQueryRequest newRequest(SolrIndexSearcher searcher) {
+    return new LocalSolrQueryRequest(getCore(), new ModifiableSolrParams()) {
+      @Override public SolrIndexSearcher getSearcher() { return searcher; }
+      @Override public void close() { }
+    };
+  }
+
+  private static void uninvert(SolrIndexSearcher searcher, String field) throws IOException {
+    for (LeafReaderContext leaf : searcher.getTopReaderContext().leaves()) {
+      LeafReader reader = leaf.reader();
+      FieldInfo fieldInfo = reader.getFieldInfos().fieldInfo(field);
+      if (fieldInfo == null) continue;
+      switch (fieldInfo.getDocValuesType()) {
+        case NUMERIC: reader.getNumericDocValues(field); break;
+        case BINARY: reader.getBinaryDocValues(field); break;
+        case SORTED: reader.getSortedDocValues(field); break;
+        case SORTED_NUMERIC: reader.getSortedNumericDocValues(field); break;
+        case SORTED_SET: reader.getSortedSetDocValues(field); break;
+        default: break;
+      }
+    }
+  }
+
+  /** Returns the string form of the given query, or null if it does not parse back into the same query */
+  private static String toQueryString(Query query, SolrQueryRequest req) {
+    String s = query.toString();
+    try {
+      return query.equals(QParser.getParser(s, req).getQuery()) ? s : null;
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private static Map<String, Object> toQueryMap(QueryResultKey key, SolrQueryRequest req) {
+    Map<String, Object> query = new LinkedHashMap<>();
+    String q = toQueryString(key.getQuery(), req);
+    if (q == null) return null;
+    query.put("q", q);
+    if (key.getFilters() != null) {
+      List<String> fq = new ArrayList<>(key.getFilters().size());
+      for (Query filter : key.getFilters()) {
+        String s = toQueryString(filter, req);
+        if (s == null) return null;
+        fq.add(s);
+      }
+      query.put("fq", fq);
+    }
+    if (key.getSort() != null) {
+      String sort = toSortString(key.getSort(), req);
+      if (sort == null) return null;
+      query.put("sort", sort);
+    }
+    query.put("flags", key.getFlags());
+    return query;
+  }
+
+  /** Returns the sort spec of the given sort, or null if it does not parse back into the same sort */
+  private static String toSortString(Sort sort, SolrQueryRequest req) {
+    StringBuilder sb = new StringBuilder();
+    for (SortField sortField : sort.getSort()) {
+      if (sb.length() > 0) sb.append(',');
+      if (sortField.getType() == SortField.Type.SCORE) {
+        sb.append("score ").append(sortField.getReverse() ? "asc" : "desc");
+      } else if (sortField.getType() == SortField.Type.DOC) {
+        sb.append("_docid_ ").append(sortField.getReverse() ? "desc" : "asc");
+      } else if (sortField.getField() != null) {
+        sb.append(sortField.getField()).append(sortField.getReverse() ? " desc" : " asc");
+      } else {
+        return null;
+      }
+    }
+    try {
+      Sort parsed = SortSpecParsing.parseSortSpec(sb.toString(), req).getSort();
+      return parsed != null && Arrays.equals(sort.getSort(), parsed.getSort()) ? sb.toString() : null;
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private void writeWarmState(Map<String, Object> state) throws IOException {
+    SolrCore core = getCore();
+    Directory dir = core.getDirectoryFactory().get(core.getDataDir(), DirContext.META_DATA,
+        core.getSolrConfig().indexConfig.lockType);
+    try {
+      try {
+        dir.deleteFile(WARM_STATE_FILE);
+      } catch (FileNotFoundException | NoSuchFileException e) {
+        // first save
+      }
+      byte[] bytes = Utils.toJSON(state);
+      try (IndexOutput out = dir.createOutput(WARM_STATE_FILE, IOContext.DEFAULT)) {
+        out.writeBytes(bytes, bytes.length);
+      }
+    } finally {
+      core.getDirectoryFactory().release(dir);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<String, Object> readWarmState() throws IOException {
+    SolrCore core = getCore();
+    Directory dir = core.getDirectoryFactory().get(core.getDataDir(), DirContext.META_DATA,
+        core.getSolrConfig().indexConfig.lockType);
+    try (IndexInput in = dir.openInput(WARM_STATE_FILE, IOContext.DEFAULT)) {
+      byte[] bytes = new byte[(int) in.length()];
+      in.readBytes(bytes, 0, bytes.length);
+      return (Map<String, Object>) Utils.fromJSON(bytes);
+    } catch (FileNotFoundException | NoSuchFileException e) {
+      return null;
+    } finally {
+      core.getDirectoryFactory().release(dir);
+    }
+  }
+}
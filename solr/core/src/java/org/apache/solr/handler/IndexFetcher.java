@@ -56,9 +56,12 @@ import java.util.zip.InflaterInputStream;
 
 import org.apache.http.client.HttpClient;
 import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
@@ -90,6 +93,7 @@ import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.update.CdcrUpdateLog;
 import org.apache.solr.update.CommitUpdateCommand;
+import org.apache.solr.update.PageCacheSegmentWarmer;
 import org.apache.solr.update.UpdateLog;
 import org.apache.solr.update.VersionInfo;
 import org.apache.solr.util.DefaultSolrThreadFactory;
@@ -646,6 +650,7 @@ public class IndexFetcher {
             solrCore.getUpdateHandler().newIndexWriter(isFullCopyNeeded);
           }
 
+          warmDownloadedSegments();
           openNewSearcherAndUpdateCommitPoint();
         }
 
@@ -881,6 +886,45 @@ public class IndexFetcher {
     return sb;
   }
 
+  /**
+   * Warms the downloaded segments with the merged segment warmer of the index writer, if it is a
+   * {@link PageCacheSegmentWarmer}, so that the new searcher does not start with a cold page cache.
+   */
+  private void warmDownloadedSegments() {
+    // must get the latest solrCore object because the one we have might be closed because of a reload
+    SolrCore core = solrCore.getCoreContainer().getCore(solrCore.getName());
+    if (core == null) {
+      return;
+    }
+    RefCounted<IndexWriter> iw = null;
+    try {
+      iw = core.getSolrCoreState().getIndexWriter(core);
+      IndexWriter.IndexReaderWarmer warmer = iw.get().getConfig().getMergedSegmentWarmer();
+      if (!(warmer instanceof PageCacheSegmentWarmer)) {
+        return;
+      }
+      Set<String> downloaded = new HashSet<>();
+      for (Map<String, Object> file : filesDownloaded) {
+        downloaded.add((String) file.get(NAME));
+      }
+      try (DirectoryReader reader = DirectoryReader.open(iw.get().getDirectory())) {
+        for (LeafReaderContext leaf : reader.leaves()) {
+          SegmentReader segmentReader = (SegmentReader) leaf.reader();
+          if (!Collections.disjoint(segmentReader.getSegmentInfo().files(), downloaded)) {
+            warmer.warm(segmentReader);
+          }
+        }
+      }
+    } catch (Exception e) {
+      LOG.warn("Could not warm the downloaded segments", e);
+    } finally {
+      if (iw != null) {
+        iw.decref();
+      }
+      core.close();
+    }
+  }
+
   private void openNewSearcherAndUpdateCommitPoint() throws IOException {
     RefCounted<SolrIndexSearcher> searcher = null;
     IndexCommit commitPoint;
@@ -87,6 +87,7 @@ import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.security.AuthorizationContext;
 import org.apache.solr.security.PermissionNameProvider;
+import org.apache.solr.update.SolrIndexSplitter;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
 import org.slf4j.Logger;
@@ -130,6 +131,8 @@ import static org.apache.solr.common.cloud.ZkStateReader.TLOG_REPLICAS;
 import static org.apache.solr.common.params.CollectionAdminParams.COUNT_PROP;
 import static org.apache.solr.common.params.CollectionParams.CollectionAction.*;
 import static org.apache.solr.common.params.CommonAdminParams.ASYNC;
+import static org.apache.solr.common.params.CommonAdminParams.SPLIT_METHOD;
+import static org.apache.solr.common.params.CommonAdminParams.TASK_PRIORITY;
 import static org.apache.solr.common.params.CommonAdminParams.WAIT_FOR_FINAL_STATE;
 import static org.apache.solr.common.params.CommonParams.NAME;
 import static org.apache.solr.common.params.CommonParams.VALUE_LONG;
@@ -238,6 +241,10 @@ public class CollectionsHandler extends RequestHandlerBase implements Permission
       if (asyncId != null) {
         props.put(ASYNC, asyncId);
       }
+      String taskPriority = req.getParams().get(TASK_PRIORITY);
+      if (taskPriority != null) {
+        props.put(TASK_PRIORITY, taskPriority);
+      }
       props.put(QUEUE_OPERATION, operation.action.toLower());
       ZkNodeProps zkProps = new ZkNodeProps(props);
       if (operation.sendToOCPQueue) {
@@ -410,6 +417,7 @@ public class CollectionsHandler extends RequestHandlerBase implements Permission
           SHARDS_PROP,
           STATE_FORMAT,
           AUTO_ADD_REPLICAS,
+          DocCollection.PER_REPLICA_STATE,
           RULE,
           SNITCH,
           PULL_REPLICAS,
@@ -421,6 +429,10 @@ public class CollectionsHandler extends RequestHandlerBase implements Permission
       if (props.get(STATE_FORMAT) == null) {
         props.put(STATE_FORMAT, "2");
       }
+      if (Boolean.parseBoolean(String.valueOf(props.get(DocCollection.PER_REPLICA_STATE)))
+          && !"2".equals(String.valueOf(props.get(STATE_FORMAT)))) {
+        throw new SolrException(ErrorCode.BAD_REQUEST, DocCollection.PER_REPLICA_STATE + " requires " + STATE_FORMAT + "=2");
+      }
       addMapObject(props, RULE);
       addMapObject(props, SNITCH);
       verifyRuleParams(h.coreContainer, props);
@@ -502,12 +514,17 @@ public class CollectionsHandler extends RequestHandlerBase implements Permission
         throw new SolrException(ErrorCode.BAD_REQUEST,
             "Only one of 'ranges' or 'split.key' should be specified");
       }
+      String splitMethod = req.getParams().get(SPLIT_METHOD);
+      if (splitMethod != null && SolrIndexSplitter.SplitMethod.get(splitMethod) == null) {
+        throw new SolrException(ErrorCode.BAD_REQUEST, "Unsupported value of '" + SPLIT_METHOD + "': " + splitMethod);
+      }
 
       Map<String, Object> map = req.getParams().getAll(null,
           COLLECTION_PROP,
           SHARD_ID_PROP,
           "split.key",
           CoreAdminParams.RANGES,
+          SPLIT_METHOD,
           WAIT_FOR_FINAL_STATE);
       return copyPropertiesWithPrefix(req.getParams(), map, COLL_PROP_PREFIX);
     }),
@@ -42,6 +42,7 @@ import org.apache.lucene.util.BytesRef;
 import org.apache.solr.cloud.ZkController;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.cloud.CompactStateCodec;
 import org.apache.solr.common.cloud.OnReconnect;
 import org.apache.solr.common.cloud.Replica;
 import org.apache.solr.common.cloud.SolrZkClient;
@@ -668,6 +669,14 @@ public final class ZookeeperInfoHandler extends RequestHandlerBase {
       json.write(v);
     }
 
+    // compactly encoded collection states are shown as the json they stand for
+    private String dataToString(byte[] data, String path) {
+      if (CompactStateCodec.isCompact(data)) {
+        return new String(Utils.toJSON(new CompactStateCodec().decode(data, path)), StandardCharsets.UTF_8);
+      }
+      return (new BytesRef(data)).utf8ToString();
+    }
+
     @SuppressWarnings("unchecked")
     boolean printZnode(JSONWriter json, String path) throws IOException {
       try {
@@ -678,7 +687,7 @@ public final class ZookeeperInfoHandler extends RequestHandlerBase {
         byte[] data = zkClient.getData(path, null, stat, true);
         if (null != data) {
           try {
-            dataStr = (new BytesRef(data)).utf8ToString();
+            dataStr = dataToString(data, path);
           } catch (Exception e) {
             dataStrErr = "data is not parsable as a utf8 String: " + e.toString();
           }
@@ -730,7 +739,7 @@ public final class ZookeeperInfoHandler extends RequestHandlerBase {
               try {
                 byte[] childData = zkClient.getData(collStatePath, null, null, true);
                 if (childData != null)
-                  childDataStr = (new BytesRef(childData)).utf8ToString();
+                  childDataStr = dataToString(childData, collStatePath);
               } catch (KeeperException.NoNodeException nne) {
                 log.warn("State for collection " + collection +
                     " not found in /clusterstate.json or /collections/" + collection + "/state.json!");
@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.apache.solr.common.util.URLUtil;
+
+/**
+ * Orders replicas by their expected response time, computed from the recent response times and
+ * outstanding requests of each replica, in the spirit of the C3 replica ranking function
+ * (Suresh et al., "C3: Cutting Tail Latency in Cloud Data Stores via Adaptive Replica Selection").
+ * <p>
+ * For every replica an exponentially weighted moving average of the response time (as seen by this node)
+ * and of the service time (the QTime reported by the replica) is kept, along with the number of requests
+ * that are currently outstanding. A replica is scored as
+ * <pre>
+ *   responseTime - serviceTime + (1 + outstanding)^3 * serviceTime
+ * </pre>
+ * so that replicas that are busy, either because they are slow or because many requests are
+ * already queued on them, are penalized more than linearly. Replicas are shuffled before they are
+ * sorted, so that replicas with the same score are picked randomly.
+ * <p>
+ * Replicas without statistics score 0 and are therefore tried first. The moving averages of replicas
+ * whose statistics have not been updated for a while are not trusted anymore: such a replica scores 0
+ * if it has no outstanding request, which lets replicas that were slow (because they were in GC or
+ * merging, for instance) get traffic again once they have recovered, but its outstanding requests
+ * are still penalized, using the mean service time of the other replicas, or its own last known
+ * service time, so that a replica that stopped answering is not preferred. The statistics of replicas
+ * that are no longer part of the cluster state are removed, see {@link #evictStats}.
+ */
+class AdaptiveReplicaListTransformer extends ShufflingReplicaListTransformer {
+
+  // weight of a new sample in the moving averages
+  static final double ALPHA = 0.3;
+  // statistics that have not been updated for this long are discarded
+  static final long STATS_EXPIRY_NANOS = TimeUnit.SECONDS.toNanos(10);
+  // a failed request counts as at least this many times the current average response time
+  static final int FAILURE_PENALTY = 2;
+  // the minimum number of samples needed before latency percentiles are used
+  static final int MIN_SAMPLES = 20;
+  // without cluster state, the statistics of replicas that got no request for this long are removed
+  static final long STATS_EVICTION_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+  private final Map<String,ReplicaStats> stats = new ConcurrentHashMap<>();
+  private final AtomicLong lastEviction = new AtomicLong(System.nanoTime());
+
+  public AdaptiveReplicaListTransformer(Random r) {
+    super(r);
+  }
+
+  private static class ReplicaStats {
+    double responseTime;
+    double serviceTime;
+    int outstanding;
+    long lastUpdate;
+    final Histogram latencies = new Histogram(new ExponentiallyDecayingReservoir());
+
+    /**
+     * @param fallbackServiceTime the service time to assume if the statistics are too old to be trusted,
+     *                            or 0 to use the last known one
+     */
+    synchronized double score(long now, double fallbackServiceTime) {
+      double q = 1 + outstanding;
+      if (isExpired(now)) {
+        // too old to be trusted, pretend we know nothing about the replica but don't forget about
+        // the requests that are still outstanding
+        double s = fallbackServiceTime > 0 ? fallbackServiceTime : serviceTime;
+        return (q * q * q - 1) * s;
+      }
+      return responseTime - serviceTime + q * q * q * serviceTime;
+    }
+
+    private boolean isExpired(long now) {
+      return now - lastUpdate > STATS_EXPIRY_NANOS;
+    }
+
+    /** Returns the service time of the replica, or 0 if it is unknown or too old to be trusted */
+    synchronized double getServiceTime(long now) {
+      return isExpired(now) ? 0 : serviceTime;
+    }
+
+    synchronized void update(long responseNanos, long serviceNanos, long now) {
+      if (responseTime == 0 || isExpired(now)) {
+        // start over from the new sample rather than from averages that are too old to be trusted
+        responseTime = responseNanos;
+        serviceTime = serviceNanos;
+      } else {
+        responseTime = ALPHA * responseNanos + (1 - ALPHA) * responseTime;
+        serviceTime = ALPHA * serviceNanos + (1 - ALPHA) * serviceTime;
+      }
+      lastUpdate = now;
+    }
+
+    synchronized boolean isIdle(long now, long idleNanos) {
+      return outstanding == 0 && now - lastUpdate > idleNanos;
+    }
+  }
+
+  @Override
+  public void transform(List<?> choices) {
+    if (choices.size() > 1) {
+      super.transform(choices);
+      sortByScore(choices, System.nanoTime());
+    }
+  }
+
+  <T> void sortByScore(List<T> choices, long now) {
+    // scores are computed once up front since concurrent requests may change them while sorting
+    final List<ReplicaStats> choiceStats = new ArrayList<>(choices.size());
+    double serviceTimeSum = 0;
+    int serviceTimeCount = 0;
+    for (T choice : choices) {
+      String key = key(choice);
+      ReplicaStats replicaStats = key == null ? null : stats.get(key);
+      choiceStats.add(replicaStats);
+      double serviceTime = replicaStats == null ? 0 : replicaStats.getServiceTime(now);
+      if (serviceTime > 0) {
+        serviceTimeSum += serviceTime;
+        serviceTimeCount++;
+      }
+    }
+    final double meanServiceTime = serviceTimeCount == 0 ? 0 : serviceTimeSum / serviceTimeCount;
+    final List<Map.Entry<T,Double>> scored = new ArrayList<>(choices.size());
+    for (int i = 0; i < choices.size(); i++) {
+      ReplicaStats replicaStats = choiceStats.get(i);
+      double score = replicaStats == null ? 0 : replicaStats.score(now, meanServiceTime);
+      scored.add(new AbstractMap.SimpleImmutableEntry<>(choices.get(i), score));
+    }
+    scored.sort(Map.Entry.comparingByValue());
+    for (int i = 0; i < scored.size(); i++) {
+      choices.set(i, scored.get(i).getKey());
+    }
+  }
+
+  /** Records that a request was sent to the replica, which must be followed by a call to {@link #requestFinished} */
+  public void requestStarted(String url) {
+    ReplicaStats replicaStats = stats.computeIfAbsent(key(url), k -> new ReplicaStats());
+    synchronized (replicaStats) {
+      replicaStats.outstanding++;
+    }
+  }
+
+  /**
+   * Records the response time of a request to the replica.
+   *
+   * @param responseNanos the time until the response was received
+   * @param serviceNanos the time the replica reported having spent on the request, or -1 if unknown
+   * @param success false if the request failed, in which case the replica is penalized
+   */
+  public void requestFinished(String url, long responseNanos, long serviceNanos, boolean success) {
+    ReplicaStats replicaStats = stats.computeIfAbsent(key(url), k -> new ReplicaStats());
+    final long now = System.nanoTime();
+    synchronized (replicaStats) {
+      replicaStats.outstanding = Math.max(0, replicaStats.outstanding - 1);
+      if (!success) {
+        responseNanos = Math.max(responseNanos, (long) (FAILURE_PENALTY * replicaStats.responseTime));
+      }
+      if (serviceNanos < 0 || serviceNanos > responseNanos) {
+        serviceNanos = responseNanos;
+      }
+      replicaStats.update(responseNanos, serviceNanos, now);
+    }
+    if (success) {
+      replicaStats.latencies.update(responseNanos);
+    }
+  }
+
+  /**
+   * Records that a request to the replica was aborted because another replica answered first. The
+   * time spent so far is a lower bound of the response time of the replica, so it is only used to
+   * update the moving averages, without penalty and without counting as a latency sample.
+   */
+  public void requestCancelled(String url, long elapsedNanos) {
+    ReplicaStats replicaStats = stats.computeIfAbsent(key(url), k -> new ReplicaStats());
+    final long now = System.nanoTime();
+    synchronized (replicaStats) {
+      replicaStats.outstanding = Math.max(0, replicaStats.outstanding - 1);
+      replicaStats.update(Math.max(elapsedNanos, (long) replicaStats.responseTime), elapsedNanos, now);
+    }
+  }
+
+  /**
+   * Removes the statistics of the replicas that got no request for a while and that are not part of
+   * the given cluster state, or, if the cluster state is null, that got no request for
+   * {@link #STATS_EVICTION_NANOS}. Collections that are lazily loaded are not fetched, so replicas of
+   * such collections are only kept while they get requests. This is cheap to call on every request
+   * since the statistics are only scanned once every {@link #STATS_EXPIRY_NANOS}.
+   */
+  public void evictStats(ClusterState clusterState) {
+    final long now = System.nanoTime();
+    final long last = lastEviction.get();
+    if (now - last >= STATS_EXPIRY_NANOS && lastEviction.compareAndSet(last, now)) {
+      evictStats(clusterState, now);
+    }
+  }
+
+  void evictStats(ClusterState clusterState, long now) {
+    Set<String> replicas = null;
+    if (clusterState != null) {
+      replicas = new HashSet<>();
+      for (ClusterState.CollectionRef ref : clusterState.getCollectionStates().values()) {
+        if (ref.isLazilyLoaded()) {
+          continue;
+        }
+        DocCollection collection = ref.get();
+        if (collection != null) {
+          for (Replica replica : collection.getReplicas()) {
+            String key = key(replica);
+            if (key != null) {
+              replicas.add(key);
+            }
+          }
+        }
+      }
+    }
+    for (Map.Entry<String,ReplicaStats> entry : stats.entrySet()) {
+      final boolean evict = replicas == null
+          ? entry.getValue().isIdle(now, STATS_EVICTION_NANOS)
+          : !replicas.contains(entry.getKey()) && entry.getValue().isIdle(now, STATS_EXPIRY_NANOS);
+      if (evict) {
+        stats.remove(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /** Returns the number of replicas statistics are kept for */
+  int getNumTrackedReplicas() {
+    return stats.size();
+  }
+
+  /**
+   * Returns the given percentile (between 0 and 1) of the recent response times of the replica in
+   * nanoseconds, or -1 if there are not enough samples yet.
+   */
+  public long getLatencyPercentile(String url, double quantile) {
+    ReplicaStats replicaStats = stats.get(key(url));
+    if (replicaStats == null || replicaStats.latencies.getCount() < MIN_SAMPLES) {
+      return -1;
+    }
+    return (long) replicaStats.latencies.getSnapshot().getValue(quantile);
+  }
+
+  /** the same replica can be given as a {@link Replica} or as an url, with or without scheme */
+  static String key(Object choice) {
+    final String url;
+    if (choice instanceof Replica) {
+      Replica replica = (Replica) choice;
+      url = replica.getStr(ZkStateReader.BASE_URL_PROP) == null ? null : replica.getCoreUrl();
+    } else if (choice instanceof String) {
+      url = (String) choice;
+    } else {
+      return null;
+    }
+    if (url == null) {
+      return null;
+    }
+    String key = URLUtil.hasScheme(url) ? URLUtil.removeScheme(url) : url;
+    return key.endsWith("/") ? key.substring(0, key.length() - 1) : key;
+  }
+}
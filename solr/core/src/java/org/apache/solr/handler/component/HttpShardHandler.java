@@ -18,6 +18,7 @@ package org.apache.solr.handler.component;
 
 import java.lang.invoke.MethodHandles;
 import java.net.ConnectException;
+import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -56,6 +57,7 @@ import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.StrUtils;
 import org.apache.solr.core.CoreDescriptor;
 import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -135,6 +137,8 @@ public class HttpShardHandler extends ShardHandler {
   public void submit(final ShardRequest sreq, final String shard, final ModifiableSolrParams params) {
     // do this outside of the callable for thread safety reasons
     final List<String> urls = getURLs(shard);
+    final ShardResponseCache shardResponseCache = httpShardHandlerFactory.getShardResponseCache();
+    final String cacheKey = shardResponseCache == null ? null : shardResponseCache.getKey(sreq, urls, params, getUserPrincipal());
 
     Callable<ShardResponse> task = () -> {
 
@@ -152,6 +156,21 @@ public class HttpShardHandler extends ShardHandler {
         params.remove(CommonParams.WT); // use default (currently javabin)
         params.remove(CommonParams.VERSION);
 
+        if (cacheKey != null) {
+          ShardResponseCache.CachedResponse cached = shardResponseCache.get(cacheKey);
+          if (cached != null) {
+            srsp.setShardAddress(cached.shardAddress);
+            ssr.nl = cached.response;
+            ssr.elapsedTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            return transfomResponse(sreq, srsp, shard);
+          }
+        }
+        if (shardResponseCache != null) {
+          // have the shard report the version of its index, so that the response can be cached and so that
+          // cached responses are invalidated as soon as any request sees a new searcher
+          params.set(ShardResponseCache.INDEX_VERSION_PARAM, true);
+        }
+
         QueryRequest req = makeQueryRequest(sreq, params, shard);
         req.setMethod(SolrRequest.METHOD.POST);
 
@@ -190,6 +209,16 @@ public class HttpShardHandler extends ShardHandler {
 
       ssr.elapsedTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
 
+      if (cacheKey != null && srsp.getException() == null) {
+        try {
+          shardResponseCache.put(cacheKey, srsp.getShardAddress(), ssr.nl);
+        } catch (Exception e) {
+          log.warn("Could not cache the response of shard {}", shard, e);
+        }
+      } else if (shardResponseCache != null && srsp.getException() == null) {
+        shardResponseCache.updateIndexVersion(srsp.getShardAddress(), ssr.nl);
+      }
+
       return transfomResponse(sreq, srsp, shard);
     };
 
@@ -207,6 +236,16 @@ public class HttpShardHandler extends ShardHandler {
     }
   }
   
+  /** Returns the name of the user that sent the request being processed, or null if not authenticated */
+  private static String getUserPrincipal() {
+    SolrRequestInfo requestInfo = SolrRequestInfo.getRequestInfo();
+    if (requestInfo == null || requestInfo.getReq() == null) {
+      return null;
+    }
+    Principal principal = requestInfo.getReq().getUserPrincipal();
+    return principal == null ? null : principal.getName();
+  }
+
   /**
    * Subclasses could modify the request based on the shard
    */
@@ -291,6 +330,8 @@ public class HttpShardHandler extends ShardHandler {
     ZkController zkController = req.getCore().getCoreContainer().getZkController();
 
     final ReplicaListTransformer replicaListTransformer = httpShardHandlerFactory.getReplicaListTransformer(req);
+    // forget about the response times of replicas that have been removed
+    httpShardHandlerFactory.evictReplicaStats(zkController == null ? null : zkController.getClusterState());
 
     if (shards != null) {
       List<String> lst = StrUtils.splitSmart(shards, ",", true);
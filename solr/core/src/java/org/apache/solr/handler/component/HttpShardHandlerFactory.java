@@ -16,16 +16,21 @@
  */
 package org.apache.solr.handler.component;
 
+import com.codahale.metrics.Counter;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.solr.client.solrj.ResponseParser;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpClientUtil;
+import org.apache.solr.client.solrj.impl.HttpSolrClient;
 import org.apache.solr.client.solrj.impl.LBHttpSolrClient;
 import org.apache.solr.client.solrj.impl.LBHttpSolrClient.Builder;
 import org.apache.solr.client.solrj.request.QueryRequest;
 import org.apache.solr.cloud.ZkController;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.cloud.ClusterState;
 import org.apache.solr.common.cloud.Replica;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.ModifiableSolrParams;
@@ -51,6 +56,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
@@ -59,7 +65,9 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -84,6 +92,10 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
       new DefaultSolrThreadFactory("httpShardExecutor")
   );
 
+  // runs both requests of hedged requests, which are themselves sent from commExecutor, so that they
+  // never wait for a thread of a bounded commExecutor; only set if requests are hedged
+  private ExecutorService hedgeExecutor;
+
   protected InstrumentedPoolingHttpClientConnectionManager clientConnectionManager;
   protected CloseableHttpClient defaultClient;
   protected InstrumentedHttpRequestExecutor httpRequestExecutor;
@@ -100,6 +112,10 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
   int   permittedLoadBalancerRequestsMinimumAbsolute = 0;
   float permittedLoadBalancerRequestsMaximumFraction = 1.0f;
   boolean accessPolicy = false;
+  boolean adaptiveReplicaSelection = false;
+  float hedgeRequestsPercentile = 0f;
+  int shardResponseCacheSize = 0;
+  int shardResponseCacheMaxAge = 10000;
 
   private String scheme = null;
 
@@ -109,6 +125,14 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
 
   private final ReplicaListTransformer shufflingReplicaListTransformer = new ShufflingReplicaListTransformer(r);
 
+  // tracks the response times of replicas, only set if replicas are selected adaptively
+  private AdaptiveReplicaListTransformer adaptiveReplicaListTransformer;
+
+  private Counter hedgedRequests = new Counter();
+
+  // caches the responses of shard requests, only set if the cache is enabled
+  private ShardResponseCache shardResponseCache;
+
   // URL scheme to be used in distributed search.
   static final String INIT_URL_SCHEME = "urlScheme";
 
@@ -133,6 +157,18 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
   // Configure if the threadpool favours fairness over throughput
   static final String INIT_FAIRNESS_POLICY = "fairnessPolicy";
 
+  // Configure if replicas are ordered by their recent response times and outstanding requests instead of randomly
+  static final String INIT_ADAPTIVE_REPLICA_SELECTION = "adaptiveReplicaSelection";
+
+  // The percentile of the response times of a replica after which the request is also sent to the next replica, 0 disables this
+  static final String INIT_HEDGE_REQUESTS_PERCENTILE = "hedgeRequestsPercentile";
+
+  // The maximum number of shard responses cached on the aggregating node, 0 disables the cache
+  static final String INIT_SHARD_RESPONSE_CACHE_SIZE = "shardResponseCacheSize";
+
+  // The maximum age in milliseconds of a cached shard response
+  static final String INIT_SHARD_RESPONSE_CACHE_MAX_AGE = "shardResponseCacheMaxAge";
+
   /**
    * Get {@link ShardHandler} that uses the default http client.
    */
@@ -183,6 +219,17 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
         permittedLoadBalancerRequestsMaximumFraction,
         sb);
     this.accessPolicy = getParameter(args, INIT_FAIRNESS_POLICY, accessPolicy,sb);
+    this.adaptiveReplicaSelection = getParameter(args, INIT_ADAPTIVE_REPLICA_SELECTION, adaptiveReplicaSelection, sb);
+    this.hedgeRequestsPercentile = getParameter(args, INIT_HEDGE_REQUESTS_PERCENTILE, hedgeRequestsPercentile, sb);
+    if (hedgeRequestsPercentile < 0 || hedgeRequestsPercentile >= 100) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+          INIT_HEDGE_REQUESTS_PERCENTILE + " must be between 0 and 100 but was " + hedgeRequestsPercentile);
+    }
+    this.shardResponseCacheSize = getParameter(args, INIT_SHARD_RESPONSE_CACHE_SIZE, shardResponseCacheSize, sb);
+    this.shardResponseCacheMaxAge = getParameter(args, INIT_SHARD_RESPONSE_CACHE_MAX_AGE, shardResponseCacheMaxAge, sb);
+    if (shardResponseCacheSize > 0 && shardResponseCacheMaxAge > 0) {
+      shardResponseCache = new ShardResponseCache(shardResponseCacheSize, shardResponseCacheMaxAge);
+    }
     log.debug("created with {}",sb);
     
     // magic sysprop to make tests reproducible: set by SolrTestCaseJ4.
@@ -191,6 +238,11 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
       r.setSeed(Long.parseLong(v));
     }
 
+    // hedged requests rely on the response times tracked for adaptive replica selection
+    if (adaptiveReplicaSelection || hedgeRequestsPercentile > 0) {
+      adaptiveReplicaListTransformer = new AdaptiveReplicaListTransformer(r);
+    }
+
     BlockingQueue<Runnable> blockingQueue = (this.queueSize == -1) ?
         new SynchronousQueue<Runnable>(this.accessPolicy) :
         new ArrayBlockingQueue<Runnable>(this.queueSize, this.accessPolicy);
@@ -203,6 +255,16 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
         new DefaultSolrThreadFactory("httpShardExecutor")
     );
 
+    if (hedgeRequestsPercentile > 0) {
+      this.hedgeExecutor = new ExecutorUtil.MDCAwareThreadPoolExecutor(
+          0,
+          Integer.MAX_VALUE,
+          this.keepAliveTime, TimeUnit.SECONDS,
+          new SynchronousQueue<Runnable>(),
+          new DefaultSolrThreadFactory("httpShardHedgeExecutor")
+      );
+    }
+
     ModifiableSolrParams clientParams = getClientParams();
     httpRequestExecutor = new InstrumentedHttpRequestExecutor(this.metricNameStrategy);
     clientConnectionManager = new InstrumentedPoolingHttpClientConnectionManager(HttpClientUtil.getSchemaRegisteryProvider().getSchemaRegistry());
@@ -222,12 +284,15 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
   }
 
   protected LBHttpSolrClient createLoadbalancer(HttpClient httpClient){
-    LBHttpSolrClient client = new Builder()
+    Builder builder = new Builder()
         .withHttpClient(httpClient)
         .withConnectionTimeout(connectionTimeout)
-        .withSocketTimeout(soTimeout)
-        .build();
-    return client;
+        .withSocketTimeout(soTimeout);
+    if (hedgeRequestsPercentile > 0) {
+      // lets the request that loses a race be aborted
+      builder.withHttpSolrClientBuilder(new AbortableHttpSolrClientBuilder());
+    }
+    return builder.build();
   }
 
   protected <T> T getParameter(NamedList initArgs, String configKey, T defaultValue, StringBuilder sb) {
@@ -245,6 +310,9 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
   public void close() {
     try {
       ExecutorUtil.shutdownAndAwaitTermination(commExecutor);
+      if (hedgeExecutor != null) {
+        ExecutorUtil.shutdownAndAwaitTermination(hedgeExecutor);
+      }
     } finally {
       try {
         if (loadbalancer != null) {
@@ -270,7 +338,202 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
    */
   public LBHttpSolrClient.Rsp makeLoadBalancedRequest(final QueryRequest req, List<String> urls)
     throws SolrServerException, IOException {
-    return loadbalancer.request(newLBHttpSolrClientReq(req, urls));
+    if (adaptiveReplicaListTransformer == null) {
+      return loadbalancer.request(newLBHttpSolrClientReq(req, urls));
+    }
+    if (hedgeRequestsPercentile > 0 && urls.size() > 1) {
+      return makeHedgedRequest(req, urls);
+    }
+    return makeTrackedRequest(req, urls);
+  }
+
+  /**
+   * Makes a load balanced request and records its response time against the first url, which is the
+   * one the load balancer tries first. If the load balancer had to fall back to another url, the request
+   * counts as failed for the first one.
+   */
+  private LBHttpSolrClient.Rsp makeTrackedRequest(final QueryRequest req, List<String> urls)
+    throws SolrServerException, IOException {
+    return makeTrackedRequest(req, urls, null);
+  }
+
+  /**
+   * Same as {@link #makeTrackedRequest(QueryRequest, List)}, but the http requests that are sent can be
+   * aborted through the given handle, if not null. Aborted requests are not counted as failures.
+   */
+  private LBHttpSolrClient.Rsp makeTrackedRequest(final QueryRequest req, List<String> urls, AbortableRequest abortable)
+    throws SolrServerException, IOException {
+    if (abortable != null) {
+      AbortableRequest.CURRENT.set(abortable);
+    }
+    final String url = urls.get(0);
+    adaptiveReplicaListTransformer.requestStarted(url);
+    final long startTime = System.nanoTime();
+    LBHttpSolrClient.Rsp rsp = null;
+    try {
+      rsp = loadbalancer.request(newLBHttpSolrClientReq(req, urls));
+      return rsp;
+    } finally {
+      final long elapsed = System.nanoTime() - startTime;
+      if (abortable != null) {
+        AbortableRequest.CURRENT.remove();
+      }
+      if (rsp == null && abortable != null && abortable.isAborted()) {
+        adaptiveReplicaListTransformer.requestCancelled(url, elapsed);
+      } else {
+        final boolean success = rsp != null
+            && AdaptiveReplicaListTransformer.key(url).equals(AdaptiveReplicaListTransformer.key(rsp.getServer()));
+        long serviceTime = -1;
+        if (success) {
+          Object header = rsp.getResponse().get("responseHeader");
+          if (header instanceof NamedList && ((NamedList) header).get("QTime") instanceof Number) {
+            serviceTime = TimeUnit.MILLISECONDS.toNanos(((Number) ((NamedList) header).get("QTime")).longValue());
+          }
+        }
+        adaptiveReplicaListTransformer.requestFinished(url, elapsed, serviceTime, success);
+      }
+    }
+  }
+
+  /**
+   * Sends the request to the first url and, if no response was received once the configured percentile
+   * of the recent response times of that url has elapsed, sends it to the next url as well. The first
+   * successful response wins and the http request of the other one is aborted. Both requests run on
+   * a dedicated executor since this method itself runs on the shard handler executor.
+   */
+  private LBHttpSolrClient.Rsp makeHedgedRequest(final QueryRequest req, List<String> urls)
+    throws SolrServerException, IOException {
+    final long delay = adaptiveReplicaListTransformer.getLatencyPercentile(urls.get(0), hedgeRequestsPercentile / 100);
+    if (delay < 0) {
+      // not enough samples yet to tell whether the request is slow
+      return makeTrackedRequest(req, urls);
+    }
+
+    final CompletionService<LBHttpSolrClient.Rsp> completionService = new ExecutorCompletionService<>(hedgeExecutor);
+    final List<Future<LBHttpSolrClient.Rsp>> futures = new ArrayList<>(2);
+    final List<AbortableRequest> requests = new ArrayList<>(2);
+    try {
+      final AbortableRequest primary = new AbortableRequest();
+      requests.add(primary);
+      futures.add(completionService.submit(() -> makeTrackedRequest(req, urls, primary)));
+      Future<LBHttpSolrClient.Rsp> done = completionService.poll(delay, TimeUnit.NANOSECONDS);
+      if (done == null) {
+        hedgedRequests.inc();
+        final List<String> hedgeUrls = new ArrayList<>(urls.subList(1, urls.size()));
+        hedgeUrls.add(urls.get(0));
+        final AbortableRequest hedge = new AbortableRequest();
+        requests.add(hedge);
+        futures.add(completionService.submit(() -> makeTrackedRequest(req, hedgeUrls, hedge)));
+      }
+
+      ExecutionException failure = null;
+      for (int i = 0; i < futures.size(); i++) {
+        if (done == null) {
+          done = completionService.take();
+        }
+        try {
+          return done.get();
+        } catch (ExecutionException e) {
+          failure = e;
+        }
+        done = null;
+      }
+
+      final Throwable cause = failure.getCause();
+      if (cause instanceof SolrServerException) {
+        throw (SolrServerException) cause;
+      } else if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new SolrServerException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrServerException(e);
+    } finally {
+      // closing the connection is what actually stops the request, interrupting the thread may not
+      for (AbortableRequest request : requests) {
+        request.abort();
+      }
+      for (Future<LBHttpSolrClient.Rsp> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Gives access to the http requests that the load balancer sends on behalf of a hedged request, so
+   * that they can be aborted from another thread.
+   */
+  private static class AbortableRequest {
+    // the request that the current thread sends requests on behalf of
+    static final ThreadLocal<AbortableRequest> CURRENT = new ThreadLocal<>();
+
+    private HttpRequestBase method;
+    private boolean aborted;
+
+    synchronized void register(HttpRequestBase method) {
+      this.method = method;
+      if (aborted) {
+        method.abort();
+      }
+    }
+
+    synchronized void unregister(HttpRequestBase method) {
+      if (this.method == method) {
+        this.method = null;
+      }
+    }
+
+    synchronized void abort() {
+      aborted = true;
+      if (method != null) {
+        method.abort();
+      }
+    }
+
+    synchronized boolean isAborted() {
+      return aborted;
+    }
+  }
+
+  /** Builds clients that register the http requests they send with the current {@link AbortableRequest} */
+  private static class AbortableHttpSolrClientBuilder extends HttpSolrClient.Builder {
+    @Override
+    public HttpSolrClient build() {
+      return new HttpSolrClient(this) {
+        @Override
+        protected NamedList<Object> executeMethod(HttpRequestBase method, ResponseParser processor, boolean isV2Api)
+            throws SolrServerException {
+          final AbortableRequest abortable = AbortableRequest.CURRENT.get();
+          if (abortable == null) {
+            return super.executeMethod(method, processor, isV2Api);
+          }
+          abortable.register(method);
+          try {
+            return super.executeMethod(method, processor, isV2Api);
+          } finally {
+            abortable.unregister(method);
+          }
+        }
+      };
+    }
+  }
+
+  /**
+   * Removes the response time statistics of replicas that are no longer part of the given cluster state,
+   * which may be null if not running in SolrCloud mode. Does nothing if replicas are not selected adaptively.
+   */
+  void evictReplicaStats(ClusterState clusterState) {
+    if (adaptiveReplicaListTransformer != null) {
+      adaptiveReplicaListTransformer.evictStats(clusterState);
+    }
+  }
+
+  // for testing
+  AdaptiveReplicaListTransformer getAdaptiveReplicaListTransformer() {
+    return adaptiveReplicaListTransformer;
   }
 
   protected LBHttpSolrClient.Req newLBHttpSolrClientReq(final QueryRequest req, List<String> urls) {
@@ -351,12 +614,13 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
       if (preferredHostAddress == null) {
         log.warn("Couldn't determine current host address to prefer local shards");
       } else {
-        return new ShufflingReplicaListTransformer(r) {
+        final ReplicaListTransformer defaultReplicaListTransformer = getDefaultReplicaListTransformer();
+        return new ReplicaListTransformer() {
           @Override
           public void transform(List<?> choices)
           {
             if (choices.size() > 1) {
-              super.transform(choices);
+              defaultReplicaListTransformer.transform(choices);
               if (log.isDebugEnabled()) {
                 log.debug("Trying to prefer local shard on {} among the choices: {}",
                     preferredHostAddress, Arrays.toString(choices.toArray()));
@@ -372,6 +636,18 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
       }
     }
 
+    return getDefaultReplicaListTransformer();
+  }
+
+  /** Returns the cache of shard responses, or null if it is disabled */
+  ShardResponseCache getShardResponseCache() {
+    return shardResponseCache;
+  }
+
+  private ReplicaListTransformer getDefaultReplicaListTransformer() {
+    if (adaptiveReplicaSelection) {
+      return adaptiveReplicaListTransformer;
+    }
     return shufflingReplicaListTransformer;
   }
 
@@ -402,6 +678,12 @@ public class HttpShardHandlerFactory extends ShardHandlerFactory implements org.
     String expandedScope = SolrMetricManager.mkName(scope, SolrInfoBean.Category.QUERY.name());
     clientConnectionManager.initializeMetrics(manager, registry, expandedScope);
     httpRequestExecutor.initializeMetrics(manager, registry, expandedScope);
+    hedgedRequests = manager.counter(null, registry, "hedgedRequests", expandedScope, "httpShardHandler");
+    if (shardResponseCache != null) {
+      shardResponseCache.setMetrics(
+          manager.counter(null, registry, "hits", expandedScope, "httpShardHandler", "shardResponseCache"),
+          manager.counter(null, registry, "misses", expandedScope, "httpShardHandler", "shardResponseCache"));
+    }
     commExecutor = MetricUtils.instrumentedExecutorService(commExecutor, null,
         manager.registry(registry),
         SolrMetricManager.mkName("httpShardExecutor", expandedScope, "threadPool"));
@@ -83,6 +83,7 @@ import org.apache.solr.update.DocumentBuilder;
 import org.apache.solr.update.IndexFingerprint;
 import org.apache.solr.update.PeerSync;
 import org.apache.solr.update.UpdateLog;
+import org.apache.solr.update.VersionDigest;
 import org.apache.solr.util.RefCounted;
 import org.apache.solr.util.TestInjection;
 import org.slf4j.Logger;
@@ -1008,7 +1009,20 @@ public class RealTimeGetComponent extends SearchComponent
 
     try (UpdateLog.RecentUpdates recentUpdates = ulog.getRecentUpdates()) {
       List<Long> versions = recentUpdates.getVersions(nVersions);
-      rb.rsp.add("versions", versions);
+
+      // only return the versions within the requested ranges, typically those where a version digest differed
+      String versionRanges = params.get("versionRanges");
+      if (versionRanges != null) {
+        List<long[]> ranges = VersionDigest.parseRanges(StrUtils.splitSmart(versionRanges, ",", true));
+        versions = versions.stream().filter(v -> VersionDigest.inRanges(ranges, v)).collect(Collectors.toList());
+      }
+
+      int digestBuckets = params.getInt("versionDigest", 0);
+      if (digestBuckets > 0) {
+        rb.rsp.add("versionDigest", VersionDigest.create(versions, digestBuckets));
+      } else {
+        rb.rsp.add("versions", versions);
+      }
     }
   }
 
@@ -326,6 +326,12 @@ public class SearchHandler extends RequestHandlerBase implements SolrCoreAware ,
       } finally {
         SolrQueryTimeoutImpl.reset();
       }
+
+      // lets the aggregator tell whether the responses it cached for this shard are still current
+      NamedList<Object> responseHeader = rb.rsp.getResponseHeader();
+      if (responseHeader != null && req.getParams().getBool(ShardResponseCache.INDEX_VERSION_PARAM, false)) {
+        responseHeader.add(ShardResponseCache.INDEX_VERSION, req.getSearcher().getIndexReader().getVersion());
+      }
     } else {
       // a distributed request
 
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Counter;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.response.SolrQueryResponse;
+
+/**
+ * Caches the responses of shard requests on the node that aggregates a distributed request, so that
+ * identical sub-requests sent shortly after one another, such as those of dashboards refreshing the same
+ * queries, are answered without a round trip to the shard.
+ * <p>
+ * Entries are keyed by the user that sent the request (so that, with authorization, a user never sees the
+ * response to another user's request), by the replicas of the shard (so that they are not reused once the
+ * cluster state of the shard changes) and by the request parameters, ignoring those that differ for every
+ * request. A cached response is only used while it is younger than the configured maximum age, and while
+ * the replica that produced it has not reported a different index version since, which it does in the
+ * header of every response to a shard request while the cache is enabled. Because {@code NOW} is ignored, date math relative to {@code NOW} may
+ * be evaluated up to the maximum age in the past.
+ * <p>
+ * Responses are stored serialized, which bounds their memory use and keeps requests from sharing mutable
+ * response objects.
+ */
+class ShardResponseCache {
+
+  /** Asks a shard to report the version of the index it searched, in the response header */
+  static final String INDEX_VERSION_PARAM = "shards.cache.indexVersion";
+  static final String INDEX_VERSION = "indexVersion";
+  /** Per request switch to bypass the cache */
+  static final String CACHE_PARAM = "shards.cache";
+
+  // parameters that differ between otherwise identical requests
+  private static final Set<String> IGNORED_PARAMS = new HashSet<>(Arrays.asList(
+      "NOW", ShardParams.SHARD_URL, CommonParams.REQUEST_ID, CommonParams.WT, CommonParams.VERSION,
+      INDEX_VERSION_PARAM));
+
+  private final int maxSize;
+  private final long maxAgeNanos;
+  private final Map<String,Entry> cache;
+  // the latest index version reported by each replica
+  private final Map<String,Long> indexVersions = new ConcurrentHashMap<>();
+
+  private Counter hits = new Counter();
+  private Counter misses = new Counter();
+
+  private static class Entry {
+    final byte[] response;
+    final String shardAddress;
+    final long indexVersion;
+    final long created;
+
+    Entry(byte[] response, String shardAddress, long indexVersion, long created) {
+      this.response = response;
+      this.shardAddress = shardAddress;
+      this.indexVersion = indexVersion;
+      this.created = created;
+    }
+  }
+
+  /** A cached response along with the address of the replica that produced it */
+  static class CachedResponse {
+    final NamedList<Object> response;
+    final String shardAddress;
+
+    CachedResponse(NamedList<Object> response, String shardAddress) {
+      this.response = response;
+      this.shardAddress = shardAddress;
+    }
+  }
+
+  ShardResponseCache(int maxSize, long maxAgeMillis) {
+    this.maxSize = maxSize;
+    this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+    this.cache = Collections.synchronizedMap(new LinkedHashMap<String,Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String,Entry> eldest) {
+        return size() > ShardResponseCache.this.maxSize;
+      }
+    });
+  }
+
+  void setMetrics(Counter hits, Counter misses) {
+    this.hits = hits;
+    this.misses = misses;
+  }
+
+  /**
+   * Returns the cache key of a shard request, or null if the request can not be cached: only the sub
+   * requests of distributed searches are cached, with the exception of those that must see the latest
+   * updates (such as realtime gets).
+   *
+   * @param principal the name of the authenticated user that sent the request, or null
+   */
+  String getKey(ShardRequest sreq, List<String> urls, SolrParams params, String principal) {
+    if (urls.isEmpty()
+        || (sreq.purpose & ShardRequest.PURPOSE_PRIVATE) != 0
+        || !params.getBool(ShardParams.IS_SHARD, false)
+        || !params.getBool(CACHE_PARAM, true)) {
+      return null;
+    }
+
+    List<String> replicas = new ArrayList<>(urls.size());
+    for (String url : urls) {
+      replicas.add(AdaptiveReplicaListTransformer.key(url));
+    }
+    Collections.sort(replicas);
+
+    List<String> names = new ArrayList<>();
+    for (Iterator<String> it = params.getParameterNamesIterator(); it.hasNext(); ) {
+      String name = it.next();
+      if (!IGNORED_PARAMS.contains(name)) {
+        names.add(name);
+      }
+    }
+    Collections.sort(names);
+
+    StringBuilder key = new StringBuilder();
+    if (principal != null) {
+      key.append(principal);
+    }
+    key.append('\u0000');
+    for (String replica : replicas) {
+      key.append(replica).append('|');
+    }
+    for (String name : names) {
+      key.append('&').append(name);
+      for (String value : params.getParams(name)) {
+        key.append('=').append(value).append('\u0000');
+      }
+    }
+    return key.toString();
+  }
+
+  /** Returns the cached response for the key, or null if there is none that is still valid */
+  CachedResponse get(String key) throws IOException {
+    Entry entry = cache.get(key);
+    if (entry != null && !isValid(entry, System.nanoTime())) {
+      cache.remove(key);
+      entry = null;
+    }
+    if (entry == null) {
+      misses.inc();
+      return null;
+    }
+    hits.inc();
+    try (JavaBinCodec codec = new JavaBinCodec()) {
+      @SuppressWarnings("unchecked")
+      NamedList<Object> response = (NamedList<Object>) codec.unmarshal(new ByteArrayInputStream(entry.response));
+      return new CachedResponse(response, entry.shardAddress);
+    }
+  }
+
+  private boolean isValid(Entry entry, long now) {
+    if (now - entry.created > maxAgeNanos) {
+      return false;
+    }
+    Long latest = indexVersions.get(AdaptiveReplicaListTransformer.key(entry.shardAddress));
+    return latest == null || latest == entry.indexVersion;
+  }
+
+  /**
+   * Records the version of the index that the replica reported in the response to any shard request, so
+   * that cached responses from earlier versions are no longer used.
+   *
+   * @return the reported version, or -1 if the response has none
+   */
+  long updateIndexVersion(String shardAddress, NamedList<Object> response) {
+    if (shardAddress == null || response == null) {
+      return -1;
+    }
+    Object header = response.get("responseHeader");
+    if (!(header instanceof NamedList)) {
+      return -1;
+    }
+    Object indexVersion = ((NamedList<?>) header).get(INDEX_VERSION);
+    if (!(indexVersion instanceof Number)) {
+      return -1;
+    }
+    long version = ((Number) indexVersion).longValue();
+    indexVersions.put(AdaptiveReplicaListTransformer.key(shardAddress), version);
+    return version;
+  }
+
+  /**
+   * Caches the response of a shard request if the replica reported the version of its index, and records
+   * that version like {@link #updateIndexVersion} does.
+   */
+  void put(String key, String shardAddress, NamedList<Object> response) throws IOException {
+    long version = updateIndexVersion(shardAddress, response);
+    if (version == -1) {
+      return;
+    }
+    NamedList<?> responseHeader = (NamedList<?>) response.get("responseHeader");
+    if (responseHeader.get(SolrQueryResponse.RESPONSE_HEADER_PARTIAL_RESULTS_KEY) != null) {
+      return;
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (JavaBinCodec codec = new JavaBinCodec()) {
+      codec.marshal(response, out);
+    }
+    cache.put(key, new Entry(out.toByteArray(), shardAddress, version, System.nanoTime()));
+  }
+
+  int size() {
+    return cache.size();
+  }
+}
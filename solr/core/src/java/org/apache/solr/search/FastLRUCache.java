@@ -25,6 +25,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -199,6 +200,11 @@ public class FastLRUCache<K, V> extends SolrCacheBase implements SolrCache<K,V>
     }
     warmupTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - warmingStartTime, TimeUnit.NANOSECONDS);
   }
+  @Override
+  public List<K> getHottestKeys(int limit) {
+    return new ArrayList<>(cache.getLatestAccessedItems(limit).keySet());
+  }
+
 
 
   @Override
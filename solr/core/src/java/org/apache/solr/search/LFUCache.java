@@ -17,6 +17,7 @@
 package org.apache.solr.search;
 
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -198,6 +199,11 @@ public class LFUCache<K, V> implements SolrCache<K, V> {
     }
     warmupTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - warmingStartTime, TimeUnit.NANOSECONDS);
   }
+  @Override
+  public List<K> getHottestKeys(int limit) {
+    return new ArrayList<>(cache.getMostUsedItems(limit).keySet());
+  }
+
 
 
   @Override
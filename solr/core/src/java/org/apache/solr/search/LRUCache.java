@@ -17,11 +17,13 @@
 package org.apache.solr.search;
 
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -305,6 +307,20 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V>, Acco
 
     warmupTime = TimeUnit.MILLISECONDS.convert(System.nanoTime() - warmingStartTime, TimeUnit.NANOSECONDS);
   }
+  @Override
+  public List<K> getHottestKeys(int limit) {
+    synchronized (map) {
+      List<K> keys = new ArrayList<>(Math.min(limit, map.size()));
+      // iteration goes from the least recently used to the most recently used entry
+      int skip = map.size() - Math.min(limit, map.size());
+      Iterator<K> iter = map.keySet().iterator();
+      for (int i=0; i<skip; i++) iter.next();
+      while (iter.hasNext()) keys.add(iter.next());
+      Collections.reverse(keys);
+      return keys;
+    }
+  }
+
 
 
   @Override
@@ -60,6 +60,25 @@ public final class QueryResultKey {
     hc = h;
   }
 
+  public Query getQuery() {
+    return query;
+  }
+
+  /** @return the filters, or null if there are none */
+  public List<Query> getFilters() {
+    return filters;
+  }
+
+  /** @return the sort, or null for relevance */
+  public Sort getSort() {
+    return sort;
+  }
+
+  /** @return the flags of the search that was cached, which are not compared by {@link #equals(Object)} */
+  public int getFlags() {
+    return nc_flags;
+  }
+
   @Override
   public int hashCode() {
     return hc;
@@ -19,6 +19,8 @@ package org.apache.solr.search;
 import org.apache.solr.core.SolrInfoBean;
 import org.apache.solr.metrics.SolrMetricProducer;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 
@@ -119,6 +121,15 @@ public interface SolrCache<K,V> extends SolrInfoBean, SolrMetricProducer {
    * cache object.  <code>this</code> and <code>old</code> will have the same concrete type.
    */
   void warm(SolrIndexSearcher searcher, SolrCache<K,V> old);
+
+  /**
+   * Returns the keys of up to <code>limit</code> entries of this cache, the ones most likely to be
+   * requested again first, so that they can be warmed when no old cache is available, e.g. after a
+   * restart. Caches that do not track how their entries are used return no keys.
+   */
+  default List<K> getHottestKeys(int limit) {
+    return Collections.emptyList();
+  }
   // Q: an alternative to passing the searcher here would be to pass it in
   // init and have the cache implementation save it.
 
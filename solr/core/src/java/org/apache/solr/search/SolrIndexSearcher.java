@@ -506,6 +506,10 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable, SolrI
     return filterCache;
   }
 
+  public SolrCache<QueryResultKey,DocList> getQueryResultCache() {
+    return queryResultCache;
+  }
+
   //
   // Set default regenerators on filter and query caches if they don't have any
   //
@@ -252,6 +252,23 @@ public final class DefaultSolrCoreState extends SolrCoreState implements Recover
   public void rollbackIndexWriter(SolrCore core) throws IOException {
     changeWriter(core, true, true);
   }
+
+  @Override
+  public boolean closeIdleIndexWriter(SolrCore core) throws IOException {
+    // the write lock can not be acquired while the writer is in use
+    if (closed || !iwLock.writeLock().tryLock()) {
+      return false;
+    }
+    try {
+      if (indexWriter == null || indexWriter.hasUncommittedChanges()) {
+        return false;
+      }
+      changeWriter(core, false, false);
+      return true;
+    } finally {
+      iwLock.writeLock().unlock();
+    }
+  }
   
   protected SolrIndexWriter createMainIndexWriter(SolrCore core, String name) throws IOException {
     return SolrIndexWriter.create(core, name, core.getNewIndexDir(),
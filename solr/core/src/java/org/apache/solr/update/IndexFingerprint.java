@@ -19,13 +19,20 @@ package org.apache.solr.update;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.queries.function.FunctionValues;
 import org.apache.lucene.queries.function.ValueSource;
+import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.IntroSorter;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.solr.common.MapSerializable;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.Hash;
@@ -105,13 +112,16 @@ public class IndexFingerprint implements MapSerializable {
     }
   }
   
-  public static IndexFingerprint getFingerprint(SolrIndexSearcher searcher, LeafReaderContext ctx, Long maxVersion)
-      throws IOException {
+  private static FunctionValues getVersionValues(SolrIndexSearcher searcher, LeafReaderContext ctx) throws IOException {
     SchemaField versionField = VersionInfo.getAndCheckVersionField(searcher.getSchema());
     ValueSource vs = versionField.getType().getValueSource(versionField, null);
     Map funcContext = ValueSource.newContext(searcher);
     vs.createWeight(funcContext, searcher);
-    
+    return vs.getValues(funcContext, ctx);
+  }
+
+  public static IndexFingerprint getFingerprint(SolrIndexSearcher searcher, LeafReaderContext ctx, Long maxVersion)
+      throws IOException {
     IndexFingerprint f = new IndexFingerprint();
     f.maxVersionSpecified = maxVersion;
     f.maxDoc = ctx.reader().maxDoc();
@@ -119,7 +129,7 @@ public class IndexFingerprint implements MapSerializable {
     
     int maxDoc = ctx.reader().maxDoc();
     Bits liveDocs = ctx.reader().getLiveDocs();
-    FunctionValues fv = vs.getValues(funcContext, ctx);
+    FunctionValues fv = getVersionValues(searcher, ctx);
     for (int doc = 0; doc < maxDoc; doc++) {
       if (liveDocs != null && !liveDocs.get(doc)) continue;
       long v = fv.longVal(doc);
@@ -134,7 +144,219 @@ public class IndexFingerprint implements MapSerializable {
     return f;
   }
   
-  
+
+  /**
+   * Computes the fingerprint of a segment from its {@link SegmentVersions}, which only requires reading the
+   * versions of deleted documents, so it is much cheaper than {@link #getFingerprint(SolrIndexSearcher, LeafReaderContext, Long)}
+   * once the {@link SegmentVersions} of the segment core have been loaded. Falls back to reading all versions
+   * if {@code maxVersion} excludes versions below the tail of the highest versions that was kept.
+   */
+  public static IndexFingerprint getFingerprint(SolrIndexSearcher searcher, LeafReaderContext ctx, SegmentVersions segmentVersions,
+                                                long maxVersion) throws IOException {
+    if (segmentVersions.covers(maxVersion) == false) {
+      return getFingerprint(searcher, ctx, maxVersion);
+    }
+    Bits liveDocs = ctx.reader().getLiveDocs();
+    long[] tailVersions = segmentVersions.tailVersions;
+
+    // number of versions of the tail that are included in the hash; all versions below the tail are
+    int upTo = segmentVersions.upperBound(maxVersion);
+    long maxInHash = segmentVersions.maxLiveVersion(upTo, liveDocs);
+    long maxVersionEncountered = segmentVersions.maxLiveVersion(tailVersions.length, liveDocs);
+    if (maxInHash == -1 || maxVersionEncountered == -1) {
+      // all documents of the tail that matter are deleted, the highest live version is below the tail
+      return getFingerprint(searcher, ctx, maxVersion);
+    }
+
+    IndexFingerprint f = new IndexFingerprint();
+    f.maxVersionSpecified = maxVersion;
+    f.maxDoc = ctx.reader().maxDoc();
+    f.numDocs = ctx.reader().numDocs();
+
+    long hash = segmentVersions.hash;
+    for (int i = upTo; i < tailVersions.length; i++) {
+      hash -= Hash.fmix64(tailVersions[i]);
+    }
+    long numVersions = f.maxDoc - (tailVersions.length - upTo);
+
+    if (liveDocs != null && f.numDocs < f.maxDoc) {
+      FunctionValues fv = getVersionValues(searcher, ctx);
+      for (int doc = 0; doc < f.maxDoc; doc++) {
+        if (liveDocs.get(doc)) continue;
+        long v = fv.longVal(doc);
+        if (v <= maxVersion) {
+          hash -= Hash.fmix64(v);
+          numVersions--;
+        }
+      }
+    }
+
+    f.versionsHash = hash;
+    f.numVersions = numVersions;
+    f.maxVersionEncountered = Math.max(0, maxVersionEncountered);
+    f.maxInHash = Math.max(0, maxInHash);
+    return f;
+  }
+
+  /**
+   * Aggregates of the versions of all documents in a segment, deleted or not: their hash, and the highest
+   * versions with the documents they belong to. This only depends on the segment core and its doc values
+   * generation (versions change with in-place updates), so it can be shared by all readers of the segment
+   * regardless of deletions, which the fingerprint takes into account when it is computed. Its size is
+   * bounded by {@link #TAIL_SIZE}, regardless of the size of the segment.
+   */
+  public static class SegmentVersions implements Accountable {
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(SegmentVersions.class);
+
+    /** the maximum number of the highest versions of a segment that are kept */
+    static final int TAIL_SIZE = 1024;
+
+    private final long docValuesGen;
+    private final int maxDoc;
+    /** the hash of all versions, including those of deleted documents */
+    private final long hash;
+    /** the highest versions of the segment, in ascending order, and the documents they belong to */
+    private final long[] tailVersions;
+    private final int[] tailDocs;
+
+    private SegmentVersions(long docValuesGen, int maxDoc, long hash, long[] tailVersions, int[] tailDocs) {
+      this.docValuesGen = docValuesGen;
+      this.maxDoc = maxDoc;
+      this.hash = hash;
+      this.tailVersions = tailVersions;
+      this.tailDocs = tailDocs;
+    }
+
+    /**
+     * Returns the doc values generation of the segment the reader reads, or null if it does not read
+     * a single segment, in which case its versions can not be cached.
+     */
+    public static Long getDocValuesGen(LeafReader reader) {
+      LeafReader unwrapped = FilterLeafReader.unwrap(reader);
+      if (unwrapped instanceof SegmentReader) {
+        return ((SegmentReader) unwrapped).getSegmentInfo().getDocValuesGen();
+      }
+      return null;
+    }
+
+    /** returns true if the versions were loaded from the same doc values generation that the reader reads */
+    public boolean isCurrent(LeafReader reader) {
+      Long gen = getDocValuesGen(reader);
+      return gen != null && gen == docValuesGen;
+    }
+
+    public static SegmentVersions load(SolrIndexSearcher searcher, LeafReaderContext ctx) throws IOException {
+      return load(searcher, ctx, TAIL_SIZE);
+    }
+
+    static SegmentVersions load(SolrIndexSearcher searcher, LeafReaderContext ctx, int tailSize) throws IOException {
+      Long docValuesGen = getDocValuesGen(ctx.reader());
+      int maxDoc = ctx.reader().maxDoc();
+      tailSize = Math.min(tailSize, maxDoc);
+      // collect candidates for the tail, and only keep the highest ones when the buffer is full
+      long[] versions = new long[Math.min(2 * tailSize, maxDoc)];
+      int[] docs = new int[versions.length];
+      int size = 0;
+      long minTailVersion = Long.MIN_VALUE;
+      long hash = 0;
+      FunctionValues fv = getVersionValues(searcher, ctx);
+      for (int doc = 0; doc < maxDoc; doc++) {
+        long v = fv.longVal(doc);
+        hash += Hash.fmix64(v);
+        if (v < minTailVersion) {
+          continue;
+        }
+        if (size == versions.length) {
+          size = keepHighest(versions, docs, size, tailSize);
+          minTailVersion = versions[0];
+          if (v < minTailVersion) {
+            continue;
+          }
+        }
+        versions[size] = v;
+        docs[size] = doc;
+        size++;
+      }
+      size = keepHighest(versions, docs, size, tailSize);
+      return new SegmentVersions(docValuesGen == null ? -2 : docValuesGen, maxDoc, hash,
+          Arrays.copyOf(versions, size), Arrays.copyOf(docs, size));
+    }
+
+    /** Sorts the first {@code size} versions and moves the {@code count} highest ones to the front, in ascending order. */
+    private static int keepHighest(long[] versions, int[] docs, int size, int count) {
+      new IntroSorter() {
+        long pivot;
+
+        @Override
+        protected void setPivot(int i) {
+          pivot = versions[i];
+        }
+
+        @Override
+        protected int comparePivot(int j) {
+          return Long.compare(pivot, versions[j]);
+        }
+
+        @Override
+        protected int compare(int i, int j) {
+          return Long.compare(versions[i], versions[j]);
+        }
+
+        @Override
+        protected void swap(int i, int j) {
+          long v = versions[i];
+          versions[i] = versions[j];
+          versions[j] = v;
+          int d = docs[i];
+          docs[i] = docs[j];
+          docs[j] = d;
+        }
+      }.sort(0, size);
+      count = Math.min(count, size);
+      System.arraycopy(versions, size - count, versions, 0, count);
+      System.arraycopy(docs, size - count, docs, 0, count);
+      return count;
+    }
+
+    /** returns true if all versions that are greater than the given version are in the tail */
+    boolean covers(long version) {
+      return tailVersions.length == maxDoc || version >= tailVersions[0];
+    }
+
+    /** returns the number of versions of the tail that are less than or equal to the given version */
+    int upperBound(long version) {
+      int lo = 0, hi = tailVersions.length;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (tailVersions[mid] <= version) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      return lo;
+    }
+
+    /**
+     * returns the highest version of a live document among the first {@code upTo} versions of the tail, 0 if
+     * there is none and the tail has the versions of all documents, or -1 if the highest version of a live
+     * document may be below the tail
+     */
+    long maxLiveVersion(int upTo, Bits liveDocs) {
+      for (int i = upTo - 1; i >= 0; i--) {
+        if (liveDocs == null || liveDocs.get(tailDocs[i])) {
+          return tailVersions[i];
+        }
+      }
+      return tailVersions.length == maxDoc ? 0 : -1;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(tailVersions) + RamUsageEstimator.sizeOf(tailDocs);
+    }
+  }
+
   public static IndexFingerprint reduce(IndexFingerprint acc, IndexFingerprint f2) {
     // acc should have maxVersionSpecified already set in it using IndexFingerprint(long maxVersionSpecified) constructor
     acc.maxDoc = Math.max(acc.maxDoc, f2.maxDoc);
@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.IndexWriter.IndexReaderWarmer;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SegmentInfo;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RateLimiter;
+import org.apache.lucene.util.InfoStream;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.SolrInfoBean;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.apache.solr.metrics.SolrMetricProducer;
+import org.apache.solr.util.plugin.NamedListInitializedPlugin;
+
+/**
+ * A merged segment warmer that loads the hot regions of new segments into the OS page cache before they are
+ * searched, so that the first queries on a large merged segment do not pay for the disk reads.
+ * <p>
+ * The files of the segment with one of the configured <code>extensions</code> (by default the terms index, points
+ * index, norms and doc values metadata) are read sequentially, as are the doc values of the configured
+ * <code>fields</code>. Reads are throttled to <code>maxMBPerSec</code>, so that warming does not compete with
+ * searches for disk bandwidth. The same warmer is applied by {@link org.apache.solr.handler.IndexFetcher} to the
+ * segments it downloads.
+ * <p>
+ * The progress of warming is reported by the <code>INDEX.warmer.*</code> metrics of the core.
+ */
+public class PageCacheSegmentWarmer implements IndexReaderWarmer, NamedListInitializedPlugin, SolrMetricProducer {
+
+  public static final String MAX_MB_PER_SEC = "maxMBPerSec";
+  public static final String EXTENSIONS = "extensions";
+  public static final String FIELDS = "fields";
+
+  public static final double DEFAULT_MAX_MB_PER_SEC = 50;
+  public static final Set<String> DEFAULT_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+      "tip", "dii", "nvd", "nvm", "dvm")));
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  // doc values are throttled per block of documents, assuming 8 bytes per value
+  private static final int DOC_VALUES_BLOCK = 4096;
+
+  private final InfoStream infoStream;
+
+  private Set<String> extensions = DEFAULT_EXTENSIONS;
+  private List<String> fields = Collections.emptyList();
+  private RateLimiter rateLimiter = new RateLimiter.SimpleRateLimiter(DEFAULT_MAX_MB_PER_SEC);
+
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicLong pendingBytes = new AtomicLong();
+  private Meter warmedSegments = new Meter();
+  private Meter warmedBytes = new Meter();
+  private Timer warmTime = new Timer();
+
+  public PageCacheSegmentWarmer(InfoStream infoStream) {
+    this.infoStream = infoStream;
+  }
+
+  @Override
+  public void init(NamedList args) {
+    Object o = args.get(MAX_MB_PER_SEC);
+    if (o != null) {
+      double mbPerSec = Double.parseDouble(o.toString());
+      rateLimiter = mbPerSec > 0 ? new RateLimiter.SimpleRateLimiter(mbPerSec) : null;
+    }
+    o = args.get(EXTENSIONS);
+    if (o != null) {
+      extensions = new HashSet<>(split(o.toString()));
+    }
+    o = args.get(FIELDS);
+    if (o != null) {
+      fields = split(o.toString());
+    }
+  }
+
+  private static List<String> split(String s) {
+    List<String> values = new ArrayList<>();
+    for (String value : s.split(",")) {
+      if (!value.trim().isEmpty()) {
+        values.add(value.trim());
+      }
+    }
+    return values;
+  }
+
+  @Override
+  public void initializeMetrics(SolrMetricManager manager, String registry, String scope) {
+    String category = SolrInfoBean.Category.INDEX.toString();
+    warmedSegments = manager.meter(null, registry, "segments", category, scope);
+    warmedBytes = manager.meter(null, registry, "bytes", category, scope);
+    warmTime = manager.timer(null, registry, "time", category, scope);
+    manager.registerGauge(null, registry, running::get, true, "running", category, scope);
+    manager.registerGauge(null, registry, pendingBytes::get, true, "pendingBytes", category, scope);
+  }
+
+  @Override
+  public void warm(LeafReader reader) throws IOException {
+    running.incrementAndGet();
+    Timer.Context timer = warmTime.time();
+    long bytes = 0;
+    try {
+      if (reader instanceof SegmentReader) {
+        bytes += warmFiles(((SegmentReader) reader).getSegmentInfo().info);
+      }
+      for (String field : fields) {
+        bytes += warmDocValues(reader, field);
+      }
+    } finally {
+      timer.stop();
+      running.decrementAndGet();
+    }
+    warmedSegments.mark();
+    if (infoStream.isEnabled("PCSW")) {
+      infoStream.message("PCSW", "Finished warming segment: " + reader + ", bytes=" + bytes);
+    }
+  }
+
+  private long warmFiles(SegmentInfo info) throws IOException {
+    Directory dir = info.getUseCompoundFile()
+        ? info.getCodec().compoundFormat().getCompoundReader(info.dir, info, IOContext.READ)
+        : info.dir;
+    try {
+      List<String> files = new ArrayList<>();
+      long total = 0;
+      for (String file : info.getUseCompoundFile() ? Arrays.asList(dir.listAll()) : info.files()) {
+        if (extensions.contains(IndexFileNames.getExtension(file))) {
+          files.add(file);
+          total += dir.fileLength(file);
+        }
+      }
+      pendingBytes.addAndGet(total);
+      long read = 0;
+      try {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (String file : files) {
+          try (IndexInput in = dir.openInput(file, IOContext.READONCE)) {
+            long remaining = in.length();
+            while (remaining > 0) {
+              int len = (int) Math.min(buffer.length, remaining);
+              in.readBytes(buffer, 0, len);
+              remaining -= len;
+              read += len;
+              pendingBytes.addAndGet(-len);
+              account(len);
+            }
+          }
+        }
+      } finally {
+        // whatever was not read is no longer pending
+        pendingBytes.addAndGet(read - total);
+      }
+      return read;
+    } finally {
+      if (dir != info.dir) {
+        dir.close();
+      }
+    }
+  }
+
+  private long warmDocValues(LeafReader reader, String field) throws IOException {
+    FieldInfo fieldInfo = reader.getFieldInfos().fieldInfo(field);
+    if (fieldInfo == null) {
+      return 0;
+    }
+    DocIdSetIterator values;
+    switch (fieldInfo.getDocValuesType()) {
+      case NUMERIC:
+        values = DocValues.getNumeric(reader, field);
+        break;
+      case BINARY:
+        values = DocValues.getBinary(reader, field);
+        break;
+      case SORTED:
+        values = DocValues.getSorted(reader, field);
+        break;
+      case SORTED_NUMERIC:
+        values = DocValues.getSortedNumeric(reader, field);
+        break;
+      case SORTED_SET:
+        values = DocValues.getSortedSet(reader, field);
+        break;
+      default:
+        return 0;
+    }
+    long bytes = 0;
+    int docs = 0;
+    while (values.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+      readValue(values);
+      if (++docs == DOC_VALUES_BLOCK) {
+        bytes += docs * Long.BYTES;
+        account(docs * Long.BYTES);
+        docs = 0;
+      }
+    }
+    bytes += docs * Long.BYTES;
+    account(docs * Long.BYTES);
+    return bytes;
+  }
+
+  private static void readValue(DocIdSetIterator values) throws IOException {
+    if (values instanceof NumericDocValues) {
+      ((NumericDocValues) values).longValue();
+    } else if (values instanceof BinaryDocValues) {
+      ((BinaryDocValues) values).binaryValue();
+    } else if (values instanceof SortedDocValues) {
+      ((SortedDocValues) values).ordValue();
+    } else if (values instanceof SortedNumericDocValues) {
+      SortedNumericDocValues dv = (SortedNumericDocValues) values;
+      for (int i = 0; i < dv.docValueCount(); i++) {
+        dv.nextValue();
+      }
+    } else if (values instanceof SortedSetDocValues) {
+      SortedSetDocValues dv = (SortedSetDocValues) values;
+      while (dv.nextOrd() != SortedSetDocValues.NO_MORE_ORDS) {
+        // just reading
+      }
+    }
+  }
+
+  private void account(long bytes) throws IOException {
+    warmedBytes.mark(bytes);
+    if (rateLimiter != null) {
+      rateLimiter.pause(bytes);
+    }
+  }
+}
@@ -96,6 +96,7 @@ public class PeerSync implements SolrMetricProducer {
   private final boolean cantReachIsSuccess;
   private final boolean getNoVersionsIsSuccess;
   private final boolean doFingerprint;
+  private final int versionDigestBuckets;
   private final HttpClient client;
   private final boolean onlyIfActive;
   private SolrCore core;
@@ -138,6 +139,9 @@ public class PeerSync implements SolrMetricProducer {
     Exception updateException;
     List<String> requestedRanges;
     long totalRequestedUpdates;
+    // set when only the versions in the ranges where the version digests differed were requested
+    List<String> digestRanges;
+    boolean completeList;
   }
 
   public PeerSync(SolrCore core, List<String> replicas, int nUpdates) {
@@ -158,6 +162,7 @@ public class PeerSync implements SolrMetricProducer {
     this.doFingerprint = doFingerprint && !("true".equals(System.getProperty("solr.disableFingerprint")));
     this.client = core.getCoreContainer().getUpdateShardHandler().getHttpClient();
     this.onlyIfActive = onlyIfActive;
+    this.versionDigestBuckets = core.getSolrConfig().versionDigestBucketsForPeerSync;
     
     uhandler = core.getUpdateHandler();
     ulog = uhandler.getUpdateLog();
@@ -327,7 +332,9 @@ public class PeerSync implements SolrMetricProducer {
             if (srsp == null) break;
             if (srsp.getException() == null)  {
               List<Long> otherVersions = (List<Long>)srsp.getSolrResponse().getResponse().get("versions");
-              if (otherVersions != null && !otherVersions.isEmpty())  {
+              Object otherDigest = srsp.getSolrResponse().getResponse().get("versionDigest");
+              if ((otherVersions != null && !otherVersions.isEmpty())
+                  || (otherDigest != null && VersionDigest.fromObject(otherDigest).getNumVersions() > 0))  {
                 syncErrors.inc();
                 return PeerSyncResult.failure(true);
               }
@@ -438,6 +445,10 @@ public class PeerSync implements SolrMetricProducer {
     sreq.params.set(DISTRIB,false);
     sreq.params.set("getVersions",nUpdates);
     sreq.params.set("fingerprint",doFingerprint);
+    if (versionDigestBuckets > 0) {
+      // replicas that do not know about version digests simply return their versions
+      sreq.params.set("versionDigest", versionDigestBuckets);
+    }
     shardHandler.submit(sreq, replica, sreq.params);
   }
 
@@ -609,19 +620,30 @@ public class PeerSync implements SolrMetricProducer {
 
   
   private boolean handleVersions(ShardResponse srsp) {
+    SyncShardRequest sreq = (SyncShardRequest) srsp.getShardRequest();
+
+    if (sreq.digestRanges != null) {
+      return handleDigestRangeVersions(srsp);
+    }
+
+    Object fingerprint = srsp.getSolrResponse().getResponse().get("fingerprint");
+    if (fingerprint != null) {
+      sreq.fingerprint = IndexFingerprint.fromObject(fingerprint);
+    }
+
+    Object digest = srsp.getSolrResponse().getResponse().get("versionDigest");
+    if (digest != null) {
+      log.info(msg() + " Received version digest from " + sreq.shards[0] + " fingerprint:" + fingerprint);
+      return handleVersionDigest(srsp, VersionDigest.fromObject(digest));
+    }
+
     // we retrieved the last N updates from the replica
     List<Long> otherVersions = (List<Long>)srsp.getSolrResponse().getResponse().get("versions");
     // TODO: how to handle short lists?
 
-    SyncShardRequest sreq = (SyncShardRequest) srsp.getShardRequest();
     sreq.reportedVersions =  otherVersions;
 
-    Object fingerprint = srsp.getSolrResponse().getResponse().get("fingerprint");
-
     log.info(msg() + " Received " + otherVersions.size() + " versions from " + sreq.shards[0] + " fingerprint:" + fingerprint );
-    if (fingerprint != null) {
-      sreq.fingerprint = IndexFingerprint.fromObject(fingerprint);
-    }
 
     if (otherVersions.size() == 0) {
       return getNoVersionsIsSuccess; 
@@ -639,6 +661,23 @@ public class PeerSync implements SolrMetricProducer {
     long otherLow = percentile(otherVersions, .8f);
     long otherHighest = otherVersions.get(0);
 
+    Boolean overlapResult = checkOverlap(otherHigh, otherLow, otherHighest);
+    if (overlapResult != null) {
+      return overlapResult;
+    }
+    
+    if(core.getSolrConfig().useRangeVersionsForPeerSync && canHandleVersionRanges(sreq.shards[0])) {
+      return handleVersionsWithRanges(srsp, otherVersions, sreq, completeList, otherHigh, otherHighest);
+    } else {
+      return handleIndividualVersions(srsp, otherVersions, sreq, completeList, otherHigh, otherHighest);
+    }
+  }
+
+  /**
+   * Checks whether the window of the other replica's versions overlaps enough with ours to sync from it.
+   * Returns the result of handling the versions if it does not, or null if syncing can go ahead.
+   */
+  private Boolean checkOverlap(long otherHigh, long otherLow, long otherHighest) {
     if (ourHighThreshold < otherLow) {
       // Small overlap between version windows and ours is older
       // This means that we might miss updates if we attempted to use this method.
@@ -658,12 +697,74 @@ public class PeerSync implements SolrMetricProducer {
       // We return true on our side, but the remote peersync with us should fail.
       return true;
     }
-    
-    if(core.getSolrConfig().useRangeVersionsForPeerSync && canHandleVersionRanges(sreq.shards[0])) {
-      return handleVersionsWithRanges(srsp, otherVersions, sreq, completeList, otherHigh, otherHighest);
-    } else {
-      return handleIndividualVersions(srsp, otherVersions, sreq, completeList, otherHigh, otherHighest);
+
+    return null;
+  }
+
+  /**
+   * Compares the digest of the other replica's recent versions with a digest of ours over the same version
+   * ranges, and requests the other replica's versions only for the ranges that differ.
+   */
+  private boolean handleVersionDigest(ShardResponse srsp, VersionDigest otherDigest) {
+    SyncShardRequest sreq = (SyncShardRequest) srsp.getShardRequest();
+
+    if (otherDigest.getNumVersions() == 0) {
+      return getNoVersionsIsSuccess;
+    }
+
+    Boolean overlapResult = checkOverlap(otherDigest.getHigh(), otherDigest.getLow(), otherDigest.getHighest());
+    if (overlapResult != null) {
+      return overlapResult;
+    }
+
+    boolean completeList = otherDigest.getNumVersions() < nUpdates;  // does the digest cover their complete list of updates?
+
+    VersionDigest ourDigest = VersionDigest.create(ourUpdates, otherDigest.getBounds());
+    // stop when the entries get old enough that reorders may lead us to see updates we don't need
+    List<String> ranges = otherDigest.getDifferingRanges(ourDigest, completeList ? 0 : ourLowThreshold);
+
+    if (ranges.isEmpty()) {
+      log.info(msg() + " Version digest matches ours, no additional versions requested. ourHighest=" + ourHighest
+          + " otherHighest=" + otherDigest.getHighest());
+      if (doFingerprint) {
+        sreq.doFingerprintComparison = true;
+      }
+      return true;
+    }
+
+    log.info(msg() + " Requesting versions in differing ranges " + ranges + " from " + sreq.shards[0]);
+
+    // reuse our original request object, the versions are handled by handleDigestRangeVersions
+    sreq.digestRanges = ranges;
+    sreq.completeList = completeList;
+    sreq.params = new ModifiableSolrParams();
+    sreq.params.set("qt", "/get");
+    sreq.params.set(DISTRIB, false);
+    sreq.params.set("getVersions", nUpdates);
+    sreq.params.set("versionRanges", StrUtils.join(ranges, ','));
+    sreq.responses.clear();  // needs to be zeroed for correct correlation to occur
+
+    shardHandler.submit(sreq, sreq.shards[0], sreq.params);
+    return true;
+  }
+
+  private boolean handleDigestRangeVersions(ShardResponse srsp) {
+    SyncShardRequest sreq = (SyncShardRequest) srsp.getShardRequest();
+    List<Long> otherVersions = (List<Long>)srsp.getSolrResponse().getResponse().get("versions");
+    sreq.reportedVersions = otherVersions;
+
+    log.info(msg() + " Received " + otherVersions.size() + " versions in ranges " + sreq.digestRanges + " from " + sreq.shards[0]);
+
+    Collections.sort(otherVersions, absComparator);
+
+    if (debug) {
+      log.debug(msg() + " sorted versions from " + sreq.shards[0] + " = " + otherVersions);
     }
+
+    // the versions are only those where the digests differed, so the percentiles of this list are meaningless;
+    // the overlap was already checked against the digest
+    long otherHighest = otherVersions.isEmpty() ? 0 : otherVersions.get(0);
+    return handleIndividualVersions(srsp, otherVersions, sreq, sreq.completeList, otherHighest, otherHighest);
   }
 
   private boolean handleIndividualVersions(ShardResponse srsp, List<Long> otherVersions, SyncShardRequest sreq,
@@ -134,6 +134,16 @@ public abstract class SolrCoreState {
    * @throws IOException If there is a low-level I/O error.
    */
   public abstract void rollbackIndexWriter(SolrCore core) throws IOException;
+
+  /**
+   * Closes the IndexWriter, to release the segment readers it pools for near real-time searchers, unless it is in use
+   * or has uncommitted changes. A new IndexWriter is opened on demand by {@link #getIndexWriter(SolrCore)}.
+   *
+   * @param core that the IW belongs to
+   * @return true if the IW was closed
+   * @throws IOException If there is a low-level I/O error.
+   */
+  public abstract boolean closeIdleIndexWriter(SolrCore core) throws IOException;
   
   /**
    * Get the current Sort of the current IndexWriter's MergePolicy..
@@ -44,8 +44,10 @@ import org.apache.solr.index.DefaultMergePolicyFactory;
 import org.apache.solr.index.MergePolicyFactory;
 import org.apache.solr.index.MergePolicyFactoryArgs;
 import org.apache.solr.index.SortingMergePolicy;
+import org.apache.solr.metrics.SolrMetricProducer;
 import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.util.SolrPluginUtils;
+import org.apache.solr.util.plugin.NamedListInitializedPlugin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -247,6 +249,13 @@ public class SolrIndexConfig implements MapSerializable {
                                                                         null,
                                                                         new Class[] { InfoStream.class },
                                                                         new Object[] { iwc.getInfoStream() });
+      if (warmer instanceof NamedListInitializedPlugin) {
+        ((NamedListInitializedPlugin) warmer).init(mergedSegmentWarmerInfo.initArgs);
+      }
+      if (warmer instanceof SolrMetricProducer) {
+        ((SolrMetricProducer) warmer).initializeMetrics(core.getCoreContainer().getMetricManager(),
+            core.getCoreMetricManager().getRegistryName(), "warmer");
+      }
       iwc.setMergedSegmentWarmer(warmer);
     }
 
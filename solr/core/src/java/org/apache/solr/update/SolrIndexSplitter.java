@@ -18,31 +18,52 @@ package org.apache.solr.update;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.lucene.index.CodecReader;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.FilterCodecReader;
+import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
 import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.SlowCodecReaderWrapper;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.FilterDirectory;
+import org.apache.lucene.store.HardlinkCopyDirectoryWrapper;
+import org.apache.lucene.store.Lock;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.CharsRefBuilder;
 import org.apache.lucene.util.FixedBitSet;
 import org.apache.lucene.util.IOUtils;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.cloud.CompositeIdRouter;
 import org.apache.solr.common.cloud.DocRouter;
 import org.apache.solr.common.cloud.HashBasedRouter;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.core.IndexDeletionPolicyWrapper;
 import org.apache.solr.core.SolrCore;
+import org.apache.solr.core.StandardDirectoryFactory;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.BitsFilteredPostingsEnum;
 import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.DefaultSolrThreadFactory;
 import org.apache.solr.util.RefCounted;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +71,32 @@ import org.slf4j.LoggerFactory;
 public class SolrIndexSplitter {
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+  /** How the documents of each partition are written to its index */
+  public enum SplitMethod {
+    /** rewrite the documents of each partition, segment by segment */
+    REWRITE,
+    /**
+     * hard-link the segments of the index into each partition, or copy them if they can not be linked, and delete the
+     * documents that do not belong to the partition; the deleted documents are reclaimed as segments get merged
+     */
+    LINK;
+
+    public static SplitMethod get(String p) {
+      if (p != null) {
+        try {
+          return SplitMethod.valueOf(p.toUpperCase(Locale.ROOT));
+        } catch (Exception ex) {
+          return null;
+        }
+      }
+      return null;
+    }
+
+    public String toLower() {
+      return toString().toLowerCase(Locale.ROOT);
+    }
+  }
+
   SolrIndexSearcher searcher;
   SchemaField field;
   List<DocRouter.Range> ranges;
@@ -59,9 +106,11 @@ public class SolrIndexSplitter {
   DocRouter router;
   HashBasedRouter hashRouter;
   int numPieces;
-  int currPartition = 0;
   String routeFieldName;
   String splitKey;
+  SplitMethod splitMethod;
+
+  int currPartition = 0;
 
   public SolrIndexSplitter(SplitIndexCommand cmd) {
     searcher = cmd.getReq().getSearcher();
@@ -86,74 +135,249 @@ public class SolrIndexSplitter {
     if (cmd.splitKey != null) {
       splitKey = getRouteKey(cmd.splitKey);
     }
+    splitMethod = cmd.splitMethod != null ? cmd.splitMethod : SplitMethod.REWRITE;
   }
 
   public void split() throws IOException {
+    // the segments, and then the partitions, are processed in parallel
+    int numThreads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+        Math.max(numPieces, searcher.getRawReader().leaves().size())));
+    ExecutorService executor = ExecutorUtil.newMDCAwareFixedThreadPool(numThreads,
+        new DefaultSolrThreadFactory("SolrIndexSplitter"));
+    try {
+      if (splitMethod == SplitMethod.LINK) {
+        IndexCommit commit = getLinkableCommit();
+        if (commit != null) {
+          IndexDeletionPolicyWrapper deletionPolicy = searcher.getCore().getDeletionPolicy();
+          deletionPolicy.saveCommitPoint(commit.getGeneration());
+          try {
+            splitByLinking(commit, executor);
+          } finally {
+            deletionPolicy.releaseCommitPoint(commit.getGeneration());
+          }
+          return;
+        }
+      }
+      splitByRewriting(executor);
+    } finally {
+      ExecutorUtil.shutdownAndAwaitTermination(executor);
+    }
+  }
 
-    List<LeafReaderContext> leaves = searcher.getRawReader().leaves();
-    List<FixedBitSet[]> segmentDocSets = new ArrayList<>(leaves.size());
+  /**
+   * Returns the latest commit of the index if the partitions can be created by linking its files,
+   * which requires the index and all partitions to be on the local file system, or null otherwise
+   */
+  private IndexCommit getLinkableCommit() {
+    SolrCore core = searcher.getCore();
+    IndexCommit commit = core.getDeletionPolicy().getLatestCommit();
+    String reason = null;
+    if (commit == null) {
+      reason = "the index has no commit";
+    } else if (!(FilterDirectory.unwrap(commit.getDirectory()) instanceof FSDirectory)) {
+      reason = "the index is not on the local file system";
+    } else if (cores == null && !(core.getDirectoryFactory() instanceof StandardDirectoryFactory)) {
+      reason = "the target paths are not on the local file system";
+    } else if (cores != null) {
+      for (SolrCore subCore : cores) {
+        if (!(subCore.getDirectoryFactory() instanceof StandardDirectoryFactory)) {
+          reason = "the index of " + subCore.getName() + " is not on the local file system";
+          break;
+        }
+      }
+    }
+    if (reason != null) {
+      log.warn("SolrIndexSplitter: can not split by linking because {}, splitting by rewriting instead", reason);
+      return null;
+    }
+    return commit;
+  }
 
-    log.info("SolrIndexSplitter: partitions=" + numPieces + " segments="+leaves.size());
+  private void splitByRewriting(ExecutorService executor) throws IOException {
+    List<LeafReaderContext> leaves = searcher.getRawReader().leaves();
 
-    for (LeafReaderContext readerContext : leaves) {
-      assert readerContext.ordInParent == segmentDocSets.size();  // make sure we're going in order
-      FixedBitSet[] docSets = split(readerContext);
-      segmentDocSets.add( docSets );
-    }
+    log.info("SolrIndexSplitter: partitions=" + numPieces + " segments=" + leaves.size());
 
+    List<FixedBitSet[]> segmentDocSets = getDocSets(leaves, executor);
 
     // would it be more efficient to write segment-at-a-time to each new index?
     // - need to worry about number of open descriptors
     // - need to worry about if IW.addIndexes does a sync or not...
     // - would be more efficient on the read side, but prob less efficient merging
 
+    List<Future<Void>> futures = new ArrayList<>(numPieces);
     for (int partitionNumber=0; partitionNumber<numPieces; partitionNumber++) {
-      log.info("SolrIndexSplitter: partition #" + partitionNumber + " partitionCount=" + numPieces + (ranges != null ? " range=" + ranges.get(partitionNumber) : ""));
+      final int partition = partitionNumber;
+      futures.add(executor.submit(() -> {
+        rewritePartition(partition, leaves, segmentDocSets);
+        return null;
+      }));
+    }
+    getAll(futures);
+  }
 
-      boolean success = false;
+  private void rewritePartition(int partitionNumber, List<LeafReaderContext> leaves, List<FixedBitSet[]> segmentDocSets) throws IOException {
+    log.info("SolrIndexSplitter: partition #" + partitionNumber + " partitionCount=" + numPieces + (ranges != null ? " range=" + ranges.get(partitionNumber) : ""));
+
+    boolean success = false;
+
+    RefCounted<IndexWriter> iwRef = null;
+    IndexWriter iw = null;
+    if (cores != null) {
+      SolrCore subCore = cores.get(partitionNumber);
+      iwRef = subCore.getUpdateHandler().getSolrCoreState().getIndexWriter(subCore);
+      iw = iwRef.get();
+    } else {
+      SolrCore core = searcher.getCore();
+      String path = paths.get(partitionNumber);
+      iw = SolrIndexWriter.create(core, "SplittingIndexWriter"+partitionNumber + (ranges != null ? " " + ranges.get(partitionNumber) : ""), path,
+                                  core.getDirectoryFactory(), true, core.getLatestSchema(),
+                                  core.getSolrConfig().indexConfig, core.getDeletionPolicy(), core.getCodec());
+    }
 
-      RefCounted<IndexWriter> iwRef = null;
-      IndexWriter iw = null;
-      if (cores != null) {
-        SolrCore subCore = cores.get(partitionNumber);
-        iwRef = subCore.getUpdateHandler().getSolrCoreState().getIndexWriter(subCore);
-        iw = iwRef.get();
+    try {
+      // This removes deletions but optimize might still be needed because sub-shards will have the same number of segments as the parent shard.
+      for (int segmentNumber = 0; segmentNumber<leaves.size(); segmentNumber++) {
+        log.info("SolrIndexSplitter: partition #" + partitionNumber + " partitionCount=" + numPieces + (ranges != null ? " range=" + ranges.get(partitionNumber) : "") + " segment #"+segmentNumber + " segmentCount=" + leaves.size());
+        CodecReader subReader = SlowCodecReaderWrapper.wrap(leaves.get(segmentNumber).reader());
+        iw.addIndexes(new LiveDocsReader(subReader, segmentDocSets.get(segmentNumber)[partitionNumber]));
+      }
+      // we commit explicitly instead of sending a CommitUpdateCommand through the processor chain
+      // because the sub-shard cores will just ignore such a commit because the update log is not
+      // in active state at this time.
+      //TODO no commitUpdateCommand
+      SolrIndexWriter.setCommitData(iw, -1);
+      iw.commit();
+      success = true;
+    } finally {
+      if (iwRef != null) {
+        iwRef.decref();
       } else {
-        SolrCore core = searcher.getCore();
-        String path = paths.get(partitionNumber);
-        iw = SolrIndexWriter.create(core, "SplittingIndexWriter"+partitionNumber + (ranges != null ? " " + ranges.get(partitionNumber) : ""), path,
-                                    core.getDirectoryFactory(), true, core.getLatestSchema(),
-                                    core.getSolrConfig().indexConfig, core.getDeletionPolicy(), core.getCodec());
+        if (success) {
+          iw.close();
+        } else {
+          IOUtils.closeWhileHandlingException(iw);
+        }
+      }
+    }
+  }
+
+  private void splitByLinking(IndexCommit commit, ExecutorService executor) throws IOException {
+    Path sourcePath = ((FSDirectory) FilterDirectory.unwrap(commit.getDirectory())).getDirectory();
+    // the documents are assigned to partitions on the commit that is linked, which the searcher might not match
+    try (DirectoryReader reader = DirectoryReader.open(commit)) {
+      List<LeafReaderContext> leaves = reader.leaves();
+
+      log.info("SolrIndexSplitter: linking partitions=" + numPieces + " segments=" + leaves.size() + " commit=" + commit.getSegmentsFileName());
+
+      List<FixedBitSet[]> segmentDocSets = getDocSets(leaves, executor);
+
+      List<Future<Void>> futures = new ArrayList<>(numPieces);
+      for (int partitionNumber=0; partitionNumber<numPieces; partitionNumber++) {
+        final int partition = partitionNumber;
+        futures.add(executor.submit(() -> {
+          linkPartition(partition, commit, sourcePath, leaves, segmentDocSets);
+          return null;
+        }));
       }
+      getAll(futures);
+    }
+  }
 
-      try {
-        // This removes deletions but optimize might still be needed because sub-shards will have the same number of segments as the parent shard.
-        for (int segmentNumber = 0; segmentNumber<leaves.size(); segmentNumber++) {
-          log.info("SolrIndexSplitter: partition #" + partitionNumber + " partitionCount=" + numPieces + (ranges != null ? " range=" + ranges.get(partitionNumber) : "") + " segment #"+segmentNumber + " segmentCount=" + leaves.size());
-          CodecReader subReader = SlowCodecReaderWrapper.wrap(leaves.get(segmentNumber).reader());
-          iw.addIndexes(new LiveDocsReader(subReader, segmentDocSets.get(segmentNumber)[partitionNumber]));
+  private void linkPartition(int partitionNumber, IndexCommit commit, Path sourcePath, List<LeafReaderContext> leaves,
+                             List<FixedBitSet[]> segmentDocSets) throws IOException {
+    log.info("SolrIndexSplitter: linking partition #" + partitionNumber + " partitionCount=" + numPieces + (ranges != null ? " range=" + ranges.get(partitionNumber) : ""));
+
+    SolrCore subCore = cores != null ? cores.get(partitionNumber) : null;
+    if (subCore != null) {
+      // the files are linked with a writer of our own, which must be the only one
+      subCore.getSolrCoreState().closeIndexWriter(subCore, false);
+    }
+    try {
+      String targetPath = subCore != null ? subCore.getNewIndexDir() : paths.get(partitionNumber);
+      IndexWriterConfig iwc = new IndexWriterConfig(null)
+          .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND)
+          .setMergePolicy(NoMergePolicy.INSTANCE) // deletions are applied to the linked segments as they are
+          .setCommitOnClose(false)
+          .setCodec(searcher.getCore().getCodec());
+      try (Directory source = new CommitDirectory(FSDirectory.open(sourcePath), commit);
+           Directory target = new HardlinkCopyDirectoryWrapper(FSDirectory.open(Paths.get(targetPath)));
+           IndexWriter iw = new IndexWriter(target, iwc)) {
+        iw.addIndexes(source);
+
+        long deleted = 0;
+        try (DirectoryReader linked = DirectoryReader.open(iw)) {
+          // the linked segments come last, in the same order as in the commit
+          List<LeafReaderContext> linkedLeaves = linked.leaves();
+          int offset = linkedLeaves.size() - leaves.size();
+          for (int segmentNumber = 0; segmentNumber < leaves.size(); segmentNumber++) {
+            LeafReader linkedReader = offset < 0 ? null : linkedLeaves.get(offset + segmentNumber).reader();
+            if (linkedReader == null || linkedReader.maxDoc() != leaves.get(segmentNumber).reader().maxDoc()) {
+              throw new IllegalStateException("Linked segments of partition #" + partitionNumber + " in " + targetPath
+                  + " do not match the segments of " + commit.getSegmentsFileName());
+            }
+            FixedBitSet docSet = segmentDocSets.get(segmentNumber)[partitionNumber];
+            Bits liveDocs = linkedReader.getLiveDocs();
+            for (int doc = 0; doc < linkedReader.maxDoc(); doc++) {
+              if (!docSet.get(doc) && (liveDocs == null || liveDocs.get(doc))) {
+                if (iw.tryDeleteDocument(linkedReader, doc) == -1) {
+                  throw new IllegalStateException("Could not delete document " + doc + " of segment #" + segmentNumber
+                      + " from partition #" + partitionNumber);
+                }
+                deleted++;
+              }
+            }
+          }
         }
-        // we commit explicitly instead of sending a CommitUpdateCommand through the processor chain
-        // because the sub-shard cores will just ignore such a commit because the update log is not
-        // in active state at this time.
-        //TODO no commitUpdateCommand
+        log.info("SolrIndexSplitter: linked partition #" + partitionNumber + " deleted=" + deleted);
+
         SolrIndexWriter.setCommitData(iw, -1);
         iw.commit();
-        success = true;
-      } finally {
-        if (iwRef != null) {
-          iwRef.decref();
-        } else {
-          if (success) {
-            iw.close();
-          } else {
-            IOUtils.closeWhileHandlingException(iw);
-          }
-        }
       }
+    } finally {
+      if (subCore != null) {
+        subCore.getSolrCoreState().openIndexWriter(subCore);
+      }
+    }
+  }
 
+  private List<FixedBitSet[]> getDocSets(List<LeafReaderContext> leaves, ExecutorService executor) throws IOException {
+    if (ranges == null) {
+      // documents are dealt round-robin across segments, so the segments are split one after the other
+      List<FixedBitSet[]> docSets = new ArrayList<>(leaves.size());
+      for (LeafReaderContext readerContext : leaves) {
+        docSets.add(split(readerContext));
+      }
+      return docSets;
+    }
+    List<Future<FixedBitSet[]>> futures = new ArrayList<>(leaves.size());
+    for (LeafReaderContext readerContext : leaves) {
+      assert readerContext.ord == futures.size();  // make sure we're going in order
+      futures.add(executor.submit(() -> split(readerContext)));
     }
+    return getAll(futures);
+  }
 
+  private static <T> List<T> getAll(List<Future<T>> futures) throws IOException {
+    List<T> results = new ArrayList<>(futures.size());
+    try {
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Interrupted while splitting", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Error while splitting", e.getCause());
+    } finally {
+      for (Future<T> future : futures) {
+        future.cancel(true);
+      }
+    }
+    return results;
   }
 
   FixedBitSet[] split(LeafReaderContext readerContext) throws IOException {
@@ -268,6 +492,35 @@ public class SolrIndexSplitter {
   }
 
 
+  // exposes a single commit of an index, which is read without locking the index
+  private static class CommitDirectory extends FilterDirectory {
+    final String[] files;
+
+    CommitDirectory(Directory in, IndexCommit commit) throws IOException {
+      super(in);
+      files = commit.getFileNames().toArray(new String[0]);
+      Arrays.sort(files);
+    }
+
+    @Override
+    public String[] listAll() {
+      return files.clone();
+    }
+
+    @Override
+    public Lock obtainLock(String name) {
+      return new Lock() {
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void ensureValid() {
+        }
+      };
+    }
+  }
+
   // change livedocs on the reader to delete those docs we don't want
   static class LiveDocsReader extends FilterCodecReader {
     final FixedBitSet liveDocs;
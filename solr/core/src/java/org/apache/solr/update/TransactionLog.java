@@ -25,6 +25,7 @@ import java.lang.invoke.MethodHandles;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -88,6 +89,13 @@ public class TransactionLog implements Closeable {
   long snapshot_size;
   int snapshot_numRecords;
 
+  // index of the records written so far; only kept for new logs when indexing is enabled
+  TransactionLogIndex index;
+  // position of the trailer index in a capped log, or -1 if there is none
+  long trailerPos = -1;
+  // read-only mapping of the records of a log that is no longer appended to (other than a final commit)
+  volatile ByteBuffer mappedRecords;
+
   // write a BytesRef as a byte array
   static final JavaBinCodec.ObjectResolver resolver = new JavaBinCodec.ObjectResolver() {
     @Override
@@ -145,6 +153,14 @@ public class TransactionLog implements Closeable {
   }
 
   TransactionLog(File tlogFile, Collection<String> globalStrings, boolean openExisting) {
+    this(tlogFile, globalStrings, openExisting, false);
+  }
+
+  /**
+   * @param indexed if true, an index of the records is written as a trailer when the log is capped by
+   *                a commit, and logs that will no longer be appended to are read through a memory mapping
+   */
+  TransactionLog(File tlogFile, Collection<String> globalStrings, boolean openExisting, boolean indexed) {
     boolean success = false;
     try {
       if (debug) {
@@ -166,6 +182,11 @@ public class TransactionLog implements Closeable {
       if (openExisting) {
         if (start > 0) {
           readHeader(null);
+          readTrailer(start);
+          if (indexed) {
+            // an existing log is only read from, except for a commit that may be appended after replaying it
+            mapRecords(trailerPos >= 0 ? trailerPos : start);
+          }
           raf.seek(start);
           assert channel.position() == start;
           fos.setWritten(start);    // reflect that we aren't starting at the beginning
@@ -183,6 +204,9 @@ public class TransactionLog implements Closeable {
           raf.setLength(0);
         }
         addGlobalStrings(globalStrings);
+        if (indexed) {
+          index = new TransactionLogIndex();
+        }
       }
 
       success = true;
@@ -218,14 +242,14 @@ public class TransactionLog implements Closeable {
     long size;
     synchronized (this) {
       fos.flush();
-      size = fos.size();
+      size = endOfRecords();
     }
 
-    // the end of the file should have the end message (added during a commit) plus a 4 byte size
+    // the end of the records should have the end message (added during a commit) plus a 4 byte size
     byte[] buf = new byte[ END_MESSAGE.length() ];
     long pos = size - END_MESSAGE.length() - 4;
     if (pos < 0) return false;
-    ChannelFastInputStream is = new ChannelFastInputStream(channel, pos);
+    ChannelFastInputStream is = newInputStream(pos);
     is.read(buf);
     for (int i=0; i<buf.length; i++) {
       if (buf[i] != END_MESSAGE.charAt(i)) return false;
@@ -253,6 +277,9 @@ public class TransactionLog implements Closeable {
       fos.setWritten(pos);
       assert fos.size() == pos;
       numRecords = snapshot_numRecords;
+      if (index != null) {
+        index.truncate(pos);
+      }
     }
   }
 
@@ -271,7 +298,7 @@ public class TransactionLog implements Closeable {
 
   private void readHeader(FastInputStream fis) throws IOException {
     // read existing header
-    fis = fis != null ? fis : new ChannelFastInputStream(channel, 0);
+    fis = fis != null ? fis : newInputStream(0);
     LogCodec codec = new LogCodec(resolver);
     Map header = (Map)codec.unmarshal(fis);
 
@@ -288,6 +315,64 @@ public class TransactionLog implements Closeable {
     }
   }
 
+  /** Looks for a trailer index at the end of an existing log and records where the records end. */
+  private void readTrailer(long size) throws IOException {
+    if (size < TransactionLogIndex.FOOTER_LENGTH) return;
+    ChannelFastInputStream fis = new ChannelFastInputStream(channel, size - TransactionLogIndex.FOOTER_LENGTH);
+    long start = fis.readLong();
+    int magic = fis.readInt();
+    // a log without a trailer ends with the (positive) length of its last record
+    if (magic != TransactionLogIndex.TRAILER_MAGIC) return;
+    if (start <= 0 || start > size - TransactionLogIndex.FOOTER_LENGTH) {
+      throw new IOException("Corrupt transaction log trailer: start=" + start + " size=" + size + " file=" + tlogFile);
+    }
+    trailerPos = start;
+  }
+
+  private void writeTrailer() throws IOException {
+    long start = fos.size();
+    index.write(fos);
+    fos.writeLong(start);
+    fos.writeInt(TransactionLogIndex.TRAILER_MAGIC);
+    trailerPos = start;
+  }
+
+  /** Maps the records up to the given position so readers don't need a system call per buffer fill. */
+  private void mapRecords(long size) throws IOException {
+    if (size <= 0 || size > Integer.MAX_VALUE) return;  // fall back to channel reads for huge logs
+    mappedRecords = channel.map(MapMode.READ_ONLY, 0, size);
+  }
+
+  /** Returns the position just after the last record, excluding any trailer index.
+   * Callers must hold the lock on this log. */
+  protected long endOfRecords() {
+    return trailerPos >= 0 ? trailerPos : fos.size();
+  }
+
+  /**
+   * Returns the index of the records in this log if it has been capped with a trailer index, or null.
+   * The index of a log that is still being written is not exposed since it may still change.
+   */
+  public TransactionLogIndex getIndex() {
+    synchronized (this) {
+      if (trailerPos < 0) return null;
+      if (index == null) {
+        try {
+          index = TransactionLogIndex.read(new ChannelFastInputStream(channel, trailerPos));
+        } catch (IOException e) {
+          log.warn("Unable to read trailer index of " + this + ", falling back to reading the records", e);
+          return null;
+        }
+      }
+      return index;
+    }
+  }
+
+  ChannelFastInputStream newInputStream(long position) {
+    ByteBuffer mapped = mappedRecords;
+    return mapped != null ? new MappedFastInputStream(channel, mapped, position) : new ChannelFastInputStream(channel, position);
+  }
+
   protected void addGlobalStrings(Collection<String> strings) {
     if (strings == null) return;
     int origSize = globalStringMap.size();
@@ -411,6 +496,13 @@ public class TransactionLog implements Closeable {
 
         out.writeAll(fos);
         endRecord(pos);
+        if (index != null) {
+          if (cmd.isInPlaceUpdate()) {
+            index.add(UpdateLog.UPDATE_INPLACE | flags, cmd.getVersion(), cmd.prevVersion, pos);
+          } else {
+            index.add(UpdateLog.ADD | flags, cmd.getVersion(), 0, pos);
+          }
+        }
         // fos.flushBuffer();  // flush later
         return pos;
       }
@@ -441,6 +533,9 @@ public class TransactionLog implements Closeable {
         assert pos != 0;
         out.writeAll(fos);
         endRecord(pos);
+        if (index != null) {
+          index.add(UpdateLog.DELETE | flags, cmd.getVersion(), 0, pos);
+        }
         // fos.flushBuffer();  // flush later
         return pos;
       }
@@ -467,6 +562,9 @@ public class TransactionLog implements Closeable {
         long pos = fos.size();   // if we had flushed, this should be equal to channel.position()
         out.writeAll(fos);
         endRecord(pos);
+        if (index != null) {
+          index.add(UpdateLog.DELETE_BY_QUERY | flags, cmd.getVersion(), 0, pos);
+        }
         // fos.flushBuffer();  // flush later
         return pos;
       }
@@ -481,6 +579,15 @@ public class TransactionLog implements Closeable {
     LogCodec codec = new LogCodec(resolver);
     synchronized (this) {
       try {
+        if (trailerPos >= 0) {
+          // a log can be capped more than once (i.e. after it's replayed); the new commit replaces the trailer
+          getIndex();  // make sure the index is loaded so it can be written again
+          fos.flush();
+          raf.setLength(trailerPos);
+          fos.setWritten(trailerPos);
+          trailerPos = -1;
+        }
+
         long pos = fos.size();   // if we had flushed, this should be equal to channel.position()
 
         if (pos == 0) {
@@ -495,6 +602,16 @@ public class TransactionLog implements Closeable {
 
         endRecord(pos);
 
+        if (index != null) {
+          index.add(UpdateLog.COMMIT | flags, cmd.getVersion(), 0, pos);
+          long recordsEnd = fos.size();
+          writeTrailer();
+          fos.flush();
+          if (mappedRecords == null) {
+            mapRecords(recordsEnd);
+          }
+        }
+
         fos.flush();  // flush since this will be the last record in a log fill
         assert fos.size() == channel.size();
 
@@ -525,7 +642,7 @@ public class TransactionLog implements Closeable {
         ***/
       }
 
-      ChannelFastInputStream fis = new ChannelFastInputStream(channel, pos);
+      ChannelFastInputStream fis = newInputStream(pos);
       LogCodec codec = new LogCodec(resolver);
       return codec.readVal(fis);
     } catch (IOException e) {
@@ -590,6 +707,7 @@ public class TransactionLog implements Closeable {
       synchronized (this) {
         fos.flush();
         fos.close();
+        mappedRecords = null;
       }
 
       if (deleteOnClose) {
@@ -649,7 +767,7 @@ public class TransactionLog implements Closeable {
 
     public LogReader(long startingPos) {
       incref();
-      fis = new ChannelFastInputStream(channel, startingPos);
+      fis = newInputStream(startingPos);
     }
 
     // for classes that extend
@@ -668,7 +786,7 @@ public class TransactionLog implements Closeable {
           log.trace("Reading log record.  pos="+pos+" currentSize="+fos.size());
         }
 
-        if (pos >= fos.size()) {
+        if (pos >= endOfRecords()) {
           return null;
         }
 
@@ -680,7 +798,7 @@ public class TransactionLog implements Closeable {
 
         // shouldn't currently happen - header and first record are currently written at the same time
         synchronized (TransactionLog.this) {
-          if (fis.position() >= fos.size()) {
+          if (fis.position() >= endOfRecords()) {
             return null;
           }
           pos = fis.position();
@@ -803,11 +921,11 @@ public class TransactionLog implements Closeable {
       long sz;
       synchronized (TransactionLog.this) {
         fos.flushBuffer();
-        sz = fos.size();
-        assert sz == channel.size();
+        sz = endOfRecords();
+        assert fos.size() == channel.size();
       }
 
-      fis = new ChannelFastInputStream(channel, 0);
+      fis = newInputStream(0);
       if (sz >=4) {
         // readHeader(fis);  // should not be needed
         prevPos = sz - 4;
@@ -931,3 +1049,25 @@ class ChannelFastInputStream extends FastInputStream {
 }
 
 
+/** Reads from a read-only mapping of the start of a log, and from the channel past the end of the mapping. */
+class MappedFastInputStream extends ChannelFastInputStream {
+  private final ByteBuffer mapped;
+
+  public MappedFastInputStream(FileChannel ch, ByteBuffer mapped, long chPosition) {
+    super(ch, chPosition);
+    this.mapped = mapped;
+  }
+
+  @Override
+  public int readWrappedStream(byte[] target, int offset, int len) throws IOException {
+    int limit = mapped.limit();
+    if (readFromStream >= limit) {
+      return super.readWrappedStream(target, offset, len);
+    }
+    int n = (int) Math.min(len, limit - readFromStream);
+    ByteBuffer bb = mapped.duplicate();
+    bb.position((int) readFromStream);
+    bb.get(target, offset, n);
+    return n;
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * A compact index of the records in a {@link TransactionLog}: the operation flags, version,
+ * previous version (for in-place updates) and position of every record, in log order.
+ * <p>
+ * The index is built in memory while the log is written and is appended as a trailer
+ * when the log is capped by a commit, so that the updates in a log can be enumerated
+ * without decoding each record. The trailer format is:
+ * <pre>
+ *  numRecords (int), numRecords x [flags (int), version (long), prevVersion (long), position (long)],
+ *  trailerStart (long), TRAILER_MAGIC (int)
+ * </pre>
+ * The magic value is negative so it can never be mistaken for the record length that ends
+ * a log without a trailer.
+ *
+ * @lucene.internal
+ */
+public class TransactionLogIndex {
+  static final int TRAILER_MAGIC = 0xC0DE7106;
+  /** length of the fixed-size footer: trailerStart plus the magic */
+  static final int FOOTER_LENGTH = 12;
+
+  private int size;
+  private int[] flags = new int[16];
+  private long[] versions = new long[16];
+  private long[] prevVersions = new long[16];
+  private long[] positions = new long[16];
+
+  private long minVersion = Long.MAX_VALUE;
+  private long maxVersion = 0;
+
+  /** Adds a record, which must be positioned after all records added so far. */
+  void add(int flags, long version, long prevVersion, long position) {
+    assert size == 0 || positions[size - 1] < position;
+    if (size == positions.length) {
+      int newSize = ArrayUtil.oversize(size + 1, Long.BYTES);
+      this.flags = ArrayUtil.grow(this.flags, newSize);
+      versions = ArrayUtil.grow(versions, newSize);
+      prevVersions = ArrayUtil.grow(prevVersions, newSize);
+      positions = ArrayUtil.grow(positions, newSize);
+    }
+    this.flags[size] = flags;
+    versions[size] = version;
+    prevVersions[size] = prevVersion;
+    positions[size] = position;
+    size++;
+
+    if ((flags & UpdateLog.OPERATION_MASK) != UpdateLog.COMMIT) {
+      long absVersion = Math.abs(version);
+      minVersion = Math.min(minVersion, absVersion);
+      maxVersion = Math.max(maxVersion, absVersion);
+    }
+  }
+
+  /** Drops all records at or after the given position, used when the log is rolled back. */
+  void truncate(long position) {
+    while (size > 0 && positions[size - 1] >= position) {
+      size--;
+    }
+    minVersion = Long.MAX_VALUE;
+    maxVersion = 0;
+    for (int i = 0; i < size; i++) {
+      if ((flags[i] & UpdateLog.OPERATION_MASK) != UpdateLog.COMMIT) {
+        minVersion = Math.min(minVersion, Math.abs(versions[i]));
+        maxVersion = Math.max(maxVersion, Math.abs(versions[i]));
+      }
+    }
+  }
+
+  /** Number of records, including commits but excluding the log header */
+  public int size() {
+    return size;
+  }
+
+  public int getFlags(int i) {
+    return flags[i];
+  }
+
+  public long getVersion(int i) {
+    return versions[i];
+  }
+
+  /** The previous version of an in-place update, or 0 for other operations */
+  public long getPrevVersion(int i) {
+    return prevVersions[i];
+  }
+
+  public long getPosition(int i) {
+    return positions[i];
+  }
+
+  /** The smallest absolute version of any update in the log, or {@link Long#MAX_VALUE} if there are none */
+  public long getMinVersion() {
+    return minVersion;
+  }
+
+  /** The largest absolute version of any update in the log, or 0 if there are none */
+  public long getMaxVersion() {
+    return maxVersion;
+  }
+
+  void write(DataOutput out) throws IOException {
+    out.writeInt(size);
+    for (int i = 0; i < size; i++) {
+      out.writeInt(flags[i]);
+      out.writeLong(versions[i]);
+      out.writeLong(prevVersions[i]);
+      out.writeLong(positions[i]);
+    }
+  }
+
+  static TransactionLogIndex read(DataInput in) throws IOException {
+    int numRecords = in.readInt();
+    if (numRecords < 0) {
+      throw new IOException("Corrupt transaction log index: numRecords=" + numRecords);
+    }
+    TransactionLogIndex index = new TransactionLogIndex();
+    for (int i = 0; i < numRecords; i++) {
+      int flags = in.readInt();
+      long version = in.readLong();
+      long prevVersion = in.readLong();
+      long position = in.readLong();
+      index.add(flags, version, prevVersion, position);
+    }
+    return index;
+  }
+}
@@ -37,11 +37,13 @@ import java.util.ListIterator;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
@@ -54,6 +56,7 @@ import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.Hash;
 import org.apache.solr.common.util.IOUtils;
 import org.apache.solr.core.PluginInfo;
 import org.apache.solr.core.SolrCore;
@@ -69,6 +72,7 @@ import org.apache.solr.update.processor.DistributedUpdateProcessor;
 import org.apache.solr.update.processor.UpdateRequestProcessor;
 import org.apache.solr.update.processor.UpdateRequestProcessorChain;
 import org.apache.solr.util.DefaultSolrThreadFactory;
+import org.apache.solr.util.OrderedExecutor;
 import org.apache.solr.util.RTimer;
 import org.apache.solr.util.RefCounted;
 import org.apache.solr.util.TestInjection;
@@ -199,6 +203,8 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
   protected int numRecordsToKeep;
   protected int maxNumLogsToKeep;
   protected int numVersionBuckets; // This should only be used to initialize VersionInfo... the actual number of buckets may be rounded up to a power of two.
+  protected boolean indexTlogs; // write a trailer index when capping logs, and read old logs through memory mapping
+  protected int numReplayThreads; // number of threads used to apply updates when replaying logs
   protected Long maxVersionFromIndex = null;
 
   // keep track of deletes only... this is not updated on an add
@@ -312,6 +318,14 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
     return numVersionBuckets;
   }
 
+  public int getNumReplayThreads() {
+    return numReplayThreads;
+  }
+
+  public boolean isIndexTlogs() {
+    return indexTlogs;
+  }
+
   protected static int objToInt(Object obj, int def) {
     if (obj != null) {
       return Integer.parseInt(obj.toString());
@@ -319,6 +333,13 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
     else return def;
   }
 
+  protected static boolean objToBoolean(Object obj, boolean def) {
+    if (obj != null) {
+      return Boolean.parseBoolean(obj.toString());
+    }
+    else return def;
+  }
+
   @Override
   public void init(PluginInfo info) {
     dataDir = (String)info.initArgs.get("dir");
@@ -330,9 +351,14 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
     if (numVersionBuckets <= 0)
       throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
           "Number of version buckets must be greater than 0!");
+    indexTlogs = objToBoolean(info.initArgs.get("indexTlogs"), false);
+    numReplayThreads = objToInt(info.initArgs.get("numReplayThreads"), 1);
+    if (numReplayThreads <= 0)
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+          "Number of replay threads must be greater than 0!");
 
-    log.info("Initializing UpdateLog: dataDir={} defaultSyncLevel={} numRecordsToKeep={} maxNumLogsToKeep={} numVersionBuckets={}",
-        dataDir, defaultSyncLevel, numRecordsToKeep, maxNumLogsToKeep, numVersionBuckets);
+    log.info("Initializing UpdateLog: dataDir={} defaultSyncLevel={} numRecordsToKeep={} maxNumLogsToKeep={} numVersionBuckets={} indexTlogs={} numReplayThreads={}",
+        dataDir, defaultSyncLevel, numRecordsToKeep, maxNumLogsToKeep, numVersionBuckets, indexTlogs, numReplayThreads);
   }
 
   /* Note, when this is called, uhandler is not completely constructed.
@@ -445,7 +471,7 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
    * change the implementation of the transaction log.
    */
   public TransactionLog newTransactionLog(File tlogFile, Collection<String> globalStrings, boolean openExisting) {
-    return new TransactionLog(tlogFile, globalStrings, openExisting);
+    return new TransactionLog(tlogFile, globalStrings, openExisting, indexTlogs);
   }
 
   public String getLogDir() {
@@ -1400,6 +1426,13 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
       for (TransactionLog oldLog : logList) {
         List<Update> updatesForLog = new ArrayList<>();
 
+        TransactionLogIndex index = oldLog.getIndex();
+        if (index != null) {
+          numUpdates = updateFromIndex(oldLog, index, updatesForLog, numUpdates);
+          updateList.add(updatesForLog);
+          continue;
+        }
+
         TransactionLog.ReverseReader reader = null;
         try {
           reader = oldLog.getReverseReader();
@@ -1473,6 +1506,41 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
 
     }
 
+    /** Same as reading the log in reverse, but only the records of deletes need to be decoded */
+    private int updateFromIndex(TransactionLog oldLog, TransactionLogIndex index, List<Update> updatesForLog, int numUpdates) {
+      for (int i = index.size() - 1; i >= 0 && numUpdates < numRecordsToKeep; i--, numUpdates++) {
+        int opAndFlags = index.getFlags(i);
+        if (latestOperation == 0) {
+          latestOperation = opAndFlags;
+        }
+        int oper = opAndFlags & UpdateLog.OPERATION_MASK;
+        if (oper == UpdateLog.COMMIT) continue;
+
+        Update update = new Update();
+        update.log = oldLog;
+        update.pointer = index.getPosition(i);
+        update.version = index.getVersion(i);
+        if (oper == UpdateLog.UPDATE_INPLACE) {
+          update.previousVersion = index.getPrevVersion(i);
+        }
+
+        if (oper == UpdateLog.DELETE) {
+          try {
+            List entry = (List) oldLog.lookup(update.pointer);
+            deleteList.add(new DeleteUpdate(update.version, (byte[]) entry.get(entry.size() - 1)));
+          } catch (Exception e) {
+            log.warn("Exception reading delete from log " + oldLog + " at " + update.pointer, e);
+            break;
+          }
+        } else if (oper == UpdateLog.DELETE_BY_QUERY) {
+          deleteByQueryList.add(update);
+        }
+        updatesForLog.add(update);
+        updates.put(update.version, update);
+      }
+      return numUpdates;
+    }
+
     @Override
     public void close() {
       for (TransactionLog log : logList) {
@@ -1643,6 +1711,13 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
     boolean debug = loglog.isDebugEnabled();
     boolean inSortedOrder;
 
+    // when replaying with more than one thread, updates to different ids are applied in parallel by
+    // workers that each have their own processor; deleteByQuery and commit entries act as barriers
+    OrderedExecutor replayExecutor;
+    Map<Thread, ReplayWorker> replayWorkers;
+    final AtomicInteger workerErrors = new AtomicInteger();
+    volatile SolrException workerFailure;
+
     public LogReplayer(List<TransactionLog> translogs, boolean activeLog) {
       this.translogs = new LinkedList<>();
       this.translogs.addAll(translogs);
@@ -1669,6 +1744,11 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
       rsp = new SolrQueryResponse();
       SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, rsp));    // setting request info will help logging
 
+      if (numReplayThreads > 1) {
+        replayExecutor = new OrderedExecutor(numReplayThreads, ExecutorUtil.newMDCAwareFixedThreadPool(numReplayThreads,
+            new DefaultSolrThreadFactory("replayUpdatesExecutor")));
+      }
+
       try {
         for(;;) {
           TransactionLog translog = translogs.pollFirst();
@@ -1705,6 +1785,10 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
           log.error("ERROR: didn't get to recover from tlog " + translog);
           translog.decref();
         }
+
+        if (replayExecutor != null) {
+          replayExecutor.shutdownAndAwaitTermination();
+        }
       }
 
       loglog.warn("Log replay finished. recoveryInfo=" + recoveryInfo);
@@ -1730,6 +1814,9 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
 
         UpdateRequestProcessorChain processorChain = req.getCore().getUpdateProcessingChain(null);
         UpdateRequestProcessor proc = processorChain.createProcessor(req, rsp);
+        if (replayExecutor != null) {
+          replayWorkers = new ConcurrentHashMap<>();
+        }
 
         long commitVersion = 0;
         int operationAndFlags = 0;
@@ -1798,6 +1885,11 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
                 AddUpdateCommand cmd = convertTlogEntryToAddUpdateCommand(req, entry, oper, version);
                 cmd.setFlags(UpdateCommand.REPLAY | UpdateCommand.IGNORE_AUTOCOMMIT);
                 if (debug) log.debug("{} {}", oper == ADD ? "add" : "update", cmd);
+                if (replayExecutor != null) {
+                  BytesRef id = cmd.getIndexedId();
+                  execute(Hash.murmurhash3_x86_32(id.bytes, id.offset, id.length, 0), p -> p.processAdd(cmd));
+                  break;
+                }
                 proc.processAdd(cmd);
                 break;
               }
@@ -1809,6 +1901,10 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
                 cmd.setVersion(version);
                 cmd.setFlags(UpdateCommand.REPLAY | UpdateCommand.IGNORE_AUTOCOMMIT);
                 if (debug) log.debug("delete " + cmd);
+                if (replayExecutor != null) {
+                  execute(Hash.murmurhash3_x86_32(idBytes, 0, idBytes.length, 0), p -> p.processDelete(cmd));
+                  break;
+                }
                 proc.processDelete(cmd);
                 break;
               }
@@ -1821,10 +1917,12 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
                 cmd.setVersion(version);
                 cmd.setFlags(UpdateCommand.REPLAY | UpdateCommand.IGNORE_AUTOCOMMIT);
                 if (debug) log.debug("deleteByQuery " + cmd);
+                waitForWorkers();
                 proc.processDelete(cmd);
                 break;
               }
               case UpdateLog.COMMIT: {
+                waitForWorkers();
                 commitVersion = version;
                 break;
               }
@@ -1868,6 +1966,11 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
           
         }
 
+        waitForWorkers();
+        // finish the processors of the replay threads before the final commit, so that it includes
+        // anything they buffered
+        finishWorkers();
+
         CommitUpdateCommand cmd = new CommitUpdateCommand(req, false);
         cmd.setVersion(commitVersion);
         cmd.softCommit = false;
@@ -1900,10 +2003,131 @@ public class UpdateLog implements PluginInfoInitialized, SolrMetricProducer {
         }
 
       } finally {
+        // no-op unless replay failed before the workers were finished
+        finishWorkers();
         if (tlogReader != null) tlogReader.close();
         translog.decref();
       }
     }
+
+    /**
+     * Applies an update on one of the replay threads. Updates with the same key (the hash of the id)
+     * are applied in log order.
+     */
+    private void execute(int key, ReplayOperation op) {
+      if (workerFailure != null) {
+        throw workerFailure;
+      }
+      try {
+        replayExecutor.execute(key, () -> {
+          ReplayWorker worker = replayWorkers.computeIfAbsent(Thread.currentThread(), t -> new ReplayWorker());
+          SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, worker.rsp));
+          try {
+            op.apply(worker.proc);
+            if (worker.rsp.getException() != null) {
+              loglog.error("REPLAY_ERR: Exception replaying log", worker.rsp.getException());
+              throw worker.rsp.getException();
+            }
+          } catch (SolrException ex) {
+            if (ex.code() == ErrorCode.SERVICE_UNAVAILABLE.code) {
+              workerFailure = ex;
+            } else {
+              workerErrors.incrementAndGet();
+              loglog.warn("REPLAY_ERR: IOException reading log", ex);
+            }
+          } catch (Exception ex) {
+            workerErrors.incrementAndGet();
+            loglog.warn("REPLAY_ERR: Exception replaying log", ex);
+          } finally {
+            if (worker.rsp.getException() != null) {
+              // don't let one failed update fail the rest of the updates applied by this worker
+              worker.reset();
+            }
+            SolrRequestInfo.clearRequestInfo();
+          }
+        });
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SolrException(ErrorCode.SERVICE_UNAVAILABLE, "Interrupted while replaying log", e);
+      }
+    }
+
+    /** Waits until all updates handed to the replay threads have been applied, and accounts for their errors */
+    private void waitForWorkers() {
+      if (replayExecutor == null) return;
+      try {
+        replayExecutor.awaitTasks();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SolrException(ErrorCode.SERVICE_UNAVAILABLE, "Interrupted while replaying log", e);
+      }
+      recoveryInfo.errors += workerErrors.getAndSet(0);
+      if (workerFailure != null) {
+        throw workerFailure;
+      }
+    }
+
+    /**
+     * Finishes and closes the processors of the replay threads. The updates that were handed to the replay
+     * threads are waited for first, so that no processor is closed while it is in use.
+     */
+    private void finishWorkers() {
+      if (replayWorkers == null) return;
+      boolean interrupted = false;
+      for (;;) {
+        try {
+          replayExecutor.awaitTasks();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      try {
+        recoveryInfo.errors += workerErrors.getAndSet(0);
+        for (ReplayWorker worker : replayWorkers.values()) {
+          worker.finish();
+        }
+      } finally {
+        replayWorkers = null;
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    /** The processor (and response) used by one replay thread */
+    private class ReplayWorker {
+      SolrQueryResponse rsp;
+      UpdateRequestProcessor proc;
+      final List<UpdateRequestProcessor> usedProcs = new ArrayList<>();
+
+      ReplayWorker() {
+        reset();
+      }
+
+      void reset() {
+        rsp = new SolrQueryResponse();
+        proc = req.getCore().getUpdateProcessingChain(null).createProcessor(req, rsp);
+        usedProcs.add(proc);
+      }
+
+      void finish() {
+        for (UpdateRequestProcessor p : usedProcs) {
+          try {
+            p.finish();
+          } catch (IOException ex) {
+            recoveryInfo.errors++;
+            loglog.error("Replay exception: finish()", ex);
+          } finally {
+            IOUtils.closeQuietly(p);
+          }
+        }
+      }
+    }
+  }
+
+  private interface ReplayOperation {
+    void apply(UpdateRequestProcessor proc) throws IOException;
   }
 
   /**
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.common.MapSerializable;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.Hash;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * A digest of a list of recent update versions, used by {@link PeerSync} to find out which versions two
+ * replicas disagree on without exchanging all of them.
+ * <p>
+ * The versions are split into buckets of contiguous (absolute) version ranges, and for each bucket the number
+ * of versions and the sum of their hashes is recorded. The side that builds the digest first picks the bucket
+ * bounds so that the buckets hold roughly the same number of versions; the other side then computes its own
+ * digest over the same bounds and only the versions in buckets that differ need to be exchanged.
+ *
+ * @lucene.internal
+ */
+public class VersionDigest implements MapSerializable {
+
+  /** lower bound (inclusive) of the absolute versions in each bucket, in ascending order */
+  private long[] bounds;
+  private long[] counts;
+  private long[] hashes;
+  private long numVersions;
+  private long highest;
+  // 20th and 80th percentiles of the absolute versions, highest first, as computed by PeerSync
+  private long high;
+  private long low;
+
+  private VersionDigest() {
+  }
+
+  /** Builds a digest of the versions, choosing bounds so that each of the (at most) numBuckets buckets holds about the same number of versions */
+  public static VersionDigest create(List<Long> versions, int numBuckets) {
+    if (numBuckets <= 0) {
+      throw new IllegalArgumentException("numBuckets must be positive: " + numBuckets);
+    }
+    List<Long> sorted = new ArrayList<>(versions);
+    Collections.sort(sorted, PeerSync.absComparator);
+    int n = sorted.size();
+    long[] bounds = new long[Math.min(numBuckets, n)];
+    int numBounds = 0;
+    for (int b = 0; b < bounds.length; b++) {
+      // sorted is highest first, so walk it from the end
+      long bound = Math.abs(sorted.get(n - 1 - (int) ((long) b * n / bounds.length)));
+      if (numBounds == 0 || bound > bounds[numBounds - 1]) {
+        bounds[numBounds++] = bound;
+      }
+    }
+    return create(sorted, Arrays.copyOf(bounds, numBounds));
+  }
+
+  /** Builds a digest of the versions over the given bucket bounds; versions below the lowest bound are ignored */
+  public static VersionDigest create(List<Long> versions, long[] bounds) {
+    VersionDigest digest = new VersionDigest();
+    digest.bounds = bounds;
+    digest.counts = new long[bounds.length];
+    digest.hashes = new long[bounds.length];
+    digest.numVersions = versions.size();
+
+    if (versions.isEmpty()) {
+      return digest;
+    }
+
+    List<Long> sorted = new ArrayList<>(versions);
+    Collections.sort(sorted, PeerSync.absComparator);
+    digest.highest = sorted.get(0);
+    digest.high = Math.abs(sorted.get((int) (sorted.size() * 0.2f)));
+    digest.low = Math.abs(sorted.get((int) (sorted.size() * 0.8f)));
+
+    for (long version : sorted) {
+      int bucket = bucket(bounds, Math.abs(version));
+      if (bucket < 0) continue;
+      digest.counts[bucket]++;
+      digest.hashes[bucket] += Hash.fmix64(version);
+    }
+    return digest;
+  }
+
+  /** returns the bucket that holds the absolute version, or -1 if it is below the lowest bound */
+  private static int bucket(long[] bounds, long absVersion) {
+    int idx = Arrays.binarySearch(bounds, absVersion);
+    return idx >= 0 ? idx : -idx - 2;
+  }
+
+  public long[] getBounds() {
+    return bounds;
+  }
+
+  /** number of versions the digest was built from, including those below the lowest bound */
+  public long getNumVersions() {
+    return numVersions;
+  }
+
+  /** the version with the highest absolute value, or 0 if there are no versions */
+  public long getHighest() {
+    return highest;
+  }
+
+  /** the absolute version at the 20th percentile, highest first */
+  public long getHigh() {
+    return high;
+  }
+
+  /** the absolute version at the 80th percentile, highest first */
+  public long getLow() {
+    return low;
+  }
+
+  /**
+   * Returns the version ranges of the buckets in which this digest differs from the other, which must have
+   * been built over the same bounds, formatted as {@code lo...hi} with adjacent ranges merged.
+   * Ranges that end below minVersion are left out.
+   */
+  public List<String> getDifferingRanges(VersionDigest other, long minVersion) {
+    if (!Arrays.equals(bounds, other.bounds)) {
+      throw new IllegalArgumentException("Can not compare version digests with different bounds");
+    }
+    List<String> ranges = new ArrayList<>();
+    int i = 0;
+    while (i < bounds.length) {
+      if (counts[i] == other.counts[i] && hashes[i] == other.hashes[i]) {
+        i++;
+        continue;
+      }
+      long lo = bounds[i];
+      while (i < bounds.length && (counts[i] != other.counts[i] || hashes[i] != other.hashes[i])) {
+        i++;
+      }
+      long hi = i < bounds.length ? bounds[i] - 1 : Long.MAX_VALUE;
+      if (hi >= minVersion) {
+        ranges.add(lo + "..." + hi);
+      }
+    }
+    return ranges;
+  }
+
+  /** returns true if the absolute value of the version is within one of the ranges returned by {@link #getDifferingRanges} */
+  public static boolean inRanges(List<long[]> ranges, long version) {
+    long absVersion = Math.abs(version);
+    for (long[] range : ranges) {
+      if (absVersion >= range[0] && absVersion <= range[1]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** parses ranges formatted as {@code lo...hi} */
+  public static List<long[]> parseRanges(List<String> ranges) {
+    List<long[]> parsed = new ArrayList<>(ranges.size());
+    for (String range : ranges) {
+      String[] rangeBounds = range.split("\\.{3}");
+      if (rangeBounds.length != 2) {
+        throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Invalid version range: " + range);
+      }
+      parsed.add(new long[] {Long.parseLong(rangeBounds[0]), Long.parseLong(rangeBounds[1])});
+    }
+    return parsed;
+  }
+
+  @Override
+  public Map<String, Object> toMap(Map<String, Object> map) {
+    map.put("numVersions", numVersions);
+    map.put("highest", highest);
+    map.put("high", high);
+    map.put("low", low);
+    map.put("bounds", toList(bounds));
+    map.put("counts", toList(counts));
+    map.put("hashes", toList(hashes));
+    return map;
+  }
+
+  private static List<Long> toList(long[] values) {
+    List<Long> list = new ArrayList<>(values.length);
+    for (long value : values) {
+      list.add(value);
+    }
+    return list;
+  }
+
+  private static long[] toArray(Object o) {
+    List<?> list = (List<?>) o;
+    long[] values = new long[list.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = ((Number) list.get(i)).longValue();
+    }
+    return values;
+  }
+
+  /**
+   * Create a VersionDigest object from a deserialized generic object (Map or NamedList)
+   */
+  public static VersionDigest fromObject(Object o) {
+    if (o instanceof VersionDigest) return (VersionDigest) o;
+    Map map;
+    if (o instanceof Map) {
+      map = (Map) o;
+    } else if (o instanceof NamedList) {
+      map = ((NamedList) o).asShallowMap();
+    } else {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Unknown type " + o);
+    }
+    VersionDigest digest = new VersionDigest();
+    digest.numVersions = ((Number) map.get("numVersions")).longValue();
+    digest.highest = ((Number) map.get("highest")).longValue();
+    digest.high = ((Number) map.get("high")).longValue();
+    digest.low = ((Number) map.get("low")).longValue();
+    digest.bounds = toArray(map.get("bounds"));
+    digest.counts = toArray(map.get("counts"));
+    digest.hashes = toArray(map.get("hashes"));
+    if (digest.counts.length != digest.bounds.length || digest.hashes.length != digest.bounds.length) {
+      throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Corrupt version digest " + o);
+    }
+    return digest;
+  }
+
+  @Override
+  public String toString() {
+    return toMap(new LinkedHashMap<>()).toString();
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.util;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.apache.solr.common.util.ExecutorUtil;
+
+/**
+ * Runs tasks on a delegate executor, at most {@code numThreads} at a time, such that tasks submitted
+ * with the same key run one after another in submission order while tasks with different keys
+ * run in parallel.
+ * <p>
+ * Submitting blocks while the maximum number of tasks are running, or while a task with the
+ * same key is still running. This keeps the number of queued tasks bounded and is what guarantees
+ * the ordering, since a task is only handed to the delegate once its predecessor has completed.
+ */
+public class OrderedExecutor {
+  private final ExecutorService delegate;
+  private final int numThreads;
+  private final Semaphore permits;
+  private final Set<Integer> runningKeys = new HashSet<>();
+
+  public OrderedExecutor(int numThreads, ExecutorService delegate) {
+    if (numThreads <= 0) {
+      throw new IllegalArgumentException("numThreads must be positive: " + numThreads);
+    }
+    this.numThreads = numThreads;
+    this.delegate = delegate;
+    this.permits = new Semaphore(numThreads);
+  }
+
+  /**
+   * Runs the task once all previously submitted tasks with the same key have completed.
+   *
+   * @throws InterruptedException if interrupted while waiting for a free thread or for the previous task with the same key
+   */
+  public void execute(int key, Runnable task) throws InterruptedException {
+    permits.acquire();
+    try {
+      synchronized (runningKeys) {
+        while (runningKeys.contains(key)) {
+          runningKeys.wait();
+        }
+        runningKeys.add(key);
+      }
+    } catch (InterruptedException e) {
+      permits.release();
+      throw e;
+    }
+
+    try {
+      delegate.execute(() -> {
+        try {
+          task.run();
+        } finally {
+          release(key);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      release(key);
+      throw e;
+    }
+  }
+
+  private void release(int key) {
+    synchronized (runningKeys) {
+      runningKeys.remove(key);
+      runningKeys.notifyAll();
+    }
+    permits.release();
+  }
+
+  /** Waits until all submitted tasks have completed. No tasks may be submitted concurrently. */
+  public void awaitTasks() throws InterruptedException {
+    permits.acquire(numThreads);
+    permits.release(numThreads);
+  }
+
+  /** Waits for the submitted tasks to complete and shuts down the delegate executor. */
+  public void shutdownAndAwaitTermination() {
+    ExecutorUtil.shutdownAndAwaitTermination(delegate);
+  }
+}
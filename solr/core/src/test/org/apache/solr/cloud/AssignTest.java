@@ -18,6 +18,7 @@ package org.apache.solr.cloud;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -30,6 +31,7 @@ import org.apache.solr.client.solrj.impl.ZkDistribStateManager;
 import org.apache.solr.common.cloud.DocCollection;
 import org.apache.solr.common.cloud.DocRouter;
 import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.ReplicaPosition;
 import org.apache.solr.common.cloud.Slice;
 import org.apache.solr.common.cloud.SolrZkClient;
 import org.apache.solr.common.util.ExecutorUtil;
@@ -152,4 +154,33 @@ public class AssignTest extends SolrTestCaseJ4 {
     }
   }
   
+  @Test
+  public void testBuildCoreNames() throws Exception {
+    String zkDir = createTempDir("zkData").toFile().getAbsolutePath();
+    ZkTestServer server = new ZkTestServer(zkDir);
+    server.run();
+    try (SolrZkClient zkClient = new SolrZkClient(server.getZkAddress(), 10000)) {
+      zkClient.makePath("/", true);
+      // TODO: fix this to be independent of ZK
+      ZkDistribStateManager stateManager = new ZkDistribStateManager(zkClient);
+      Map<String, Slice> slices = new HashMap<>();
+      slices.put("shard1", new Slice("shard1", new HashMap<>(), null));
+      slices.put("shard2", new Slice("shard2", new HashMap<>(), null));
+
+      DocCollection docCollection = new DocCollection("collection1", slices, null, DocRouter.DEFAULT);
+      List<ReplicaPosition> positions = Arrays.asList(
+          new ReplicaPosition("shard1", 0, Replica.Type.NRT),
+          new ReplicaPosition("shard2", 0, Replica.Type.NRT),
+          new ReplicaPosition("shard2", 1, Replica.Type.PULL));
+      assertEquals(Arrays.asList("collection1_shard1_replica_n1", "collection1_shard2_replica_n2",
+          "collection1_shard2_replica_p3"), Assign.buildCoreNames(stateManager, docCollection, positions));
+      // the ids were reserved with a single update of the counter
+      assertEquals(4, Assign.incAndGetId(stateManager, "collection1", 0));
+      assertEquals(5, Assign.incAndGetIds(stateManager, "collection1", 0, 3));
+      assertEquals(8, Assign.incAndGetId(stateManager, "collection1", 0));
+    } finally {
+      server.shutdown();
+    }
+  }
+
 }
@@ -27,13 +27,16 @@ import java.util.Optional;
 
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.lucene.util.TestUtil;
+import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
 import org.apache.solr.client.solrj.request.CollectionAdminRequest;
 import org.apache.solr.client.solrj.request.CoreAdminRequest;
 import org.apache.solr.client.solrj.request.CoreStatus;
+import org.apache.solr.client.solrj.request.UpdateRequest;
 import org.apache.solr.client.solrj.response.CollectionAdminResponse;
 import org.apache.solr.client.solrj.response.CoreAdminResponse;
+import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.cloud.ClusterProperties;
 import org.apache.solr.common.cloud.DocCollection;
 import org.apache.solr.common.cloud.Replica;
@@ -249,6 +252,36 @@ public class CollectionsAPISolrJTest extends SolrCloudTestCase {
 
   }
 
+  @Test
+  public void testSplitShardByLinking() throws Exception {
+
+    final String collectionName = "solrj_test_splitshard_link";
+    CollectionAdminRequest.createCollection(collectionName, "conf", 1, 1)
+        .process(cluster.getSolrClient());
+    waitForState("Expected the collection to be active", collectionName, clusterShape(1, 1));
+
+    UpdateRequest update = new UpdateRequest();
+    for (int i = 0; i < 20; i++) {
+      update.add(new SolrInputDocument("id", String.valueOf(i)));
+    }
+    update.commit(cluster.getSolrClient(), collectionName);
+
+    expectThrows(Exception.class, () -> CollectionAdminRequest.splitShard(collectionName)
+        .setShardName("shard1")
+        .setSplitMethod("copy")
+        .process(cluster.getSolrClient()));
+
+    CollectionAdminResponse response = CollectionAdminRequest.splitShard(collectionName)
+        .setShardName("shard1")
+        .setSplitMethod("link")
+        .process(cluster.getSolrClient());
+    assertEquals(0, response.getStatus());
+    assertTrue(response.isSuccess());
+
+    waitForState("Expected the sub-shards to be active", collectionName, (n, c) -> c.getActiveSlices().size() == 2);
+    assertEquals(20, cluster.getSolrClient().query(collectionName, new SolrQuery("*:*")).getResults().getNumFound());
+  }
+
   @Test
   public void testCreateCollectionWithPropertyParam() throws Exception {
 
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.cloud;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.CompactStateCodec;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.DocRouter;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.apache.solr.common.util.Utils;
+import org.junit.Test;
+
+public class CompactStateCodecTest extends SolrTestCaseJ4 {
+
+  private static final String PATH = ZkStateReader.getCollectionPath("collection1");
+
+  private static Slice slice(String name, String range, Replica.State state) {
+    Map<String, Replica> replicas = new LinkedHashMap<>();
+    for (int i = 1; i <= 2; i++) {
+      Map<String, Object> props = new LinkedHashMap<>();
+      props.put(ZkStateReader.CORE_NAME_PROP, "collection1_" + name + "_replica_n" + i);
+      props.put(ZkStateReader.NODE_NAME_PROP, "127.0.0.1:898" + i + "_solr");
+      props.put(ZkStateReader.BASE_URL_PROP, "http://127.0.0.1:898" + i + "/solr");
+      props.put(ZkStateReader.STATE_PROP, state.toString());
+      props.put(ZkStateReader.REPLICA_TYPE, Replica.Type.NRT.toString());
+      if (i == 1) {
+        props.put(ZkStateReader.LEADER_PROP, "true");
+      }
+      String replicaName = "core_node" + name.charAt(name.length() - 1) + i;
+      replicas.put(replicaName, new Replica(replicaName, props));
+    }
+    Map<String, Object> props = new LinkedHashMap<>();
+    props.put(Slice.RANGE, DocRouter.DEFAULT.fromString(range));
+    return new Slice(name, replicas, props);
+  }
+
+  private static DocCollection collection(Replica.State shard2State) {
+    Map<String, Slice> slices = new LinkedHashMap<>();
+    slices.put("shard1", slice("shard1", "80000000-ffffffff", Replica.State.ACTIVE));
+    slices.put("shard2", slice("shard2", "0-7fffffff", shard2State));
+    Map<String, Object> props = new LinkedHashMap<>();
+    props.put(DocCollection.DOC_ROUTER, Collections.singletonMap("name", DocRouter.DEFAULT_NAME));
+    props.put(ZkStateReader.REPLICATION_FACTOR, 2);
+    props.put(ZkStateReader.AUTO_ADD_REPLICAS, "false");
+    return new DocCollection("collection1", slices, props, DocRouter.DEFAULT, 0, PATH);
+  }
+
+  private static DocCollection load(byte[] data, CompactStateCodec codec) {
+    return ClusterState.load(1, data, Collections.emptySet(), PATH, codec).getCollection("collection1");
+  }
+
+  @Test
+  public void testSameStateAsJson() throws Exception {
+    DocCollection collection = collection(Replica.State.ACTIVE);
+    byte[] json = Utils.toJSON(Collections.singletonMap(collection.getName(), collection));
+    byte[] compact = CompactStateCodec.encode(collection);
+    assertTrue(CompactStateCodec.isCompact(compact));
+    assertFalse(CompactStateCodec.isCompact(json));
+    assertTrue("compact encoding is larger than json: " + compact.length + " >= " + json.length,
+        compact.length < json.length);
+
+    DocCollection fromJson = load(json, null);
+    DocCollection fromCompact = load(compact, null);
+    assertEquals(new String(Utils.toJSON(fromJson), "UTF-8"), new String(Utils.toJSON(fromCompact), "UTF-8"));
+    assertEquals(fromJson.getReplicationFactor(), fromCompact.getReplicationFactor());
+    assertEquals(fromJson.getRouter(), fromCompact.getRouter());
+    assertEquals(fromJson.getSlice("shard2").getRange(), fromCompact.getSlice("shard2").getRange());
+    assertEquals("core_node21", fromCompact.getLeader("shard2").getName());
+    assertEquals(Replica.State.ACTIVE, fromCompact.getReplica("core_node22").getState());
+  }
+
+  @Test
+  public void testUnchangedSlicesAreReused() throws Exception {
+    CompactStateCodec codec = new CompactStateCodec();
+    DocCollection first = load(CompactStateCodec.encode(collection(Replica.State.ACTIVE)), codec);
+    DocCollection second = load(CompactStateCodec.encode(collection(Replica.State.RECOVERING)), codec);
+
+    assertSame(first.getSlice("shard1"), second.getSlice("shard1"));
+    assertNotSame(first.getSlice("shard2"), second.getSlice("shard2"));
+    assertEquals(Replica.State.ACTIVE, first.getReplica("core_node22").getState());
+    assertEquals(Replica.State.RECOVERING, second.getReplica("core_node22").getState());
+
+    // the strings of changed slices are shared with the previous state
+    assertSame(first.getReplica("core_node22").getNodeName(), second.getReplica("core_node22").getNodeName());
+    assertSame(first.getReplica("core_node21").getNodeName(), second.getReplica("core_node11").getNodeName());
+
+    // nothing is reused once the codec forgot the collection
+    codec.forget(PATH);
+    DocCollection third = load(CompactStateCodec.encode(collection(Replica.State.RECOVERING)), codec);
+    assertNotSame(second.getSlice("shard1"), third.getSlice("shard1"));
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.cloud;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.solr.client.solrj.embedded.JettySolrRunner;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.PerReplicaStates;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.ZkNodeProps;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.apache.solr.common.util.Utils;
+import org.apache.zookeeper.CreateMode;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class PerReplicaStateTest extends SolrCloudTestCase {
+
+  @BeforeClass
+  public static void setupCluster() throws Exception {
+    configureCluster(3)
+        .addConfig("conf", configset("cloud-minimal"))
+        .configure();
+  }
+
+  @Test
+  public void testPersistAndFetch() throws Exception {
+    String path = "/perReplicaStateTest/state.json";
+    zkClient().makePath(path, new byte[0], CreateMode.PERSISTENT, true);
+
+    PerReplicaStates.persist(zkClient(), path, Collections.singletonMap("core_node1", Replica.State.DOWN));
+    PerReplicaStates states = PerReplicaStates.fetch(zkClient(), path, null);
+    assertEquals(Replica.State.DOWN, states.get("core_node1").state);
+    assertNull(states.get("core_node2"));
+
+    Map<String, Replica.State> update = new HashMap<>();
+    update.put("core_node1", Replica.State.ACTIVE);
+    update.put("core_node2", Replica.State.RECOVERING);
+    PerReplicaStates.persist(zkClient(), path, update);
+    states = PerReplicaStates.fetch(zkClient(), path, null);
+    assertEquals(Replica.State.ACTIVE, states.get("core_node1").state);
+    assertEquals(1, states.get("core_node1").version);
+    assertEquals(Replica.State.RECOVERING, states.get("core_node2").state);
+    // the previous state was replaced
+    assertEquals(2, zkClient().getChildren(path, null, true).size());
+
+    // states that are already current are not written again
+    PerReplicaStates.persist(zkClient(), path, update);
+    assertEquals(states.getCVersion(), PerReplicaStates.fetch(zkClient(), path, null).getCVersion());
+
+    // a stale state left behind is ignored, and cleaned up by the next change
+    zkClient().create(path + "/core_node2:0:down", null, CreateMode.PERSISTENT, true);
+    assertEquals(Replica.State.RECOVERING, PerReplicaStates.fetch(zkClient(), path, null).get("core_node2").state);
+    PerReplicaStates.persist(zkClient(), path, Collections.singletonMap("core_node2", Replica.State.ACTIVE));
+    assertEquals(2, zkClient().getChildren(path, null, true).size());
+
+    PerReplicaStates.persist(zkClient(), path, Collections.singletonMap("core_node1", null));
+    states = PerReplicaStates.fetch(zkClient(), path, null);
+    assertNull(states.get("core_node1"));
+    assertEquals(Replica.State.ACTIVE, states.get("core_node2").state);
+  }
+
+  @Test
+  public void testCollection() throws Exception {
+    String collection = "perReplicaStateCollection";
+    CollectionAdminRequest.createCollection(collection, "conf", 2, 2)
+        .setMaxShardsPerNode(2)
+        .setPerReplicaState(true)
+        .process(cluster.getSolrClient());
+    waitForState("Collection not created", collection, (n, c) -> DocCollection.isFullyActive(n, c, 2, 2));
+
+    DocCollection docCollection = getCollectionState(collection);
+    assertTrue(docCollection.isPerReplicaState());
+    String path = ZkStateReader.getCollectionPath(collection);
+    PerReplicaStates states = PerReplicaStates.fetch(zkClient(), path, null);
+    for (Replica replica : docCollection.getReplicas()) {
+      assertEquals(Replica.State.ACTIVE, states.get(replica.getName()).state);
+    }
+
+    // replicas became active without the Overseer writing their state to state.json
+    DocCollection stored = ClusterState.load(0, zkClient().getData(path, null, null, true),
+        Collections.emptySet(), path).getCollection(collection);
+    for (Replica replica : stored.getReplicas()) {
+      assertEquals(Replica.State.DOWN, replica.getState());
+    }
+
+    new UpdateRequest().add("id", "1").add("id", "2").commit(cluster.getSolrClient(), collection);
+    assertEquals(2, cluster.getSolrClient().query(collection, params("q", "*:*")).getResults().getNumFound());
+
+    // state changes of replicas on a stopped node are visible to readers
+    JettySolrRunner jetty = cluster.getJettySolrRunner(random().nextInt(cluster.getJettySolrRunners().size()));
+    String nodeName = jetty.getNodeName();
+    jetty.stop();
+    waitForState("Replicas not down", collection, (n, c) -> {
+      for (Replica replica : c.getReplicas()) {
+        if (replica.getNodeName().equals(nodeName) && replica.getState() != Replica.State.DOWN) {
+          return false;
+        }
+      }
+      return true;
+    });
+    jetty.start();
+    waitForState("Replicas not active again", collection, (n, c) -> DocCollection.isFullyActive(n, c, 2, 2));
+    assertEquals(2, cluster.getSolrClient().query(collection, params("q", "*:*")).getResults().getNumFound());
+
+    // the state of a deleted replica is removed with it
+    Replica toDelete = getCollectionState(collection).getSlice("shard1").getReplicas().iterator().next();
+    CollectionAdminRequest.deleteReplica(collection, "shard1", toDelete.getName()).process(cluster.getSolrClient());
+    waitForState("Replica not deleted", collection, (n, c) -> c.getReplica(toDelete.getName()) == null
+        && c.getPerReplicaStates().get(toDelete.getName()) == null);
+
+    CollectionAdminRequest.deleteCollection(collection).process(cluster.getSolrClient());
+    waitForState("Collection not deleted", collection, (n, c) -> c == null);
+    assertFalse(zkClient().exists(path, true));
+  }
+
+  @Test
+  public void testOverseerMarksReplicaDown() throws Exception {
+    String collection = "perReplicaStateDown";
+    CollectionAdminRequest.createCollection(collection, "conf", 1, 2)
+        .setPerReplicaState(true)
+        .process(cluster.getSolrClient());
+    waitForState("Collection not created", collection, (n, c) -> DocCollection.isFullyActive(n, c, 1, 2));
+
+    // the leader publishes the down state of a replica it cannot reach through the Overseer, as
+    // LeaderInitiatedRecoveryThread does, while the replica itself last wrote an active state
+    DocCollection docCollection = getCollectionState(collection);
+    Replica leader = docCollection.getSlice("shard1").getLeader();
+    Replica replica = null;
+    for (Replica r : docCollection.getReplicas()) {
+      if (!r.getName().equals(leader.getName())) {
+        replica = r;
+      }
+    }
+    String replicaName = replica.getName();
+    ZkNodeProps m = new ZkNodeProps(Overseer.QUEUE_OPERATION, "state",
+        ZkStateReader.STATE_PROP, Replica.State.DOWN.toString(),
+        ZkStateReader.BASE_URL_PROP, replica.getBaseUrl(),
+        ZkStateReader.CORE_NAME_PROP, replica.getCoreName(),
+        ZkStateReader.NODE_NAME_PROP, replica.getNodeName(),
+        ZkStateReader.SHARD_ID_PROP, "shard1",
+        ZkStateReader.COLLECTION_PROP, collection);
+    Overseer.getStateUpdateQueue(zkClient()).offer(Utils.toJSON(m));
+
+    waitForState("Replica not marked down", collection,
+        (n, c) -> c.getReplica(replicaName).getState() == Replica.State.DOWN);
+    String path = ZkStateReader.getCollectionPath(collection);
+    assertEquals(Replica.State.DOWN, PerReplicaStates.fetch(zkClient(), path, null).get(replicaName).state);
+    assertEquals(Replica.State.ACTIVE, getCollectionState(collection).getReplica(leader.getName()).getState());
+
+    CollectionAdminRequest.deleteCollection(collection).process(cluster.getSolrClient());
+    waitForState("Collection not deleted", collection, (n, c) -> c == null);
+  }
+}
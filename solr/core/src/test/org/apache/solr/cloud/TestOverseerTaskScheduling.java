@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.cloud;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.cloud.OverseerTaskProcessor.ScheduledTask;
+import org.apache.solr.cloud.OverseerTaskProcessor.TaskPriority;
+import org.apache.solr.cloud.OverseerTaskQueue.QueueEvent;
+import org.apache.solr.common.cloud.ZkNodeProps;
+import org.apache.solr.common.params.CommonAdminParams;
+import org.apache.solr.common.util.Utils;
+
+public class TestOverseerTaskScheduling extends SolrTestCaseJ4 {
+
+  private static ScheduledTask task(String id, String collection, TaskPriority priority) {
+    ZkNodeProps message = new ZkNodeProps(Utils.makeMap(
+        "collection", collection,
+        CommonAdminParams.TASK_PRIORITY, priority == null ? null : priority.toLower()));
+    return new ScheduledTask(new QueueEvent(id, Utils.toJSON(message), null), message, null, collection);
+  }
+
+  private static String ids(List<ScheduledTask> tasks) {
+    List<String> ids = new ArrayList<>(tasks.size());
+    for (ScheduledTask task : tasks) {
+      ids.add(task.head.getId());
+    }
+    return String.join(",", ids);
+  }
+
+  public void testTurnsAcrossCollections() {
+    List<ScheduledTask> tasks = new ArrayList<>();
+    for (int i = 1; i <= 4; i++) {
+      tasks.add(task("a" + i, "A", null));
+    }
+    tasks.add(task("b1", "B", null));
+    tasks.add(task("c1", "C", null));
+    tasks.add(task("b2", "B", null));
+
+    // a bulk of operations on A does not delay the operations on B and C
+    assertEquals("a1,b1,c1,a2,b2,a3,a4", ids(OverseerTaskProcessor.schedule(tasks)));
+  }
+
+  public void testPriorityClasses() {
+    List<ScheduledTask> tasks = new ArrayList<>();
+    tasks.add(task("a1", "A", TaskPriority.AUTOSCALING));
+    tasks.add(task("b1", "B", TaskPriority.AUTOSCALING));
+    tasks.add(task("c1", "C", TaskPriority.USER));
+    tasks.add(task("b2", "B", TaskPriority.USER));
+    tasks.add(task("a2", "A", null));
+
+    // user operations go first, but never ahead of an earlier operation on the same collection
+    assertEquals("c1,a1,b1,a2,b2", ids(OverseerTaskProcessor.schedule(tasks)));
+  }
+
+  public void testCapKeepsOrderOfKey() {
+    int max = OverseerTaskProcessor.MAX_PARALLEL_TASKS_PER_KEY;
+    Set<String> cappedKeys = new HashSet<>();
+    assertFalse(OverseerTaskProcessor.isCapped("A", max - 1, cappedKeys));
+    assertTrue(OverseerTaskProcessor.isCapped("A", max, cappedKeys));
+    // a task of A that finished meanwhile does not let a later task of A in the batch run before the capped one
+    assertTrue(OverseerTaskProcessor.isCapped("A", max - 1, cappedKeys));
+    assertTrue(OverseerTaskProcessor.isCapped("A", 0, cappedKeys));
+    // other keys are not affected
+    assertFalse(OverseerTaskProcessor.isCapped("B", max - 1, cappedKeys));
+  }
+
+  public void testTasksWithoutKeyAreNotCapped() {
+    Set<String> cappedKeys = new HashSet<>();
+    assertFalse(OverseerTaskProcessor.isCapped(null, Integer.MAX_VALUE, cappedKeys));
+    assertTrue(cappedKeys.isEmpty());
+    assertFalse(OverseerTaskProcessor.isCapped("null", OverseerTaskProcessor.MAX_PARALLEL_TASKS_PER_KEY - 1, cappedKeys));
+
+    // tasks without a key are still scheduled in queue order
+    List<ScheduledTask> tasks = new ArrayList<>();
+    tasks.add(task("n1", null, null));
+    tasks.add(task("a1", "A", null));
+    tasks.add(task("n2", null, null));
+    assertEquals("n1,a1,n2", ids(OverseerTaskProcessor.schedule(tasks)));
+  }
+
+  public void testUnknownPriority() {
+    assertEquals(TaskPriority.USER, TaskPriority.get(null));
+    assertEquals(TaskPriority.USER, TaskPriority.get("whatever"));
+    assertEquals(TaskPriority.AUTOSCALING, TaskPriority.get("autoscaling"));
+  }
+}
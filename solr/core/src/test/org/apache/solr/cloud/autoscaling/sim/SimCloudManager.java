@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.cloud.autoscaling.sim;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrResponse;
+import org.apache.solr.client.solrj.cloud.DistributedQueueFactory;
+import org.apache.solr.client.solrj.cloud.autoscaling.AutoScalingConfig;
+import org.apache.solr.client.solrj.cloud.autoscaling.ReplicaInfo;
+import org.apache.solr.client.solrj.cloud.autoscaling.SolrCloudManager;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.client.solrj.response.CollectionAdminResponse;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.apache.solr.common.params.CollectionParams;
+import org.apache.solr.common.params.CoreAdminParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * A {@link SolrCloudManager} that simulates a cluster in memory, without ZooKeeper or network, so that the policy
+ * engine, triggers and trigger actions can be run against synthetic clusters of any size.
+ * <p>
+ * Collection admin requests that change the layout of the cluster (<code>ADDREPLICA</code>,
+ * <code>MOVEREPLICA</code> and <code>DELETEREPLICA</code>) are applied to the simulated cluster state. Given the same
+ * {@link Random}, a simulated cluster is built identically, so that runs are reproducible.
+ */
+public class SimCloudManager implements SolrCloudManager {
+
+  public static final String FREEDISK = "freedisk";
+  public static final String INDEX_SIZE = "INDEX.sizeInBytes";
+
+  private final SimDistribStateManager stateManager = new SimDistribStateManager();
+  private final SimClusterStateProvider clusterStateProvider = new SimClusterStateProvider();
+  private final SimNodeStateProvider nodeStateProvider = new SimNodeStateProvider(clusterStateProvider);
+  private final Random random;
+  private final Map<String, AtomicLong> opCounts = new TreeMap<>();
+  private int nextPort = 10000;
+
+  public SimCloudManager(Random random) {
+    this.random = random;
+  }
+
+  /**
+   * Creates a simulated cluster with the given number of live nodes.
+   */
+  public static SimCloudManager createCluster(int numNodes, Random random) {
+    SimCloudManager cloudManager = new SimCloudManager(random);
+    for (int i = 0; i < numNodes; i++) {
+      cloudManager.simAddNode();
+    }
+    return cloudManager;
+  }
+
+  /**
+   * Adds a new live node, with a random amount of free disk space (in GB).
+   * @return the name of the node
+   */
+  public synchronized String simAddNode() {
+    int port = nextPort++;
+    String nodeId = "127.0.0.1:" + port + "_solr";
+    Map<String, Object> values = new HashMap<>();
+    values.put("host", "127.0.0.1");
+    values.put("port", port);
+    values.put("node", nodeId);
+    values.put(FREEDISK, 100 + random.nextInt(900));
+    values.put("sysprop.rack", "rack" + (port % 10));
+    nodeStateProvider.simSetNodeValues(nodeId, values);
+    clusterStateProvider.simAddNode(nodeId);
+    return nodeId;
+  }
+
+  /**
+   * Removes a live node. Its replicas are kept in the cluster state but are down.
+   */
+  public void simRemoveNode(String nodeId) {
+    if (!clusterStateProvider.simRemoveNode(nodeId)) {
+      throw new IllegalArgumentException("Node " + nodeId + " is not live");
+    }
+  }
+
+  /**
+   * Creates a collection, placing its replicas round-robin over the live nodes from a random starting node. The
+   * placement does not consult the policy, so that the initial layout does not depend on the policy engine.
+   */
+  public void simCreateCollection(String collection, int numShards, int replicationFactor, Map<String, Object> props) {
+    List<String> shards = new ArrayList<>(numShards);
+    for (int i = 1; i <= numShards; i++) {
+      shards.add("shard" + i);
+    }
+    Map<String, Object> collProps = new HashMap<>(props);
+    collProps.put(ZkStateReader.REPLICATION_FACTOR, String.valueOf(replicationFactor));
+    collProps.put(ZkStateReader.MAX_SHARDS_PER_NODE, String.valueOf(numShards * replicationFactor));
+    clusterStateProvider.simCreateCollection(collection, shards, collProps);
+    List<String> nodes = new ArrayList<>(clusterStateProvider.getLiveNodes());
+    int idx = random.nextInt(nodes.size());
+    for (String shard : shards) {
+      for (int i = 0; i < replicationFactor; i++) {
+        clusterStateProvider.simAddReplica(collection, shard, Replica.Type.NRT, nodes.get(idx++ % nodes.size()),
+            Collections.singletonMap(INDEX_SIZE, (long) random.nextInt(1 << 30)));
+      }
+    }
+  }
+
+  public SimClusterStateProvider getSimClusterStateProvider() {
+    return clusterStateProvider;
+  }
+
+  public SimNodeStateProvider getSimNodeStateProvider() {
+    return nodeStateProvider;
+  }
+
+  public SimDistribStateManager getSimDistribStateManager() {
+    return stateManager;
+  }
+
+  public void simSetAutoScalingConfig(AutoScalingConfig config) throws Exception {
+    stateManager.simSetAutoScalingConfig(config);
+  }
+
+  /**
+   * Returns the number of requests processed, by collection action.
+   */
+  public synchronized Map<String, Long> simGetOpCounts() {
+    Map<String, Long> counts = new TreeMap<>();
+    opCounts.forEach((op, count) -> counts.put(op, count.get()));
+    return counts;
+  }
+
+  @Override
+  public SimClusterStateProvider getClusterStateProvider() {
+    return clusterStateProvider;
+  }
+
+  @Override
+  public SimNodeStateProvider getNodeStateProvider() {
+    return nodeStateProvider;
+  }
+
+  @Override
+  public SimDistribStateManager getDistribStateManager() {
+    return stateManager;
+  }
+
+  @Override
+  public DistributedQueueFactory getDistributedQueueFactory() {
+    throw new UnsupportedOperationException("Distributed queues are not simulated");
+  }
+
+  @Override
+  public SolrResponse request(SolrRequest req) throws IOException {
+    if (!(req instanceof CollectionAdminRequest)) {
+      throw new UnsupportedOperationException("Only collection admin requests are simulated: " + req);
+    }
+    SolrParams params = req.getParams();
+    CollectionParams.CollectionAction action = CollectionParams.CollectionAction.get(params.get(CoreAdminParams.ACTION));
+    if (action == null) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Unknown action: " + params.get(CoreAdminParams.ACTION));
+    }
+    String collection = params.required().get(CoreAdminParams.COLLECTION);
+    NamedList<Object> results = new NamedList<>();
+    ReplicaInfo ri;
+    switch (action) {
+      case ADDREPLICA:
+        ri = clusterStateProvider.simAddReplica(collection, params.required().get(CoreAdminParams.SHARD),
+            Replica.Type.get(params.get(ZkStateReader.REPLICA_TYPE)), params.required().get(CoreAdminParams.NODE),
+            Collections.singletonMap(INDEX_SIZE, 0L));
+        results.add("core", ri.getCore());
+        break;
+      case MOVEREPLICA:
+        ri = clusterStateProvider.simMoveReplica(collection, params.required().get(CoreAdminParams.REPLICA),
+            params.required().get(CollectionParams.TARGET_NODE));
+        results.add("core", ri.getCore());
+        break;
+      case DELETEREPLICA:
+        clusterStateProvider.simRemoveReplica(collection, params.required().get(CoreAdminParams.REPLICA));
+        break;
+      default:
+        throw new UnsupportedOperationException("Action " + action + " is not simulated");
+    }
+    synchronized (this) {
+      opCounts.computeIfAbsent(action.toLower(), a -> new AtomicLong()).incrementAndGet();
+    }
+    results.add("success", "");
+    CollectionAdminResponse rsp = new CollectionAdminResponse();
+    rsp.setResponse(results);
+    return rsp;
+  }
+
+  @Override
+  public byte[] httpRequest(String url, SolrRequest.METHOD method, Map<String, String> headers, String payload, int timeout, boolean followRedirects) throws IOException {
+    throw new UnsupportedOperationException("HTTP requests are not simulated: " + url);
+  }
+}
@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.cloud.autoscaling.sim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.solr.client.solrj.cloud.autoscaling.Policy;
+import org.apache.solr.client.solrj.cloud.autoscaling.ReplicaInfo;
+import org.apache.solr.client.solrj.impl.ClusterStateProvider;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.DocRouter;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
+import org.apache.solr.common.cloud.ZkStateReader;
+
+/**
+ * In-memory implementation of {@link ClusterStateProvider}, holding the live nodes and the replicas of each node. The
+ * {@link ClusterState} is built from them on demand and cached until the next mutation.
+ * <p>
+ * Replicas of nodes that are not live are kept, in the {@link Replica.State#DOWN} state, as in a real cluster.
+ */
+public class SimClusterStateProvider implements ClusterStateProvider {
+
+  private final Set<String> liveNodes = new TreeSet<>();
+  // replicas of each node, including the nodes that are no longer live
+  private final Map<String, List<ReplicaInfo>> nodeReplicaMap = new LinkedHashMap<>();
+  private final Map<String, Map<String, Object>> collProperties = new LinkedHashMap<>();
+  private final Map<String, Set<String>> collShards = new LinkedHashMap<>();
+  private final Map<String, Integer> collReplicaCounters = new HashMap<>();
+  private final Map<String, Object> clusterProperties = new HashMap<>();
+
+  private ClusterState clusterState;
+  private int clusterStateVersion;
+
+  /**
+   * Adds a live node, or makes a known node live again.
+   */
+  public synchronized void simAddNode(String nodeId) {
+    if (!liveNodes.add(nodeId)) {
+      throw new IllegalArgumentException("Node " + nodeId + " is already live");
+    }
+    List<ReplicaInfo> replicas = nodeReplicaMap.computeIfAbsent(nodeId, n -> new ArrayList<>());
+    for (ReplicaInfo ri : replicas) {
+      ri.getVariables().put(ZkStateReader.STATE_PROP, Replica.State.ACTIVE.toString());
+    }
+    stateChanged();
+  }
+
+  /**
+   * Removes a node from the live nodes. Its replicas are marked as down.
+   * @return false if the node was not live
+   */
+  public synchronized boolean simRemoveNode(String nodeId) {
+    if (!liveNodes.remove(nodeId)) {
+      return false;
+    }
+    for (ReplicaInfo ri : nodeReplicaMap.getOrDefault(nodeId, Collections.emptyList())) {
+      ri.getVariables().put(ZkStateReader.STATE_PROP, Replica.State.DOWN.toString());
+    }
+    stateChanged();
+    return true;
+  }
+
+  /**
+   * Registers a new collection with the given shards and no replica.
+   */
+  public synchronized void simCreateCollection(String collection, List<String> shards, Map<String, Object> props) {
+    if (collShards.containsKey(collection)) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Collection " + collection + " already exists");
+    }
+    collShards.put(collection, new LinkedHashSet<>(shards));
+    collProperties.put(collection, new HashMap<>(props));
+    collReplicaCounters.put(collection, 0);
+    stateChanged();
+  }
+
+  /**
+   * Removes a collection and all its replicas.
+   */
+  public synchronized void simDeleteCollection(String collection) {
+    if (collShards.remove(collection) == null) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Collection " + collection + " does not exist");
+    }
+    collProperties.remove(collection);
+    collReplicaCounters.remove(collection);
+    for (List<ReplicaInfo> replicas : nodeReplicaMap.values()) {
+      replicas.removeIf(ri -> ri.getCollection().equals(collection));
+    }
+    stateChanged();
+  }
+
+  /**
+   * Adds a replica of the given shard on a live node.
+   * @param values per-replica values (eg. index size), reported by the node state provider
+   */
+  public synchronized ReplicaInfo simAddReplica(String collection, String shard, Replica.Type type, String nodeId,
+                                                Map<String, Object> values) {
+    Set<String> shards = collShards.get(collection);
+    if (shards == null || !shards.contains(shard)) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "No shard " + shard + " in collection " + collection);
+    }
+    if (!liveNodes.contains(nodeId)) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Node " + nodeId + " is not live");
+    }
+    if (type == null) {
+      type = Replica.Type.NRT;
+    }
+    int num = collReplicaCounters.merge(collection, 1, Integer::sum);
+    String coreName = String.format(Locale.ROOT, "%s_%s_replica_%s%d", collection, shard,
+        type.name().substring(0, 1).toLowerCase(Locale.ROOT), num);
+    Map<String, Object> variables = new HashMap<>(values);
+    variables.put(ZkStateReader.REPLICA_TYPE, type.toString());
+    variables.put(ZkStateReader.STATE_PROP, Replica.State.ACTIVE.toString());
+    ReplicaInfo ri = new ReplicaInfo("core_node" + num, coreName, collection, shard, type, nodeId, variables);
+    nodeReplicaMap.computeIfAbsent(nodeId, n -> new ArrayList<>()).add(ri);
+    stateChanged();
+    return ri;
+  }
+
+  /**
+   * Moves a replica to another live node. As with the MOVEREPLICA command, a new replica is created on the target
+   * node and the original replica is removed.
+   * @return the new replica
+   */
+  public synchronized ReplicaInfo simMoveReplica(String collection, String replicaName, String targetNode) {
+    if (!liveNodes.contains(targetNode)) {
+      throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Node " + targetNode + " is not live");
+    }
+    ReplicaInfo ri = simRemoveReplica(collection, replicaName);
+    Map<String, Object> values = new HashMap<>(ri.getVariables());
+    values.remove(ZkStateReader.STATE_PROP);
+    return simAddReplica(collection, ri.getShard(), ri.getType(), targetNode, values);
+  }
+
+  /**
+   * Removes a replica.
+   * @return the removed replica
+   */
+  public synchronized ReplicaInfo simRemoveReplica(String collection, String replicaName) {
+    for (List<ReplicaInfo> replicas : nodeReplicaMap.values()) {
+      for (int i = 0; i < replicas.size(); i++) {
+        ReplicaInfo ri = replicas.get(i);
+        if (ri.getCollection().equals(collection) && ri.getName().equals(replicaName)) {
+          replicas.remove(i);
+          stateChanged();
+          return ri;
+        }
+      }
+    }
+    throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "No replica " + replicaName + " in collection " + collection);
+  }
+
+  /**
+   * Returns the replicas hosted by a node. The returned objects must not be modified.
+   */
+  public synchronized List<ReplicaInfo> simGetReplicaInfos(String nodeId) {
+    return new ArrayList<>(nodeReplicaMap.getOrDefault(nodeId, Collections.emptyList()));
+  }
+
+  public synchronized void simSetClusterProperty(String key, Object value) {
+    if (value == null) {
+      clusterProperties.remove(key);
+    } else {
+      clusterProperties.put(key, value);
+    }
+  }
+
+  /**
+   * Returns the number of times the cluster state changed.
+   */
+  public synchronized int simGetClusterStateVersion() {
+    return clusterStateVersion;
+  }
+
+  private void stateChanged() {
+    clusterState = null;
+    clusterStateVersion++;
+  }
+
+  private ClusterState buildClusterState() {
+    Map<String, Map<String, List<ReplicaInfo>>> collSliceReplicas = new LinkedHashMap<>();
+    for (Map.Entry<String, Set<String>> e : collShards.entrySet()) {
+      Map<String, List<ReplicaInfo>> sliceReplicas = new LinkedHashMap<>();
+      for (String shard : e.getValue()) {
+        sliceReplicas.put(shard, new ArrayList<>());
+      }
+      collSliceReplicas.put(e.getKey(), sliceReplicas);
+    }
+    for (List<ReplicaInfo> replicas : nodeReplicaMap.values()) {
+      for (ReplicaInfo ri : replicas) {
+        collSliceReplicas.get(ri.getCollection()).get(ri.getShard()).add(ri);
+      }
+    }
+    Map<String, DocCollection> collections = new LinkedHashMap<>();
+    collSliceReplicas.forEach((collection, sliceReplicas) -> {
+      List<DocRouter.Range> ranges = DocRouter.DEFAULT.partitionRange(sliceReplicas.size(), DocRouter.DEFAULT.fullRange());
+      Map<String, Slice> slices = new LinkedHashMap<>();
+      int i = 0;
+      for (Map.Entry<String, List<ReplicaInfo>> e : sliceReplicas.entrySet()) {
+        Map<String, Replica> replicas = new LinkedHashMap<>();
+        boolean hasLeader = false;
+        for (ReplicaInfo ri : e.getValue()) {
+          Map<String, Object> props = new HashMap<>();
+          props.put(ZkStateReader.CORE_NAME_PROP, ri.getCore());
+          props.put(ZkStateReader.NODE_NAME_PROP, ri.getNode());
+          props.put(ZkStateReader.BASE_URL_PROP, ZkStateReader.getBaseUrlForNodeName(ri.getNode(), "http"));
+          props.put(ZkStateReader.REPLICA_TYPE, ri.getType().toString());
+          props.put(ZkStateReader.STATE_PROP, ri.getState().toString());
+          // the first active replica that can be a leader is the leader
+          if (!hasLeader && ri.getState() == Replica.State.ACTIVE && ri.getType() != Replica.Type.PULL) {
+            props.put(ZkStateReader.LEADER_PROP, "true");
+            hasLeader = true;
+          }
+          replicas.put(ri.getName(), new Replica(ri.getName(), props));
+        }
+        Map<String, Object> sliceProps = new HashMap<>();
+        sliceProps.put(Slice.RANGE, ranges.get(i++));
+        slices.put(e.getKey(), new Slice(e.getKey(), replicas, sliceProps));
+      }
+      Map<String, Object> props = new HashMap<>(collProperties.get(collection));
+      props.put(DocCollection.DOC_ROUTER, Collections.singletonMap("name", DocRouter.DEFAULT_NAME));
+      collections.put(collection, new DocCollection(collection, slices, props, DocRouter.DEFAULT));
+    });
+    return new ClusterState(clusterStateVersion, liveNodes, collections);
+  }
+
+  @Override
+  public synchronized ClusterState.CollectionRef getState(String collection) {
+    DocCollection coll = getClusterState().getCollectionOrNull(collection);
+    return coll == null ? null : new ClusterState.CollectionRef(coll);
+  }
+
+  @Override
+  public synchronized Set<String> getLiveNodes() {
+    return new TreeSet<>(liveNodes);
+  }
+
+  @Override
+  public List<String> resolveAlias(String alias) {
+    return Collections.singletonList(alias);
+  }
+
+  @Override
+  public synchronized ClusterState getClusterState() {
+    if (clusterState == null) {
+      clusterState = buildClusterState();
+    }
+    return clusterState;
+  }
+
+  @Override
+  public synchronized Map<String, Object> getClusterProperties() {
+    return new HashMap<>(clusterProperties);
+  }
+
+  @Override
+  public synchronized String getPolicyNameByCollection(String coll) {
+    Map<String, Object> props = collProperties.get(coll);
+    return props == null ? null : (String) props.get(Policy.POLICY);
+  }
+
+  @Override
+  public void connect() {
+
+  }
+
+  @Override
+  public void close() {
+
+  }
+}
@@ -0,0 +1,330 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.cloud.autoscaling.sim;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.solr.client.solrj.cloud.autoscaling.AlreadyExistsException;
+import org.apache.solr.client.solrj.cloud.autoscaling.AutoScalingConfig;
+import org.apache.solr.client.solrj.cloud.autoscaling.BadVersionException;
+import org.apache.solr.client.solrj.cloud.autoscaling.DistribStateManager;
+import org.apache.solr.client.solrj.cloud.autoscaling.VersionedData;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.apache.solr.common.params.AutoScalingParams;
+import org.apache.solr.common.util.Utils;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.OpResult;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.proto.CheckVersionRequest;
+import org.apache.zookeeper.proto.CreateRequest;
+import org.apache.zookeeper.proto.DeleteRequest;
+import org.apache.zookeeper.proto.SetDataRequest;
+
+/**
+ * In-memory implementation of {@link DistribStateManager}, with the same path, version and sequential node
+ * semantics as ZooKeeper. Only data watchers are supported: they are one-shot and are fired synchronously by the
+ * mutating call, after the change is applied.
+ */
+public class SimDistribStateManager implements DistribStateManager {
+
+  private static class Node {
+    byte[] data;
+    int version;
+    CreateMode mode;
+    int seq;
+
+    Node(byte[] data, CreateMode mode) {
+      this.data = data;
+      this.mode = mode;
+    }
+
+    Node copy() {
+      Node node = new Node(data, mode);
+      node.version = version;
+      node.seq = seq;
+      return node;
+    }
+  }
+
+  private final TreeMap<String, Node> nodes = new TreeMap<>();
+  private final Map<String, Set<Watcher>> dataWatchers = new HashMap<>();
+
+  public SimDistribStateManager() {
+    nodes.put("/", new Node(null, CreateMode.PERSISTENT));
+  }
+
+  private static String parent(String path) {
+    int idx = path.lastIndexOf('/');
+    return idx <= 0 ? "/" : path.substring(0, idx);
+  }
+
+  private static String normalize(String path) {
+    if (path == null || !path.startsWith("/")) {
+      throw new IllegalArgumentException("Invalid path: " + path);
+    }
+    return path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+  }
+
+  @Override
+  public synchronized boolean hasData(String path) {
+    return nodes.containsKey(normalize(path));
+  }
+
+  @Override
+  public List<String> listData(String path) throws NoSuchElementException {
+    List<String> children = new ArrayList<>();
+    synchronized (this) {
+      path = normalize(path);
+      if (!nodes.containsKey(path)) {
+        throw new NoSuchElementException(path);
+      }
+      String prefix = path.equals("/") ? "/" : path + "/";
+      for (String p : nodes.tailMap(prefix, false).keySet()) {
+        if (!p.startsWith(prefix)) {
+          break;
+        }
+        if (p.indexOf('/', prefix.length()) == -1) {
+          children.add(p.substring(prefix.length()));
+        }
+      }
+    }
+    return children;
+  }
+
+  @Override
+  public synchronized VersionedData getData(String path, Watcher watcher) throws NoSuchElementException {
+    path = normalize(path);
+    Node node = nodes.get(path);
+    if (node == null) {
+      throw new NoSuchElementException(path);
+    }
+    if (watcher != null) {
+      dataWatchers.computeIfAbsent(path, p -> new HashSet<>()).add(watcher);
+    }
+    return new VersionedData(node.version, node.data, node.mode.isEphemeral() ? "sim" : "0");
+  }
+
+  @Override
+  public void makePath(String path) throws AlreadyExistsException {
+    List<Runnable> events = new ArrayList<>();
+    synchronized (this) {
+      path = normalize(path);
+      if (nodes.containsKey(path)) {
+        throw new AlreadyExistsException(path);
+      }
+      for (int idx = path.indexOf('/', 1); ; idx = path.indexOf('/', idx + 1)) {
+        String p = idx == -1 ? path : path.substring(0, idx);
+        if (!nodes.containsKey(p)) {
+          nodes.put(p, new Node(null, CreateMode.PERSISTENT));
+          collectEvents(events, p, Watcher.Event.EventType.NodeCreated);
+        }
+        if (idx == -1) {
+          break;
+        }
+      }
+    }
+    fire(events);
+  }
+
+  @Override
+  public String createData(String path, byte[] data, CreateMode mode) throws AlreadyExistsException, NoSuchElementException {
+    List<Runnable> events = new ArrayList<>();
+    String created;
+    synchronized (this) {
+      created = doCreate(normalize(path), data, mode, events);
+    }
+    fire(events);
+    return created;
+  }
+
+  private String doCreate(String path, byte[] data, CreateMode mode, List<Runnable> events) throws AlreadyExistsException, NoSuchElementException {
+    Node parent = nodes.get(parent(path));
+    if (parent == null) {
+      throw new NoSuchElementException(parent(path));
+    }
+    if (mode.isSequential()) {
+      path = path + String.format(Locale.ROOT, "%010d", parent.seq++);
+    }
+    if (nodes.containsKey(path)) {
+      throw new AlreadyExistsException(path);
+    }
+    nodes.put(path, new Node(data, mode));
+    collectEvents(events, path, Watcher.Event.EventType.NodeCreated);
+    return path;
+  }
+
+  @Override
+  public void removeData(String path, int version) throws NoSuchElementException, KeeperException {
+    List<Runnable> events = new ArrayList<>();
+    synchronized (this) {
+      doRemove(normalize(path), version, events);
+    }
+    fire(events);
+  }
+
+  private void doRemove(String path, int version, List<Runnable> events) throws NoSuchElementException, KeeperException {
+    Node node = nodes.get(path);
+    if (node == null) {
+      throw new NoSuchElementException(path);
+    }
+    if (version != -1 && version != node.version) {
+      throw new KeeperException.BadVersionException(path);
+    }
+    String next = nodes.higherKey(path);
+    if (next != null && next.startsWith(path + "/")) {
+      throw new KeeperException.NotEmptyException(path);
+    }
+    nodes.remove(path);
+    collectEvents(events, path, Watcher.Event.EventType.NodeDeleted);
+  }
+
+  @Override
+  public void setData(String path, byte[] data, int version) throws BadVersionException, NoSuchElementException {
+    List<Runnable> events = new ArrayList<>();
+    synchronized (this) {
+      doSetData(normalize(path), data, version, events);
+    }
+    fire(events);
+  }
+
+  private Node doSetData(String path, byte[] data, int version, List<Runnable> events) throws BadVersionException, NoSuchElementException {
+    Node node = nodes.get(path);
+    if (node == null) {
+      throw new NoSuchElementException(path);
+    }
+    if (version != -1 && version != node.version) {
+      throw new BadVersionException(version, path);
+    }
+    node.data = data;
+    node.version++;
+    collectEvents(events, path, Watcher.Event.EventType.NodeDataChanged);
+    return node;
+  }
+
+  @Override
+  public List<OpResult> multi(Iterable<Op> ops) throws BadVersionException, NoSuchElementException, AlreadyExistsException, KeeperException {
+    List<OpResult> results = new ArrayList<>();
+    List<Runnable> events = new ArrayList<>();
+    synchronized (this) {
+      // all or nothing, as in ZooKeeper
+      TreeMap<String, Node> saved = new TreeMap<>();
+      nodes.forEach((p, n) -> saved.put(p, n.copy()));
+      boolean success = false;
+      try {
+        for (Op op : ops) {
+          String path = normalize(op.getPath());
+          switch (op.getType()) {
+            case ZooDefs.OpCode.create:
+              CreateRequest create = (CreateRequest) op.toRequestRecord();
+              results.add(new OpResult.CreateResult(doCreate(path, create.getData(), CreateMode.fromFlag(create.getFlags()), events)));
+              break;
+            case ZooDefs.OpCode.delete:
+              doRemove(path, ((DeleteRequest) op.toRequestRecord()).getVersion(), events);
+              results.add(new OpResult.DeleteResult());
+              break;
+            case ZooDefs.OpCode.setData:
+              SetDataRequest setData = (SetDataRequest) op.toRequestRecord();
+              Node node = doSetData(path, setData.getData(), setData.getVersion(), events);
+              Stat stat = new Stat();
+              stat.setVersion(node.version);
+              results.add(new OpResult.SetDataResult(stat));
+              break;
+            case ZooDefs.OpCode.check:
+              Node checked = nodes.get(path);
+              if (checked == null) {
+                throw new NoSuchElementException(path);
+              }
+              int version = ((CheckVersionRequest) op.toRequestRecord()).getVersion();
+              if (version != -1 && version != checked.version) {
+                throw new BadVersionException(version, path);
+              }
+              results.add(new OpResult.CheckResult());
+              break;
+            default:
+              throw new UnsupportedOperationException("Unsupported op type " + op.getType());
+          }
+        }
+        success = true;
+      } finally {
+        if (!success) {
+          nodes.clear();
+          nodes.putAll(saved);
+          // the watchers that were triggered are not restored, which is harmless for one-shot watchers
+          events.clear();
+        }
+      }
+    }
+    fire(events);
+    return results;
+  }
+
+  @Override
+  public AutoScalingConfig getAutoScalingConfig(Watcher watcher) {
+    Map<String, Object> map = new HashMap<>();
+    int version = -1;
+    try {
+      VersionedData data = getData(ZkStateReader.SOLR_AUTOSCALING_CONF_PATH, watcher);
+      if (data.getData() != null && data.getData().length > 0) {
+        map = (Map<String, Object>) Utils.fromJSON(data.getData());
+      }
+      version = data.getVersion();
+    } catch (NoSuchElementException e) {
+      // ignore
+    }
+    map.put(AutoScalingParams.ZK_VERSION, version);
+    return new AutoScalingConfig(map);
+  }
+
+  /**
+   * Replaces the autoscaling configuration, creating it if needed.
+   */
+  public void simSetAutoScalingConfig(AutoScalingConfig config) throws Exception {
+    byte[] data = Utils.toJSON(config);
+    if (hasData(ZkStateReader.SOLR_AUTOSCALING_CONF_PATH)) {
+      setData(ZkStateReader.SOLR_AUTOSCALING_CONF_PATH, data, -1);
+    } else {
+      createData(ZkStateReader.SOLR_AUTOSCALING_CONF_PATH, data, CreateMode.PERSISTENT);
+    }
+  }
+
+  private void collectEvents(List<Runnable> events, String path, Watcher.Event.EventType type) {
+    Set<Watcher> watchers = dataWatchers.remove(path);
+    if (watchers != null) {
+      WatchedEvent event = new WatchedEvent(type, Watcher.Event.KeeperState.SyncConnected, path);
+      for (Watcher watcher : watchers) {
+        events.add(() -> watcher.process(event));
+      }
+    }
+  }
+
+  private static void fire(List<Runnable> events) {
+    events.forEach(Runnable::run);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.cloud.autoscaling.sim;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.solr.client.solrj.cloud.autoscaling.NodeStateProvider;
+import org.apache.solr.client.solrj.cloud.autoscaling.ReplicaInfo;
+
+/**
+ * In-memory implementation of {@link NodeStateProvider}. Node values (eg. <code>freedisk</code>, system properties
+ * or metrics) are set explicitly, except for <code>cores</code>, which is the number of replicas of the node in
+ * the {@link SimClusterStateProvider}.
+ */
+public class SimNodeStateProvider implements NodeStateProvider {
+
+  public static final String CORES = "cores";
+
+  private final SimClusterStateProvider clusterStateProvider;
+  private final Map<String, Map<String, Object>> nodeValues = new ConcurrentHashMap<>();
+
+  public SimNodeStateProvider(SimClusterStateProvider clusterStateProvider) {
+    this.clusterStateProvider = clusterStateProvider;
+  }
+
+  /**
+   * Replaces all the values of a node.
+   */
+  public void simSetNodeValues(String node, Map<String, Object> values) {
+    nodeValues.put(node, new ConcurrentHashMap<>(values));
+  }
+
+  /**
+   * Sets a value of a node, or removes it if the value is null.
+   */
+  public void simSetNodeValue(String node, String key, Object value) {
+    Map<String, Object> values = nodeValues.computeIfAbsent(node, n -> new ConcurrentHashMap<>());
+    if (value == null) {
+      values.remove(key);
+    } else {
+      values.put(key, value);
+    }
+  }
+
+  public void simRemoveNodeValues(String node) {
+    nodeValues.remove(node);
+  }
+
+  public Map<String, Object> simGetNodeValues(String node) {
+    return Collections.unmodifiableMap(nodeValues.getOrDefault(node, Collections.emptyMap()));
+  }
+
+  @Override
+  public Map<String, Object> getNodeValues(String node, Collection<String> tags) {
+    Map<String, Object> values = nodeValues.getOrDefault(node, Collections.emptyMap());
+    Map<String, Object> result = new LinkedHashMap<>();
+    for (String tag : tags) {
+      if (CORES.equals(tag)) {
+        result.put(tag, clusterStateProvider.simGetReplicaInfos(node).size());
+      } else {
+        Object value = values.get(tag);
+        if (value != null) {
+          result.put(tag, value);
+        }
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Map<String, List<ReplicaInfo>>> getReplicaInfo(String node, Collection<String> keys) {
+    // fresh copies, because the policy engine modifies them
+    Map<String, Map<String, List<ReplicaInfo>>> result = new HashMap<>();
+    for (ReplicaInfo ri : clusterStateProvider.simGetReplicaInfos(node)) {
+      result.computeIfAbsent(ri.getCollection(), c -> new HashMap<>())
+          .computeIfAbsent(ri.getShard(), s -> new ArrayList<>())
+          .add(new ReplicaInfo(ri.getName(), ri.getCore(), ri.getCollection(), ri.getShard(), ri.getType(), node,
+              new HashMap<>(ri.getVariables())));
+    }
+    return result;
+  }
+}
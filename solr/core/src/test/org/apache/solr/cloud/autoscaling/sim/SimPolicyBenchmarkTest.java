@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.cloud.autoscaling.sim;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.cloud.autoscaling.AutoScalingConfig;
+import org.apache.solr.client.solrj.cloud.autoscaling.Policy;
+import org.apache.solr.client.solrj.cloud.autoscaling.ReplicaInfo;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.cloud.autoscaling.ActionContext;
+import org.apache.solr.cloud.autoscaling.AutoScaling;
+import org.apache.solr.cloud.autoscaling.ComputePlanAction;
+import org.apache.solr.cloud.autoscaling.NodeAddedTrigger;
+import org.apache.solr.cloud.autoscaling.NodeLostTrigger;
+import org.apache.solr.cloud.autoscaling.SearchRateTrigger;
+import org.apache.solr.cloud.autoscaling.TriggerEvent;
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
+import org.apache.solr.common.params.AutoScalingParams;
+import org.apache.solr.common.util.Utils;
+import org.apache.solr.metrics.SolrCoreMetricManager;
+import org.apache.solr.util.RTimer;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Times the policy engine, cluster state mutations and triggers on a simulated cluster, without ZooKeeper or
+ * network. The size of the cluster is controlled by the <code>tests.sim.nodes</code>,
+ * <code>tests.sim.collections</code>, <code>tests.sim.shards</code> and <code>tests.sim.replicas</code> system
+ * properties, and is larger in nightly runs. Timings are logged; the simulated cluster only depends on the test seed.
+ */
+public class SimPolicyBenchmarkTest extends SolrTestCaseJ4 {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final int NUM_NODES = Integer.getInteger("tests.sim.nodes", TEST_NIGHTLY ? 500 : 50);
+  private static final int NUM_COLLECTIONS = Integer.getInteger("tests.sim.collections", TEST_NIGHTLY ? 50 : 10);
+  private static final int NUM_SHARDS = Integer.getInteger("tests.sim.shards", TEST_NIGHTLY ? 10 : 5);
+  private static final int REPLICATION_FACTOR = Integer.getInteger("tests.sim.replicas", 2);
+
+  private static final String AUTOSCALING_CONFIG = "{" +
+      "  'cluster-preferences': [" +
+      "    {'minimize': 'cores', 'precision': 1}," +
+      "    {'maximize': 'freedisk', 'precision': 100}" +
+      "  ]," +
+      "  'cluster-policy': [" +
+      "    {'replica': '<2', 'shard': '#EACH', 'node': '#ANY'}," +
+      "    {'replica': 0, 'nodeRole': 'overseer'}" +
+      "  ]" +
+      "}";
+
+  private long seed;
+  private SimCloudManager cloudManager;
+
+  @Before
+  public void setupCluster() throws Exception {
+    seed = random().nextLong();
+    RTimer timer = new RTimer();
+    cloudManager = createCluster(seed);
+    log.info("Created cluster of {} nodes, {} collections and {} replicas in {} ms", NUM_NODES, NUM_COLLECTIONS,
+        NUM_COLLECTIONS * NUM_SHARDS * REPLICATION_FACTOR, timer.getTime());
+  }
+
+  private static SimCloudManager createCluster(long seed) throws Exception {
+    SimCloudManager cloudManager = SimCloudManager.createCluster(NUM_NODES, new Random(seed));
+    for (int i = 0; i < NUM_COLLECTIONS; i++) {
+      cloudManager.simCreateCollection("coll" + i, NUM_SHARDS, REPLICATION_FACTOR, Collections.emptyMap());
+    }
+    cloudManager.simSetAutoScalingConfig(new AutoScalingConfig((Map<String, Object>) Utils.fromJSONString(AUTOSCALING_CONFIG)));
+    return cloudManager;
+  }
+
+  private static Map<String, Object> triggerProps(String event) {
+    Map<String, Object> props = new HashMap<>();
+    props.put("event", event);
+    props.put("waitFor", 0L);
+    props.put("enabled", true);
+    return props;
+  }
+
+  private static AutoScaling.TriggerEventProcessor capture(AtomicReference<TriggerEvent> eventRef) {
+    return event -> {
+      eventRef.set(event);
+      return true;
+    };
+  }
+
+  private List<SolrRequest> computePlan(AutoScaling.Trigger trigger, TriggerEvent event) throws Exception {
+    ActionContext context = new ActionContext(cloudManager, trigger, new HashMap<>());
+    RTimer timer = new RTimer();
+    try (ComputePlanAction action = new ComputePlanAction()) {
+      action.init(Collections.singletonMap("name", "compute_plan"));
+      action.process(event, context);
+    }
+    List<SolrRequest> operations = (List<SolrRequest>) context.getProperties().getOrDefault("operations", Collections.emptyList());
+    log.info("Computed plan of {} operations for {} in {} ms", operations.size(), event.getEventType(), timer.getTime());
+    return operations;
+  }
+
+  private void applyPlan(List<SolrRequest> operations) throws Exception {
+    RTimer timer = new RTimer();
+    for (SolrRequest operation : operations) {
+      cloudManager.request(operation);
+    }
+    // include the cost of reading the new cluster state
+    cloudManager.getClusterStateProvider().getClusterState();
+    log.info("Applied {} operations in {} ms", operations.size(), timer.getTime());
+  }
+
+  private void assertPolicyRespected() throws Exception {
+    Policy.Session session = cloudManager.getDistribStateManager().getAutoScalingConfig().getPolicy().createSession(cloudManager);
+    assertEquals(session.getViolations().toString(), 0, session.getViolations().size());
+  }
+
+  private int countReplicas() throws Exception {
+    int count = 0;
+    for (DocCollection coll : cloudManager.getClusterStateProvider().getClusterState().getCollectionsMap().values()) {
+      count += coll.getReplicas().size();
+    }
+    return count;
+  }
+
+  @Test
+  public void testClusterStateMutation() throws Exception {
+    int numReplicas = countReplicas();
+    List<String> nodes = new ArrayList<>(cloudManager.getClusterStateProvider().getLiveNodes());
+    int numMoves = NUM_NODES * 2;
+    RTimer timer = new RTimer();
+    for (int i = 0; i < numMoves; i++) {
+      ClusterState state = cloudManager.getClusterStateProvider().getClusterState();
+      DocCollection coll = state.getCollection("coll" + random().nextInt(NUM_COLLECTIONS));
+      Slice slice = coll.getSlices().toArray(new Slice[0])[random().nextInt(NUM_SHARDS)];
+      Replica replica = new ArrayList<>(slice.getReplicas()).get(random().nextInt(REPLICATION_FACTOR));
+      String target = nodes.get(random().nextInt(nodes.size()));
+      cloudManager.request(new CollectionAdminRequest.MoveReplica(coll.getName(), replica.getName(), target));
+    }
+    log.info("Applied {} replica moves in {} ms", numMoves, timer.getTime());
+    assertEquals(numReplicas, countReplicas());
+    assertEquals(Long.valueOf(numMoves), cloudManager.simGetOpCounts().get("movereplica"));
+  }
+
+  @Test
+  public void testNodeAdded() throws Exception {
+    AtomicReference<TriggerEvent> eventRef = new AtomicReference<>();
+    try (NodeAddedTrigger trigger = new NodeAddedTrigger("node_added_trigger", triggerProps("nodeAdded"), null, cloudManager)) {
+      trigger.setProcessor(capture(eventRef));
+      String newNode = cloudManager.simAddNode();
+
+      RTimer timer = new RTimer();
+      trigger.run();
+      log.info("Ran nodeAdded trigger in {} ms", timer.getTime());
+      TriggerEvent event = eventRef.get();
+      assertNotNull(event);
+      assertEquals(Collections.singletonList(newNode), event.getProperty(TriggerEvent.NODE_NAMES));
+
+      List<SolrRequest> operations = computePlan(trigger, event);
+      assertFalse("no replica was moved to the new node", operations.isEmpty());
+      applyPlan(operations);
+      assertEquals(operations.size(), cloudManager.getSimClusterStateProvider().simGetReplicaInfos(newNode).size());
+      assertPolicyRespected();
+    }
+  }
+
+  @Test
+  public void testNodeLost() throws Exception {
+    AtomicReference<TriggerEvent> eventRef = new AtomicReference<>();
+    try (NodeLostTrigger trigger = new NodeLostTrigger("node_lost_trigger", triggerProps("nodeLost"), null, cloudManager)) {
+      trigger.setProcessor(capture(eventRef));
+      List<String> nodes = new ArrayList<>(cloudManager.getClusterStateProvider().getLiveNodes());
+      String lostNode;
+      do {
+        lostNode = nodes.get(random().nextInt(nodes.size()));
+      } while (cloudManager.getSimClusterStateProvider().simGetReplicaInfos(lostNode).isEmpty());
+      int lostReplicas = cloudManager.getSimClusterStateProvider().simGetReplicaInfos(lostNode).size();
+      cloudManager.simRemoveNode(lostNode);
+
+      RTimer timer = new RTimer();
+      trigger.run();
+      log.info("Ran nodeLost trigger in {} ms", timer.getTime());
+      TriggerEvent event = eventRef.get();
+      assertNotNull(event);
+      assertEquals(Collections.singletonList(lostNode), event.getProperty(TriggerEvent.NODE_NAMES));
+
+      List<SolrRequest> operations = computePlan(trigger, event);
+      assertEquals(lostReplicas, operations.size());
+      applyPlan(operations);
+      assertTrue(cloudManager.getSimClusterStateProvider().simGetReplicaInfos(lostNode).isEmpty());
+      assertPolicyRespected();
+    }
+  }
+
+  @Test
+  public void testSearchRate() throws Exception {
+    // every replica of one collection is queried at twice the rate, the others at a random lower rate
+    String hotCollection = "coll" + random().nextInt(NUM_COLLECTIONS);
+    double rate = NUM_SHARDS * REPLICATION_FACTOR * 2.0;
+    for (String node : cloudManager.getClusterStateProvider().getLiveNodes()) {
+      for (ReplicaInfo ri : cloudManager.getSimClusterStateProvider().simGetReplicaInfos(node)) {
+        String registry = SolrCoreMetricManager.createRegistryName(true, ri.getCollection(), ri.getShard(),
+            Utils.parseMetricsReplicaName(ri.getCollection(), ri.getCore()), null);
+        double replicaRate = ri.getCollection().equals(hotCollection) ? 2.0 * rate : random().nextDouble();
+        cloudManager.getSimNodeStateProvider().simSetNodeValue(node,
+            "metrics:" + registry + ":QUERY./select.requestTimes:1minRate", replicaRate);
+      }
+    }
+    Map<String, Object> props = triggerProps("searchRate");
+    props.put("rate", rate);
+    AtomicReference<TriggerEvent> eventRef = new AtomicReference<>();
+    try (SearchRateTrigger trigger = new SearchRateTrigger("search_rate_trigger", props, null, cloudManager)) {
+      trigger.setProcessor(capture(eventRef));
+      RTimer timer = new RTimer();
+      trigger.run();
+      log.info("Ran searchRate trigger in {} ms", timer.getTime());
+      TriggerEvent event = eventRef.get();
+      assertNotNull(event);
+      Map<String, Double> hotCollections = (Map<String, Double>) event.getProperty(AutoScalingParams.COLLECTION);
+      assertEquals(Collections.singleton(hotCollection), hotCollections.keySet());
+      Set<String> hotReplicaCollections = new HashSet<>();
+      for (ReplicaInfo ri : (List<ReplicaInfo>) event.getProperty(AutoScalingParams.REPLICA)) {
+        hotReplicaCollections.add(ri.getCollection());
+      }
+      assertEquals(Collections.singleton(hotCollection), hotReplicaCollections);
+    }
+  }
+
+  @Test
+  public void testReproducible() throws Exception {
+    SimCloudManager other = createCluster(seed);
+    assertEquals(Utils.toJSONString(cloudManager.getClusterStateProvider().getClusterState()),
+        Utils.toJSONString(other.getClusterStateProvider().getClusterState()));
+    assertEquals(cloudManager.simAddNode(), other.simAddNode());
+    assertEquals(cloudManager.getNodeStateProvider().simGetNodeValues("127.0.0.1:10000_solr"),
+        other.getNodeStateProvider().simGetNodeValues("127.0.0.1:10000_solr"));
+  }
+}
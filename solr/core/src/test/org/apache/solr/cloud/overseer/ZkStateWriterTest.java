@@ -17,8 +17,10 @@
 package org.apache.solr.cloud.overseer;
 
 import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -30,7 +32,9 @@ import org.apache.solr.cloud.OverseerTest;
 import org.apache.solr.cloud.Stats;
 import org.apache.solr.cloud.ZkController;
 import org.apache.solr.cloud.ZkTestServer;
+import org.apache.solr.common.cloud.ClusterProperties;
 import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.CompactStateCodec;
 import org.apache.solr.common.cloud.DocCollection;
 import org.apache.solr.common.cloud.DocRouter;
 import org.apache.solr.common.cloud.Slice;
@@ -38,6 +42,7 @@ import org.apache.solr.common.cloud.SolrZkClient;
 import org.apache.solr.common.cloud.ZkStateReader;
 import org.apache.solr.common.util.Utils;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.slf4j.Logger;
@@ -358,4 +363,125 @@ public class ZkStateWriterTest extends SolrTestCaseJ4 {
       server.shutdown();
     }
   }
+
+  public void testDeletionsCommittedWithState() throws Exception {
+    String zkDir = createTempDir("testDeletionsCommittedWithState").toFile().getAbsolutePath();
+
+    ZkTestServer server = new ZkTestServer(zkDir);
+
+    SolrZkClient zkClient = null;
+
+    try {
+      server.run();
+      AbstractZkTestCase.tryCleanSolrZkNode(server.getZkHost());
+      AbstractZkTestCase.makeSolrZkNode(server.getZkHost());
+
+      zkClient = new SolrZkClient(server.getZkAddress(), OverseerTest.DEFAULT_CONNECTION_TIMEOUT);
+      ZkController.createClusterZkNodes(zkClient);
+
+      try (ZkStateReader reader = new ZkStateReader(zkClient)) {
+        reader.createClusterStateWatchersAndUpdate();
+
+        zkClient.makePath(ZkStateReader.COLLECTIONS_ZKNODE + "/c1", true);
+        zkClient.makePath(ZkStateReader.COLLECTIONS_ZKNODE + "/c2", true);
+        for (int i = 0; i < 4; i++) {
+          zkClient.makePath("/queue/qn-" + i, true);
+        }
+
+        ZkStateWriter writer = new ZkStateWriter(reader, new Stats());
+        ClusterState state = reader.getClusterState();
+        int sharedClusterStateVersion = state.getZkClusterStateVersion();
+
+        // a stateFormat=2 and a stateFormat=1 collection, written along with the removal of two queue entries
+        ZkWriteCommand c1 = new ZkWriteCommand("c1",
+            new DocCollection("c1", new HashMap<>(), new HashMap<>(), DocRouter.DEFAULT, 0, ZkStateReader.getCollectionPath("c1")));
+        ZkWriteCommand c2 = new ZkWriteCommand("c2",
+            new DocCollection("c2", new HashMap<>(), new HashMap<>(), DocRouter.DEFAULT, 0, ZkStateReader.CLUSTER_STATE));
+        AtomicBoolean didWrite = new AtomicBoolean(false);
+        state = writer.enqueueUpdate(state, Arrays.asList(c1, c2), new ZkStateWriter.ZkWriteCallback() {
+          @Override
+          public void onWrite() {
+            didWrite.set(true);
+          }
+
+          @Override
+          public List<Op> getDeleteOps() {
+            return Arrays.asList(Op.delete("/queue/qn-0", -1), Op.delete("/queue/qn-1", -1));
+          }
+        });
+        assertTrue(didWrite.get());
+        assertFalse(zkClient.exists("/queue/qn-0", true));
+        assertFalse(zkClient.exists("/queue/qn-1", true));
+        assertTrue(zkClient.exists(ZkStateReader.getCollectionPath("c1"), true));
+        assertEquals(0, state.getCollection("c1").getZNodeVersion());
+        assertEquals(sharedClusterStateVersion + 1, (int) state.getZkClusterStateVersion());
+
+        // deletions of nodes that no longer exist do not prevent the state from being written
+        state = writer.enqueueUpdate(state, Collections.singletonList(c1), null);
+        assertTrue(writer.hasPendingUpdates());
+        state = writer.writePendingUpdates(Arrays.asList(Op.delete("/queue/qn-0", -1), Op.delete("/queue/qn-2", -1)));
+        assertFalse(writer.hasPendingUpdates());
+        assertFalse(zkClient.exists("/queue/qn-2", true));
+        assertEquals(1, state.getCollection("c1").getZNodeVersion());
+        assertEquals(1, zkClient.exists(ZkStateReader.getCollectionPath("c1"), null, true).getVersion());
+
+        // nothing is deleted if the state can not be written
+        byte[] data = zkClient.getData(ZkStateReader.getCollectionPath("c1"), null, null, true);
+        zkClient.setData(ZkStateReader.getCollectionPath("c1"), data, true);
+        writer.enqueueUpdate(state, Collections.singletonList(c1), null);
+        try {
+          writer.writePendingUpdates(Collections.singletonList(Op.delete("/queue/qn-3", -1)));
+          fail("writePendingUpdates should have failed with a stale version");
+        } catch (KeeperException.BadVersionException bve) {
+          // expected
+        }
+        assertTrue(zkClient.exists("/queue/qn-3", true));
+      }
+    } finally {
+      IOUtils.close(zkClient);
+      server.shutdown();
+    }
+  }
+
+  public void testCompactStateEncoding() throws Exception {
+    String zkDir = createTempDir("testCompactStateEncoding").toFile().getAbsolutePath();
+
+    ZkTestServer server = new ZkTestServer(zkDir);
+
+    SolrZkClient zkClient = null;
+
+    try {
+      server.run();
+      AbstractZkTestCase.tryCleanSolrZkNode(server.getZkHost());
+      AbstractZkTestCase.makeSolrZkNode(server.getZkHost());
+
+      zkClient = new SolrZkClient(server.getZkAddress(), OverseerTest.DEFAULT_CONNECTION_TIMEOUT);
+      ZkController.createClusterZkNodes(zkClient);
+      new ClusterProperties(zkClient).setClusterProperty(ZkStateReader.STATE_ENCODING, CompactStateCodec.ENCODING);
+
+      try (ZkStateReader reader = new ZkStateReader(zkClient)) {
+        reader.createClusterStateWatchersAndUpdate();
+        assertEquals(CompactStateCodec.ENCODING, reader.getClusterProperty(ZkStateReader.STATE_ENCODING, null));
+
+        zkClient.makePath(ZkStateReader.COLLECTIONS_ZKNODE + "/c1", true);
+        ZkStateWriter writer = new ZkStateWriter(reader, new Stats());
+        Map<String, Object> props = new HashMap<>();
+        props.put(ZkStateReader.REPLICATION_FACTOR, "1");
+        ZkWriteCommand c1 = new ZkWriteCommand("c1",
+            new DocCollection("c1", new HashMap<>(), props, DocRouter.DEFAULT, 0, ZkStateReader.getCollectionPath("c1")));
+        writer.enqueueUpdate(reader.getClusterState(), Collections.singletonList(c1), null);
+        writer.writePendingUpdates();
+
+        byte[] data = zkClient.getData(ZkStateReader.getCollectionPath("c1"), null, null, true);
+        assertTrue(CompactStateCodec.isCompact(data));
+        reader.forceUpdateCollection("c1");
+        DocCollection collection = reader.getClusterState().getCollection("c1");
+        assertEquals(0, collection.getZNodeVersion());
+        assertEquals("1", collection.getStr(ZkStateReader.REPLICATION_FACTOR));
+      }
+    } finally {
+      IOUtils.close(zkClient);
+      server.shutdown();
+    }
+  }
 }
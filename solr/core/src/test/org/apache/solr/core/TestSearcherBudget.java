@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.CommitUpdateCommand;
+import org.apache.solr.util.ReadOnlyCoresLocator;
+import org.apache.solr.util.RefCounted;
+import org.apache.solr.util.TimeOut;
+import org.junit.Test;
+
+public class TestSearcherBudget extends SolrTestCaseJ4 {
+
+  private static final int NUM_CORES = 5;
+
+  private CoreContainer init(boolean lazy, int maxOpenSearchers) throws Exception {
+    return init(lazy, maxOpenSearchers, NodeConfig.NodeConfigBuilder.DEFAULT_MAX_SEARCHERS_OPEN_FILES);
+  }
+
+  private CoreContainer init(boolean lazy, int maxOpenSearchers, int maxOpenFiles) throws Exception {
+    File solrHome = createTempDir().toFile();
+    copyXmlToHome(solrHome.getAbsoluteFile(), "solr.xml");
+    for (int i = 0; i < NUM_CORES; i++) {
+      copyMinConf(new File(solrHome, "core" + i));
+    }
+    NodeConfig cfg = new NodeConfig.NodeConfigBuilder("testNode", new SolrResourceLoader(solrHome.toPath()))
+        .setLazySearchers(lazy)
+        .setMaxOpenSearchers(maxOpenSearchers)
+        .setMaxSearchersOpenFiles(maxOpenFiles)
+        .build();
+    return createCoreContainer(cfg, new ReadOnlyCoresLocator() {
+      @Override
+      public List<CoreDescriptor> discover(CoreContainer cc) {
+        List<CoreDescriptor> cds = new ArrayList<>();
+        for (int i = 0; i < NUM_CORES; i++) {
+          cds.add(new CoreDescriptor("core" + i, cc.getCoreRootDirectory().resolve("core" + i),
+              cc.getContainerProperties(), false));
+        }
+        return cds;
+      }
+    });
+  }
+
+  private static void query(SolrCore core) {
+    SolrQueryRequest req = new LocalSolrQueryRequest(core, new ModifiableSolrParams().add("q", "*:*"));
+    try {
+      core.execute(core.getRequestHandler("/select"), req, new SolrQueryResponse());
+    } finally {
+      req.close();
+    }
+  }
+
+  @Test
+  public void testLazySearchersWithinBudget() throws Exception {
+    CoreContainer cc = init(true, 2);
+    try {
+      SearcherBudget budget = cc.getSearcherBudget();
+      assertNotNull(budget);
+      // the searchers of the first cores are opened in the background, up to the budget
+      TimeOut timeOut = new TimeOut(30, TimeUnit.SECONDS);
+      while (budget.getOpenSearchers() < 2 && !timeOut.hasTimedOut()) {
+        Thread.sleep(50);
+      }
+      assertEquals(2, budget.getOpenSearchers());
+      try (SolrCore core = cc.getCore("core4")) {
+        assertFalse(core.hasOpenSearcher());
+        // opened on the first request
+        query(core);
+        assertTrue(core.hasOpenSearcher());
+      }
+      assertEquals(3, budget.getOpenSearchers());
+
+      // the searchers of cores in use are never closed
+      assertEquals(0, budget.closeIdleSearchers());
+
+      budget.minIdleNanos = 0;
+      assertEquals(1, budget.closeIdleSearchers());
+      assertEquals(2, budget.getOpenSearchers());
+      try (SolrCore core = cc.getCore("core4")) {
+        // the most recently used core keeps its searcher
+        assertTrue(core.hasOpenSearcher());
+      }
+    } finally {
+      cc.shutdown();
+    }
+  }
+
+  @Test
+  public void testClosedSearcherReopens() throws Exception {
+    CoreContainer cc = init(false, 1);
+    try {
+      SearcherBudget budget = cc.getSearcherBudget();
+      assertEquals(NUM_CORES, budget.getOpenSearchers());
+      budget.minIdleNanos = 0;
+      for (int i = NUM_CORES - 1; i >= 0; i--) {
+        try (SolrCore core = cc.getCore("core" + i)) {
+          query(core);
+        }
+      }
+      assertEquals(NUM_CORES - 1, budget.closeIdleSearchers());
+      try (SolrCore core = cc.getCore("core0")) {
+        assertTrue("the most recently used core keeps its searcher", core.hasOpenSearcher());
+      }
+      try (SolrCore core = cc.getCore("core1")) {
+        assertFalse(core.hasOpenSearcher());
+        query(core);
+        assertTrue(core.hasOpenSearcher());
+      }
+    } finally {
+      cc.shutdown();
+    }
+  }
+
+  private static void index(SolrCore core, int numSegments) throws Exception {
+    SolrQueryRequest req = new LocalSolrQueryRequest(core, new ModifiableSolrParams());
+    try {
+      for (int i = 0; i < numSegments; i++) {
+        AddUpdateCommand cmd = new AddUpdateCommand(req);
+        cmd.solrDoc = new SolrInputDocument();
+        cmd.solrDoc.addField("id", Integer.toString(i));
+        core.getUpdateHandler().addDoc(cmd);
+        core.getUpdateHandler().commit(new CommitUpdateCommand(req, false));
+      }
+    } finally {
+      req.close();
+    }
+  }
+
+  private static List<SegmentReader> segmentReaders(SolrCore core) {
+    List<SegmentReader> readers = new ArrayList<>();
+    RefCounted<SolrIndexSearcher> searcher = core.getRegisteredSearcher();
+    try {
+      for (LeafReaderContext context : searcher.get().getRawReader().leaves()) {
+        LeafReader reader = FilterLeafReader.unwrap(context.reader());
+        if (reader instanceof SegmentReader) {
+          readers.add((SegmentReader) reader);
+        }
+      }
+    } finally {
+      searcher.decref();
+    }
+    return readers;
+  }
+
+  @Test
+  public void testClosingSearcherReleasesFiles() throws Exception {
+    CoreContainer cc = init(false, NodeConfig.NodeConfigBuilder.DEFAULT_MAX_OPEN_SEARCHERS, 1);
+    try {
+      SearcherBudget budget = cc.getSearcherBudget();
+      try (SolrCore core = cc.getCore("core0")) {
+        index(core, 3);
+        SearcherBudget.Usage usage = SearcherBudget.getUsage(core);
+        assertTrue(usage.openFiles > 0);
+        assertTrue(usage.ramBytes > 0);
+        assertEquals(usage.openFiles, budget.getUsage().openFiles);
+        List<SegmentReader> readers = segmentReaders(core);
+        assertEquals(3, readers.size());
+        for (SegmentReader reader : readers) {
+          assertTrue(reader.getRefCount() > 0);
+        }
+
+        // core0 holds files in excess of the budget, but is still in use
+        assertEquals(0, budget.closeIdleSearchers());
+        budget.minIdleNanos = 0;
+        // closing the searcher and the index writer closes the segment readers, which releases their files
+        assertEquals(1, budget.closeIdleSearchers());
+        assertFalse(core.hasOpenSearcher());
+        for (SegmentReader reader : readers) {
+          assertEquals(0, reader.getRefCount());
+        }
+        assertEquals(0, budget.getUsage().openFiles);
+        assertEquals(0, budget.getUsage().ramBytes);
+
+        // the searcher and index writer are reopened on the next use
+        query(core);
+        assertTrue(core.hasOpenSearcher());
+        assertEquals(usage.openFiles, SearcherBudget.getUsage(core).openFiles);
+        index(core, 1);
+      }
+    } finally {
+      cc.shutdown();
+    }
+  }
+
+  @Test
+  public void testNoBudgetByDefault() throws Exception {
+    CoreContainer cc = init(false, NodeConfig.NodeConfigBuilder.DEFAULT_MAX_OPEN_SEARCHERS);
+    try {
+      assertNull(cc.getSearcherBudget());
+      try (SolrCore core = cc.getCore("core0")) {
+        assertTrue(core.hasOpenSearcher());
+      }
+    } finally {
+      cc.shutdown();
+    }
+  }
+}
@@ -95,6 +95,10 @@ public class TestSolrXml extends SolrTestCaseJ4 {
     assertEquals("shardLib", "testSharedLib", cfg.getSharedLibDirectory());
     assertEquals("schema cache", true, cfg.hasSchemaCache());
     assertEquals("trans cache size", 66, cfg.getTransientCacheSize());
+    assertEquals("lazy searchers", true, cfg.isLazySearchers());
+    assertEquals("max open searchers", 88, cfg.getMaxOpenSearchers());
+    assertEquals("max searchers ram", 1024, cfg.getMaxSearchersRamMB());
+    assertEquals("max searchers open files", 10000, cfg.getMaxSearchersOpenFiles());
     assertEquals("zk client timeout", 77, ccfg.getZkClientTimeout());
     assertEquals("zk host", "testZkHost", ccfg.getZkHost());
     assertEquals("zk ACL provider", "DefaultZkACLProvider", ccfg.getZkACLProviderClass());
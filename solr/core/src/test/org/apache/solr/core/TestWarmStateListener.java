@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.core;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.search.Query;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.search.QParser;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.facet.UnInvertedField;
+import org.apache.solr.util.RefCounted;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestWarmStateListener extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig.xml", "schema.xml");
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testSaveAndReplay() throws Exception {
+    for (int i = 0; i < 20; i++) {
+      assertU(adoc("id", Integer.toString(i), "nullfirst", "c" + (i % 3), "name_t", "n" + i));
+    }
+    assertU(commit());
+    assertQ(req("q", "name_t:n1", "fq", "nullfirst:c1", "sort", "nullfirst asc"), "//*[@numFound='1']");
+    assertQ(req("q", "*:*", "fq", "nullfirst:c2"), "//*[@numFound='6']");
+    // not parseable back into the same query
+    assertQ(req("q", "*:*", "fq", "{!frange l=0}sum(1,1)"), "//result");
+
+    SolrCore core = h.getCore();
+    WarmStateListener listener = new WarmStateListener(core);
+    listener.init(new NamedList());
+
+    RefCounted<SolrIndexSearcher> searcher = core.getSearcher();
+    try {
+      UnInvertedField.getUnInvertedField("nullfirst", searcher.get());
+      Map<String, Object> state = listener.capture(searcher.get());
+      List<String> filters = (List<String>) state.get(WarmStateListener.FILTERS);
+      assertTrue(filters.toString(), filters.contains("nullfirst:c1"));
+      assertTrue(filters.toString(), filters.contains("nullfirst:c2"));
+      assertFalse(filters.toString(), filters.toString().contains("frange"));
+
+      boolean found = false;
+      for (Map<String, Object> query : (List<Map<String, Object>>) state.get(WarmStateListener.QUERIES)) {
+        if ("name_t:n1".equals(query.get("q"))) {
+          assertEquals(Collections.singletonList("nullfirst:c1"), query.get("fq"));
+          assertEquals("nullfirst asc", query.get("sort"));
+          found = true;
+        }
+      }
+      assertTrue(state.toString(), found);
+      assertEquals(Collections.singletonList("nullfirst"), state.get(WarmStateListener.FACET_FIELDS));
+      assertTrue(state.toString(), ((List<String>) state.get(WarmStateListener.UNINVERTED_FIELDS)).contains("nullfirst"));
+
+      listener.saveWarmState();
+    } finally {
+      searcher.decref();
+    }
+
+    SolrIndexSearcher newSearcher = new SolrIndexSearcher(core, core.getNewIndexDir(), core.getLatestSchema(),
+        core.getSolrConfig().indexConfig, "testWarmState", true, core.getDirectoryFactory());
+    try {
+      assertEquals(0, newSearcher.getFilterCache().size());
+      // the first searcher replays the saved state
+      listener.newSearcher(newSearcher, null);
+      SolrQueryRequest req = req();
+      try {
+        Query filter = QParser.getParser("nullfirst:c1", req).getQuery();
+        assertNotNull(newSearcher.getFilterCache().get(filter));
+      } finally {
+        req.close();
+      }
+      assertEquals(2, newSearcher.getQueryResultCache().size());
+      assertNotNull(newSearcher.getFieldValueCache().get("nullfirst"));
+    } finally {
+      newSearcher.close();
+    }
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.DocRouter;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.junit.Test;
+
+public class AdaptiveReplicaListTransformerTest extends LuceneTestCase {
+
+  private final AdaptiveReplicaListTransformer transformer = new AdaptiveReplicaListTransformer(random());
+
+  private static final String FAST = "http://host1:8983/solr/collection1_shard1_replica_n1/";
+  private static final String SLOW = "http://host2:8983/solr/collection1_shard1_replica_n2/";
+  private static final String NEW = "http://host3:8983/solr/collection1_shard1_replica_n3/";
+
+  private void record(String url, long millis, int times) {
+    for (int i = 0; i < times; i++) {
+      transformer.requestStarted(url);
+      transformer.requestFinished(url, TimeUnit.MILLISECONDS.toNanos(millis), -1, true);
+    }
+  }
+
+  @Test
+  public void testNoStatsKeepsChoices() {
+    List<String> urls = new ArrayList<>(Arrays.asList(FAST, SLOW, NEW));
+    transformer.transform(urls);
+    assertEquals(new HashSet<>(Arrays.asList(FAST, SLOW, NEW)), new HashSet<>(urls));
+  }
+
+  @Test
+  public void testPrefersFastReplica() {
+    record(FAST, 5, 10);
+    record(SLOW, 500, 10);
+    for (int i = 0; i < 10; i++) {
+      List<String> urls = new ArrayList<>(Arrays.asList(SLOW, FAST));
+      transformer.transform(urls);
+      assertEquals(Arrays.asList(FAST, SLOW), urls);
+    }
+
+    // replicas we know nothing about are tried first
+    List<String> urls = new ArrayList<>(Arrays.asList(SLOW, FAST, NEW));
+    transformer.transform(urls);
+    assertEquals(Arrays.asList(NEW, FAST, SLOW), urls);
+  }
+
+  @Test
+  public void testOutstandingRequestsArePenalized() {
+    record(FAST, 10, 10);
+    record(SLOW, 20, 10);
+    // the faster replica has several requests in flight, so the other one is expected to answer first
+    for (int i = 0; i < 3; i++) {
+      transformer.requestStarted(FAST);
+    }
+    List<String> urls = new ArrayList<>(Arrays.asList(FAST, SLOW));
+    transformer.transform(urls);
+    assertEquals(Arrays.asList(SLOW, FAST), urls);
+
+    for (int i = 0; i < 3; i++) {
+      transformer.requestFinished(FAST, TimeUnit.MILLISECONDS.toNanos(10), -1, true);
+    }
+    transformer.transform(urls);
+    assertEquals(Arrays.asList(FAST, SLOW), urls);
+  }
+
+  @Test
+  public void testOutstandingRequestsOfExpiredStatsArePenalized() {
+    record(FAST, 10, 10);
+    record(SLOW, 20, 10);
+    // FAST stopped answering, in a long GC pause for instance, while requests were sent to it
+    for (int i = 0; i < 5; i++) {
+      transformer.requestStarted(FAST);
+    }
+    final long later = System.nanoTime() + 2 * AdaptiveReplicaListTransformer.STATS_EXPIRY_NANOS;
+    for (int i = 0; i < 10; i++) {
+      List<String> urls = new ArrayList<>(Arrays.asList(FAST, SLOW));
+      transformer.sortByScore(urls, later);
+      assertEquals(Arrays.asList(SLOW, FAST), urls);
+    }
+  }
+
+  @Test
+  public void testScoringKeepsStats() {
+    record(FAST, 5, 10);
+    record(SLOW, 500, 10);
+    // expired statistics without outstanding requests all score the same
+    List<String> urls = new ArrayList<>(Arrays.asList(SLOW, FAST));
+    transformer.sortByScore(urls, System.nanoTime() + 2 * AdaptiveReplicaListTransformer.STATS_EXPIRY_NANOS);
+    // but scoring them did not discard them
+    for (int i = 0; i < 10; i++) {
+      urls = new ArrayList<>(Arrays.asList(SLOW, FAST));
+      transformer.transform(urls);
+      assertEquals(Arrays.asList(FAST, SLOW), urls);
+    }
+  }
+
+  @Test
+  public void testFailuresArePenalized() {
+    record(FAST, 10, 10);
+    record(SLOW, 15, 10);
+    for (int i = 0; i < 3; i++) {
+      transformer.requestStarted(FAST);
+      transformer.requestFinished(FAST, TimeUnit.MILLISECONDS.toNanos(1), -1, false);
+    }
+    List<String> urls = new ArrayList<>(Arrays.asList(FAST, SLOW));
+    transformer.transform(urls);
+    assertEquals(Arrays.asList(SLOW, FAST), urls);
+  }
+
+  @Test
+  public void testReplicasAndUrlsShareStats() {
+    record(FAST, 5, 10);
+    record(SLOW.replace("http://", "https://"), 500, 10);
+    List<Replica> replicas = new ArrayList<>(Arrays.asList(replica(SLOW), replica(FAST)));
+    transformer.transform(replicas);
+    assertEquals(AdaptiveReplicaListTransformer.key(FAST), AdaptiveReplicaListTransformer.key(replicas.get(0)));
+    assertEquals(AdaptiveReplicaListTransformer.key(SLOW), AdaptiveReplicaListTransformer.key(replicas.get(1)));
+  }
+
+  @Test
+  public void testLatencyPercentile() {
+    assertEquals(-1, transformer.getLatencyPercentile(FAST, 0.95));
+    record(FAST, 10, AdaptiveReplicaListTransformer.MIN_SAMPLES - 1);
+    assertEquals(-1, transformer.getLatencyPercentile(FAST, 0.95));
+    record(FAST, 10, 1);
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(10), transformer.getLatencyPercentile(FAST, 0.95));
+  }
+
+  @Test
+  public void testEvictStats() {
+    record(FAST, 5, AdaptiveReplicaListTransformer.MIN_SAMPLES);
+    record(SLOW, 500, 10);
+    record(NEW, 50, 10);
+    transformer.requestStarted(NEW);
+    assertEquals(3, transformer.getNumTrackedReplicas());
+
+    // NEW is no longer part of the cluster state
+    Map<String,Replica> replicas = new HashMap<>();
+    for (String url : Arrays.asList(FAST, SLOW)) {
+      Replica replica = replica(url);
+      replicas.put(replica.getName(), replica);
+    }
+    Map<String,Slice> slices = Collections.singletonMap("shard1", new Slice("shard1", replicas, null));
+    DocCollection collection = new DocCollection("collection1", slices, new HashMap<>(), DocRouter.DEFAULT);
+    ClusterState clusterState = new ClusterState(Collections.emptySet(),
+        Collections.singletonMap("collection1", new ClusterState.CollectionRef(collection)), 1);
+
+    // recently used replicas are kept
+    transformer.evictStats(clusterState, System.nanoTime());
+    assertEquals(3, transformer.getNumTrackedReplicas());
+
+    // replicas with outstanding requests are kept
+    final long later = System.nanoTime() + 2 * AdaptiveReplicaListTransformer.STATS_EXPIRY_NANOS;
+    transformer.evictStats(clusterState, later);
+    assertEquals(3, transformer.getNumTrackedReplicas());
+
+    transformer.requestFinished(NEW, TimeUnit.MILLISECONDS.toNanos(50), -1, true);
+    transformer.evictStats(clusterState, System.nanoTime() + 2 * AdaptiveReplicaListTransformer.STATS_EXPIRY_NANOS);
+    assertEquals(2, transformer.getNumTrackedReplicas());
+    assertEquals(-1, transformer.getLatencyPercentile(NEW, 0.5));
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(5), transformer.getLatencyPercentile(FAST, 0.5));
+
+    // without cluster state, only replicas that got no request for a long time are removed
+    transformer.evictStats(null, later);
+    assertEquals(2, transformer.getNumTrackedReplicas());
+    transformer.evictStats(null, System.nanoTime() + 2 * AdaptiveReplicaListTransformer.STATS_EVICTION_NANOS);
+    assertEquals(0, transformer.getNumTrackedReplicas());
+  }
+
+  @Test
+  public void testCancelledRequestsAreNotFailures() {
+    record(FAST, 10, AdaptiveReplicaListTransformer.MIN_SAMPLES);
+    record(SLOW, 15, 10);
+    transformer.requestStarted(FAST);
+    transformer.requestCancelled(FAST, TimeUnit.MILLISECONDS.toNanos(1));
+    List<String> urls = new ArrayList<>(Arrays.asList(SLOW, FAST));
+    transformer.transform(urls);
+    assertEquals(Arrays.asList(FAST, SLOW), urls);
+    // a cancelled request is not a latency sample
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(10), transformer.getLatencyPercentile(FAST, 0));
+  }
+
+  private static Replica replica(String coreUrl) {
+    String url = coreUrl.substring(0, coreUrl.length() - 1);
+    int idx = url.lastIndexOf('/');
+    Map<String,Object> props = new HashMap<>();
+    props.put(ZkStateReader.BASE_URL_PROP, url.substring(0, idx));
+    props.put(ZkStateReader.CORE_NAME_PROP, url.substring(idx + 1));
+    return new Replica(url.substring(idx + 1), props);
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.embedded.JettySolrRunner;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.cloud.SolrCloudTestCase;
+import org.apache.solr.common.cloud.DocCollection;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs distributed queries with adaptive replica selection, and randomly with hedged requests.
+ */
+public class AdaptiveReplicaSelectionTest extends SolrCloudTestCase {
+
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final String COLLECTION = "adaptive";
+  private static final int NUM_DOCS = 20;
+
+  @BeforeClass
+  public static void setupCluster() throws Exception {
+    String hedgeRequestsPercentile = random().nextBoolean() ? "0" : "95";
+    log.info("Using adaptive replica selection with hedgeRequestsPercentile={}", hedgeRequestsPercentile);
+    System.setProperty("solr.tests.adaptiveReplicaSelection", "true");
+    System.setProperty("solr.tests.hedgeRequestsPercentile", hedgeRequestsPercentile);
+
+    configureCluster(3)
+        .withSolrXml(TEST_PATH().resolve("solr.xml"))
+        .addConfig("conf", configset("cloud-minimal"))
+        .configure();
+
+    CollectionAdminRequest.createCollection(COLLECTION, "conf", 2, 2)
+        .setMaxShardsPerNode(2)
+        .process(cluster.getSolrClient());
+    cluster.getSolrClient().waitForState(COLLECTION, DEFAULT_TIMEOUT, TimeUnit.SECONDS,
+        (n, c) -> DocCollection.isFullyActive(n, c, 2, 2));
+
+    UpdateRequest update = new UpdateRequest();
+    for (int i = 0; i < NUM_DOCS; i++) {
+      update.add(sdoc("id", Integer.toString(i)));
+    }
+    update.commit(cluster.getSolrClient(), COLLECTION);
+  }
+
+  @AfterClass
+  public static void clearProperties() {
+    System.clearProperty("solr.tests.adaptiveReplicaSelection");
+    System.clearProperty("solr.tests.hedgeRequestsPercentile");
+  }
+
+  @Test
+  public void testQueries() throws Exception {
+    for (int i = 0; i < 50; i++) {
+      QueryResponse rsp = cluster.getSolrClient().query(COLLECTION, params("q", "*:*", "sort", "id asc", "rows", "5"));
+      assertEquals(NUM_DOCS, rsp.getResults().getNumFound());
+      assertEquals("0", rsp.getResults().get(0).getFieldValue("id"));
+    }
+
+    // the response times of the replicas were tracked by the nodes that aggregated the responses
+    int tracked = 0;
+    for (JettySolrRunner jetty : cluster.getJettySolrRunners()) {
+      HttpShardHandlerFactory factory = (HttpShardHandlerFactory) jetty.getCoreContainer().getShardHandlerFactory();
+      assertNotNull(factory.getAdaptiveReplicaListTransformer());
+      tracked += factory.getAdaptiveReplicaListTransformer().getNumTrackedReplicas();
+    }
+    assertTrue(tracked > 0);
+  }
+}
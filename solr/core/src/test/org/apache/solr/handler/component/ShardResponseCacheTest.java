@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.handler.component;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.ShardParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.response.SolrQueryResponse;
+import org.junit.Test;
+
+public class ShardResponseCacheTest extends LuceneTestCase {
+
+  private static final String REPLICA1 = "http://host1:8983/solr/collection1_shard1_replica_n1/";
+  private static final String REPLICA2 = "http://host2:8983/solr/collection1_shard1_replica_n2/";
+  private static final List<String> URLS = Arrays.asList(REPLICA1, REPLICA2);
+
+  private static ShardRequest shardRequest(int purpose) {
+    ShardRequest sreq = new ShardRequest();
+    sreq.purpose = purpose;
+    return sreq;
+  }
+
+  private static ModifiableSolrParams shardParams(String... params) {
+    ModifiableSolrParams solrParams = new ModifiableSolrParams();
+    solrParams.set(ShardParams.IS_SHARD, true);
+    for (int i = 0; i < params.length; i += 2) {
+      solrParams.add(params[i], params[i + 1]);
+    }
+    return solrParams;
+  }
+
+  private static NamedList<Object> response(long indexVersion, int numFound) {
+    NamedList<Object> header = new SimpleOrderedMap<>();
+    header.add("status", 0);
+    header.add(ShardResponseCache.INDEX_VERSION, indexVersion);
+    NamedList<Object> response = new NamedList<>();
+    response.add("responseHeader", header);
+    response.add("numFound", numFound);
+    return response;
+  }
+
+  @Test
+  public void testKey() {
+    ShardResponseCache cache = new ShardResponseCache(10, 60000);
+    ShardRequest sreq = shardRequest(ShardRequest.PURPOSE_GET_TOP_IDS);
+    String key = cache.getKey(sreq, URLS, shardParams("q", "*:*", "fq", "a:1", "fq", "b:2", "NOW", "1"), null);
+    assertNotNull(key);
+
+    // the order of the parameters and replicas does not matter, nor do parameters that differ for every request
+    assertEquals(key, cache.getKey(sreq, Arrays.asList(REPLICA2, REPLICA1),
+        shardParams("fq", "a:1", "q", "*:*", "fq", "b:2", "NOW", "2", CommonParams.REQUEST_ID, "abc"), null));
+    // but all other parameters, and the order of their values, do
+    assertFalse(key.equals(cache.getKey(sreq, URLS, shardParams("q", "*:*", "fq", "b:2", "fq", "a:1"), null)));
+    assertFalse(key.equals(cache.getKey(sreq, URLS, shardParams("q", "*:*", "fq", "a:1", "fq", "b:2", "rows", "1"), null)));
+    // as does a change of the replicas of the shard
+    assertFalse(key.equals(cache.getKey(sreq, Arrays.asList(REPLICA1),
+        shardParams("q", "*:*", "fq", "a:1", "fq", "b:2"), null)));
+
+    assertNull(cache.getKey(shardRequest(ShardRequest.PURPOSE_PRIVATE), URLS, shardParams("q", "*:*"), null));
+    assertNull(cache.getKey(sreq, URLS, shardParams("q", "*:*", ShardResponseCache.CACHE_PARAM, "false"), null));
+    assertNull(cache.getKey(sreq, URLS, new ModifiableSolrParams().set("q", "*:*"), null));
+
+    // users never share responses
+    String userKey = cache.getKey(sreq, URLS, shardParams("q", "*:*", "fq", "a:1", "fq", "b:2"), "user1");
+    assertFalse(key.equals(userKey));
+    assertEquals(userKey, cache.getKey(sreq, URLS, shardParams("q", "*:*", "fq", "a:1", "fq", "b:2"), "user1"));
+    assertFalse(userKey.equals(cache.getKey(sreq, URLS, shardParams("q", "*:*", "fq", "a:1", "fq", "b:2"), "user2")));
+  }
+
+  @Test
+  public void testGetAndPut() throws Exception {
+    ShardResponseCache cache = new ShardResponseCache(10, 60000);
+    ShardRequest sreq = shardRequest(ShardRequest.PURPOSE_GET_TOP_IDS);
+    String key1 = cache.getKey(sreq, URLS, shardParams("q", "a"), null);
+    String key2 = cache.getKey(sreq, URLS, shardParams("q", "b"), null);
+    assertNull(cache.get(key1));
+
+    cache.put(key1, REPLICA1, response(1, 10));
+    ShardResponseCache.CachedResponse cached = cache.get(key1);
+    assertNotNull(cached);
+    assertEquals(REPLICA1, cached.shardAddress);
+    assertEquals(10, cached.response.get("numFound"));
+
+    // every hit gets its own copy of the response
+    cached.response.add("extra", true);
+    assertNull(cache.get(key1).response.get("extra"));
+
+    // a response without the index version can not be validated and is not cached
+    NamedList<Object> noVersion = response(1, 20);
+    ((NamedList<?>) noVersion.get("responseHeader")).remove(ShardResponseCache.INDEX_VERSION);
+    cache.put(key2, REPLICA1, noVersion);
+    assertNull(cache.get(key2));
+
+    // neither are partial results
+    NamedList<Object> partial = response(1, 20);
+    ((NamedList<Object>) partial.get("responseHeader")).add(SolrQueryResponse.RESPONSE_HEADER_PARTIAL_RESULTS_KEY, true);
+    cache.put(key2, REPLICA1, partial);
+    assertNull(cache.get(key2));
+
+    // once the replica reports a new index version, the responses it gave for earlier versions are stale
+    cache.put(key2, REPLICA1.replace("http://", "https://"), response(2, 20));
+    assertNotNull(cache.get(key2));
+    assertNull(cache.get(key1));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testIndexVersionOfOtherResponses() throws Exception {
+    ShardResponseCache cache = new ShardResponseCache(10, 60000);
+    ShardRequest sreq = shardRequest(ShardRequest.PURPOSE_GET_TOP_IDS);
+    String key = cache.getKey(sreq, URLS, shardParams("q", "a"), null);
+    cache.put(key, REPLICA1, response(1, 10));
+
+    // responses that are not cached, or that come from other replicas, do not invalidate the entry
+    assertEquals(-1, cache.updateIndexVersion(REPLICA1, new NamedList<>()));
+    assertEquals(2, cache.updateIndexVersion(REPLICA2, response(2, 20)));
+    assertEquals(1, cache.updateIndexVersion(REPLICA1, response(1, 20)));
+    assertNotNull(cache.get(key));
+
+    // but the replica reporting a new searcher in the response to any request does
+    assertEquals(2, cache.updateIndexVersion(REPLICA1, response(2, 20)));
+    assertNull(cache.get(key));
+  }
+
+  @Test
+  public void testMaxAgeAndSize() throws Exception {
+    ShardResponseCache cache = new ShardResponseCache(10, 1);
+    ShardRequest sreq = shardRequest(ShardRequest.PURPOSE_GET_TOP_IDS);
+    String key = cache.getKey(sreq, URLS, shardParams("q", "a"), null);
+    cache.put(key, REPLICA1, response(1, 10));
+    Thread.sleep(10);
+    assertNull(cache.get(key));
+
+    cache = new ShardResponseCache(2, 60000);
+    for (int i = 0; i < 5; i++) {
+      cache.put(cache.getKey(sreq, URLS, shardParams("q", Integer.toString(i)), null), REPLICA1, response(1, i));
+    }
+    assertEquals(2, cache.size());
+    assertNotNull(cache.get(cache.getKey(sreq, URLS, shardParams("q", "4"), null)));
+    assertNull(cache.get(cache.getKey(sreq, URLS, shardParams("q", "0"), null)));
+  }
+}
@@ -75,6 +75,8 @@ public class TestRecovery extends SolrTestCaseJ4 {
   public static void beforeClass() throws Exception {
     savedFactory = System.getProperty("solr.DirectoryFactory");
     System.setProperty("solr.directoryFactory", "org.apache.solr.core.MockFSDirectoryFactory");
+    System.setProperty("solr.ulog.indexTlogs", Boolean.toString(random().nextBoolean()));
+    System.setProperty("solr.ulog.numReplayThreads", Integer.toString(random().nextBoolean() ? 1 : TestUtil.nextInt(random(), 2, 4)));
     initCore("solrconfig-tlog.xml","schema15.xml");
     
     // validate that the schema was not changed to an unexpected state
@@ -86,6 +88,8 @@ public class TestRecovery extends SolrTestCaseJ4 {
   
   @AfterClass
   public static void afterClass() {
+    System.clearProperty("solr.ulog.indexTlogs");
+    System.clearProperty("solr.ulog.numReplayThreads");
     if (savedFactory == null) {
       System.clearProperty("solr.directoryFactory");
     } else {
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.queries.function.FunctionValues;
+import org.apache.lucene.queries.function.ValueSource;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.TestUtil;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.RefCounted;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class IndexFingerprintTest extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig-tlog.xml", "schema15.xml");
+  }
+
+  @Test
+  public void testSegmentVersionsFingerprint() throws Exception {
+    int numDocs = atLeast(100);
+    for (int i = 0; i < numDocs; i++) {
+      assertU(adoc("id", Integer.toString(random().nextInt(numDocs))));
+      if (random().nextInt(20) == 0) {
+        assertU(commit());
+      }
+      if (random().nextInt(30) == 0) {
+        assertU(delI(Integer.toString(random().nextInt(numDocs))));
+      }
+    }
+    assertU(commit());
+
+    RefCounted<SolrIndexSearcher> holder = h.getCore().getSearcher();
+    try {
+      SolrIndexSearcher searcher = holder.get();
+      for (LeafReaderContext ctx : searcher.getTopReaderContext().leaves()) {
+        // a tail that is smaller than the segment only keeps some of the versions
+        int tailSize = random().nextBoolean() ? IndexFingerprint.SegmentVersions.TAIL_SIZE : TestUtil.nextInt(random(), 1, 10);
+        IndexFingerprint.SegmentVersions segmentVersions = IndexFingerprint.SegmentVersions.load(searcher, ctx, tailSize);
+        IndexFingerprint all = IndexFingerprint.getFingerprint(searcher, ctx, Long.MAX_VALUE);
+        assertSameFingerprint(all, IndexFingerprint.getFingerprint(searcher, ctx, segmentVersions, Long.MAX_VALUE));
+
+        long[] versions = getVersions(searcher, ctx);
+        long[] maxVersions = new long[] {0, all.getMaxVersionEncountered(), all.getMaxVersionEncountered() - 1,
+            all.getMaxVersionEncountered() / 2 + random().nextInt(1000),
+            versions[random().nextInt(versions.length)], versions[Math.max(0, versions.length - tailSize)],
+            versions[Math.max(0, versions.length - tailSize - 1)]};
+        for (long maxVersion : maxVersions) {
+          assertSameFingerprint(IndexFingerprint.getFingerprint(searcher, ctx, maxVersion),
+              IndexFingerprint.getFingerprint(searcher, ctx, segmentVersions, maxVersion));
+        }
+
+        // the memory usage only depends on the size of the tail
+        long maxTailBytes = RamUsageEstimator.shallowSizeOfInstance(IndexFingerprint.SegmentVersions.class)
+            + RamUsageEstimator.sizeOf(new long[tailSize]) + RamUsageEstimator.sizeOf(new int[tailSize]);
+        assertTrue(segmentVersions.ramBytesUsed() <= maxTailBytes);
+      }
+
+      // the searcher fingerprint goes through the per segment caches
+      IndexFingerprint expected = new IndexFingerprint(Long.MAX_VALUE);
+      for (LeafReaderContext ctx : searcher.getTopReaderContext().leaves()) {
+        IndexFingerprint.reduce(expected, IndexFingerprint.getFingerprint(searcher, ctx, Long.MAX_VALUE));
+      }
+      assertSameFingerprint(expected, searcher.getIndexFingerprint(Long.MAX_VALUE));
+    } finally {
+      holder.decref();
+    }
+  }
+
+  /** returns the sorted versions of all documents of the segment, deleted or not */
+  private static long[] getVersions(SolrIndexSearcher searcher, LeafReaderContext ctx) throws IOException {
+    SchemaField versionField = VersionInfo.getAndCheckVersionField(searcher.getSchema());
+    ValueSource vs = versionField.getType().getValueSource(versionField, null);
+    Map context = ValueSource.newContext(searcher);
+    vs.createWeight(context, searcher);
+    FunctionValues fv = vs.getValues(context, ctx);
+    long[] versions = new long[ctx.reader().maxDoc()];
+    for (int doc = 0; doc < versions.length; doc++) {
+      versions[doc] = fv.longVal(doc);
+    }
+    Arrays.sort(versions);
+    return versions;
+  }
+
+  private static void assertSameFingerprint(IndexFingerprint expected, IndexFingerprint actual) {
+    assertEquals(expected.toMap(new LinkedHashMap<>()), actual.toMap(new LinkedHashMap<>()));
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.io.File;
+import java.util.List;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.cloud.DocRouter;
+import org.apache.solr.common.cloud.PlainIdRouter;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests splitting an index by linking its segments, which requires an index on the local file system
+ */
+public class SolrIndexSplitterLinkTest extends SolrTestCaseJ4 {
+
+  private static final int NUM_DOCS = 30;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    useFactory(null); // a file system directory
+    System.setProperty("enable.update.log", "false"); // schema12 doesn't support _version_
+    initCore("solrconfig.xml", "schema12.xml");
+  }
+
+  @AfterClass
+  public static void afterClass() throws Exception {
+    resetFactory();
+  }
+
+  private void indexDocs() throws Exception {
+    clearIndex();
+    // several segments, one of them with deletions
+    for (int i = 0; i < NUM_DOCS; i++) {
+      assertU(adoc("id", String.valueOf(i)));
+      if (i % 10 == 9) {
+        assertU(commit());
+      }
+    }
+    assertU(delI("3"));
+    assertU(delI("17"));
+    assertU(commit());
+    assertJQ(req("q", "*:*"), "/response/numFound==" + (NUM_DOCS - 2));
+  }
+
+  private static boolean inRange(DocRouter.Range range, int doc) {
+    return range.includes(new PlainIdRouter().sliceHash(String.valueOf(doc), null, null, null));
+  }
+
+  @Test
+  public void testLinkByPaths() throws Exception {
+    indexDocs();
+    File indexDir1 = createTempDir("_testLink1").toFile();
+    File indexDir2 = createTempDir("_testLink2").toFile();
+    List<DocRouter.Range> ranges = new PlainIdRouter().partitionRange(2, new PlainIdRouter().fullRange());
+
+    LocalSolrQueryRequest request = lrf.makeRequest("q", "dummy");
+    try {
+      SplitIndexCommand command = new SplitIndexCommand(request,
+          Lists.newArrayList(indexDir1.getAbsolutePath(), indexDir2.getAbsolutePath()), null, ranges, new PlainIdRouter(),
+          null, null, SolrIndexSplitter.SplitMethod.LINK);
+      new SolrIndexSplitter(command).split();
+    } finally {
+      request.close();
+    }
+
+    int total = 0;
+    File[] indexDirs = {indexDir1, indexDir2};
+    for (int p = 0; p < indexDirs.length; p++) {
+      try (Directory directory = FSDirectory.open(indexDirs[p].toPath());
+           DirectoryReader reader = DirectoryReader.open(directory)) {
+        IndexSearcher searcher = new IndexSearcher(reader);
+        for (int i = 0; i < NUM_DOCS; i++) {
+          int expected = (i == 3 || i == 17 || !inRange(ranges.get(p), i)) ? 0 : 1;
+          assertEquals("doc " + i + " in split index" + (p + 1), expected,
+              searcher.count(new TermQuery(new Term("id", String.valueOf(i)))));
+        }
+        total += reader.numDocs();
+      }
+    }
+    assertEquals(NUM_DOCS - 2, total);
+  }
+
+  @Test
+  public void testLinkByCores() throws Exception {
+    indexDocs();
+    File indexDir1 = createTempDir("_testLink1").toFile();
+    File indexDir2 = createTempDir("_testLink2").toFile();
+    List<DocRouter.Range> ranges = new PlainIdRouter().partitionRange(2, new PlainIdRouter().fullRange());
+
+    SolrCore core1 = null, core2 = null;
+    try {
+      core1 = h.getCoreContainer().create("link1",
+          ImmutableMap.of("dataDir", indexDir1.getAbsolutePath(), "configSet", "minimal"));
+      core2 = h.getCoreContainer().create("link2",
+          ImmutableMap.of("dataDir", indexDir2.getAbsolutePath(), "configSet", "minimal"));
+
+      LocalSolrQueryRequest request = lrf.makeRequest("q", "dummy");
+      try {
+        SplitIndexCommand command = new SplitIndexCommand(request, null, Lists.newArrayList(core1, core2), ranges,
+            new PlainIdRouter(), null, null, SolrIndexSplitter.SplitMethod.LINK);
+        new SolrIndexSplitter(command).split();
+      } finally {
+        request.close();
+      }
+
+      EmbeddedSolrServer[] servers = {
+          new EmbeddedSolrServer(h.getCoreContainer(), "link1"),
+          new EmbeddedSolrServer(h.getCoreContainer(), "link2")};
+      long total = 0;
+      for (int p = 0; p < servers.length; p++) {
+        servers[p].commit(true, true);
+        for (int i = 0; i < NUM_DOCS; i++) {
+          long expected = (i == 3 || i == 17 || !inRange(ranges.get(p), i)) ? 0 : 1;
+          assertEquals("doc " + i + " in core link" + (p + 1), expected,
+              servers[p].query(new SolrQuery("id:" + i)).getResults().getNumFound());
+        }
+        total += servers[p].query(new SolrQuery("*:*")).getResults().getNumFound();
+      }
+      assertEquals(NUM_DOCS - 2, total);
+
+      // the sub-cores keep indexing on top of the linked segments
+      servers[0].add(sdoc("id", "new"));
+      servers[0].commit(true, true);
+      assertEquals(1, servers[0].query(new SolrQuery("id:new")).getResults().getNumFound());
+    } finally {
+      h.getCoreContainer().unload("link2");
+      h.getCoreContainer().unload("link1");
+    }
+  }
+}
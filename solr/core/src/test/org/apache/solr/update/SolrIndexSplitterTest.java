@@ -239,6 +239,43 @@ public class SolrIndexSplitterTest extends SolrTestCaseJ4 {
     }
   }
 
+  @Test
+  public void testSplitAlternatelyAcrossSegments() throws Exception {
+    LocalSolrQueryRequest request = null;
+    Directory directory = null;
+    try {
+      // one document per segment, so that each segment alone would send its document to the first partition
+      int max = (1 + random().nextInt(5)) * 2;
+      for (int i = 0; i < max; i++) {
+        assertU(adoc("id", String.valueOf(i)));
+        assertU(commit());
+      }
+
+      request = lrf.makeRequest("q", "dummy");
+      log.info("Splitting {} documents in {} segments", max, request.getSearcher().getRawReader().leaves().size());
+
+      SplitIndexCommand command = new SplitIndexCommand(request,
+          Lists.newArrayList(indexDir1.getAbsolutePath(), indexDir2.getAbsolutePath()), null, null, new PlainIdRouter(), null, null);
+      new SolrIndexSplitter(command).split();
+
+      for (File indexDir : Lists.newArrayList(indexDir1, indexDir2)) {
+        directory = h.getCore().getDirectoryFactory().get(indexDir.getAbsolutePath(),
+            DirectoryFactory.DirContext.DEFAULT, h.getCore().getSolrConfig().indexConfig.lockType);
+        DirectoryReader reader = DirectoryReader.open(directory);
+        assertEquals("split index has wrong number of documents", max / 2, reader.numDocs());
+        reader.close();
+        h.getCore().getDirectoryFactory().release(directory);
+        directory = null;
+      }
+    } finally {
+      if (request != null) request.close(); // decrefs the searcher
+      if (directory != null)  {
+        // perhaps an assert failed, release the directory
+        h.getCore().getDirectoryFactory().release(directory);
+      }
+    }
+  }
+
   @Test
   public void testSplitByRouteKey() throws Exception  {
     File indexDir = createTempDir().toFile();
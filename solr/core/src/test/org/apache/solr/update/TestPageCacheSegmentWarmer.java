@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.util.Map;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.util.RefCounted;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestPageCacheSegmentWarmer extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig-warmer-pagecache.xml", "schema.xml");
+  }
+
+  @Test
+  public void testWarmMergedSegments() throws Exception {
+    RefCounted<IndexWriter> iw = h.getCore().getSolrCoreState().getIndexWriter(h.getCore());
+    try {
+      assertTrue(iw.get().getConfig().getMergedSegmentWarmer() instanceof PageCacheSegmentWarmer);
+    } finally {
+      iw.decref();
+    }
+
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 10; j++) {
+        assertU(adoc("id", Integer.toString(i * 10 + j), "val_idv", Integer.toString(j), "text", "some text " + j));
+      }
+      assertU(commit());
+    }
+    assertU(optimize());
+
+    Map<String, Metric> metrics = h.getCore().getCoreMetricManager().getRegistry().getMetrics();
+    Meter segments = (Meter) metrics.get("INDEX.warmer.segments");
+    assertNotNull(metrics.keySet().toString(), segments);
+    assertTrue(segments.getCount() >= 1);
+    assertTrue(((Meter) metrics.get("INDEX.warmer.bytes")).getCount() > 0);
+    assertEquals(0L, ((Gauge) metrics.get("INDEX.warmer.pendingBytes")).getValue());
+    assertEquals(0, ((Gauge) metrics.get("INDEX.warmer.running")).getValue());
+    assertQ(req("q", "*:*"), "//*[@numFound='30']");
+  }
+}
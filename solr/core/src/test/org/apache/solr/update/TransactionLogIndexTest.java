@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.request.SolrQueryRequest;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TransactionLogIndexTest extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig-tlog.xml", "schema-inplace-updates.xml");
+  }
+
+  private File newLogFile() {
+    File dir = createTempDir().toFile();
+    return new File(dir, String.format(Locale.ROOT, UpdateLog.LOG_FILENAME_PATTERN, UpdateLog.TLOG_NAME, 0));
+  }
+
+  /** writes a few updates and caps the log with a commit, returning the positions of the records */
+  private List<Long> writeLog(TransactionLog tlog, int numAdds) {
+    List<Long> positions = new ArrayList<>();
+    try (SolrQueryRequest req = req()) {
+      for (int i = 0; i < numAdds; i++) {
+        AddUpdateCommand cmd = UpdateLogTest.buildAddUpdateCommand(req,
+            sdoc("id", Integer.toString(i), "title_s", "title" + i, "_version_", Long.toString(100 + i)));
+        positions.add(tlog.write(cmd, 0));
+      }
+      DeleteUpdateCommand delete = new DeleteUpdateCommand(req);
+      delete.setIndexedId(new BytesRef("0"));
+      delete.setVersion(-1000);
+      positions.add(tlog.writeDelete(delete, 0));
+
+      DeleteUpdateCommand dbq = new DeleteUpdateCommand(req);
+      dbq.query = "title_s:title1";
+      dbq.setVersion(-1001);
+      positions.add(tlog.writeDeleteByQuery(dbq, 0));
+
+      positions.add(tlog.writeCommit(new CommitUpdateCommand(req, false), 0));
+    }
+    return positions;
+  }
+
+  @Test
+  public void testTrailerIndex() throws Exception {
+    File file = newLogFile();
+    int numAdds = atLeast(10);
+
+    TransactionLog tlog = new TransactionLog(file, null, false, true);
+    tlog.deleteOnClose = false;
+    List<Long> positions = writeLog(tlog, numAdds);
+    assertTrue(tlog.endsWithCommit());
+    assertIndex(tlog.getIndex(), positions, numAdds);
+    assertRecords(tlog, numAdds);
+    tlog.decref();
+
+    // the trailer must be found again when the log is reopened, whether or not indexing is enabled
+    for (boolean indexed : new boolean[] {true, false}) {
+      tlog = new TransactionLog(file, null, true, indexed);
+      tlog.deleteOnClose = false;
+      assertTrue(tlog.endsWithCommit());
+      assertIndex(tlog.getIndex(), positions, numAdds);
+      assertRecords(tlog, numAdds);
+      tlog.decref();
+    }
+
+    // capping the log again replaces the trailer
+    tlog = new TransactionLog(file, null, true, true);
+    try (SolrQueryRequest req = req()) {
+      positions.add(tlog.writeCommit(new CommitUpdateCommand(req, false), 0));
+    }
+    assertTrue(tlog.endsWithCommit());
+    TransactionLogIndex index = tlog.getIndex();
+    assertEquals(positions.size(), index.size());
+    assertEquals(UpdateLog.COMMIT, index.getFlags(index.size() - 1) & UpdateLog.OPERATION_MASK);
+    tlog.decref();
+  }
+
+  @Test
+  public void testNoIndexUntilCapped() throws Exception {
+    TransactionLog tlog = new TransactionLog(newLogFile(), null, false, true);
+    try (SolrQueryRequest req = req()) {
+      tlog.write(UpdateLogTest.buildAddUpdateCommand(req, sdoc("id", "1", "_version_", "100")), 0);
+    }
+    assertNull(tlog.getIndex());
+    assertFalse(tlog.endsWithCommit());
+    tlog.decref();
+
+    tlog = new TransactionLog(newLogFile(), null, false, false);
+    writeLog(tlog, 3);
+    assertNull(tlog.getIndex());
+    assertTrue(tlog.endsWithCommit());
+    tlog.decref();
+  }
+
+  private void assertIndex(TransactionLogIndex index, List<Long> positions, int numAdds) {
+    assertNotNull(index);
+    assertEquals(positions.size(), index.size());
+    for (int i = 0; i < index.size(); i++) {
+      assertEquals(positions.get(i).longValue(), index.getPosition(i));
+    }
+    for (int i = 0; i < numAdds; i++) {
+      assertEquals(UpdateLog.ADD, index.getFlags(i));
+      assertEquals(100 + i, index.getVersion(i));
+    }
+    assertEquals(UpdateLog.DELETE, index.getFlags(numAdds));
+    assertEquals(-1000, index.getVersion(numAdds));
+    assertEquals(UpdateLog.DELETE_BY_QUERY, index.getFlags(numAdds + 1));
+    assertEquals(UpdateLog.COMMIT, index.getFlags(numAdds + 2));
+    assertEquals(100, index.getMinVersion());
+    assertEquals(1001, index.getMaxVersion());
+  }
+
+  /** the trailer must be invisible to forward and reverse readers */
+  private void assertRecords(TransactionLog tlog, int numAdds) throws Exception {
+    TransactionLog.LogReader reader = tlog.getReader(0);
+    int count = 0;
+    Object o;
+    while ((o = reader.next()) != null) {
+      assertTrue(o instanceof List);
+      count++;
+    }
+    reader.close();
+    assertEquals(numAdds + 3, count);
+
+    TransactionLog.ReverseReader reverseReader = tlog.getReverseReader();
+    List entry = (List) reverseReader.next();
+    assertEquals(UpdateLog.COMMIT, entry.get(UpdateLog.FLAGS_IDX));
+    count = 1;
+    while ((o = reverseReader.next()) != null) {
+      count++;
+    }
+    reverseReader.close();
+    assertEquals(numAdds + 3, count);
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.update;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
+
+public class VersionDigestTest extends LuceneTestCase {
+
+  private List<Long> randomVersions(int n) {
+    List<Long> versions = new ArrayList<>();
+    long version = TestUtil.nextLong(random(), 1, 1000000);
+    for (int i = 0; i < n; i++) {
+      version += TestUtil.nextInt(random(), 1, 100);
+      versions.add(random().nextInt(10) == 0 ? -version : version);
+    }
+    Collections.shuffle(versions, random());
+    return versions;
+  }
+
+  public void testSameVersions() {
+    List<Long> versions = randomVersions(atLeast(100));
+    VersionDigest digest = VersionDigest.create(versions, TestUtil.nextInt(random(), 1, 64));
+    List<Long> shuffled = new ArrayList<>(versions);
+    Collections.shuffle(shuffled, random());
+    VersionDigest other = VersionDigest.create(shuffled, digest.getBounds());
+    assertTrue(digest.getDifferingRanges(other, 0).isEmpty());
+    assertEquals(versions.size(), digest.getNumVersions());
+  }
+
+  public void testDifferingRangesCoverMissingVersions() {
+    List<Long> versions = randomVersions(atLeast(200));
+    VersionDigest digest = VersionDigest.create(versions, TestUtil.nextInt(random(), 1, 64));
+
+    List<Long> ours = new ArrayList<>(versions);
+    List<Long> missing = new ArrayList<>();
+    int numMissing = TestUtil.nextInt(random(), 1, 10);
+    for (int i = 0; i < numMissing; i++) {
+      missing.add(ours.remove(random().nextInt(ours.size())));
+    }
+
+    List<String> ranges = digest.getDifferingRanges(VersionDigest.create(ours, digest.getBounds()), 0);
+    assertFalse(ranges.isEmpty());
+    List<long[]> parsed = VersionDigest.parseRanges(ranges);
+    for (long version : missing) {
+      assertTrue("missing version " + version + " not in " + ranges, VersionDigest.inRanges(parsed, version));
+    }
+
+    // the versions in the differing ranges should be a small part of all versions when only a few are missing
+    if (digest.getBounds().length == 64) {
+      long inRanges = versions.stream().filter(v -> VersionDigest.inRanges(parsed, v)).count();
+      assertTrue(inRanges + " versions in " + ranges, inRanges < versions.size());
+    }
+  }
+
+  public void testVersionsBelowLowestBoundAreIgnored() {
+    List<Long> versions = Arrays.asList(100L, 200L, -300L, 400L);
+    VersionDigest digest = VersionDigest.create(versions, 2);
+    assertArrayEquals(new long[] {100, 300}, digest.getBounds());
+    VersionDigest other = VersionDigest.create(Arrays.asList(50L, 100L, 200L, -300L, 400L), digest.getBounds());
+    assertTrue(digest.getDifferingRanges(other, 0).isEmpty());
+
+    // a version that differs only by sign is a different update
+    other = VersionDigest.create(Arrays.asList(100L, 200L, 300L, 400L), digest.getBounds());
+    assertEquals(Collections.singletonList("300..." + Long.MAX_VALUE), digest.getDifferingRanges(other, 0));
+
+    // ranges that end below the minimum version are left out
+    other = VersionDigest.create(Arrays.asList(-100L, 200L, -300L, 400L), digest.getBounds());
+    assertEquals(Collections.singletonList("100...299"), digest.getDifferingRanges(other, 299));
+    assertTrue(digest.getDifferingRanges(other, 300).isEmpty());
+  }
+
+  public void testSerialization() {
+    VersionDigest digest = VersionDigest.create(randomVersions(atLeast(10)), TestUtil.nextInt(random(), 1, 16));
+    Map<String, Object> map = digest.toMap(new LinkedHashMap<>());
+    VersionDigest copy = VersionDigest.fromObject(map);
+    assertEquals(digest.toString(), copy.toString());
+    assertTrue(digest.getDifferingRanges(copy, 0).isEmpty());
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TestUtil;
+import org.apache.solr.common.util.ExecutorUtil;
+
+public class OrderedExecutorTest extends LuceneTestCase {
+
+  private OrderedExecutor newExecutor(int numThreads) {
+    return new OrderedExecutor(numThreads, ExecutorUtil.newMDCAwareFixedThreadPool(numThreads,
+        new DefaultSolrThreadFactory("orderedExecutorTest")));
+  }
+
+  public void testSameKeyRunsInOrder() throws Exception {
+    OrderedExecutor executor = newExecutor(TestUtil.nextInt(random(), 2, 8));
+    int numKeys = TestUtil.nextInt(random(), 1, 10);
+    List<List<Integer>> seen = new ArrayList<>();
+    for (int i = 0; i < numKeys; i++) {
+      seen.add(Collections.synchronizedList(new ArrayList<>()));
+    }
+    int numTasks = atLeast(500);
+    List<List<Integer>> expected = new ArrayList<>();
+    for (int i = 0; i < numKeys; i++) {
+      expected.add(new ArrayList<>());
+    }
+    for (int i = 0; i < numTasks; i++) {
+      final int key = random().nextInt(numKeys);
+      final int value = i;
+      final boolean yield = random().nextInt(10) == 0;
+      expected.get(key).add(value);
+      executor.execute(key, () -> {
+        if (yield) {
+          Thread.yield();
+        }
+        seen.get(key).add(value);
+      });
+    }
+    executor.awaitTasks();
+    assertEquals(expected, seen);
+    executor.shutdownAndAwaitTermination();
+  }
+
+  public void testDifferentKeysRunInParallel() throws Exception {
+    OrderedExecutor executor = newExecutor(2);
+    CountDownLatch bothRunning = new CountDownLatch(2);
+    AtomicInteger completed = new AtomicInteger();
+    for (int key = 0; key < 2; key++) {
+      executor.execute(key, () -> {
+        bothRunning.countDown();
+        try {
+          // would time out if the tasks were run one after another
+          if (bothRunning.await(30, TimeUnit.SECONDS)) {
+            completed.incrementAndGet();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+    }
+    executor.awaitTasks();
+    assertEquals(2, completed.get());
+    executor.shutdownAndAwaitTermination();
+  }
+
+  public void testAwaitTasks() throws Exception {
+    OrderedExecutor executor = newExecutor(TestUtil.nextInt(random(), 1, 4));
+    AtomicInteger completed = new AtomicInteger();
+    int numTasks = atLeast(50);
+    for (int i = 0; i < numTasks; i++) {
+      final int sleepMs = random().nextInt(3);
+      executor.execute(i, () -> {
+        try {
+          Thread.sleep(sleepMs);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        completed.incrementAndGet();
+      });
+    }
+    executor.awaitTasks();
+    assertEquals(numTasks, completed.get());
+    executor.shutdownAndAwaitTermination();
+  }
+}
@@ -115,6 +115,7 @@ public abstract class CollectionAdminRequest<T extends CollectionAdminResponse>
 
     protected String asyncId = null;
     protected boolean waitForFinalState = false;
+    protected String taskPriority = null;
 
     public AsyncCollectionAdminRequest(CollectionAction action) {
       super(action);
@@ -141,6 +142,18 @@ public abstract class CollectionAdminRequest<T extends CollectionAdminResponse>
       this.asyncId = asyncId;
     }
 
+    public String getTaskPriority() {
+      return taskPriority;
+    }
+
+    /**
+     * @param taskPriority the priority class of this request in the Overseer, "user" (the default) or "autoscaling";
+     *                     requests of the "user" class are executed first
+     */
+    public void setTaskPriority(String taskPriority) {
+      this.taskPriority = taskPriority;
+    }
+
     /**
      * Process this request asynchronously, generating and returning a request id
      * @param client a Solr client
@@ -201,6 +214,9 @@ public abstract class CollectionAdminRequest<T extends CollectionAdminResponse>
       if (waitForFinalState) {
         params.set(CommonAdminParams.WAIT_FOR_FINAL_STATE, waitForFinalState);
       }
+      if (taskPriority != null) {
+        params.set(CommonAdminParams.TASK_PRIORITY, taskPriority);
+      }
       return params;
     }
   }
@@ -388,6 +404,7 @@ public abstract class CollectionAdminRequest<T extends CollectionAdminResponse>
     private Properties properties;
     protected Boolean autoAddReplicas;
     protected Integer stateFormat;
+    protected Boolean perReplicaState;
     private String[] rule , snitch;
 
     /** Constructor intended for typical use cases */
@@ -426,6 +443,7 @@ public abstract class CollectionAdminRequest<T extends CollectionAdminResponse>
 
     public Create setReplicationFactor(Integer repl) { this.nrtReplicas = repl; return this; }
     public Create setStateFormat(Integer stateFormat) { this.stateFormat = stateFormat; return this; }
+    public Create setPerReplicaState(Boolean perReplicaState) { this.perReplicaState = perReplicaState; return this; }
     public Create setRule(String... s){ this.rule = s; return this; }
     public Create setSnitch(String... s){ this.snitch = s; return this; }
 
@@ -443,6 +461,7 @@ public abstract class CollectionAdminRequest<T extends CollectionAdminResponse>
     public Integer getNumPullReplicas() {return pullReplicas;}
 
     public Integer getStateFormat() { return stateFormat; }
+    public Boolean getPerReplicaState() { return perReplicaState; }
     
     /**
      * Provide the name of the shards to be created, separated by commas
@@ -517,6 +536,9 @@ public abstract class CollectionAdminRequest<T extends CollectionAdminResponse>
       if (stateFormat != null) {
         params.set(DocCollection.STATE_FORMAT, stateFormat);
       }
+      if (perReplicaState != null) {
+        params.set(DocCollection.PER_REPLICA_STATE, perReplicaState);
+      }
       if (pullReplicas != null) {
         params.set(ZkStateReader.PULL_REPLICAS, pullReplicas);
       }
@@ -1039,6 +1061,7 @@ public abstract class CollectionAdminRequest<T extends CollectionAdminResponse>
     protected String ranges;
     protected String splitKey;
     protected String shard;
+    protected String splitMethod;
 
     private Properties properties;
 
@@ -1059,6 +1082,19 @@ public abstract class CollectionAdminRequest<T extends CollectionAdminResponse>
       return this.splitKey;
     }
 
+    /**
+     * @param splitMethod "rewrite" (the default) to rewrite the documents of each sub-shard, or "link" to hard-link
+     *                    the segments of the parent shard and delete the documents that do not belong to each sub-shard
+     */
+    public SplitShard setSplitMethod(String splitMethod) {
+      this.splitMethod = splitMethod;
+      return this;
+    }
+
+    public String getSplitMethod() {
+      return splitMethod;
+    }
+
     public Properties getProperties() {
       return properties;
     }
@@ -1086,6 +1122,7 @@ public abstract class CollectionAdminRequest<T extends CollectionAdminResponse>
       params.set("shard", shard);
       params.set("split.key", this.splitKey);
       params.set( "ranges", ranges);
+      params.set(CommonAdminParams.SPLIT_METHOD, splitMethod);
 
       if(properties != null) {
         addProperties(params, properties);
@@ -205,7 +205,7 @@ public class ClusterState implements JSONWriter.Writable {
     return load(version, bytes, liveNodes, ZkStateReader.CLUSTER_STATE);
   }
   /**
-   * Create ClusterState from json string that is typically stored in zookeeper.
+   * Create ClusterState from the data that is typically stored in zookeeper.
    * 
    * @param version zk version of the clusterstate.json file (bytes)
    * @param bytes clusterstate.json as a byte array
@@ -213,11 +213,26 @@ public class ClusterState implements JSONWriter.Writable {
    * @return the ClusterState
    */
   public static ClusterState load(Integer version, byte[] bytes, Set<String> liveNodes, String znode) {
+    return load(version, bytes, liveNodes, znode, null);
+  }
+
+  /**
+   * Create ClusterState from the data stored in zookeeper, either json or encoded by {@link CompactStateCodec}.
+   *
+   * @param codec decodes compact states, reusing the slices it decoded before for the same znode;
+   *              if null, a new codec is used
+   */
+  public static ClusterState load(Integer version, byte[] bytes, Set<String> liveNodes, String znode, CompactStateCodec codec) {
     // System.out.println("######## ClusterState.load:" + (bytes==null ? null : new String(bytes)));
     if (bytes == null || bytes.length == 0) {
       return new ClusterState(version, liveNodes, Collections.<String, DocCollection>emptyMap());
     }
-    Map<String, Object> stateMap = (Map<String, Object>) Utils.fromJSON(bytes);
+    Map<String, Object> stateMap;
+    if (CompactStateCodec.isCompact(bytes)) {
+      stateMap = (codec == null ? new CompactStateCodec() : codec).decode(bytes, znode);
+    } else {
+      stateMap = (Map<String, Object>) Utils.fromJSON(bytes);
+    }
     return load(version, stateMap, liveNodes, znode);
   }
 
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.common.cloud;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.util.Hash;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.MapBackedCache;
+import org.apache.solr.common.util.Utils;
+import org.noggit.JSONWriter;
+
+/**
+ * A compact binary encoding of the state.json of a collection, used instead of JSON when the cluster property
+ * {@link ZkStateReader#STATE_ENCODING} is set to {@link #ENCODING}.
+ * <p>
+ * The state is encoded with {@link JavaBinCodec}, writing every string once per record and decoding the strings
+ * through a cache shared by all decoded states, so that the node names, URLs and states repeated across replicas and
+ * across successive versions of a collection are the same instances. Each slice is encoded as a separate record
+ * together with a digest of its content, which acts as the version of the slice: an instance of this class remembers
+ * the slices it decoded for each collection and reuses them as long as their digest is unchanged, so that readers
+ * only decode the slices that changed since the state they saw last.
+ * <p>
+ * The encoded data starts with the JavaBin version byte, which JSON never does, so readers tell both formats apart
+ * with {@link #isCompact(byte[])}.
+ */
+public class CompactStateCodec {
+
+  /** the value of {@link ZkStateReader#STATE_ENCODING} selecting this encoding */
+  public static final String ENCODING = "javabin";
+
+  private static final byte JAVABIN_VERSION = 2;
+  private static final String DIGEST = "v";
+  private static final String DATA = "b";
+  private static final int MAX_CACHED_STRINGS = 100000;
+
+  private static final JavaBinCodec.StringCache STRING_CACHE = new JavaBinCodec.StringCache(
+      new MapBackedCache<>(Collections.synchronizedMap(new LinkedHashMap<JavaBinCodec.StringBytes, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<JavaBinCodec.StringBytes, String> eldest) {
+          return size() > MAX_CACHED_STRINGS;
+        }
+      })));
+
+  private static class DecodedSlice {
+    final long digest;
+    final Slice slice;
+
+    DecodedSlice(long digest, Slice slice) {
+      this.digest = digest;
+      this.slice = slice;
+    }
+  }
+
+  // the slices last decoded for each collection path
+  private final Map<String, Map<String, DecodedSlice>> decodedSlices = new ConcurrentHashMap<>();
+
+  /** Returns true if the given data was written by {@link #encode(DocCollection)} rather than as JSON */
+  public static boolean isCompact(byte[] data) {
+    return data != null && data.length > 0 && data[0] == JAVABIN_VERSION;
+  }
+
+  /** Encodes the state of the given collection, as stored in its state.json */
+  public static byte[] encode(DocCollection collection) {
+    Map<String, Object> coll = new LinkedHashMap<>();
+    for (Map.Entry<String, Object> entry : collection.getProperties().entrySet()) {
+      coll.put(entry.getKey(), toPlain(entry.getValue()));
+    }
+    Map<String, Object> shards = new LinkedHashMap<>();
+    for (Slice slice : collection.getSlices()) {
+      byte[] data = marshal(toPlain(slice.getProperties()));
+      Map<String, Object> record = new LinkedHashMap<>(2);
+      record.put(DIGEST, digest(data));
+      record.put(DATA, data);
+      shards.put(slice.getName(), record);
+    }
+    coll.put(DocCollection.SHARDS, shards);
+    return marshal(Collections.singletonMap(collection.getName(), coll));
+  }
+
+  /**
+   * Decodes the state stored at the given path into the same structure as parsed JSON, except that the slices are
+   * {@link Slice} instances, reused from the previous call for the same path for the slices that did not change.
+   */
+  @SuppressWarnings("unchecked")
+  public Map<String, Object> decode(byte[] data, String path) {
+    Map<String, Object> state = (Map<String, Object>) unmarshal(data);
+    Map<String, DecodedSlice> previous = decodedSlices.getOrDefault(path, Collections.emptyMap());
+    Map<String, DecodedSlice> decoded = new LinkedHashMap<>();
+    for (Object coll : state.values()) {
+      Map<String, Object> shards = (Map<String, Object>) ((Map<String, Object>) coll).get(DocCollection.SHARDS);
+      if (shards == null) {
+        continue;
+      }
+      for (Map.Entry<String, Object> entry : shards.entrySet()) {
+        Map<String, Object> record = (Map<String, Object>) entry.getValue();
+        long digest = (Long) record.get(DIGEST);
+        DecodedSlice slice = previous.get(entry.getKey());
+        if (slice == null || slice.digest != digest) {
+          slice = new DecodedSlice(digest,
+              new Slice(entry.getKey(), null, (Map<String, Object>) unmarshal((byte[]) record.get(DATA))));
+        }
+        decoded.put(entry.getKey(), slice);
+        entry.setValue(slice.slice);
+      }
+    }
+    decodedSlices.put(path, decoded);
+    return state;
+  }
+
+  /** Forgets the slices decoded for the given path, once the collection stored there is no longer read */
+  public void forget(String path) {
+    decodedSlices.remove(path);
+  }
+
+  private static long digest(byte[] data) {
+    Hash.LongPair hash = new Hash.LongPair();
+    Hash.murmurhash3_x64_128(data, 0, data.length, 0, hash);
+    return hash.val1;
+  }
+
+  /**
+   * Converts the given value into maps, lists and primitives with the same types as parsed JSON, so that the
+   * decoded state is indistinguishable from a state read as JSON
+   */
+  private static Object toPlain(Object o) {
+    if (o == null || o instanceof String || o instanceof Boolean || o instanceof Long || o instanceof Double) {
+      return o;
+    } else if (o instanceof Number) {
+      return o instanceof Float ? (Object) ((Float) o).doubleValue() : (Object) ((Number) o).longValue();
+    } else if (o instanceof ZkNodeProps) {
+      return toPlain(((ZkNodeProps) o).getProperties());
+    } else if (o instanceof Map) {
+      Map<String, Object> map = new LinkedHashMap<>();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) o).entrySet()) {
+        map.put(String.valueOf(entry.getKey()), toPlain(entry.getValue()));
+      }
+      return map;
+    } else if (o instanceof Collection) {
+      List<Object> list = new ArrayList<>(((Collection<?>) o).size());
+      for (Object item : (Collection<?>) o) {
+        list.add(toPlain(item));
+      }
+      return list;
+    } else if (o instanceof DocRouter.Range) {
+      return o.toString();
+    } else if (o instanceof JSONWriter.Writable) {
+      return ((List<?>) Utils.fromJSON(Utils.toJSON(Collections.singletonList(o)))).get(0);
+    }
+    return o.toString();
+  }
+
+  private static byte[] marshal(Object o) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      new JavaBinCodec() {
+        @Override
+        public boolean writeKnownType(Object val) throws IOException {
+          if (val instanceof String) {
+            // values repeat as much as keys do: node names, URLs, states, types...
+            writeExternString((String) val);
+            return true;
+          }
+          return super.writeKnownType(val);
+        }
+      }.marshal(o, out);
+    } catch (IOException e) {
+      throw new SolrException(ErrorCode.SERVER_ERROR, "Could not encode the cluster state", e);
+    }
+    return out.toByteArray();
+  }
+
+  private static Object unmarshal(byte[] data) {
+    try {
+      return new JavaBinCodec(null, STRING_CACHE).unmarshal(new ByteArrayInputStream(data));
+    } catch (IOException e) {
+      throw new SolrException(ErrorCode.SERVER_ERROR, "Could not decode the cluster state", e);
+    }
+  }
+}
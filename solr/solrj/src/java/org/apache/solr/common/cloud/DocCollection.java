@@ -51,6 +51,11 @@ public class DocCollection extends ZkNodeProps implements Iterable<Slice> {
   public static final String STATE_FORMAT = "stateFormat";
   public static final String RULE = "rule";
   public static final String SNITCH = "snitch";
+  /**
+   * If true, the states of the replicas of the collection are kept in per-replica znodes rather than in
+   * its state.json, see {@link PerReplicaStates}
+   */
+  public static final String PER_REPLICA_STATE = "perReplicaState";
 
   private final int znodeVersion;
 
@@ -69,6 +74,9 @@ public class DocCollection extends ZkNodeProps implements Iterable<Slice> {
   private final Integer maxShardsPerNode;
   private final Boolean autoAddReplicas;
   private final String policy;
+  private final boolean perReplicaState;
+  // the per-replica states merged into the replicas of this collection, if any
+  private PerReplicaStates perReplicaStates;
 
   public DocCollection(String name, Map<String, Slice> slices, Map<String, Object> props, DocRouter router) {
     this(name, slices, props, router, Integer.MAX_VALUE, ZkStateReader.CLUSTER_STATE);
@@ -97,6 +105,8 @@ public class DocCollection extends ZkNodeProps implements Iterable<Slice> {
     Boolean autoAddReplicas = (Boolean) verifyProp(props, AUTO_ADD_REPLICAS);
     this.policy = (String) props.get(Policy.POLICY);
     this.autoAddReplicas = autoAddReplicas == null ? Boolean.FALSE : autoAddReplicas;
+    Boolean perReplicaState = (Boolean) verifyProp(props, PER_REPLICA_STATE);
+    this.perReplicaState = perReplicaState == null ? false : perReplicaState;
     
     verifyProp(props, RULE);
     verifyProp(props, SNITCH);
@@ -145,6 +155,7 @@ public class DocCollection extends ZkNodeProps implements Iterable<Slice> {
       case TLOG_REPLICAS:
         return Integer.parseInt(o.toString());
       case AUTO_ADD_REPLICAS:
+      case PER_REPLICA_STATE:
         return Boolean.parseBoolean(o.toString());
       case "snitch":
       case "rule":
@@ -160,7 +171,20 @@ public class DocCollection extends ZkNodeProps implements Iterable<Slice> {
    * @return the resulting DocCollection
    */
   public DocCollection copyWithSlices(Map<String, Slice> slices){
-    return new DocCollection(getName(), slices, propMap, router, znodeVersion,znode);
+    return copyWith(slices, perReplicaStates);
+  }
+
+  DocCollection copyWith(Map<String, Slice> slices, PerReplicaStates perReplicaStates) {
+    DocCollection collection = new DocCollection(getName(), slices, propMap, router, znodeVersion, znode);
+    collection.perReplicaStates = perReplicaStates;
+    return collection;
+  }
+
+  /**
+   * Returns a copy of this collection with the states of its replicas replaced by the given per-replica states.
+   */
+  public DocCollection copyWith(PerReplicaStates perReplicaStates) {
+    return perReplicaStates.apply(this);
   }
 
   /**
@@ -239,6 +263,28 @@ public class DocCollection extends ZkNodeProps implements Iterable<Slice> {
   public boolean getAutoAddReplicas() {
     return autoAddReplicas;
   }
+
+  /**
+   * @return true if the states of the replicas of this collection are kept in per-replica znodes
+   */
+  public boolean isPerReplicaState() {
+    return perReplicaState;
+  }
+
+  /**
+   * @return the per-replica states merged into this collection, or null if there are none
+   */
+  public PerReplicaStates getPerReplicaStates() {
+    return perReplicaStates;
+  }
+
+  /**
+   * @return the version of the per-replica states of this collection, which changes with every
+   * replica state change that is not written to its state.json, or -1 if it has none
+   */
+  public int getChildNodesVersion() {
+    return perReplicaStates == null ? -1 : perReplicaStates.getCVersion();
+  }
   
   public int getMaxShardsPerNode() {
     if (maxShardsPerNode == null) {
@@ -348,7 +394,8 @@ public class DocCollection extends ZkNodeProps implements Iterable<Slice> {
     if (that instanceof DocCollection == false)
       return false;
     DocCollection other = (DocCollection) that;
-    return super.equals(that) && Objects.equals(this.znode, other.znode) && this.znodeVersion == other.znodeVersion;
+    return super.equals(that) && Objects.equals(this.znode, other.znode) && this.znodeVersion == other.znodeVersion
+        && getChildNodesVersion() == other.getChildNodesVersion();
   }
 
   /**
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.common.cloud;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The states of the replicas of a collection that uses per-replica states
+ * (see {@link DocCollection#PER_REPLICA_STATE}).
+ * <p>
+ * The state of each replica of such a collection is kept in an empty child znode of the collection's
+ * state.json, named <code>&lt;replica&gt;:&lt;version&gt;:&lt;state&gt;</code>, rather than in state.json itself.
+ * A replica's state is changed by the node hosting it, which atomically creates the child for the new state
+ * and deletes the previous one, so state changes neither go through the Overseer nor rewrite state.json.
+ * Readers list the children of state.json, which is a single small request whatever the size of the
+ * collection, and override the states found in state.json with them. Replicas without a child have the state
+ * recorded in state.json.
+ * <p>
+ * Instances are immutable.
+ */
+public class PerReplicaStates {
+
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final char SEPARATOR = ':';
+  private static final int MAX_ATTEMPTS = 10;
+
+  /** The state of a single replica */
+  public static class State {
+    public final String replica;
+    public final Replica.State state;
+    public final int version;
+    /** the name of the child znode holding this state */
+    public final String asString;
+
+    State(String replica, Replica.State state, int version) {
+      this.replica = replica;
+      this.state = state;
+      this.version = version;
+      this.asString = replica + SEPARATOR + version + SEPARATOR + state;
+    }
+
+    /** Parses the name of a child znode, or returns null if it is not a replica state */
+    static State parse(String child) {
+      int stateIdx = child.lastIndexOf(SEPARATOR);
+      int versionIdx = stateIdx <= 0 ? -1 : child.lastIndexOf(SEPARATOR, stateIdx - 1);
+      if (versionIdx <= 0) {
+        return null;
+      }
+      try {
+        return new State(child.substring(0, versionIdx),
+            Replica.State.getState(child.substring(stateIdx + 1)),
+            Integer.parseInt(child.substring(versionIdx + 1, stateIdx)));
+      } catch (IllegalArgumentException e) {
+        return null;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return asString;
+    }
+  }
+
+  private final String path;
+  private final int cversion;
+  // the latest state of each replica
+  private final Map<String, State> states;
+  // all states of each replica, including older ones that were not cleaned up
+  private final Map<String, List<State>> allStates;
+
+  PerReplicaStates(String path, int cversion, List<String> children) {
+    this.path = path;
+    this.cversion = cversion;
+    Map<String, State> states = new HashMap<>();
+    Map<String, List<State>> allStates = new HashMap<>();
+    for (String child : children) {
+      State state = State.parse(child);
+      if (state == null) {
+        continue;
+      }
+      allStates.computeIfAbsent(state.replica, r -> new ArrayList<>(1)).add(state);
+      State current = states.get(state.replica);
+      if (current == null || current.version < state.version) {
+        states.put(state.replica, state);
+      }
+    }
+    this.states = Collections.unmodifiableMap(states);
+    this.allStates = allStates;
+  }
+
+  /**
+   * Reads the per-replica states stored under the state.json at the given path, optionally leaving a watch
+   * that is triggered when one of them changes.
+   *
+   * @throws KeeperException.NoNodeException if the state.json does not exist
+   */
+  public static PerReplicaStates fetch(SolrZkClient zkClient, String path, Watcher watcher)
+      throws KeeperException, InterruptedException {
+    Stat stat = new Stat();
+    List<String> children = zkClient.getChildren(path, watcher, stat, true);
+    return new PerReplicaStates(path, stat.getCversion(), children);
+  }
+
+  /**
+   * Persists the given replica states under the state.json at the given path, in a single multi operation.
+   * A null state removes the state of the replica, which must be done once it is removed from the collection.
+   * States that are already current are not written again.
+   */
+  public static void persist(SolrZkClient zkClient, String path, Map<String, Replica.State> newStates)
+      throws KeeperException, InterruptedException {
+    for (int attempt = 1; ; attempt++) {
+      PerReplicaStates current = fetch(zkClient, path, null);
+      List<Op> ops = current.getOps(zkClient, newStates);
+      if (ops.isEmpty()) {
+        return;
+      }
+      try {
+        zkClient.multi(ops, true);
+        if (log.isDebugEnabled()) {
+          log.debug("Persisted per-replica states {} of {}", newStates, path);
+        }
+        return;
+      } catch (KeeperException.NodeExistsException | KeeperException.NoNodeException e) {
+        // the states were changed concurrently, read them again
+        if (attempt >= MAX_ATTEMPTS) {
+          throw new SolrException(ErrorCode.SERVER_ERROR,
+              "Could not persist the states " + newStates + " of " + path + " after " + attempt + " attempts", e);
+        }
+      }
+    }
+  }
+
+  private List<Op> getOps(SolrZkClient zkClient, Map<String, Replica.State> newStates) {
+    List<Op> ops = new ArrayList<>();
+    for (Map.Entry<String, Replica.State> entry : newStates.entrySet()) {
+      String replica = entry.getKey();
+      State current = states.get(replica);
+      List<State> existing = allStates.getOrDefault(replica, Collections.emptyList());
+      if (entry.getValue() != null) {
+        if (current != null && current.state == entry.getValue() && existing.size() == 1) {
+          continue;
+        }
+        State state = new State(replica, entry.getValue(), current == null ? 0 : current.version + 1);
+        String childPath = path + "/" + state.asString;
+        ops.add(Op.create(childPath, null, zkClient.getZkACLProvider().getACLsToAdd(childPath), CreateMode.PERSISTENT));
+      }
+      for (State old : existing) {
+        ops.add(Op.delete(path + "/" + old.asString, -1));
+      }
+    }
+    return ops;
+  }
+
+  /** The version of the list of children of state.json, which changes with every state change */
+  public int getCVersion() {
+    return cversion;
+  }
+
+  /** Returns the state of the replica, or null if it is not stored as a per-replica state */
+  public State get(String replica) {
+    return states.get(replica);
+  }
+
+  public Map<String, State> getStates() {
+    return states;
+  }
+
+  /** Returns a copy of the given collection with the states of its replicas replaced by these states */
+  DocCollection apply(DocCollection collection) {
+    Map<String, Slice> slices = new LinkedHashMap<>(collection.getSlicesMap());
+    for (Slice slice : collection.getSlices()) {
+      Map<String, Replica> replicas = null;
+      for (Replica replica : slice) {
+        State state = states.get(replica.getName());
+        if (state != null && state.state != replica.getState()) {
+          if (replicas == null) {
+            replicas = slice.getReplicasCopy();
+          }
+          Map<String, Object> props = replica.shallowCopy();
+          props.put(ZkStateReader.STATE_PROP, state.state.toString());
+          replicas.put(replica.getName(), new Replica(replica.getName(), props));
+        }
+      }
+      if (replicas != null) {
+        slices.put(slice.getName(), new Slice(slice.getName(), replicas, slice.shallowCopy()));
+      }
+    }
+    return collection.copyWith(slices, this);
+  }
+
+  @Override
+  public String toString() {
+    return "PerReplicaStates(" + path + "/" + cversion + ")=" + states.values();
+  }
+}
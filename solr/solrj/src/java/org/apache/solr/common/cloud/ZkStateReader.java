@@ -121,6 +121,9 @@ public class ZkStateReader implements Closeable {
   public static final String LEGACY_CLOUD = "legacyCloud";
 
   public static final String URL_SCHEME = "urlScheme";
+
+  /** Cluster property selecting how the Overseer encodes state.json: json (the default) or javabin, see {@link CompactStateCodec} */
+  public static final String STATE_ENCODING = "stateEncoding";
   
   public static final String REPLICA_TYPE = "type";
 
@@ -128,6 +131,9 @@ public class ZkStateReader implements Closeable {
   /** A view of the current state of all collections; combines all the different state sources into a single view. */
   protected volatile ClusterState clusterState;
 
+  // decodes compactly encoded collection states, reusing the slices that did not change
+  private final CompactStateCodec stateCodec = new CompactStateCodec();
+
   private static final int GET_LEADER_RETRY_INTERVAL_MS = 50;
   private static final int GET_LEADER_RETRY_DEFAULT_TIMEOUT = 4000;
 
@@ -209,6 +215,7 @@ public class ZkStateReader implements Closeable {
   public static final Set<String> KNOWN_CLUSTER_PROPS = unmodifiableSet(new HashSet<>(asList(
       LEGACY_CLOUD,
       URL_SCHEME,
+      STATE_ENCODING,
       AUTO_ADD_REPLICAS,
       CoreAdminParams.BACKUP_LOCATION,
       MAX_CORES_PER_NODE)));
@@ -1015,9 +1022,14 @@ public class ZkStateReader implements Closeable {
     }
   }
 
-  /** Watches a single collection's format2 state.json. */
+  /**
+   * Watches a single collection's format2 state.json, and the per-replica states stored as its children
+   * if the collection has them.
+   */
   class StateWatcher implements Watcher {
     private final String coll;
+    // whether a watch is currently set on the per-replica states, so that only one is ever set
+    private volatile boolean childWatchSet;
 
     StateWatcher(String coll) {
       this.coll = coll;
@@ -1040,6 +1052,15 @@ public class ZkStateReader implements Closeable {
       LOG.info("A cluster state change: [{}] for collection [{}] has occurred - updating... (live nodes size: [{}])",
               event, coll, liveNodes.size());
 
+      if (EventType.NodeChildrenChanged.equals(event.getType())) {
+        childWatchSet = false;
+        refreshPerReplicaStatesAndWatch();
+        return;
+      }
+      if (EventType.NodeDeleted.equals(event.getType())) {
+        // deleting the node removes all of its watches
+        childWatchSet = false;
+      }
       refreshAndWatch();
 
     }
@@ -1051,7 +1072,10 @@ public class ZkStateReader implements Closeable {
      */
     public void refreshAndWatch() {
       try {
-        DocCollection newState = fetchCollectionState(coll, this);
+        DocCollection newState = fetchCollectionState(coll, this, childWatchSet ? null : this);
+        if (newState != null && newState.isPerReplicaState()) {
+          childWatchSet = true;
+        }
         updateWatchedCollection(coll, newState);
         synchronized (getUpdateLock()) {
           constructState(Collections.singleton(coll));
@@ -1067,6 +1091,38 @@ public class ZkStateReader implements Closeable {
         LOG.error("Unwatched collection: [{}]", coll, e);
       }
     }
+
+    /**
+     * Refreshes only the per-replica states of the collection, merging them into the state.json we already
+     * have, and leaves a watch for future changes.
+     */
+    private void refreshPerReplicaStatesAndWatch() {
+      DocCollection oldState = watchedCollectionStates.get(coll);
+      if (oldState == null || !oldState.isPerReplicaState()) {
+        refreshAndWatch();
+        return;
+      }
+      try {
+        PerReplicaStates perReplicaStates = PerReplicaStates.fetch(zkClient, getCollectionPath(coll), this);
+        childWatchSet = true;
+        // merge into the latest state.json we have, which may have been refreshed while we were fetching
+        oldState = watchedCollectionStates.getOrDefault(coll, oldState);
+        updateWatchedCollection(coll, oldState.copyWith(perReplicaStates));
+        synchronized (getUpdateLock()) {
+          constructState(Collections.singleton(coll));
+        }
+      } catch (KeeperException.NoNodeException e) {
+        refreshAndWatch();
+      } catch (KeeperException.SessionExpiredException | KeeperException.ConnectionLossException e) {
+        LOG.warn("ZooKeeper watch triggered, but Solr cannot talk to ZK: [{}]", e.getMessage());
+      } catch (KeeperException e) {
+        LOG.error("Unwatched collection: [{}]", coll, e);
+        throw new ZooKeeperException(ErrorCode.SERVER_ERROR, "A ZK error has occurred", e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        LOG.error("Unwatched collection: [{}]", coll, e);
+      }
+    }
   }
 
   /** Watches the legacy clusterstate.json. */
@@ -1177,16 +1233,29 @@ public class ZkStateReader implements Closeable {
   }
 
   private DocCollection fetchCollectionState(String coll, Watcher watcher) throws KeeperException, InterruptedException {
+    return fetchCollectionState(coll, watcher, null);
+  }
+
+  /**
+   * @param childWatcher if not null, the watch to leave on the per-replica states of the collection, if it has any
+   */
+  private DocCollection fetchCollectionState(String coll, Watcher watcher, Watcher childWatcher)
+      throws KeeperException, InterruptedException {
     String collectionPath = getCollectionPath(coll);
     while (true) {
       try {
         Stat stat = new Stat();
         byte[] data = zkClient.getData(collectionPath, watcher, stat, true);
         ClusterState state = ClusterState.load(stat.getVersion(), data,
-            Collections.<String>emptySet(), collectionPath);
+            Collections.<String>emptySet(), collectionPath, stateCodec);
         ClusterState.CollectionRef collectionRef = state.getCollectionStates().get(coll);
-        return collectionRef == null ? null : collectionRef.get();
+        DocCollection collection = collectionRef == null ? null : collectionRef.get();
+        if (collection != null && collection.isPerReplicaState()) {
+          collection = collection.copyWith(PerReplicaStates.fetch(zkClient, collectionPath, childWatcher));
+        }
+        return collection;
       } catch (KeeperException.NoNodeException e) {
+        stateCodec.forget(collectionPath);
         if (watcher != null) {
           // Leave an exists watch in place in case a state.json is created later.
           Stat exists = zkClient.exists(collectionPath, watcher, true);
@@ -1395,7 +1464,9 @@ public class ZkStateReader implements Closeable {
           break;
         }
       } else {
-        if (oldState.getZNodeVersion() >= newState.getZNodeVersion()) {
+        if (oldState.getZNodeVersion() > newState.getZNodeVersion()
+            || (oldState.getZNodeVersion() == newState.getZNodeVersion()
+                && oldState.getChildNodesVersion() >= newState.getChildNodesVersion())) {
           // no change to state, but we might have been triggered by the addition of a
           // state watcher, so run notifications
           updated = true;
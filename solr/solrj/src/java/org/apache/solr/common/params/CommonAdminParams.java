@@ -22,4 +22,8 @@ public interface CommonAdminParams
   /** async or not? **/
   String ASYNC = "async";
   String WAIT_FOR_FINAL_STATE = "waitForFinalState";
+  /** How to split the index of a shard: rewrite (the default) or link **/
+  String SPLIT_METHOD = "splitMethod";
+  /** The priority class of a collection operation in the Overseer: user (the default) or autoscaling **/
+  String TASK_PRIORITY = "taskPriority";
 }
@@ -271,6 +271,7 @@ public abstract class SolrTestCaseJ4 extends LuceneTestCase {
     System.setProperty("tests.shardhandler.randomSeed", Long.toString(random().nextLong()));
     System.setProperty("solr.clustering.enabled", "false");
     System.setProperty("solr.peerSync.useRangeVersions", String.valueOf(random().nextBoolean()));
+    System.setProperty("solr.peerSync.versionDigestBuckets", random().nextBoolean() ? "0" : String.valueOf(TestUtil.nextInt(random(), 1, 32)));
     System.setProperty("solr.cloud.wait-for-updates-with-stale-state-pause", "500");
     startTrackingSearchers();
     ignoreException("ignore_exception");
@@ -314,6 +315,7 @@ public abstract class SolrTestCaseJ4 extends LuceneTestCase {
       System.clearProperty("useCompoundFile");
       System.clearProperty("urlScheme");
       System.clearProperty("solr.peerSync.useRangeVersions");
+      System.clearProperty("solr.peerSync.versionDigestBuckets");
       System.clearProperty("solr.cloud.wait-for-updates-with-stale-state-pause");
       HttpClientUtil.resetHttpClientBuilder();
 